@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.commons.utils;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A thread-safe variant of {@link LazyList} that uses a {@link ListAccess} object to load the elements
+ * of the list by batches. The list is read only and any write access to the list will not be permitted.</p>
+ *
+ * <p>A batch is loaded only once even if it is accessed concurrently, the readers of a batch being loaded
+ * wait for it. When the batches are accessed sequentially, forward or backward, the next batches are loaded
+ * in advance by an {@link Executor} so that the iteration does not wait at each batch boundary, the
+ * contiguous batches that are missing being loaded with only one call to the list access object.</p>
+ *
+ * <p>The list keeps up to <code>maxBatches</code> batches, the least recently used batch is evicted when
+ * a new batch is loaded and it will be reloaded from the list access object if accessed again.</p>
+ *
+ * <p>If the list access fails to load a batch requested by a reader by throwing an exception, it will
+ * cause the list to throw an {@link IllegalStateException} wrapping the original exception. If it fails to
+ * load batches in advance, the batches are loaded again when they are accessed.</p>
+ *
+ * <p>The size of the list is read once from the list access object. The implementation does not perform
+ * any kind of versionning check of the underlying data and if the underlying list access changes the state
+ * it exposes the lazy list will not be aware of it and may behave in an unexpected manner.</p>
+ *
+ * @version $Id$
+ */
+public class ConcurrentLazyList<E> extends AbstractList<E> implements RandomAccess
+{
+
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.commons.ConcurrentLazyList");
+
+   /**
+    * The default maximum amount of batches kept in memory
+    */
+   public static final int DEFAULT_MAX_BATCHES = 32;
+
+   /**
+    * The default amount of batches loaded in advance
+    */
+   public static final int DEFAULT_PREFETCH = 2;
+
+   /** The batch size. */
+   private final int batchSize;
+
+   /** The maximum amount of batches kept in memory. */
+   private final int maxBatches;
+
+   /** The amount of batches loaded in advance. */
+   private final int prefetch;
+
+   /** The executor that loads the batches in advance. */
+   private final Executor executor;
+
+   /** The list access. */
+   private final ListAccess<E> listAccess;
+
+   /** . */
+   private final Object lock = new Object();
+
+   /**
+    * The loaded batches in access order, guarded by the lock
+    */
+   private final Map<Integer, Object[]> batches;
+
+   /**
+    * The loads in progress per batch index, guarded by the lock
+    */
+   private final Map<Integer, Load> loads = new HashMap<Integer, Load>();
+
+   /** The size, negative until it has been read. */
+   private volatile int size = -1;
+
+   /** The index of the last accessed batch. */
+   private volatile int lastBatchIndex = -1;
+
+   /**
+    * Creates a list that keeps up to {@link #DEFAULT_MAX_BATCHES} batches and that loads up to
+    * {@link #DEFAULT_PREFETCH} batches in advance thanks to a thread pool shared by all the lists.
+    *
+    * @param listAccess the list access
+    * @param batchSize the amount of elements of a batch
+    */
+   public ConcurrentLazyList(ListAccess<E> listAccess, int batchSize)
+   {
+      this(listAccess, batchSize, DEFAULT_MAX_BATCHES, DEFAULT_PREFETCH, DefaultExecutor.INSTANCE);
+   }
+
+   /**
+    * @param listAccess the list access
+    * @param batchSize the amount of elements of a batch
+    * @param maxBatches the maximum amount of batches kept in memory
+    * @param prefetch the maximum amount of batches loaded in advance, it is limited to
+    * <code>maxBatches - 1</code>
+    * @param executor the executor that loads the batches in advance, no batch is loaded in advance if
+    * <code>null</code>
+    */
+   public ConcurrentLazyList(ListAccess<E> listAccess, int batchSize, int maxBatches, int prefetch,
+      Executor executor)
+   {
+      if (listAccess == null)
+      {
+         throw new IllegalArgumentException("The list access object cannot be null");
+      }
+      if (batchSize < 1)
+      {
+         throw new IllegalArgumentException("No batch size < 1 is accepted");
+      }
+      if (maxBatches < 1)
+      {
+         throw new IllegalArgumentException("No max batches < 1 is accepted");
+      }
+
+      //
+      this.listAccess = listAccess;
+      this.batchSize = batchSize;
+      this.maxBatches = maxBatches;
+      this.prefetch = executor == null ? 0 : Math.max(0, Math.min(prefetch, maxBatches - 1));
+      this.executor = executor;
+      this.batches = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest)
+         {
+            return size() > ConcurrentLazyList.this.maxBatches;
+         }
+      };
+   }
+
+   @SuppressWarnings("unchecked")
+   public E get(int index)
+   {
+      int size = size();
+
+      //
+      if (index < 0)
+      {
+         throw new ArrayIndexOutOfBoundsException();
+      }
+      if (index >= size)
+      {
+         throw new ArrayIndexOutOfBoundsException();
+      }
+
+      //
+      int batchIndex = index / batchSize;
+      Object[] elements = getBatch(index, batchIndex);
+      if (prefetch > 0)
+      {
+         prefetch(batchIndex);
+      }
+      return (E)elements[index % batchSize];
+   }
+
+   public int size()
+   {
+      int size = this.size;
+      if (size < 0)
+      {
+         try
+         {
+            size = listAccess.getSize();
+         }
+         catch (Exception e)
+         {
+            throw new IllegalStateException("Cannot access resource size", e);
+         }
+         this.size = size;
+      }
+      return size;
+   }
+
+   /**
+    * Gives the elements of the given batch, loading them if needed or waiting for them if they are being
+    * loaded
+    */
+   private Object[] getBatch(int index, int batchIndex)
+   {
+      for (;;)
+      {
+         Load load;
+         boolean owner = false;
+         synchronized (lock)
+         {
+            Object[] elements = batches.get(batchIndex);
+            if (elements != null)
+            {
+               return elements;
+            }
+            load = loads.get(batchIndex);
+            if (load == null)
+            {
+               load = new Load(batchIndex, 1);
+               loads.put(batchIndex, load);
+               owner = true;
+            }
+         }
+         if (owner)
+         {
+            load.run();
+            Object[] elements = load.get(batchIndex);
+            if (elements == null)
+            {
+               LOG.error(load.failure.getLocalizedMessage(), load.failure);
+               throw new IllegalStateException("Cannot load resource at index " + index, load.failure);
+            }
+            return elements;
+         }
+         Object[] elements = load.get(batchIndex);
+         if (elements != null)
+         {
+            return elements;
+         }
+         // The load failed, the batch will be loaded again by the caller
+      }
+   }
+
+   /**
+    * Loads in advance the batches that follow the given batch in the direction of the accesses
+    */
+   private void prefetch(int batchIndex)
+   {
+      int last = lastBatchIndex;
+      if (last == batchIndex)
+      {
+         return;
+      }
+      lastBatchIndex = batchIndex;
+      int direction;
+      if (last == -1 || batchIndex == last + 1)
+      {
+         direction = 1;
+      }
+      else if (batchIndex == last - 1)
+      {
+         direction = -1;
+      }
+      else
+      {
+         // Random access
+         return;
+      }
+      int batchCount = (size() + batchSize - 1) / batchSize;
+      List<Load> newLoads = null;
+      synchronized (lock)
+      {
+         int first = -1;
+         int count = 0;
+         for (int i = 1; i <= prefetch + 1; i++)
+         {
+            int index = batchIndex + i * direction;
+            boolean missing =
+               i <= prefetch && index >= 0 && index < batchCount && !batches.containsKey(index)
+                  && !loads.containsKey(index);
+            if (missing)
+            {
+               // The range always grows toward the first batch in the list
+               first = direction > 0 && count > 0 ? first : index;
+               count++;
+            }
+            else if (count > 0)
+            {
+               Load load = new Load(first, count);
+               for (int j = first; j < first + count; j++)
+               {
+                  loads.put(j, load);
+               }
+               if (newLoads == null)
+               {
+                  newLoads = new ArrayList<Load>();
+               }
+               newLoads.add(load);
+               count = 0;
+            }
+         }
+      }
+      if (newLoads != null)
+      {
+         for (int i = 0, length = newLoads.size(); i < length; i++)
+         {
+            Load load = newLoads.get(i);
+            try
+            {
+               executor.execute(load);
+            }
+            catch (RejectedExecutionException e)
+            {
+               load.complete(null, e);
+            }
+         }
+      }
+   }
+
+   /**
+    * The load of contiguous batches
+    */
+   private final class Load implements Runnable
+   {
+
+      /** . */
+      private final int firstBatchIndex;
+
+      /** . */
+      private final int batchCount;
+
+      /** . */
+      private final CountDownLatch done = new CountDownLatch(1);
+
+      /**
+       * The elements of each batch, <code>null</code> if the load failed
+       */
+      private volatile Object[][] elements;
+
+      /** . */
+      private volatile Exception failure;
+
+      private Load(int firstBatchIndex, int batchCount)
+      {
+         this.firstBatchIndex = firstBatchIndex;
+         this.batchCount = batchCount;
+      }
+
+      public void run()
+      {
+         Object[][] result = null;
+         Exception exception = null;
+         try
+         {
+            int index = firstBatchIndex * batchSize;
+            int length = Math.min(batchCount * batchSize, size() - index);
+            result = split(listAccess.load(index, length));
+         }
+         catch (Exception e)
+         {
+            exception = e;
+         }
+         finally
+         {
+            complete(result, exception);
+         }
+      }
+
+      private Object[][] split(Object[] loaded)
+      {
+         if (batchCount == 1)
+         {
+            return new Object[][]{loaded};
+         }
+         Object[][] result = new Object[batchCount][];
+         for (int i = 0; i < batchCount; i++)
+         {
+            int offset = i * batchSize;
+            int length = Math.max(0, Math.min(batchSize, loaded.length - offset));
+            result[i] = new Object[length];
+            System.arraycopy(loaded, offset, result[i], 0, length);
+         }
+         return result;
+      }
+
+      /**
+       * Publishes the result of the load and wakes up the readers waiting for it
+       */
+      private void complete(Object[][] result, Exception exception)
+      {
+         if (exception != null && LOG.isDebugEnabled())
+         {
+            LOG.debug("Cannot load the batches " + firstBatchIndex + " to " + (firstBatchIndex + batchCount - 1),
+               exception);
+         }
+         this.elements = result;
+         this.failure = exception;
+         synchronized (lock)
+         {
+            for (int i = 0; i < batchCount; i++)
+            {
+               int batchIndex = firstBatchIndex + i;
+               if (loads.get(batchIndex) == this)
+               {
+                  loads.remove(batchIndex);
+               }
+               if (result != null)
+               {
+                  batches.put(batchIndex, result[i]);
+               }
+            }
+         }
+         done.countDown();
+      }
+
+      /**
+       * Waits for the end of the load
+       *
+       * @return the elements of the given batch or <code>null</code> if the load failed
+       */
+      private Object[] get(int batchIndex)
+      {
+         boolean interrupted = false;
+         try
+         {
+            for (;;)
+            {
+               try
+               {
+                  done.await();
+                  break;
+               }
+               catch (InterruptedException e)
+               {
+                  interrupted = true;
+               }
+            }
+         }
+         finally
+         {
+            if (interrupted)
+            {
+               Thread.currentThread().interrupt();
+            }
+         }
+         Object[][] result = elements;
+         return result == null ? null : result[batchIndex - firstBatchIndex];
+      }
+   }
+
+   /**
+    * The thread pool shared by the lists created without executor, its threads are daemon threads that
+    * are released when they are idle
+    */
+   private static class DefaultExecutor
+   {
+
+      /** . */
+      private static final Executor INSTANCE;
+
+      static
+      {
+         int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+         ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+               new ThreadFactory()
+               {
+                  private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                  public Thread newThread(Runnable r)
+                  {
+                     Thread t = new Thread(r, "exo-lazy-list-prefetch-" + threadNumber.getAndIncrement());
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+         executor.allowCoreThreadTimeOut(true);
+         INSTANCE = executor;
+      }
+   }
+}
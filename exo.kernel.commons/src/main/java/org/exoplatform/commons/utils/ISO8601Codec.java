@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.commons.utils;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A thread-safe ISO 8601 codec that gives the same results as {@link ISO8601} without creating any
+ * {@link java.text.SimpleDateFormat}.
+ * <p>
+ * The dates are formatted in the format {@link ISO8601#COMPLETE_DATETIMEMSZ_FORMAT} directly into a
+ * {@link StringBuilder} or a <code>char[]</code> provided by the caller. The dates are parsed in one pass by
+ * recognizing the shape of the string among the {@link ISO8601#FORMATS}, the strings that are not strictly
+ * well-formed, like the values out of range or the fields with an unexpected amount of digits, are delegated
+ * to {@link ISO8601} to keep its lenient behavior. This is also the case of the dates before the adoption
+ * of the Gregorian calendar.
+ * <p>
+ * For the dates formatted in the Gregorian calendar, the result is also the same as {@link ISO8601ASF}.
+ *
+ * @version $Id$
+ */
+public final class ISO8601Codec
+{
+
+   /**
+    * The maximum length of a formatted date: <code>yyyy-MM-ddTHH:mm:ss.SSS+hh:mm</code>
+    */
+   public static final int MAX_LENGTH = 29;
+
+   /**
+    * The first millisecond of the Gregorian calendar as defined by default in {@link GregorianCalendar}
+    */
+   private static final long GREGORIAN_CUTOVER = -12219292800000L;
+
+   /**
+    * The first millisecond of the year 10000, from which the years have more than four digits
+    */
+   private static final long YEAR_10000 = 253402300800000L;
+
+   /**
+    * The first year fully in the Gregorian calendar
+    */
+   private static final int MIN_YEAR = 1583;
+
+   private static final long MILLIS_PER_DAY = 86400000L;
+
+   /**
+    * The amount of days between 0000-03-01 and 1970-01-01
+    */
+   private static final int DAYS_0000_TO_1970 = 719468;
+
+   private static final char[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+   private ISO8601Codec()
+   {
+   }
+
+   /**
+    * Formats the given date as {@link ISO8601#format(Calendar)} does
+    */
+   public static String format(Calendar date)
+   {
+      char[] buffer = new char[MAX_LENGTH];
+      int length = format(date.getTimeInMillis(), date.getTimeZone(), buffer, 0);
+      return length < 0 ? ISO8601.format(date) : new String(buffer, 0, length);
+   }
+
+   /**
+    * Formats the given date as {@link ISO8601#format(Calendar)} does into the given {@link StringBuilder}
+    */
+   public static void format(Calendar date, StringBuilder sb)
+   {
+      format(date.getTimeInMillis(), date.getTimeZone(), sb);
+   }
+
+   /**
+    * Formats the given date as {@link ISO8601#format(Calendar)} does into the given {@link StringBuilder}
+    *
+    * @param millis the date in milliseconds since the epoch
+    * @param tz the time zone in which the date must be expressed
+    * @param sb the builder to which the formatted date is appended
+    */
+   public static void format(long millis, TimeZone tz, StringBuilder sb)
+   {
+      int tzOffset = tz.getOffset(millis);
+      long local = millis + tzOffset;
+      if (local < GREGORIAN_CUTOVER || local >= YEAR_10000)
+      {
+         Calendar date = new GregorianCalendar(tz, Locale.US);
+         date.setTimeInMillis(millis);
+         sb.append(ISO8601.format(date));
+         return;
+      }
+      int date = toCivilDate(local);
+      int year = date / 10000;
+      int month = date / 100 % 100;
+      int day = date % 100;
+      int time = (int)(local - floorDay(local) * MILLIS_PER_DAY);
+      append2(sb, year / 100);
+      append2(sb, year % 100);
+      sb.append('-');
+      append2(sb, month);
+      sb.append('-');
+      append2(sb, day);
+      sb.append('T');
+      append2(sb, time / 3600000);
+      sb.append(':');
+      append2(sb, time / 60000 % 60);
+      sb.append(':');
+      append2(sb, time / 1000 % 60);
+      sb.append('.');
+      int ms = time % 1000;
+      sb.append(DIGITS[ms / 100]).append(DIGITS[ms / 10 % 10]).append(DIGITS[ms % 10]);
+      int minutes = tzOffset / 60000;
+      if (minutes == 0)
+      {
+         sb.append('Z');
+         return;
+      }
+      if (minutes < 0)
+      {
+         sb.append('-');
+         minutes = -minutes;
+      }
+      else
+      {
+         sb.append('+');
+      }
+      append2(sb, minutes / 60);
+      sb.append(':');
+      append2(sb, minutes % 60);
+   }
+
+   /**
+    * Formats the given date as {@link ISO8601#format(Calendar)} does into the given array which must have
+    * at least {@link #MAX_LENGTH} chars available from the given offset.
+    *
+    * @param millis the date in milliseconds since the epoch
+    * @param tz the time zone in which the date must be expressed
+    * @param buffer the array into which the date is written
+    * @param offset the index of the first char to write
+    * @return the index following the last char written or <code>-1</code> if the date is before the adoption
+    * of the Gregorian calendar or after the year 9999, in which case nothing is written and
+    * {@link ISO8601#format(Calendar)} must be used
+    */
+   public static int format(long millis, TimeZone tz, char[] buffer, int offset)
+   {
+      int tzOffset = tz.getOffset(millis);
+      long local = millis + tzOffset;
+      if (local < GREGORIAN_CUTOVER || local >= YEAR_10000)
+      {
+         return -1;
+      }
+      int date = toCivilDate(local);
+      int year = date / 10000;
+      int month = date / 100 % 100;
+      int day = date % 100;
+      int time = (int)(local - floorDay(local) * MILLIS_PER_DAY);
+      int i = offset;
+      i = write2(buffer, i, year / 100);
+      i = write2(buffer, i, year % 100);
+      buffer[i++] = '-';
+      i = write2(buffer, i, month);
+      buffer[i++] = '-';
+      i = write2(buffer, i, day);
+      buffer[i++] = 'T';
+      i = write2(buffer, i, time / 3600000);
+      buffer[i++] = ':';
+      i = write2(buffer, i, time / 60000 % 60);
+      buffer[i++] = ':';
+      i = write2(buffer, i, time / 1000 % 60);
+      buffer[i++] = '.';
+      int ms = time % 1000;
+      buffer[i++] = DIGITS[ms / 100];
+      i = write2(buffer, i, ms % 100);
+      int minutes = tzOffset / 60000;
+      if (minutes == 0)
+      {
+         buffer[i++] = 'Z';
+         return i;
+      }
+      if (minutes < 0)
+      {
+         buffer[i++] = '-';
+         minutes = -minutes;
+      }
+      else
+      {
+         buffer[i++] = '+';
+      }
+      i = write2(buffer, i, minutes / 60);
+      buffer[i++] = ':';
+      return write2(buffer, i, minutes % 60);
+   }
+
+   private static long floorDay(long millis)
+   {
+      long days = millis / MILLIS_PER_DAY;
+      return millis < 0 && days * MILLIS_PER_DAY != millis ? days - 1 : days;
+   }
+
+   /**
+    * Gives the date of the proleptic Gregorian calendar of the given local time, see
+    * http://howardhinnant.github.io/date_algorithms.html
+    *
+    * @return the date packed as <code>yyyyMMdd</code>
+    */
+   private static int toCivilDate(long local)
+   {
+      int z = (int)floorDay(local) + DAYS_0000_TO_1970;
+      int era = z / 146097;
+      int doe = z - era * 146097;
+      int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+      int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+      int mp = (5 * doy + 2) / 153;
+      int day = doy - (153 * mp + 2) / 5 + 1;
+      int month = mp < 10 ? mp + 3 : mp - 9;
+      int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+      return year * 10000 + month * 100 + day;
+   }
+
+   private static void append2(StringBuilder sb, int value)
+   {
+      sb.append(DIGITS[value / 10]).append(DIGITS[value % 10]);
+   }
+
+   private static int write2(char[] buffer, int i, int value)
+   {
+      buffer[i] = DIGITS[value / 10];
+      buffer[i + 1] = DIGITS[value % 10];
+      return i + 2;
+   }
+
+   /**
+    * Parses the given string as {@link ISO8601#parse(String)} does.
+    *
+    * @return the calendar or <code>null</code> if the string cannot be parsed
+    */
+   public static Calendar parse(String dateString)
+   {
+      try
+      {
+         return parseEx(dateString);
+      }
+      catch (ParseException e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Parses the given string as {@link ISO8601#parseEx(String)} does.
+    *
+    * @return the calendar
+    * @throws ParseException if the string cannot be parsed
+    */
+   public static Calendar parseEx(String dateString) throws ParseException
+   {
+      long millis = parseMillis(dateString);
+      if (millis == Long.MIN_VALUE)
+      {
+         return ISO8601.parseEx(dateString);
+      }
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(millis);
+      return calendar;
+   }
+
+   /**
+    * Parses the given date in one pass, the accepted shapes are the ones of {@link ISO8601#FORMATS} with
+    * exactly the expected amount of digits except for the fraction of a second that can have from one to
+    * three digits. The dates without time zone are expressed in the default time zone.
+    *
+    * @return the date in milliseconds since the epoch or {@link Long#MIN_VALUE} if the string is not
+    * strictly well-formed, in which case {@link ISO8601} can still be able to parse it
+    */
+   public static long parseMillis(CharSequence s)
+   {
+      int length = s.length();
+      // yyyy
+      if (length < 4)
+      {
+         return Long.MIN_VALUE;
+      }
+      int year = digits(s, 0, 4);
+      if (year < MIN_YEAR)
+      {
+         return Long.MIN_VALUE;
+      }
+      int month = 1;
+      int day = 1;
+      int hour = 0;
+      int minute = 0;
+      int second = 0;
+      int ms = 0;
+      int i = 4;
+      // -MM
+      if (i < length)
+      {
+         if (s.charAt(i) != '-' || (month = digits(s, i + 1, 2)) < 1 || month > 12)
+         {
+            return Long.MIN_VALUE;
+         }
+         i += 3;
+         // -dd
+         if (i < length)
+         {
+            if (s.charAt(i) != '-' || (day = digits(s, i + 1, 2)) < 1 || day > daysInMonth(year, month))
+            {
+               return Long.MIN_VALUE;
+            }
+            i += 3;
+            // THH:mm
+            if (i < length)
+            {
+               if (s.charAt(i) != 'T' || (hour = digits(s, i + 1, 2)) < 0 || hour > 23 || !is(s, i + 3, ':')
+                  || (minute = digits(s, i + 4, 2)) < 0 || minute > 59)
+               {
+                  return Long.MIN_VALUE;
+               }
+               i += 6;
+               // :ss
+               if (is(s, i, ':'))
+               {
+                  if ((second = digits(s, i + 1, 2)) < 0 || second > 59)
+                  {
+                     return Long.MIN_VALUE;
+                  }
+                  i += 3;
+                  // .S, .SS or .SSS
+                  if (is(s, i, '.'))
+                  {
+                     int start = ++i;
+                     ms = 0;
+                     while (i < length && i - start < 4 && isDigit(s.charAt(i)))
+                     {
+                        ms = ms * 10 + s.charAt(i++) - '0';
+                     }
+                     if (i == start || i - start > 3)
+                     {
+                        return Long.MIN_VALUE;
+                     }
+                  }
+               }
+               if (i < length)
+               {
+                  // Time zone designator
+                  int offset = parseOffset(s, i);
+                  if (offset == Integer.MIN_VALUE)
+                  {
+                     return Long.MIN_VALUE;
+                  }
+                  return toEpochDay(year, month, day) * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L
+                     + second * 1000L + ms - offset * 60000L;
+               }
+            }
+         }
+      }
+      // No time zone designator, the date is expressed in the default time zone
+      Calendar calendar = new GregorianCalendar();
+      calendar.clear();
+      calendar.set(year, month - 1, day, hour, minute, second);
+      calendar.set(Calendar.MILLISECOND, ms);
+      return calendar.getTimeInMillis();
+   }
+
+   /**
+    * Parses a time zone designator: <code>Z</code>, <code>+hh:mm</code> or <code>+hhmm</code> that must
+    * end the string
+    *
+    * @return the offset in minutes or {@link Integer#MIN_VALUE} if the designator is invalid
+    */
+   private static int parseOffset(CharSequence s, int i)
+   {
+      int length = s.length() - i;
+      char c = s.charAt(i);
+      if (c == 'Z')
+      {
+         return length == 1 ? 0 : Integer.MIN_VALUE;
+      }
+      if ((c != '+' && c != '-') || (length != 5 && length != 6))
+      {
+         return Integer.MIN_VALUE;
+      }
+      int hours = digits(s, i + 1, 2);
+      if (length == 6 && s.charAt(i + 3) != ':')
+      {
+         return Integer.MIN_VALUE;
+      }
+      int minutes = digits(s, i + length - 2, 2);
+      if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59)
+      {
+         return Integer.MIN_VALUE;
+      }
+      int offset = hours * 60 + minutes;
+      return c == '-' ? -offset : offset;
+   }
+
+   /**
+    * @return the value of the given amount of digits starting at the given index, or <code>-1</code> if
+    * the chars are not all digits
+    */
+   private static int digits(CharSequence s, int start, int count)
+   {
+      if (start + count > s.length())
+      {
+         return -1;
+      }
+      int value = 0;
+      for (int i = start, end = start + count; i < end; i++)
+      {
+         char c = s.charAt(i);
+         if (!isDigit(c))
+         {
+            return -1;
+         }
+         value = value * 10 + c - '0';
+      }
+      return value;
+   }
+
+   private static boolean isDigit(char c)
+   {
+      return c >= '0' && c <= '9';
+   }
+
+   private static boolean is(CharSequence s, int i, char c)
+   {
+      return i < s.length() && s.charAt(i) == c;
+   }
+
+   private static int daysInMonth(int year, int month)
+   {
+      switch (month)
+      {
+         case 2 :
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+         case 4 :
+         case 6 :
+         case 9 :
+         case 11 :
+            return 30;
+         default :
+            return 31;
+      }
+   }
+
+   /**
+    * @return the amount of days between 1970-01-01 and the given date of the proleptic Gregorian calendar
+    */
+   private static long toEpochDay(int year, int month, int day)
+   {
+      int y = month <= 2 ? year - 1 : year;
+      int era = y / 400;
+      int yoe = y - era * 400;
+      int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+      int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+      return era * 146097L + doe - DAYS_0000_TO_1970;
+   }
+}
@@ -18,6 +18,8 @@
  */
 package org.exoplatform.services.log;
 
+import org.exoplatform.commons.utils.PropertyManager;
+import org.exoplatform.services.log.impl.AsyncExoLogFactory;
 import org.exoplatform.services.log.impl.SLF4JExoLogFactory;
 import org.exoplatform.services.log.impl.SimpleExoLogFactory;
 
@@ -46,7 +48,11 @@ import org.exoplatform.services.log.impl.SimpleExoLogFactory;
  * with an instance of the class
  * {@link org.exoplatform.services.log.impl.SLF4JExoLogFactory}. It is
  * possible to change the instance at runtime by calling the static method
- * {@link #setFactory(ExoLogFactory)}.</li>
+ * {@link #setFactory(ExoLogFactory)}. If the system property
+ * {@value org.exoplatform.services.log.impl.AsyncExoLogFactory#ASYNC_PROPERTY} is set to <code>true</code>,
+ * the static instance is an instance of the class
+ * {@link org.exoplatform.services.log.impl.AsyncExoLogFactory} that logs the events asynchronously
+ * through an instance of the class {@link org.exoplatform.services.log.impl.SLF4JExoLogFactory}.</li>
  * <li>If the static instance fails to deliver a logger at runtime due to a
  * {@link NoClassDefFoundError} then a factory instance of class
  * {@link org.exoplatform.services.log.impl.SimpleExoLogFactory} is used for
@@ -67,8 +73,17 @@ public abstract class ExoLogger
     */
    private static SimpleExoLogFactory failOverFactory = new SimpleExoLogFactory();
 
-   /** SLF4J logger factory. */
-   private static ExoLogFactory loggerFactory = new SLF4JExoLogFactory();
+   /** The logger factory. */
+   private static ExoLogFactory loggerFactory = createDefaultFactory();
+
+   private static ExoLogFactory createDefaultFactory()
+   {
+      if (Boolean.parseBoolean(PropertyManager.getProperty(AsyncExoLogFactory.ASYNC_PROPERTY)))
+      {
+         return new AsyncExoLogFactory();
+      }
+      return new SLF4JExoLogFactory();
+   }
 
    /**
     * Configures the exo logger factory. This method can be called multiple times
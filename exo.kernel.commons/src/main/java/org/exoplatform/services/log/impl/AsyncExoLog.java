@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+import org.exoplatform.services.log.Log;
+
+/**
+ * A {@link Log} that gives the events to its {@link AsyncExoLogFactory} so that they are logged
+ * by the background thread of the factory with the underlying logger. The level is checked and the message
+ * is formatted by the caller, so nothing is queued when the level is disabled and the arguments of the
+ * message can be modified once the method returns.
+ *
+ * @version $Id$
+ */
+class AsyncExoLog implements Log
+{
+
+   /** . */
+   private final AsyncExoLogFactory factory;
+
+   /** . */
+   private final Log log;
+
+   AsyncExoLog(AsyncExoLogFactory factory, Log log)
+   {
+      this.factory = factory;
+      this.log = log;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isTraceEnabled()
+   {
+      return log.isTraceEnabled();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isDebugEnabled()
+   {
+      return log.isDebugEnabled();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isInfoEnabled()
+   {
+      return log.isInfoEnabled();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isWarnEnabled()
+   {
+      return log.isWarnEnabled();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isErrorEnabled()
+   {
+      return log.isErrorEnabled();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isFatalEnabled()
+   {
+      return log.isFatalEnabled();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void trace(Object message)
+   {
+      if (log.isTraceEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.TRACE, String.valueOf(message), null);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void trace(Object message, Throwable t)
+   {
+      if (log.isTraceEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.TRACE, String.valueOf(message), t);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void debug(Object message)
+   {
+      if (log.isDebugEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.DEBUG, String.valueOf(message), null);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void debug(Object message, Throwable t)
+   {
+      if (log.isDebugEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.DEBUG, String.valueOf(message), t);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void info(Object message)
+   {
+      if (log.isInfoEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.INFO, String.valueOf(message), null);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void info(Object message, Throwable t)
+   {
+      if (log.isInfoEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.INFO, String.valueOf(message), t);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void warn(Object message)
+   {
+      if (log.isWarnEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.WARN, String.valueOf(message), null);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void warn(Object message, Throwable t)
+   {
+      if (log.isWarnEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.WARN, String.valueOf(message), t);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void error(Object message)
+   {
+      if (log.isErrorEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.ERROR, String.valueOf(message), null);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void error(Object message, Throwable t)
+   {
+      if (log.isErrorEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.ERROR, String.valueOf(message), t);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void fatal(Object message)
+   {
+      if (log.isFatalEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.FATAL, String.valueOf(message), null);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void fatal(Object message, Throwable t)
+   {
+      if (log.isFatalEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.FATAL, String.valueOf(message), t);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void trace(String format, Object... argArray)
+   {
+      if (log.isTraceEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.TRACE, LogMessageFormatter.getMessage(format, argArray),
+            LogMessageFormatter.getThrowable(argArray));
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void debug(String format, Object... argArray)
+   {
+      if (log.isDebugEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.DEBUG, LogMessageFormatter.getMessage(format, argArray),
+            LogMessageFormatter.getThrowable(argArray));
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void info(String format, Object... argArray)
+   {
+      if (log.isInfoEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.INFO, LogMessageFormatter.getMessage(format, argArray),
+            LogMessageFormatter.getThrowable(argArray));
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void warn(String format, Object... argArray)
+   {
+      if (log.isWarnEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.WARN, LogMessageFormatter.getMessage(format, argArray),
+            LogMessageFormatter.getThrowable(argArray));
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void error(String format, Object... argArray)
+   {
+      if (log.isErrorEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.ERROR, LogMessageFormatter.getMessage(format, argArray),
+            LogMessageFormatter.getThrowable(argArray));
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void fatal(String format, Object... argArray)
+   {
+      if (log.isFatalEnabled())
+      {
+         factory.log(log, AsyncExoLogFactory.FATAL, LogMessageFormatter.getMessage(format, argArray),
+            LogMessageFormatter.getThrowable(argArray));
+      }
+   }
+}
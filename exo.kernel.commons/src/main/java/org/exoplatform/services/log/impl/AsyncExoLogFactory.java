@@ -0,0 +1,706 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+import org.exoplatform.commons.utils.PropertyManager;
+import org.exoplatform.commons.utils.SecurityHelper;
+import org.exoplatform.services.log.ExoLogFactory;
+import org.exoplatform.services.log.Log;
+
+import java.lang.management.ManagementFactory;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A logger factory that logs the events asynchronously. The loggers of this factory put the events into a
+ * bounded lock-free ring buffer that is drained by a background thread, which logs the events in batches
+ * with the loggers of an underlying factory, so the calling threads do not wait for the appenders.
+ * The events are logged in the order in which they have been put into the ring buffer.
+ * <p>
+ * When the ring buffer is full, the {@link LogOverflowPolicy} decides what to do with the new events,
+ * the events whose level is greater or equal to the threshold are never lost. As the events are logged by
+ * the background thread, the location, the thread name and the diagnostic contexts that the appenders may
+ * output are the ones of the background thread.
+ * <p>
+ * The factory can be selected by setting the system property {@value #ASYNC_PROPERTY} to <code>true</code>,
+ * in which case it is configured thanks to the other system properties defined in this class, or by
+ * calling {@link org.exoplatform.services.log.ExoLogger#setFactory(ExoLogFactory)}. Its statistics are
+ * exposed through JMX and the remaining events are logged when the JVM shuts down or when
+ * {@link #stop()} is called.
+ *
+ * @version $Id$
+ */
+public class AsyncExoLogFactory implements ExoLogFactory, AsyncExoLogFactoryMBean
+{
+
+   /**
+    * The name of the system property that indicates whether the events must be logged asynchronously
+    */
+   public static final String ASYNC_PROPERTY = "exo.logger.async";
+
+   /**
+    * The name of the system property that defines the capacity of the ring buffer
+    */
+   public static final String CAPACITY_PROPERTY = "exo.logger.async.capacity";
+
+   /**
+    * The name of the system property that defines the maximum amount of events logged at once
+    */
+   public static final String BATCH_SIZE_PROPERTY = "exo.logger.async.batch-size";
+
+   /**
+    * The name of the system property that defines the {@link LogOverflowPolicy}
+    */
+   public static final String OVERFLOW_POLICY_PROPERTY = "exo.logger.async.overflow-policy";
+
+   /**
+    * The name of the system property that defines the level from which the events are never dropped
+    */
+   public static final String THRESHOLD_PROPERTY = "exo.logger.async.threshold";
+
+   /**
+    * The name of the system property that defines the sample rate of the policy
+    * {@link LogOverflowPolicy#SAMPLE}
+    */
+   public static final String SAMPLE_RATE_PROPERTY = "exo.logger.async.sample-rate";
+
+   /**
+    * The default capacity of the ring buffer
+    */
+   public static final int DEFAULT_CAPACITY = 8192;
+
+   /**
+    * The default maximum amount of events logged at once
+    */
+   public static final int DEFAULT_BATCH_SIZE = 256;
+
+   /**
+    * The default sample rate
+    */
+   public static final int DEFAULT_SAMPLE_RATE = 100;
+
+   static final int TRACE = 0;
+
+   static final int DEBUG = 1;
+
+   static final int INFO = 2;
+
+   static final int WARN = 3;
+
+   static final int ERROR = 4;
+
+   static final int FATAL = 5;
+
+   private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+
+   /**
+    * The maximum amount of time in nanoseconds the background thread waits for new events
+    */
+   private static final long MAX_IDLE_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+
+   /**
+    * The amount of time in nanoseconds a blocked caller waits before checking again the ring buffer
+    */
+   private static final long BLOCKED_WAIT_TIME = TimeUnit.MICROSECONDS.toNanos(100);
+
+   /** . */
+   private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+   /** . */
+   private final ConcurrentMap<String, Log> loggers = new ConcurrentHashMap<String, Log>();
+
+   /** . */
+   private final ExoLogFactory delegate;
+
+   /** . */
+   private final LogRingBuffer<LogEvent> buffer;
+
+   /** . */
+   private final int batchSize;
+
+   /** . */
+   private final LogOverflowPolicy policy;
+
+   /** . */
+   private final int threshold;
+
+   /** . */
+   private final int sampleRate;
+
+   /** . */
+   private final Thread drainer;
+
+   /** . */
+   private final Thread shutdownHook;
+
+   /** . */
+   private final ObjectName objectName;
+
+   /**
+    * Indicates whether the background thread waits for new events
+    */
+   private volatile boolean idle;
+
+   /**
+    * Indicates whether the background thread is logging a batch
+    */
+   private volatile boolean draining;
+
+   /** . */
+   private volatile boolean stopped;
+
+   /**
+    * The count of events whose level is lower than the threshold that overflowed, used for the sampling
+    */
+   private final AtomicLong overflows = new AtomicLong();
+
+   /** . */
+   private final AtomicLong events = new AtomicLong();
+
+   /** . */
+   private final AtomicLong logged = new AtomicLong();
+
+   /** . */
+   private final AtomicLong dropped = new AtomicLong();
+
+   /** . */
+   private final AtomicLong blocked = new AtomicLong();
+
+   /** . */
+   private final AtomicLong batches = new AtomicLong();
+
+   /**
+    * Creates a factory on top of {@link SLF4JExoLogFactory} configured thanks to the system properties
+    */
+   public AsyncExoLogFactory()
+   {
+      this(new SLF4JExoLogFactory(), getIntProperty(CAPACITY_PROPERTY, DEFAULT_CAPACITY), getIntProperty(
+         BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE), getPolicy(), getStringProperty(THRESHOLD_PROPERTY, "WARN"),
+         getIntProperty(SAMPLE_RATE_PROPERTY, DEFAULT_SAMPLE_RATE));
+   }
+
+   /**
+    * @param delegate the factory of the loggers used to log the events
+    * @param capacity the minimum capacity of the ring buffer, rounded up to the next power of two
+    * @param batchSize the maximum amount of events logged at once by the background thread
+    * @param policy the policy to apply when the ring buffer is full
+    * @param threshold the name of the level from which the events are never dropped
+    * @param sampleRate one event out of <code>sampleRate</code> is kept with the policy
+    * {@link LogOverflowPolicy#SAMPLE}
+    * @throws IllegalArgumentException if the delegate or the policy is null or if the threshold is unknown
+    */
+   public AsyncExoLogFactory(ExoLogFactory delegate, int capacity, int batchSize, LogOverflowPolicy policy,
+      String threshold, int sampleRate) throws IllegalArgumentException
+   {
+      if (delegate == null)
+      {
+         throw new IllegalArgumentException("The delegate factory cannot be null");
+      }
+      if (policy == null)
+      {
+         throw new IllegalArgumentException("The overflow policy cannot be null");
+      }
+      this.delegate = delegate;
+      this.buffer = new LogRingBuffer<LogEvent>(capacity);
+      this.batchSize = Math.max(1, batchSize);
+      this.policy = policy;
+      this.threshold = getLevel(threshold);
+      this.sampleRate = Math.max(1, sampleRate);
+      int id = INSTANCES.incrementAndGet();
+      this.drainer = new Thread("exo-async-logger-" + id)
+      {
+         @Override
+         public void run()
+         {
+            for (;;)
+            {
+               try
+               {
+                  drain();
+                  return;
+               }
+               catch (Throwable e) //NOSONAR
+               {
+                  // The thread must survive, otherwise the callers would wait for it forever
+                  draining = false;
+                  System.err.println("The asynchronous logger failed: " + e); //NOSONAR
+               }
+            }
+         }
+      };
+      drainer.setDaemon(true);
+      drainer.start();
+      this.shutdownHook = new Thread(new Runnable()
+      {
+         public void run()
+         {
+            // Logs the remaining events before the JVM exits
+            AsyncExoLogFactory.this.stop();
+         }
+      }, "exo-async-logger-" + id + "-shutdown");
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+      this.objectName = register(id);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Log getExoLogger(String name)
+   {
+      if (name == null)
+      {
+         throw new IllegalArgumentException("The logger name cannot be null");
+      }
+      Log exoLogger = loggers.get(name);
+      if (exoLogger == null)
+      {
+         exoLogger = new AsyncExoLog(this, delegate.getExoLogger(name));
+         Log phantom = loggers.putIfAbsent(name, exoLogger);
+         if (phantom != null)
+         {
+            exoLogger = phantom;
+         }
+      }
+      return exoLogger;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Log getExoLogger(Class clazz)
+   {
+      if (clazz == null)
+      {
+         throw new IllegalArgumentException("The logger class cannot be null");
+      }
+      return getExoLogger(clazz.getName());
+   }
+
+   /**
+    * Puts an event into the ring buffer, applying the overflow policy if it is full. The event is logged
+    * synchronously if the factory has been stopped or if the caller is the background thread itself.
+    */
+   void log(Log log, int level, String message, Throwable t)
+   {
+      LogEvent event = new LogEvent(log, level, message, t);
+      if (stopped || Thread.currentThread() == drainer)
+      {
+         dispatch(event);
+         return;
+      }
+      events.incrementAndGet();
+      if (buffer.offer(event) || overflow(event))
+      {
+         if (idle)
+         {
+            LockSupport.unpark(drainer);
+         }
+      }
+   }
+
+   /**
+    * Applies the overflow policy to an event that could not be put into the ring buffer
+    *
+    * @return <code>true</code> if the event has been put into the ring buffer, <code>false</code> if it has
+    * been dropped or logged synchronously
+    */
+   private boolean overflow(LogEvent event)
+   {
+      if (event.level < threshold)
+      {
+         if (policy == LogOverflowPolicy.DISCARD
+            || (policy == LogOverflowPolicy.SAMPLE && overflows.incrementAndGet() % sampleRate != 0))
+         {
+            dropped.incrementAndGet();
+            return false;
+         }
+      }
+      blocked.incrementAndGet();
+      do
+      {
+         if (stopped || Thread.currentThread().isInterrupted() || !drainer.isAlive())
+         {
+            // The event cannot be lost, it is logged by the caller
+            dispatch(event);
+            logged.incrementAndGet();
+            return false;
+         }
+         LockSupport.unpark(drainer);
+         LockSupport.parkNanos(this, BLOCKED_WAIT_TIME);
+      }
+      while (!buffer.offer(event));
+      return true;
+   }
+
+   /**
+    * The loop of the background thread
+    */
+   private void drain()
+   {
+      LogEvent[] batch = new LogEvent[batchSize];
+      for (;;)
+      {
+         draining = true;
+         int count = buffer.drainTo(batch, batchSize);
+         if (count > 0)
+         {
+            for (int i = 0; i < count; i++)
+            {
+               dispatch(batch[i]);
+               batch[i] = null;
+            }
+            logged.addAndGet(count);
+            batches.incrementAndGet();
+            continue;
+         }
+         draining = false;
+         if (stopped)
+         {
+            return;
+         }
+         idle = true;
+         // Checks again once idle is visible to the callers to avoid missing a wake up
+         if (buffer.isEmpty() && !stopped)
+         {
+            LockSupport.parkNanos(this, MAX_IDLE_TIME);
+         }
+         idle = false;
+      }
+   }
+
+   private static void dispatch(LogEvent event)
+   {
+      Log log = event.log;
+      String message = event.message;
+      Throwable t = event.throwable;
+      try
+      {
+         switch (event.level)
+         {
+            case TRACE :
+               if (t == null)
+                  log.trace(message);
+               else
+                  log.trace(message, t);
+               break;
+            case DEBUG :
+               if (t == null)
+                  log.debug(message);
+               else
+                  log.debug(message, t);
+               break;
+            case INFO :
+               if (t == null)
+                  log.info(message);
+               else
+                  log.info(message, t);
+               break;
+            case WARN :
+               if (t == null)
+                  log.warn(message);
+               else
+                  log.warn(message, t);
+               break;
+            case ERROR :
+               if (t == null)
+                  log.error(message);
+               else
+                  log.error(message, t);
+               break;
+            default :
+               if (t == null)
+                  log.fatal(message);
+               else
+                  log.fatal(message, t);
+         }
+      }
+      catch (Throwable e) //NOSONAR
+      {
+         // We need to use the standard error print since the logger itself failed
+         System.err.println("Could not log the event '" + message + "': " + e); //NOSONAR
+      }
+   }
+
+   /**
+    * Waits until all the events put into the ring buffer so far have been logged
+    *
+    * @param timeout the maximum amount of time to wait in milliseconds
+    * @return <code>true</code> if all the events have been logged, <code>false</code> if the timeout
+    * elapsed before
+    */
+   public boolean flush(long timeout)
+   {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+      // The buffer must be checked before the flag since the flag is set before the buffer is drained
+      while (!buffer.isEmpty() || draining)
+      {
+         if (System.nanoTime() - deadline >= 0 || !drainer.isAlive())
+         {
+            return false;
+         }
+         LockSupport.unpark(drainer);
+         LockSupport.parkNanos(this, BLOCKED_WAIT_TIME);
+      }
+      return true;
+   }
+
+   /**
+    * Stops the background thread once all the remaining events have been logged, the events logged
+    * afterwards are logged synchronously.
+    */
+   public void stop()
+   {
+      if (stopped)
+      {
+         return;
+      }
+      stopped = true;
+      LockSupport.unpark(drainer);
+      if (Thread.currentThread() != shutdownHook)
+      {
+         try
+         {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+         }
+         catch (IllegalStateException e)
+         {
+            // The JVM is shutting down
+         }
+      }
+      try
+      {
+         drainer.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return;
+      }
+      // Logs the events put into the ring buffer while the background thread was stopping
+      LogEvent event;
+      while ((event = buffer.poll()) != null)
+      {
+         dispatch(event);
+         logged.incrementAndGet();
+      }
+      unregister();
+   }
+
+   /**
+    * @return the thread registered as shutdown hook
+    */
+   Thread getShutdownHook()
+   {
+      return shutdownHook;
+   }
+
+   public int getCapacity()
+   {
+      return buffer.capacity();
+   }
+
+   public int getBatchSize()
+   {
+      return batchSize;
+   }
+
+   public String getOverflowPolicy()
+   {
+      return policy.name();
+   }
+
+   public String getThreshold()
+   {
+      return LEVELS[threshold];
+   }
+
+   public int getQueueDepth()
+   {
+      return buffer.size();
+   }
+
+   public long getEventCount()
+   {
+      return events.get();
+   }
+
+   public long getLoggedCount()
+   {
+      return logged.get();
+   }
+
+   public long getDroppedCount()
+   {
+      return dropped.get();
+   }
+
+   public long getBlockedCount()
+   {
+      return blocked.get();
+   }
+
+   public long getBatchCount()
+   {
+      return batches.get();
+   }
+
+   public void resetStatistics()
+   {
+      events.set(0);
+      logged.set(0);
+      dropped.set(0);
+      blocked.set(0);
+      batches.set(0);
+   }
+
+   private ObjectName register(final int id)
+   {
+      return SecurityHelper.doPrivilegedAction(new PrivilegedAction<ObjectName>()
+      {
+         public ObjectName run()
+         {
+            try
+            {
+               ObjectName name = new ObjectName("exo:service=logger,type=async,id=" + id);
+               ManagementFactory.getPlatformMBeanServer().registerMBean(AsyncExoLogFactory.this, name);
+               return name;
+            }
+            catch (Exception e)
+            {
+               // We need to use the standard error print since we are actually configuring the logger
+               System.err.println("Could not register the asynchronous logger factory in JMX: " + e); //NOSONAR
+               return null;
+            }
+         }
+      });
+   }
+
+   private void unregister()
+   {
+      if (objectName == null)
+      {
+         return;
+      }
+      SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+      {
+         public Void run()
+         {
+            try
+            {
+               MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+               if (server.isRegistered(objectName))
+               {
+                  server.unregisterMBean(objectName);
+               }
+            }
+            catch (Exception e)
+            {
+               System.err.println("Could not unregister the asynchronous logger factory from JMX: " + e); //NOSONAR
+            }
+            return null;
+         }
+      });
+   }
+
+   private static int getLevel(String name)
+   {
+      for (int i = 0; i < LEVELS.length; i++)
+      {
+         if (LEVELS[i].equalsIgnoreCase(name))
+         {
+            return i;
+         }
+      }
+      throw new IllegalArgumentException("Unknown level: " + name);
+   }
+
+   private static LogOverflowPolicy getPolicy()
+   {
+      String value = getStringProperty(OVERFLOW_POLICY_PROPERTY, LogOverflowPolicy.BLOCK.name());
+      try
+      {
+         return LogOverflowPolicy.valueOf(value.trim().toUpperCase());
+      }
+      catch (IllegalArgumentException e)
+      {
+         System.err.println("Unknown overflow policy " + value + ", " + LogOverflowPolicy.BLOCK //NOSONAR
+            + " will be used");
+         return LogOverflowPolicy.BLOCK;
+      }
+   }
+
+   private static String getStringProperty(String name, String defaultValue)
+   {
+      String value = PropertyManager.getProperty(name);
+      return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
+   }
+
+   private static int getIntProperty(String name, int defaultValue)
+   {
+      String value = PropertyManager.getProperty(name);
+      if (value != null)
+      {
+         try
+         {
+            return Integer.parseInt(value.trim());
+         }
+         catch (NumberFormatException e)
+         {
+            System.err.println("Invalid value " + value + " for " + name + ", " + defaultValue //NOSONAR
+               + " will be used");
+         }
+      }
+      return defaultValue;
+   }
+
+   /**
+    * An event waiting in the ring buffer
+    */
+   private static final class LogEvent
+   {
+
+      /** . */
+      private final Log log;
+
+      /** . */
+      private final int level;
+
+      /** . */
+      private final String message;
+
+      /** . */
+      private final Throwable throwable;
+
+      private LogEvent(Log log, int level, String message, Throwable throwable)
+      {
+         this.log = log;
+         this.level = level;
+         this.message = message;
+         this.throwable = throwable;
+      }
+   }
+}
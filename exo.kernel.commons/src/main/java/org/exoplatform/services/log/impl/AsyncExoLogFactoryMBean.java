@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+/**
+ * The management interface of an {@link AsyncExoLogFactory}.
+ *
+ * @version $Id$
+ */
+public interface AsyncExoLogFactoryMBean
+{
+
+   /**
+    * @return the maximum amount of events in the ring buffer
+    */
+   int getCapacity();
+
+   /**
+    * @return the maximum amount of events logged at once by the background thread
+    */
+   int getBatchSize();
+
+   /**
+    * @return the policy applied when the ring buffer is full
+    */
+   String getOverflowPolicy();
+
+   /**
+    * @return the level from which the events are never dropped
+    */
+   String getThreshold();
+
+   /**
+    * @return the amount of events waiting in the ring buffer
+    */
+   int getQueueDepth();
+
+   /**
+    * @return the count of events given to the factory
+    */
+   long getEventCount();
+
+   /**
+    * @return the count of events logged with the underlying loggers
+    */
+   long getLoggedCount();
+
+   /**
+    * @return the count of events dropped because the ring buffer was full
+    */
+   long getDroppedCount();
+
+   /**
+    * @return the count of events whose caller had to wait because the ring buffer was full
+    */
+   long getBlockedCount();
+
+   /**
+    * @return the count of batches logged by the background thread
+    */
+   long getBatchCount();
+
+   /**
+    * Resets the statistics of the factory
+    */
+   void resetStatistics();
+}
@@ -26,7 +26,8 @@ import java.lang.reflect.Method;
 /**
  * This is an utility class allowing to use in runtime either 1.5.x or
  * 1.6.x slf4j libraries. As their log method signature differs, 
- * we use reflection library to invoke it.
+ * we use reflection library to invoke it with 1.5.x, with 1.6.x the method
+ * is invoked directly as it is the version against which this class is compiled.
  * 
  * @author <a href="mailto:dkuleshov@exoplatform.com">Dmitry Kuleshov</a>
  */
@@ -98,35 +99,44 @@ public class DynamicLocationAwareLogger
    {
       try
       {
-         if (!parameterSupported)
+         if (parameterSupported)
          {
-            log.invoke(logger, marker, fqcn, level, message, t);
+            // Direct call, the method is only linked when the 1.6.x signature is available
+            logger.log(marker, fqcn, level, message, null, t);
          }
          else
          {
-            log.invoke(logger, marker, fqcn, level, message, null, t);
+            log.invoke(logger, marker, fqcn, level, message, t);
          }
       }
       catch (Exception e)
       {
-         switch( level)
-         {
-            case LocationAwareLogger.TRACE_INT :
-               logger.trace(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
-               break;
-            case LocationAwareLogger.DEBUG_INT :
-               logger.debug(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
-               break;
-            case LocationAwareLogger.INFO_INT :
-               logger.info(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
-               break;
-            case LocationAwareLogger.WARN_INT :
-               logger.warn(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
-               break;
-            case LocationAwareLogger.ERROR_INT :
-               logger.error(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
-               break;
-         }
+         logWithoutLocation(level, message, t);
+      }
+   }
+
+   /**
+    * Logs the message with the location unaware methods, used if the invocation of the log method failed
+    */
+   private void logWithoutLocation(int level, String message, Throwable t)
+   {
+      switch( level)
+      {
+         case LocationAwareLogger.TRACE_INT :
+            logger.trace(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
+            break;
+         case LocationAwareLogger.DEBUG_INT :
+            logger.debug(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
+            break;
+         case LocationAwareLogger.INFO_INT :
+            logger.info(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
+            break;
+         case LocationAwareLogger.WARN_INT :
+            logger.warn(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
+            break;
+         case LocationAwareLogger.ERROR_INT :
+            logger.error(LOG_METHOD_INVOKE_ERROR_MSG + message, t);
+            break;
       }
    }
 
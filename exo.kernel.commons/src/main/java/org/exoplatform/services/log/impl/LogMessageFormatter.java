@@ -18,10 +18,16 @@
  */
 package org.exoplatform.services.log.impl;
 
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Simple class to provide format parsing of log messages similar to what slf4j library does.
+ * <p>
+ * The positions of the anchors of a given format are computed once and cached, so that a message is built
+ * by walking the format only once. The messages are built into a {@link StringBuilder} reused by each thread,
+ * which is taken from the thread while in use so that an argument whose <code>toString()</code> formats
+ * another message gets its own builder.
  * @author <a href="mailto:dkuleshov@exoplatform.com">Dmitry Kuleshov</a>
  */
 public class LogMessageFormatter
@@ -30,22 +36,114 @@ public class LogMessageFormatter
     * '{}' - anchor which will be replaced by corresponding 
     * object's string representation
     */
-   private static final Pattern REPLACE_PATTERN = Pattern.compile("\\{\\}");
+   private static final String ANCHOR = "{}";
+
+   /**
+    * The maximum amount of formats whose anchors are cached, the formats are expected to be constants
+    * but once this limit is reached the new formats are parsed each time
+    */
+   private static final int MAX_CACHED_FORMATS = 2048;
+
+   /**
+    * The maximum capacity of the builder kept by each thread, a bigger builder is released after use
+    */
+   private static final int MAX_BUILDER_CAPACITY = 8192;
+
+   /**
+    * The positions of the anchors of the formats
+    */
+   private static final ConcurrentMap<String, int[]> ANCHORS = new ConcurrentHashMap<String, int[]>();
+
+   /**
+    * The builder reused by each thread, <code>null</code> while it is in use
+    */
+   private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>()
+   {
+      @Override
+      protected StringBuilder initialValue()
+      {
+         return new StringBuilder(256);
+      }
+   };
 
    public static String getMessage(String str, Object... argsArray)
    {
-      if (argsArray != null && argsArray.length > 0)
+      if (str == null || argsArray == null || argsArray.length == 0)
+      {
+         return str;
+      }
+      // The last argument is not a parameter if it is a Throwable
+      int length = argsArray[argsArray.length - 1] instanceof Throwable ? argsArray.length - 1 : argsArray.length;
+      if (length == 0)
       {
-         for (int i = 0; i < argsArray.length; i++)
+         return str;
+      }
+      int[] anchors = getAnchors(str);
+      if (anchors.length == 0)
+      {
+         return str;
+      }
+      StringBuilder sb = BUILDER.get();
+      if (sb == null)
+      {
+         // Reentrant call, the builder of the thread is in use
+         sb = new StringBuilder(256);
+      }
+      else
+      {
+         BUILDER.set(null);
+      }
+      try
+      {
+         int start = 0;
+         for (int i = 0; i < anchors.length && i < length; i++)
+         {
+            sb.append(str, start, anchors[i]);
+            String message = String.valueOf(argsArray[i]);
+            sb.append(message != null ? message : "null");
+            start = anchors[i] + ANCHOR.length();
+         }
+         sb.append(str, start, str.length());
+         return sb.toString();
+      }
+      finally
+      {
+         if (sb.capacity() > MAX_BUILDER_CAPACITY)
+         {
+            BUILDER.remove();
+         }
+         else
+         {
+            sb.setLength(0);
+            BUILDER.set(sb);
+         }
+      }
+   }
+
+   /**
+    * Gives the positions of the anchors of the given format
+    */
+   private static int[] getAnchors(String str)
+   {
+      int[] anchors = ANCHORS.get(str);
+      if (anchors == null)
+      {
+         int count = 0;
+         for (int i = str.indexOf(ANCHOR); i >= 0; i = str.indexOf(ANCHOR, i + ANCHOR.length()))
+         {
+            count++;
+         }
+         anchors = new int[count];
+         for (int i = str.indexOf(ANCHOR), j = 0; i >= 0; i = str.indexOf(ANCHOR, i + ANCHOR.length()))
+         {
+            anchors[j++] = i;
+         }
+         if (ANCHORS.size() < MAX_CACHED_FORMATS)
          {
-            if (i != argsArray.length - 1 || !(argsArray[i] instanceof Throwable))
-            {
-               String message = String.valueOf(argsArray[i]);
-               str = REPLACE_PATTERN.matcher(str).replaceFirst(message != null ? message : "null");
-            }
+            ANCHORS.putIfAbsent(str, anchors);
          }
       }
-      return str;
+      return anchors;
    }
 
    public static Throwable getThrowable(Object... argsArray)
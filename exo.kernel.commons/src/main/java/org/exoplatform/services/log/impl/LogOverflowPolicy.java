@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+/**
+ * Defines what happens when an event is logged through an {@link AsyncExoLogFactory} whose ring buffer
+ * is full. The events whose level is greater or equal to the threshold of the factory are never lost,
+ * whatever the policy.
+ *
+ * @version $Id$
+ */
+public enum LogOverflowPolicy {
+
+   /**
+    * The thread that logs the event waits until there is room in the ring buffer
+    */
+   BLOCK,
+
+   /**
+    * The events whose level is lower than the threshold are dropped, the others are handled as with
+    * {@link #BLOCK}
+    */
+   DISCARD,
+
+   /**
+    * Only one event out of <code>sampleRate</code> whose level is lower than the threshold is kept and
+    * handled as with {@link #BLOCK}, the others are dropped. The events whose level is greater or equal to
+    * the threshold are handled as with {@link #BLOCK}
+    */
+   SAMPLE
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free queue backed by an array whose size is a power of two, that can be filled by several
+ * threads but that can be emptied by only one thread. Each slot has a sequence that indicates whether it
+ * can be written by a producer or read by the consumer, so that the producers only compete on the
+ * position of the next slot to write.
+ *
+ * @version $Id$
+ */
+class LogRingBuffer<E>
+{
+
+   /** . */
+   private final Object[] elements;
+
+   /** . */
+   private final AtomicLongArray sequences;
+
+   /** . */
+   private final int mask;
+
+   /**
+    * The position of the next slot to write
+    */
+   private final AtomicLong tail = new AtomicLong();
+
+   /**
+    * The position of the next slot to read, only modified by the consumer
+    */
+   private volatile long head;
+
+   /**
+    * @param capacity the minimum amount of elements that the buffer can hold, rounded up to the next
+    * power of two
+    */
+   LogRingBuffer(int capacity)
+   {
+      if (capacity <= 0)
+      {
+         throw new IllegalArgumentException("The capacity must be positive");
+      }
+      int size = capacity > (1 << 30) ? 1 << 30 : Integer.highestOneBit(capacity - 1) << 1;
+      size = Math.max(size, 1);
+      this.elements = new Object[size];
+      this.sequences = new AtomicLongArray(size);
+      this.mask = size - 1;
+      for (int i = 0; i < size; i++)
+      {
+         sequences.set(i, i);
+      }
+   }
+
+   /**
+    * Adds the given element at the end of the buffer
+    *
+    * @return <code>false</code> if the buffer is full, <code>true</code> otherwise
+    */
+   boolean offer(E element)
+   {
+      long pos = tail.get();
+      for (;;)
+      {
+         int index = (int)pos & mask;
+         long diff = sequences.get(index) - pos;
+         if (diff == 0)
+         {
+            if (tail.compareAndSet(pos, pos + 1))
+            {
+               elements[index] = element;
+               // Publishes the element
+               sequences.set(index, pos + 1);
+               return true;
+            }
+            pos = tail.get();
+         }
+         else if (diff < 0)
+         {
+            // The slot still contains the element written one lap before
+            return false;
+         }
+         else
+         {
+            // Another producer took the slot
+            pos = tail.get();
+         }
+      }
+   }
+
+   /**
+    * Removes the first element of the buffer, must only be called by the consumer
+    *
+    * @return the element or <code>null</code> if the buffer is empty
+    */
+   @SuppressWarnings("unchecked")
+   E poll()
+   {
+      long pos = head;
+      int index = (int)pos & mask;
+      if (sequences.get(index) != pos + 1)
+      {
+         return null;
+      }
+      E element = (E)elements[index];
+      elements[index] = null;
+      // Gives back the slot to the producers for the next lap
+      sequences.set(index, pos + elements.length);
+      head = pos + 1;
+      return element;
+   }
+
+   /**
+    * Removes up to <code>max</code> elements from the buffer, must only be called by the consumer
+    *
+    * @return the amount of elements added to the given array
+    */
+   int drainTo(E[] batch, int max)
+   {
+      int count = 0;
+      E element;
+      while (count < max && (element = poll()) != null)
+      {
+         batch[count++] = element;
+      }
+      return count;
+   }
+
+   /**
+    * @return <code>true</code> if there is no element ready to be read, <code>false</code> otherwise
+    */
+   boolean isEmpty()
+   {
+      long pos = head;
+      return sequences.get((int)pos & mask) != pos + 1;
+   }
+
+   /**
+    * @return an estimate of the amount of elements in the buffer
+    */
+   int size()
+   {
+      long size = tail.get() - head;
+      return size < 0 ? 0 : (int)Math.min(size, elements.length);
+   }
+
+   /**
+    * @return the maximum amount of elements that the buffer can hold
+    */
+   int capacity()
+   {
+      return elements.length;
+   }
+}
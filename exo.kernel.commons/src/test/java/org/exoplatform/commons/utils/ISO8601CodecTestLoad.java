@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.commons.utils;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Compares the throughput of the formatting and of the parsing of the dates with {@link ISO8601},
+ * {@link ISO8601ASF} and {@link ISO8601Codec}, both with a single thread and with several threads.
+ *
+ * @version $Id$
+ */
+public class ISO8601CodecTestLoad extends TestCase
+{
+
+   private static final int ITERATIONS = 1000000;
+
+   private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+   private static final Calendar DATE = Calendar.getInstance(TimeZone.getTimeZone("Europe/Paris"));
+
+   private static final String DATE_STRING = ISO8601.format(DATE);
+
+   private interface Task
+   {
+      void run(int i) throws Exception;
+   }
+
+   public void testFormat() throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Format iterations=" + ITERATIONS + " threads=" + THREADS);
+      doTest("ISO8601", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601.format(DATE);
+         }
+      }, true);
+      // The formats of ISO8601ASF are shared and not thread-safe
+      doTest("ISO8601ASF", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601ASF.format(DATE);
+         }
+      }, false);
+      doTest("ISO8601Codec", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601Codec.format(DATE);
+         }
+      }, true);
+      final TimeZone tz = DATE.getTimeZone();
+      final long millis = DATE.getTimeInMillis();
+      doTest("ISO8601Codec into a char[]", new Task()
+      {
+         private final char[] buffer = new char[ISO8601Codec.MAX_LENGTH];
+
+         public void run(int i)
+         {
+            ISO8601Codec.format(millis + i, tz, buffer, 0);
+         }
+      }, true);
+   }
+
+   public void testParse() throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Parse iterations=" + ITERATIONS + " threads=" + THREADS);
+      doTest("ISO8601", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601.parse(DATE_STRING);
+         }
+      }, true);
+      doTest("ISO8601ASF", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601ASF.parse(DATE_STRING);
+         }
+      }, true);
+      doTest("ISO8601Codec", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601Codec.parse(DATE_STRING);
+         }
+      }, true);
+      doTest("ISO8601Codec in milliseconds", new Task()
+      {
+         public void run(int i)
+         {
+            ISO8601Codec.parseMillis(DATE_STRING);
+         }
+      }, true);
+   }
+
+   private void doTest(String name, Task task, boolean threadSafe) throws Exception
+   {
+      // Warm up
+      run(task, 1, ITERATIONS / 10);
+      long time = run(task, 1, ITERATIONS);
+      System.out.println(name + ": 1 thread " + (ITERATIONS * 1000L / Math.max(1, time)) + " ops/s");
+      if (!threadSafe)
+      {
+         return;
+      }
+      time = run(task, THREADS, ITERATIONS);
+      System.out.println(name + ": " + THREADS + " threads " + (THREADS * ITERATIONS * 1000L / Math.max(1, time))
+         + " ops/s");
+   }
+
+   private long run(final Task task, int threads, final int iterations) throws Exception
+   {
+      final Exception[] errors = new Exception[1];
+      Thread[] workers = new Thread[threads];
+      for (int i = 0; i < threads; i++)
+      {
+         workers[i] = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  for (int j = 0; j < iterations; j++)
+                  {
+                     task.run(j);
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors[0] = e;
+               }
+            }
+         };
+      }
+      long start = System.currentTimeMillis();
+      for (Thread worker : workers)
+      {
+         worker.start();
+      }
+      for (Thread worker : workers)
+      {
+         worker.join();
+      }
+      if (errors[0] != null)
+      {
+         throw errors[0];
+      }
+      return System.currentTimeMillis() - start;
+   }
+}
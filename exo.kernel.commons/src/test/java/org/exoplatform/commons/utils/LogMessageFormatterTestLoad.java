@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.commons.utils;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.log.impl.LogMessageFormatter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the throughput and the allocations of the formatting of the log messages done with regular
+ * expressions as before, with the ones of {@link LogMessageFormatter}.
+ *
+ * @version $Id$
+ */
+public class LogMessageFormatterTestLoad extends TestCase
+{
+
+   private static final int MESSAGES = 1000000;
+
+   private static final Pattern REPLACE_PATTERN = Pattern.compile("\\{\\}");
+
+   private static final String FORMAT = "The node {} of the workspace {} has been updated by {} in {} ms";
+
+   private static final Object[] ARGS = {"/foo/bar", "collaboration", "john", 12, new Exception()};
+
+   private interface Formatter
+   {
+      String getMessage(String str, Object... argsArray);
+   }
+
+   public void testFormat() throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Format messages=" + MESSAGES);
+      doTest("Regular expressions", new Formatter()
+      {
+         public String getMessage(String str, Object... argsArray)
+         {
+            for (int i = 0; i < argsArray.length; i++)
+            {
+               if (i != argsArray.length - 1 || !(argsArray[i] instanceof Throwable))
+               {
+                  String message = String.valueOf(argsArray[i]);
+                  str = REPLACE_PATTERN.matcher(str).replaceFirst(message != null ? message : "null");
+               }
+            }
+            return str;
+         }
+      });
+      doTest("LogMessageFormatter", new Formatter()
+      {
+         public String getMessage(String str, Object... argsArray)
+         {
+            return LogMessageFormatter.getMessage(str, argsArray);
+         }
+      });
+   }
+
+   private void doTest(String name, Formatter formatter) throws Exception
+   {
+      // Warm up
+      for (int i = 0; i < MESSAGES / 10; i++)
+      {
+         formatter.getMessage(FORMAT, ARGS);
+      }
+      long bytes = getAllocatedBytes();
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         formatter.getMessage(FORMAT, ARGS);
+      }
+      long time = System.currentTimeMillis() - start;
+      bytes = bytes < 0 ? -1 : getAllocatedBytes() - bytes;
+      System.out.println(name + ": " + (MESSAGES * 1000L / Math.max(1, time)) + " messages/s"
+         + (bytes < 0 ? "" : ", " + (bytes / MESSAGES) + " bytes/message"));
+   }
+
+   /**
+    * @return the amount of bytes allocated by the current thread or a negative value if it is unknown
+    */
+   private static long getAllocatedBytes()
+   {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      try
+      {
+         Method method =
+            Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+         return (Long)method.invoke(bean, Thread.currentThread().getId());
+      }
+      catch (Exception e)
+      {
+         return -1;
+      }
+   }
+}
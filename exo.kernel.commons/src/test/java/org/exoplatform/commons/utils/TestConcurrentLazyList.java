@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.commons.utils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Id$
+ */
+public class TestConcurrentLazyList extends TestCase
+{
+
+   /**
+    * Runs the tasks in the calling thread so that the batches are loaded in advance synchronously
+    */
+   private static final Executor SAME_THREAD = new Executor()
+   {
+      public void execute(Runnable command)
+      {
+         command.run();
+      }
+   };
+
+   private SimpleListAccess access;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      access = new SimpleListAccess(10);
+   }
+
+   public void testIllegalArgumentException()
+   {
+      try
+      {
+         new ConcurrentLazyList<Integer>(null, 3);
+         fail();
+      }
+      catch (IllegalArgumentException ignore)
+      {
+      }
+      try
+      {
+         new ConcurrentLazyList<Integer>(access, 0);
+         fail();
+      }
+      catch (IllegalArgumentException ignore)
+      {
+      }
+      try
+      {
+         new ConcurrentLazyList<Integer>(access, 3, 0, 0, null);
+         fail();
+      }
+      catch (IllegalArgumentException ignore)
+      {
+      }
+   }
+
+   public void testOutOfBounds()
+   {
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 4, 0, null);
+      assertEquals(10, list.size());
+      try
+      {
+         list.get(-1);
+         fail();
+      }
+      catch (ArrayIndexOutOfBoundsException ignore)
+      {
+      }
+      try
+      {
+         list.get(10);
+         fail();
+      }
+      catch (ArrayIndexOutOfBoundsException ignore)
+      {
+      }
+   }
+
+   public void testLoading()
+   {
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 4, 0, null);
+      assertEquals(3, (int)list.get(3));
+      assertLoad(3, 3);
+      assertEquals(5, (int)list.get(5));
+      assertEquals(4, (int)list.get(4));
+      assertNoLoad();
+      assertEquals(9, (int)list.get(9));
+      assertLoad(9, 1);
+      assertEquals(8, (int)list.get(8));
+      assertLoad(6, 3);
+      assertEquals(0, (int)list.get(0));
+      assertLoad(0, 3);
+      assertEquals(7, (int)list.get(7));
+      assertEquals(3, (int)list.get(3));
+      assertEquals(9, (int)list.get(9));
+      assertNoLoad();
+   }
+
+   public void testLeastRecentlyUsedBatches()
+   {
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 2, 0, null);
+      assertEquals(0, (int)list.get(0));
+      assertLoad(0, 3);
+      assertEquals(3, (int)list.get(3));
+      assertLoad(3, 3);
+      // The first batch becomes the most recently used one
+      assertEquals(1, (int)list.get(1));
+      assertEquals(6, (int)list.get(6));
+      assertLoad(6, 3);
+      // The second batch has been evicted
+      assertEquals(2, (int)list.get(2));
+      assertNoLoad();
+      assertEquals(4, (int)list.get(4));
+      assertLoad(3, 3);
+   }
+
+   public void testPrefetch()
+   {
+      access = new SimpleListAccess(30);
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 8, 2, SAME_THREAD);
+      assertEquals(0, (int)list.get(0));
+      // The 2 next batches are loaded at once
+      assertLoad(0, 3);
+      assertLoad(3, 6);
+      assertEquals(3, (int)list.get(3));
+      assertLoad(9, 3);
+      assertEquals(6, (int)list.get(6));
+      assertLoad(12, 3);
+      // A random access does not load anything in advance
+      assertEquals(29, (int)list.get(29));
+      assertLoad(27, 3);
+      // Backward accesses
+      assertEquals(26, (int)list.get(26));
+      assertLoad(24, 3);
+      assertLoad(18, 6);
+      assertEquals(23, (int)list.get(23));
+      assertLoad(15, 3);
+      assertEquals(20, (int)list.get(20));
+      assertNoLoad();
+   }
+
+   public void testPrefetchLimitedByMaxBatches()
+   {
+      access = new SimpleListAccess(20);
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 2, 5, SAME_THREAD);
+      assertEquals(0, (int)list.get(0));
+      assertLoad(0, 3);
+      assertLoad(3, 3);
+      assertNoLoad();
+   }
+
+   public void testIteration() throws Exception
+   {
+      access = new SimpleListAccess(1000);
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 10, 8, 3, executor);
+         int expected = 0;
+         for (Iterator<Integer> it = list.iterator(); it.hasNext();)
+         {
+            assertEquals(expected++, (int)it.next());
+         }
+         assertEquals(1000, expected);
+         // Each batch has been loaded once
+         assertEquals(1000, access.loaded.get());
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   public void testConcurrentReaders() throws Exception
+   {
+      access = new SimpleListAccess(1000);
+      access.delay = 1;
+      final ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 10, 100, 2, SAME_THREAD);
+      final int threads = 8;
+      final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < 1000; j++)
+                  {
+                     assertEquals(j, (int)list.get(j));
+                  }
+               }
+               catch (Throwable e)
+               {
+                  errors.add(e);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      assertTrue(doneSignal.await(30, TimeUnit.SECONDS));
+      assertTrue(errors.toString(), errors.isEmpty());
+      // All the batches fit in memory, so each batch has been loaded only once
+      assertEquals(1000, access.loaded.get());
+   }
+
+   public void testLoadFailure()
+   {
+      access.failures = 1;
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 4, 0, null);
+      try
+      {
+         list.get(4);
+         fail();
+      }
+      catch (IllegalStateException ignore)
+      {
+      }
+      // The batch can be loaded once the list access is back
+      assertEquals(4, (int)list.get(4));
+   }
+
+   public void testPrefetchFailure()
+   {
+      ConcurrentLazyList<Integer> list = new ConcurrentLazyList<Integer>(access, 3, 4, 2, new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            access.failures = 1;
+            command.run();
+         }
+      });
+      assertEquals(0, (int)list.get(0));
+      assertLoad(0, 3);
+      assertLoad(3, 6);
+      // The batch that could not be loaded in advance is loaded when accessed
+      assertEquals(3, (int)list.get(3));
+      assertLoad(3, 3);
+   }
+
+   private void assertLoad(int index, int length)
+   {
+      assertFalse(access.indexes.isEmpty());
+      assertEquals(index, (int)access.indexes.removeFirst());
+      assertEquals(length, (int)access.lengths.removeFirst());
+   }
+
+   private void assertNoLoad()
+   {
+      assertTrue(access.indexes.isEmpty());
+      assertTrue(access.lengths.isEmpty());
+   }
+
+   private static class SimpleListAccess implements ListAccess<Integer>
+   {
+
+      private final int size;
+
+      private final LinkedList<Integer> indexes = new LinkedList<Integer>();
+
+      private final LinkedList<Integer> lengths = new LinkedList<Integer>();
+
+      private final AtomicInteger loaded = new AtomicInteger();
+
+      private volatile int failures;
+
+      private volatile long delay;
+
+      private SimpleListAccess(int size)
+      {
+         this.size = size;
+      }
+
+      public Integer[] load(int index, int length) throws Exception, IllegalArgumentException
+      {
+         synchronized (this)
+         {
+            indexes.addLast(index);
+            lengths.addLast(length);
+         }
+         if (index < 0 || length < 0 || index + length > size)
+         {
+            throw new IllegalArgumentException();
+         }
+         if (delay > 0)
+         {
+            Thread.sleep(delay);
+         }
+         if (failures > 0)
+         {
+            failures--;
+            throw new Exception();
+         }
+         Integer[] result = new Integer[length];
+         for (int i = 0; i < length; i++)
+         {
+            result[i] = index + i;
+         }
+         loaded.addAndGet(length);
+         return result;
+      }
+
+      public int getSize()
+      {
+         return size;
+      }
+   }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.commons.utils;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * @version $Id$
+ */
+public class TestISO8601Codec extends TestCase
+{
+
+   private static final String[] TIME_ZONES = {"UTC", "Europe/Paris", "America/New_York", "Asia/Kolkata",
+      "Australia/Adelaide", "Pacific/Chatham", "America/St_Johns", "Asia/Kathmandu"};
+
+   public void testFormat()
+   {
+      Random random = new Random(0);
+      StringBuilder sb = new StringBuilder();
+      char[] buffer = new char[ISO8601Codec.MAX_LENGTH + 1];
+      for (String id : TIME_ZONES)
+      {
+         TimeZone tz = TimeZone.getTimeZone(id);
+         for (int i = 0; i < 2000; i++)
+         {
+            // From 1600 to 2400
+            long millis = -11676096000000L + (long)(random.nextDouble() * 25245000000000L);
+            Calendar date = new GregorianCalendar(tz);
+            date.setTimeInMillis(millis);
+            String expected = ISO8601.format(date);
+            assertEquals(expected, ISO8601Codec.format(date));
+            assertEquals(expected, ISO8601ASF.format(date));
+            sb.setLength(0);
+            ISO8601Codec.format(date, sb);
+            assertEquals(expected, sb.toString());
+            int length = ISO8601Codec.format(millis, tz, buffer, 1);
+            assertEquals(expected, new String(buffer, 1, length - 1));
+         }
+      }
+   }
+
+   public void testFormatOutOfRange()
+   {
+      TimeZone tz = TimeZone.getTimeZone("UTC");
+      Calendar date = new GregorianCalendar(tz);
+      date.clear();
+      date.set(1500, Calendar.MARCH, 1, 12, 30);
+      assertEquals(ISO8601.format(date), ISO8601Codec.format(date));
+      assertEquals(-1, ISO8601Codec.format(date.getTimeInMillis(), tz, new char[ISO8601Codec.MAX_LENGTH], 0));
+      date.set(12000, Calendar.MARCH, 1, 12, 30);
+      assertEquals(ISO8601.format(date), ISO8601Codec.format(date));
+   }
+
+   public void testParse() throws Exception
+   {
+      String[] dates =
+         {"1997", "1997-07", "1997-07-16", "1997-07-16T19:20", "1997-07-16T19:20Z", "1997-07-16T19:20+01:00",
+            "1997-07-16T19:20+0100", "1997-07-16T19:20:30", "1997-07-16T19:20:30Z", "1997-07-16T19:20:30-05:30",
+            "1997-07-16T19:20:30-0530", "1997-07-16T19:20:30.4", "1997-07-16T19:20:30.45Z",
+            "1997-07-16T19:20:30.450+01:00", "1997-07-16T19:20:30.450-0100", "2000-02-29T23:59:59.999Z",
+            "1965-12-31T23:00:00.000+13:45",
+            // Not strictly well-formed, delegated to ISO8601
+            "1997-7-16", "1997-07-16T25:20:30Z", "1997-02-30", "1997-07-16T19:20:30.4567Z", "1500-07-16T19:20Z",
+            "1997-07-16T19:20:30.450GMT+01:00", "1997-07-16T19:20:30Z trailing"};
+      for (String date : dates)
+      {
+         Calendar expected = ISO8601.parse(date);
+         Calendar calendar = ISO8601Codec.parse(date);
+         assertNotNull(date, expected);
+         assertNotNull(date, calendar);
+         assertEquals(date, expected.getTimeInMillis(), calendar.getTimeInMillis());
+      }
+      assertEquals(Long.MIN_VALUE, ISO8601Codec.parseMillis("1997-07-16T25:20:30Z"));
+      assertNull(ISO8601Codec.parse("foo"));
+      assertNull(ISO8601Codec.parse(""));
+   }
+
+   public void testParseASF()
+   {
+      Random random = new Random(0);
+      TimeZone tz = TimeZone.getTimeZone("Asia/Kolkata");
+      for (int i = 0; i < 2000; i++)
+      {
+         long millis = (long)(random.nextDouble() * 4102444800000L);
+         Calendar date = new GregorianCalendar(tz);
+         date.setTimeInMillis(millis);
+         String s = ISO8601Codec.format(date);
+         assertEquals(s, millis, ISO8601Codec.parseMillis(s));
+         assertEquals(s, ISO8601ASF.parse(s).getTimeInMillis(), ISO8601Codec.parse(s).getTimeInMillis());
+      }
+   }
+}
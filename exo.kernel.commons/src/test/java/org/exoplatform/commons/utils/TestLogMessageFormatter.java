@@ -66,6 +66,53 @@ public class TestLogMessageFormatter extends TestCase
       LogMessageFormatter.getMessage("Hello, World {} {}", new Object(), null);
    }
 
+   public void testSpecialContent() throws Exception
+   {
+      // The arguments are inserted as is
+      assertEquals("Price: $1 \\o/", LogMessageFormatter.getMessage("Price: {} {}", "$1", "\\o/"));
+      assertEquals("{} and b", LogMessageFormatter.getMessage("{} and {}", "{}", "b"));
+      // The anchors without argument are kept
+      assertEquals("a and {}", LogMessageFormatter.getMessage("{} and {}", "a"));
+      assertEquals("a and {}", LogMessageFormatter.getMessage("{} and {}", "a", new Throwable()));
+      // The extra arguments are ignored
+      assertEquals("a and b", LogMessageFormatter.getMessage("{} and {}", "a", "b", "c"));
+      assertEquals("null and {", LogMessageFormatter.getMessage("{} and {", (Object)null));
+      assertNull(LogMessageFormatter.getMessage(null, "a"));
+   }
+
+   public void testReentrantFormat() throws Exception
+   {
+      Object nested = new Object()
+      {
+         @Override
+         public String toString()
+         {
+            return LogMessageFormatter.getMessage("<{}|{}>", "x", "y");
+         }
+      };
+      assertEquals("a <x|y> b", LogMessageFormatter.getMessage("a {} {}", nested, "b"));
+      assertEquals("a <x|y> <x|y>", LogMessageFormatter.getMessage("a {} {}", nested, nested));
+      // The builder of the thread can still be reused
+      assertEquals("c d", LogMessageFormatter.getMessage("{} {}", "c", "d"));
+   }
+
+   public void testCachedFormat() throws Exception
+   {
+      String format = "Value {} of {}";
+      for (int i = 0; i < 10; i++)
+      {
+         assertEquals("Value " + i + " of " + format.length(), LogMessageFormatter.getMessage(format, i,
+            format.length()));
+      }
+      StringBuilder longMessage = new StringBuilder();
+      for (int i = 0; i < 10000; i++)
+      {
+         longMessage.append('x');
+      }
+      assertEquals("[" + longMessage + "]", LogMessageFormatter.getMessage("[{}]", longMessage));
+      assertEquals("[a]", LogMessageFormatter.getMessage("[{}]", "a"));
+   }
+
    class A
    {
       public String toString()
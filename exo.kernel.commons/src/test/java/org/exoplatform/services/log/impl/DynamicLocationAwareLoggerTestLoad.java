@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LocationAwareLogger;
+
+import java.lang.reflect.Method;
+
+/**
+ * Compares the cost of the invocation of {@link LocationAwareLogger#log} through the reflection as done
+ * before, with the one of {@link DynamicLocationAwareLogger}. The logger is disabled so that only the cost
+ * of the invocation is measured.
+ *
+ * @version $Id$
+ */
+public class DynamicLocationAwareLoggerTestLoad extends TestCase
+{
+
+   private static final int EVENTS = 10000000;
+
+   private static final String NAME = "exo.kernel.commons.DynamicLocationAwareLoggerTestLoad";
+
+   private static final String FQCN = DynamicLocationAwareLoggerTestLoad.class.getName();
+
+   private interface Task
+   {
+      void log(int i) throws Exception;
+   }
+
+   public void testLog() throws Exception
+   {
+      Logger.getLogger(NAME).setLevel(Level.OFF);
+      final LocationAwareLogger logger = (LocationAwareLogger)LoggerFactory.getLogger(NAME);
+      System.out.println("-----------------------------------------");
+      System.out.println("Log events=" + EVENTS);
+      final Method log =
+         LocationAwareLogger.class.getMethod("log", org.slf4j.Marker.class, String.class, int.class, String.class,
+            Object[].class, Throwable.class);
+      doTest("Reflection", new Task()
+      {
+         public void log(int i) throws Exception
+         {
+            log.invoke(logger, null, FQCN, LocationAwareLogger.DEBUG_INT, "message", null, null);
+         }
+      });
+      final DynamicLocationAwareLogger dynamicLogger = new DynamicLocationAwareLogger(logger);
+      doTest("DynamicLocationAwareLogger", new Task()
+      {
+         public void log(int i)
+         {
+            dynamicLogger.log(null, FQCN, LocationAwareLogger.DEBUG_INT, "message", null);
+         }
+      });
+   }
+
+   private void doTest(String name, Task task) throws Exception
+   {
+      // Warm up
+      for (int i = 0; i < EVENTS / 10; i++)
+      {
+         task.log(i);
+      }
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < EVENTS; i++)
+      {
+         task.log(i);
+      }
+      long time = System.currentTimeMillis() - start;
+      System.out.println(name + ": " + (EVENTS * 1000L / Math.max(1, time)) + " events/s");
+   }
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.log.impl;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.log.ExoLogFactory;
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Id$
+ */
+public class TestAsyncExoLogFactory extends TestCase
+{
+
+   private RecordingLogFactory delegate;
+
+   private AsyncExoLogFactory factory;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      delegate = new RecordingLogFactory();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      if (factory != null)
+      {
+         factory.stop();
+      }
+   }
+
+   public void testOrder() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 16, 4, LogOverflowPolicy.BLOCK, "WARN", 1);
+      Log log = factory.getExoLogger("test");
+      assertSame(log, factory.getExoLogger("test"));
+      Exception e = new Exception();
+      log.debug("debug");
+      log.info("info {} {}", 1, "a");
+      log.warn("warn", e);
+      log.error("error {}", 2, e);
+      for (int i = 0; i < 100; i++)
+      {
+         log.info(i);
+      }
+      assertTrue(factory.flush(5000));
+      List<String> messages = delegate.getMessages();
+      assertEquals(104, messages.size());
+      assertEquals("DEBUG debug", messages.get(0));
+      assertEquals("INFO info 1 a", messages.get(1));
+      assertEquals("WARN warn", messages.get(2));
+      assertEquals("ERROR error 2", messages.get(3));
+      assertSame(e, delegate.throwables.get(2));
+      assertSame(e, delegate.throwables.get(3));
+      for (int i = 0; i < 100; i++)
+      {
+         assertEquals("INFO " + i, messages.get(i + 4));
+      }
+      assertEquals(104, factory.getEventCount());
+      assertEquals(104, factory.getLoggedCount());
+      assertEquals(0, factory.getDroppedCount());
+      assertEquals(0, factory.getQueueDepth());
+      assertTrue(factory.getBatchCount() >= 26);
+   }
+
+   public void testDisabledLevel() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 16, 4, LogOverflowPolicy.BLOCK, "WARN", 1);
+      delegate.enabled = false;
+      Log log = factory.getExoLogger("test");
+      assertFalse(log.isInfoEnabled());
+      log.info("info");
+      log.error("error {}", 1);
+      assertTrue(factory.flush(5000));
+      assertEquals(0, factory.getEventCount());
+      assertTrue(delegate.getMessages().isEmpty());
+   }
+
+   public void testConcurrentLoggers() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 64, 16, LogOverflowPolicy.BLOCK, "WARN", 1);
+      final int threads = 8;
+      final int events = 2000;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++)
+      {
+         final Log log = factory.getExoLogger("test" + i);
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < events; j++)
+                  {
+                     log.info(j);
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertTrue(factory.flush(5000));
+      assertEquals(threads * events, delegate.getMessages().size());
+      assertEquals(threads * events, factory.getLoggedCount());
+      assertEquals(0, factory.getDroppedCount());
+      // The events of each logger are logged in order
+      for (int i = 0; i < threads; i++)
+      {
+         int expected = 0;
+         for (int j = 0; j < delegate.names.size(); j++)
+         {
+            if (delegate.names.get(j).equals("test" + i))
+            {
+               assertEquals("INFO " + expected++, delegate.getMessages().get(j));
+            }
+         }
+         assertEquals(events, expected);
+      }
+   }
+
+   public void testBlock() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 2, 1, LogOverflowPolicy.BLOCK, "WARN", 1);
+      delegate.delay = 1;
+      Log log = factory.getExoLogger("test");
+      for (int i = 0; i < 20; i++)
+      {
+         log.debug(i);
+      }
+      assertTrue(factory.flush(5000));
+      assertEquals(20, delegate.getMessages().size());
+      assertEquals(0, factory.getDroppedCount());
+      assertTrue(factory.getBlockedCount() > 0);
+   }
+
+   public void testFailingLogger() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 4, 2, LogOverflowPolicy.BLOCK, "WARN", 1);
+      delegate.failOn = "fail";
+      Log log = factory.getExoLogger("test");
+      log.info("fail");
+      for (int i = 0; i < 20; i++)
+      {
+         log.info(i);
+      }
+      // The background thread must survive the error
+      assertTrue(factory.flush(5000));
+      assertEquals(20, delegate.getMessages().size());
+      assertEquals("INFO 19", delegate.getMessages().get(19));
+   }
+
+   public void testDiscard() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 4, 1, LogOverflowPolicy.DISCARD, "WARN", 1);
+      delegate.gate = new CountDownLatch(1);
+      Log log = factory.getExoLogger("test");
+      for (int i = 0; i < 20; i++)
+      {
+         log.info(i);
+      }
+      // At most one event is being logged and 4 are waiting in the ring buffer
+      assertTrue(factory.getDroppedCount() >= 15);
+      releaseLater(delegate.gate);
+      // The events from the threshold must not be dropped
+      log.warn("warn");
+      log.error("error");
+      assertTrue(factory.flush(5000));
+      List<String> messages = delegate.getMessages();
+      assertEquals(20 - factory.getDroppedCount() + 2, messages.size());
+      assertEquals("WARN warn", messages.get(messages.size() - 2));
+      assertEquals("ERROR error", messages.get(messages.size() - 1));
+      assertEquals(factory.getEventCount(), factory.getLoggedCount() + factory.getDroppedCount());
+   }
+
+   public void testSample() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 4, 1, LogOverflowPolicy.SAMPLE, "ERROR", 10);
+      delegate.gate = new CountDownLatch(1);
+      Log log = factory.getExoLogger("test");
+      // Fills the ring buffer while the first event is being logged
+      for (int i = 0; i < 5; i++)
+      {
+         log.warn(i);
+      }
+      while (factory.getQueueDepth() < 4)
+      {
+         Thread.sleep(1);
+      }
+      // 9 events out of 10 are dropped, the 10th one waits for room
+      releaseLater(delegate.gate);
+      for (int i = 0; i < 10; i++)
+      {
+         log.warn("overflow" + i);
+      }
+      assertTrue(factory.flush(5000));
+      assertTrue(factory.getDroppedCount() > 0);
+      assertEquals(factory.getEventCount(), factory.getLoggedCount() + factory.getDroppedCount());
+      assertEquals(factory.getLoggedCount(), delegate.getMessages().size());
+   }
+
+   public void testStop() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 16, 4, LogOverflowPolicy.BLOCK, "WARN", 1);
+      delegate.delay = 1;
+      Log log = factory.getExoLogger("test");
+      for (int i = 0; i < 10; i++)
+      {
+         log.info(i);
+      }
+      factory.stop();
+      // The remaining events have been logged
+      assertEquals(10, delegate.getMessages().size());
+      // The events are logged synchronously once stopped
+      log.info("after");
+      assertEquals(11, delegate.getMessages().size());
+      assertEquals("INFO after", delegate.getMessages().get(10));
+   }
+
+   public void testShutdownHook() throws Exception
+   {
+      factory = new AsyncExoLogFactory(delegate, 64, 4, LogOverflowPolicy.BLOCK, "WARN", 1);
+      delegate.delay = 1;
+      Log log = factory.getExoLogger("test");
+      for (int i = 0; i < 50; i++)
+      {
+         log.info(i);
+      }
+      // The hook must log all the pending events
+      factory.getShutdownHook().run();
+      assertEquals(50, delegate.getMessages().size());
+      assertEquals("INFO 49", delegate.getMessages().get(49));
+      assertEquals(0, factory.getQueueDepth());
+   }
+
+   public void testInvalidArguments() throws Exception
+   {
+      try
+      {
+         new AsyncExoLogFactory(delegate, 16, 4, LogOverflowPolicy.BLOCK, "unknown", 1);
+         fail("An IllegalArgumentException was expected");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // expected
+      }
+      try
+      {
+         new AsyncExoLogFactory(null, 16, 4, LogOverflowPolicy.BLOCK, "WARN", 1);
+         fail("An IllegalArgumentException was expected");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // expected
+      }
+   }
+
+   public void testRingBuffer() throws Exception
+   {
+      LogRingBuffer<Integer> buffer = new LogRingBuffer<Integer>(3);
+      assertEquals(4, buffer.capacity());
+      assertTrue(buffer.isEmpty());
+      for (int lap = 0; lap < 3; lap++)
+      {
+         for (int i = 0; i < 4; i++)
+         {
+            assertTrue(buffer.offer(i));
+         }
+         assertFalse(buffer.offer(4));
+         assertEquals(4, buffer.size());
+         assertEquals(Integer.valueOf(0), buffer.poll());
+         assertTrue(buffer.offer(4));
+         Integer[] batch = new Integer[8];
+         assertEquals(4, buffer.drainTo(batch, 8));
+         assertEquals(Integer.valueOf(1), batch[0]);
+         assertEquals(Integer.valueOf(4), batch[3]);
+         assertNull(buffer.poll());
+         assertTrue(buffer.isEmpty());
+      }
+   }
+
+   private static void releaseLater(final CountDownLatch gate)
+   {
+      new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+            gate.countDown();
+         }
+      }.start();
+   }
+
+   /**
+    * A factory of loggers that record the events
+    */
+   private static class RecordingLogFactory implements ExoLogFactory
+   {
+
+      private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+      private final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+
+      private final List<Throwable> throwables = Collections.synchronizedList(new ArrayList<Throwable>());
+
+      private volatile boolean enabled = true;
+
+      private volatile long delay;
+
+      private volatile CountDownLatch gate;
+
+      /**
+       * The message for which the loggers throw an error
+       */
+      private volatile String failOn;
+
+      public Log getExoLogger(String name)
+      {
+         return new RecordingLog(name);
+      }
+
+      public Log getExoLogger(Class clazz)
+      {
+         return getExoLogger(clazz.getName());
+      }
+
+      List<String> getMessages()
+      {
+         return messages;
+      }
+
+      private class RecordingLog implements Log
+      {
+
+         private final String name;
+
+         RecordingLog(String name)
+         {
+            this.name = name;
+         }
+
+         private void record(String level, Object message, Throwable t)
+         {
+            if (failOn != null && failOn.equals(message))
+            {
+               throw new Error("Cannot log " + message);
+            }
+            try
+            {
+               CountDownLatch gate = RecordingLogFactory.this.gate;
+               if (gate != null)
+               {
+                  gate.await(5, TimeUnit.SECONDS);
+               }
+               if (delay > 0)
+               {
+                  Thread.sleep(delay);
+               }
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+            synchronized (RecordingLogFactory.this)
+            {
+               names.add(name);
+               messages.add(level + " " + message);
+               throwables.add(t);
+            }
+         }
+
+         public boolean isTraceEnabled()
+         {
+            return enabled;
+         }
+
+         public boolean isDebugEnabled()
+         {
+            return enabled;
+         }
+
+         public boolean isInfoEnabled()
+         {
+            return enabled;
+         }
+
+         public boolean isWarnEnabled()
+         {
+            return enabled;
+         }
+
+         public boolean isErrorEnabled()
+         {
+            return enabled;
+         }
+
+         public boolean isFatalEnabled()
+         {
+            return enabled;
+         }
+
+         public void trace(Object message)
+         {
+            record("TRACE", message, null);
+         }
+
+         public void trace(Object message, Throwable t)
+         {
+            record("TRACE", message, t);
+         }
+
+         public void trace(String format, Object... argArray)
+         {
+            record("TRACE", LogMessageFormatter.getMessage(format, argArray),
+               LogMessageFormatter.getThrowable(argArray));
+         }
+
+         public void debug(Object message)
+         {
+            record("DEBUG", message, null);
+         }
+
+         public void debug(Object message, Throwable t)
+         {
+            record("DEBUG", message, t);
+         }
+
+         public void debug(String format, Object... argArray)
+         {
+            record("DEBUG", LogMessageFormatter.getMessage(format, argArray),
+               LogMessageFormatter.getThrowable(argArray));
+         }
+
+         public void info(Object message)
+         {
+            record("INFO", message, null);
+         }
+
+         public void info(Object message, Throwable t)
+         {
+            record("INFO", message, t);
+         }
+
+         public void info(String format, Object... argArray)
+         {
+            record("INFO", LogMessageFormatter.getMessage(format, argArray),
+               LogMessageFormatter.getThrowable(argArray));
+         }
+
+         public void warn(Object message)
+         {
+            record("WARN", message, null);
+         }
+
+         public void warn(Object message, Throwable t)
+         {
+            record("WARN", message, t);
+         }
+
+         public void warn(String format, Object... argArray)
+         {
+            record("WARN", LogMessageFormatter.getMessage(format, argArray),
+               LogMessageFormatter.getThrowable(argArray));
+         }
+
+         public void error(Object message)
+         {
+            record("ERROR", message, null);
+         }
+
+         public void error(Object message, Throwable t)
+         {
+            record("ERROR", message, t);
+         }
+
+         public void error(String format, Object... argArray)
+         {
+            record("ERROR", LogMessageFormatter.getMessage(format, argArray),
+               LogMessageFormatter.getThrowable(argArray));
+         }
+
+         public void fatal(Object message)
+         {
+            record("FATAL", message, null);
+         }
+
+         public void fatal(Object message, Throwable t)
+         {
+            record("FATAL", message, t);
+         }
+
+         public void fatal(String format, Object... argArray)
+         {
+            record("FATAL", LogMessageFormatter.getMessage(format, argArray),
+               LogMessageFormatter.getThrowable(argArray));
+         }
+      }
+   }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache;
+
+import org.exoplatform.commons.utils.PropertyManager;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.cache.concurrent.LatencyHistogram;
+import org.exoplatform.services.cache.concurrent.StripedCounter;
+
+/**
+ * The statistics of an {@link ExoCache}: the hits, the misses, the evictions, the expirations, the loads
+ * and the latency of the lookups and of the updates. All the counters are {@link StripedCounter} so that
+ * the threads that access the cache concurrently do not contend on the same memory location.
+ * <p>
+ * The latency of the lookups and of the updates is only measured when the latency tracking is enabled,
+ * which is not the case by default since it has a cost on each access. It can be enabled through JMX or
+ * for all the caches thanks to the system property {@value #LATENCY_TRACKING_PROPERTY}. The histograms
+ * are only allocated once needed. The typical usage is:
+ * <pre>
+ * long start = statistics.startTimer();
+ * // lookup
+ * statistics.onGet(start);
+ * </pre>
+ *
+ * @version $Id$
+ * @LevelAPI Platform
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "cache"), @Property(key = "name", value = "{Name}"),
+   @Property(key = "type", value = "statistics")})
+@ManagedDescription("Exo Cache Statistics")
+public class CacheStatistics
+{
+
+   /**
+    * The name of the system property that indicates whether the latency tracking is enabled by default
+    */
+   public static final String LATENCY_TRACKING_PROPERTY = "exo.cache.latency-tracking";
+
+   /** . */
+   private final ExoCache<?, ?> cache;
+
+   /** . */
+   private final StripedCounter hits = new StripedCounter();
+
+   /** . */
+   private final StripedCounter misses = new StripedCounter();
+
+   /** . */
+   private final StripedCounter evictions = new StripedCounter();
+
+   /** . */
+   private final StripedCounter expirations = new StripedCounter();
+
+   /** . */
+   private final StripedCounter loadFailures = new StripedCounter();
+
+   /**
+    * The histogram of the loads, allocated at the first load
+    */
+   private volatile LatencyHistogram loads;
+
+   /**
+    * The histogram of the lookups, allocated when the latency tracking is enabled
+    */
+   private volatile LatencyHistogram gets;
+
+   /**
+    * The histogram of the updates, allocated when the latency tracking is enabled
+    */
+   private volatile LatencyHistogram puts;
+
+   /** . */
+   private volatile boolean latencyTracking;
+
+   /**
+    * @param cache the cache whose statistics are collected
+    */
+   public CacheStatistics(ExoCache<?, ?> cache)
+   {
+      this.cache = cache;
+      if (Boolean.parseBoolean(PropertyManager.getProperty(LATENCY_TRACKING_PROPERTY)))
+      {
+         setLatencyTracking(true);
+      }
+   }
+
+   @Managed
+   @ManagedName("Name")
+   @ManagedDescription("The cache name")
+   public String getName()
+   {
+      return cache.getName();
+   }
+
+   /**
+    * @return the current time in nanoseconds if the latency tracking is enabled, 0 otherwise
+    */
+   public long startTimer()
+   {
+      return latencyTracking ? System.nanoTime() : 0;
+   }
+
+   public void onHit()
+   {
+      hits.increment();
+   }
+
+   public void onMiss()
+   {
+      misses.increment();
+   }
+
+   public void onEviction()
+   {
+      evictions.increment();
+   }
+
+   public void onExpiration()
+   {
+      expirations.increment();
+   }
+
+   /**
+    * Records a successful load
+    *
+    * @param nanos the duration of the load in nanoseconds
+    */
+   public void onLoad(long nanos)
+   {
+      getLoadLatency().record(nanos);
+   }
+
+   /**
+    * Records a load that failed
+    */
+   public void onLoadFailure()
+   {
+      loadFailures.increment();
+   }
+
+   /**
+    * Records the latency of a lookup
+    *
+    * @param start the value returned by {@link #startTimer()} when the lookup started
+    */
+   public void onGet(long start)
+   {
+      if (start != 0)
+      {
+         getGetLatency().record(System.nanoTime() - start);
+      }
+   }
+
+   /**
+    * Records the latency of an update
+    *
+    * @param start the value returned by {@link #startTimer()} when the update started
+    */
+   public void onPut(long start)
+   {
+      if (start != 0)
+      {
+         getPutLatency().record(System.nanoTime() - start);
+      }
+   }
+
+   @Managed
+   @ManagedName("HitCount")
+   @ManagedDescription("The count of cache hits")
+   public long getHitCount()
+   {
+      return hits.sum();
+   }
+
+   @Managed
+   @ManagedName("MissCount")
+   @ManagedDescription("The count of cache misses")
+   public long getMissCount()
+   {
+      return misses.sum();
+   }
+
+   @Managed
+   @ManagedName("HitRatio")
+   @ManagedDescription("The ratio of lookups that found a valid entry")
+   public double getHitRatio()
+   {
+      long hitCount = getHitCount();
+      long total = hitCount + getMissCount();
+      return total == 0 ? 0 : (double)hitCount / total;
+   }
+
+   @Managed
+   @ManagedName("EvictionCount")
+   @ManagedDescription("The count of entries evicted because the cache was full")
+   public long getEvictionCount()
+   {
+      return evictions.sum();
+   }
+
+   @Managed
+   @ManagedName("ExpirationCount")
+   @ManagedDescription("The count of entries removed because they expired")
+   public long getExpirationCount()
+   {
+      return expirations.sum();
+   }
+
+   @Managed
+   @ManagedName("LoadCount")
+   @ManagedDescription("The count of values successfully loaded")
+   public long getLoadCount()
+   {
+      LatencyHistogram loads = this.loads;
+      return loads == null ? 0 : loads.getCount();
+   }
+
+   @Managed
+   @ManagedName("LoadFailureCount")
+   @ManagedDescription("The count of loads that failed")
+   public long getLoadFailureCount()
+   {
+      return loadFailures.sum();
+   }
+
+   @Managed
+   @ManagedName("TotalLoadTime")
+   @ManagedDescription("The total time spent loading values in milliseconds")
+   public long getTotalLoadTime()
+   {
+      LatencyHistogram loads = this.loads;
+      return loads == null ? 0 : loads.getTotalTime() / 1000000;
+   }
+
+   @Managed
+   @ManagedName("AverageLoadTime")
+   @ManagedDescription("The average time to load a value in microseconds")
+   public double getAverageLoadTime()
+   {
+      LatencyHistogram loads = this.loads;
+      return loads == null ? 0 : loads.getMean();
+   }
+
+   @Managed
+   @ManagedName("GetLatencyMean")
+   @ManagedDescription("The mean latency of the lookups in microseconds")
+   public double getGetLatencyMean()
+   {
+      LatencyHistogram gets = this.gets;
+      return gets == null ? 0 : gets.getMean();
+   }
+
+   @Managed
+   @ManagedName("GetLatency99")
+   @ManagedDescription("The upper bound in microseconds of the latency of 99% of the lookups")
+   public long getGetLatency99()
+   {
+      LatencyHistogram gets = this.gets;
+      return gets == null ? 0 : gets.getPercentile(99);
+   }
+
+   @Managed
+   @ManagedName("GetLatencyHistogram")
+   @ManagedDescription("The distribution of the latency of the lookups")
+   public String getGetLatencyHistogram()
+   {
+      LatencyHistogram gets = this.gets;
+      return gets == null ? "{}" : gets.toString();
+   }
+
+   @Managed
+   @ManagedName("PutLatencyMean")
+   @ManagedDescription("The mean latency of the updates in microseconds")
+   public double getPutLatencyMean()
+   {
+      LatencyHistogram puts = this.puts;
+      return puts == null ? 0 : puts.getMean();
+   }
+
+   @Managed
+   @ManagedName("PutLatency99")
+   @ManagedDescription("The upper bound in microseconds of the latency of 99% of the updates")
+   public long getPutLatency99()
+   {
+      LatencyHistogram puts = this.puts;
+      return puts == null ? 0 : puts.getPercentile(99);
+   }
+
+   @Managed
+   @ManagedName("PutLatencyHistogram")
+   @ManagedDescription("The distribution of the latency of the updates")
+   public String getPutLatencyHistogram()
+   {
+      LatencyHistogram puts = this.puts;
+      return puts == null ? "{}" : puts.toString();
+   }
+
+   @Managed
+   @ManagedName("LatencyTracking")
+   @ManagedDescription("Indicates whether the latency of the lookups and of the updates is measured")
+   public boolean isLatencyTracking()
+   {
+      return latencyTracking;
+   }
+
+   @Managed
+   public void setLatencyTracking(boolean latencyTracking)
+   {
+      if (latencyTracking)
+      {
+         // The histograms are allocated before the first measure
+         getGetLatency();
+         getPutLatency();
+      }
+      this.latencyTracking = latencyTracking;
+   }
+
+   /**
+    * @return the histogram of the lookups, it is allocated if needed
+    */
+   public LatencyHistogram getGetLatency()
+   {
+      LatencyHistogram histogram = gets;
+      if (histogram == null)
+      {
+         synchronized (this)
+         {
+            histogram = gets;
+            if (histogram == null)
+            {
+               gets = histogram = new LatencyHistogram();
+            }
+         }
+      }
+      return histogram;
+   }
+
+   /**
+    * @return the histogram of the updates, it is allocated if needed
+    */
+   public LatencyHistogram getPutLatency()
+   {
+      LatencyHistogram histogram = puts;
+      if (histogram == null)
+      {
+         synchronized (this)
+         {
+            histogram = puts;
+            if (histogram == null)
+            {
+               puts = histogram = new LatencyHistogram();
+            }
+         }
+      }
+      return histogram;
+   }
+
+   /**
+    * @return the histogram of the loads, it is allocated if needed
+    */
+   public LatencyHistogram getLoadLatency()
+   {
+      LatencyHistogram histogram = loads;
+      if (histogram == null)
+      {
+         synchronized (this)
+         {
+            histogram = loads;
+            if (histogram == null)
+            {
+               loads = histogram = new LatencyHistogram();
+            }
+         }
+      }
+      return histogram;
+   }
+
+   /**
+    * @return the count of hits as expected by {@link ExoCache#getCacheHit()}
+    */
+   public int getCacheHit()
+   {
+      return toInt(getHitCount());
+   }
+
+   /**
+    * @return the count of misses as expected by {@link ExoCache#getCacheMiss()}
+    */
+   public int getCacheMiss()
+   {
+      return toInt(getMissCount());
+   }
+
+   @Managed
+   @ManagedDescription("Reset all the statistics")
+   public void reset()
+   {
+      hits.reset();
+      misses.reset();
+      evictions.reset();
+      expirations.reset();
+      loadFailures.reset();
+      reset(loads);
+      reset(gets);
+      reset(puts);
+   }
+
+   private static void reset(LatencyHistogram histogram)
+   {
+      if (histogram != null)
+      {
+         histogram.reset();
+      }
+   }
+
+   private static int toInt(long value)
+   {
+      return value > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)value;
+   }
+}
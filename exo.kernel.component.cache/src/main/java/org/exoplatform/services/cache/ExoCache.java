@@ -24,7 +24,10 @@ import org.exoplatform.management.annotations.ManagedName;
 import org.exoplatform.management.jmx.annotations.NameTemplate;
 import org.exoplatform.management.jmx.annotations.Property;
 
+import org.exoplatform.services.cache.future.Loader;
+
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -83,6 +86,17 @@ public interface ExoCache<K extends Serializable, V>
     */
    public V get(Serializable key);
 
+   /**
+    * Performs a lookup operation for all the provided keys at once. The implementations backed by a remote
+    * or a clustered cache should take advantage of it to reduce the amount of round trips.
+    *
+    * @param keys the cache keys
+    * @return a map containing the keys for which a value could be found with their value, the keys for which
+    * no value could be found are not part of the map
+    * @throws IllegalArgumentException if the provided collection is null
+    */
+   public Map<K, V> getMap(Collection<? extends K> keys) throws IllegalArgumentException;
+
    /**
     * Removes an entry from the cache.
     *
@@ -92,6 +106,30 @@ public interface ExoCache<K extends Serializable, V>
     */
    public V remove(Serializable key) throws NullPointerException;
 
+   /**
+    * Removes all the entries corresponding to the provided keys from the cache.
+    *
+    * @param keys the cache keys
+    * @throws IllegalArgumentException if the provided collection is null or contains a null key
+    */
+   public void removeAll(Collection<? extends Serializable> keys) throws IllegalArgumentException;
+
+   /**
+    * Returns the value corresponding to the provided key, if there is no such value it is retrieved thanks
+    * to the provided loader and then put into the cache. For a given key, the loader is never called concurrently
+    * by several threads of the same JVM, the threads that request the same key while it is loaded wait for
+    * the result of the loader instead.
+    *
+    * @param key the cache key
+    * @param loader the loader to use to retrieve the value when it is missing
+    * @param context the context to provide to the loader
+    * @param <C> the context type parameter
+    * @return the value corresponding to the key, or null if the loader could not find it
+    * @throws IllegalArgumentException if the key or the loader is null
+    * @throws Exception any exception thrown by the loader
+    */
+   public <C> V computeIfAbsent(K key, Loader<K, V, C> loader, C context) throws Exception;
+
    /**
     * Performs a put in the cache.
     *
@@ -192,6 +230,14 @@ public interface ExoCache<K extends Serializable, V>
    @ManagedDescription("The count of cache misses")
    public int getCacheMiss();
 
+   /**
+    * Returns the statistics of the cache, they give more details than {@link #getCacheHit()} and
+    * {@link #getCacheMiss()} and are published through JMX along with the cache.
+    *
+    * @return the statistics of the cache or <code>null</code> if the implementation does not collect any
+    */
+   public CacheStatistics getStatistics();
+
    /**
     * Returns a list of cached object that are considered as valid when the method is called. Any non valid
     * object will not be returnted.
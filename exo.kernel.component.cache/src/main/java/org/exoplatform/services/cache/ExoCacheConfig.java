@@ -49,6 +49,23 @@ public class ExoCacheConfig implements Cloneable
     */
    private long liveTime;
 
+   /**
+    * The maximum amount of bytes used to store the values, only used by the implementations
+    * that can measure the size of the values
+    */
+   private long maxMemory;
+
+   /**
+    * The maximum numbers of elements kept in the local near cache, only used by the clustered
+    * implementations, 0 means that no near cache is used
+    */
+   private int nearCacheSize;
+
+   /**
+    * The amount of time (in seconds) an element is kept in the local near cache
+    */
+   private long nearCacheLiveTime;
+
    /**
     * Indicates if the cache is distributed
     */
@@ -147,6 +164,70 @@ public class ExoCacheConfig implements Cloneable
    {
       liveTime = period;
    }
+   /**
+    * Returns the maximum amount of bytes used to store the values. It is only taken into account by
+    * the implementations that can measure the size of the values, a value lower or equal to 0 means
+    * that the default value of the implementation is used
+    *
+    * @return the max memory of the cache
+    */
+   public long getMaxMemory()
+   {
+      return maxMemory;
+   }
+   /**
+    * Sets the maximum amount of bytes used to store the values
+    *
+    * @param maxMemory the max memory of the cache
+    */
+   public void setMaxMemory(long maxMemory)
+   {
+      this.maxMemory = maxMemory;
+   }
+   /**
+    * Returns the maximum amount of entries kept locally in front of a clustered cache to avoid
+    * going through the clustered cache for the most frequently read entries. It is only taken into
+    * account by the clustered implementations, a value lower or equal to 0 means that there is no
+    * near cache
+    *
+    * @return the max size of the near cache
+    */
+   public int getNearCacheSize()
+   {
+      return nearCacheSize;
+   }
+
+   /**
+    * Sets the maximum amount of entries kept locally in front of a clustered cache
+    *
+    * @param nearCacheSize the max size of the near cache
+    */
+   public void setNearCacheSize(int nearCacheSize)
+   {
+      this.nearCacheSize = nearCacheSize;
+   }
+
+   /**
+    * Returns the amount of time (in seconds) an entry is kept in the near cache, a value lower
+    * or equal to 0 means that the entries are only removed when they are modified or evicted
+    *
+    * @return the live time of the entries of the near cache
+    */
+   public long getNearCacheLiveTime()
+   {
+      return nearCacheLiveTime;
+   }
+
+   /**
+    * Sets the amount of time (in seconds) an entry is kept in the near cache
+    *
+    * @param nearCacheLiveTime the live time of the entries of the near cache
+    */
+   public void setNearCacheLiveTime(long nearCacheLiveTime)
+   {
+      this.nearCacheLiveTime = nearCacheLiveTime;
+   }
+
    /**
     * Indicates if the cache is distributed or not.
     *
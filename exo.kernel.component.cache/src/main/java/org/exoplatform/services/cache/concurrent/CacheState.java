@@ -41,11 +41,16 @@ class CacheState<K extends Serializable, V>
    final Queue<ObjectRef<K, V>> queue;
 
    CacheState(ConcurrentFIFOExoCache<K, V> config, Log log)
+   {
+      this(config, new SynchronizedQueue<ObjectRef<K, V>>(log), log);
+   }
+
+   CacheState(ConcurrentFIFOExoCache<K, V> config, Queue<ObjectRef<K, V>> queue, Log log)
    {
       this.log = log;
       this.config = config;
       this.map = new ConcurrentHashMap<K, ObjectRef<K, V>>();
-      this.queue = new SynchronizedQueue<ObjectRef<K, V>>(log);
+      this.queue = queue;
    }
 
    public void assertConsistency()
@@ -54,6 +59,10 @@ class CacheState<K extends Serializable, V>
       {
          ((SynchronizedQueue)queue).assertConsistency();
       }
+      else if (queue instanceof StripedQueue)
+      {
+         ((StripedQueue)queue).assertConsistency();
+      }
       int mapSize = map.size();
       int effectiveQueueSize = queue.size();
       if (effectiveQueueSize != mapSize)
@@ -71,16 +80,18 @@ class CacheState<K extends Serializable, V>
          V o = entry.getObject();
          if (entry.isValid())
          {
-            config.hits.incrementAndGet();
+            config.statistics.onHit();
             config.onGet(entry.name, o);
             return o;
          }
          else
          {
-            config.misses.incrementAndGet();
+            config.statistics.onMiss();
             if (map.remove(name, entry))
             {
                queue.remove(entry);
+               config.cancelExpiration(entry);
+               config.statistics.onExpiration();
             }
             config.onExpire(entry.name, o);
          }
@@ -115,6 +126,7 @@ class CacheState<K extends Serializable, V>
       if (previousRef != null)
       {
          queue.remove(previousRef);
+         config.cancelExpiration(previousRef);
          if (trace)
          {
             trace("Replaced item=" + previousRef.serial + " with item=" + nextRef.serial + " in the map");
@@ -127,6 +139,7 @@ class CacheState<K extends Serializable, V>
 
       // Add to the queue
       queue.add(nextRef);
+      config.scheduleExpiration(nextRef);
 
       // Perform eviction from queue
       ArrayList<ObjectRef<K, V>> evictedRefs = queue.trim(config.maxSize);
@@ -137,7 +150,11 @@ class CacheState<K extends Serializable, V>
             // We remove it from the map only if it was the same entry
             // it could have been removed concurrently by an explicit remove
             // or by a promotion
-            map.remove(evictedRef.name, evictedRef);
+            if (map.remove(evictedRef.name, evictedRef))
+            {
+               config.statistics.onEviction();
+            }
+            config.cancelExpiration(evictedRef);
 
             // Expiration callback
             config.onExpire(evictedRef.name, evictedRef.getObject());
@@ -148,6 +165,26 @@ class CacheState<K extends Serializable, V>
       config.onPut(name, obj);
    }
 
+   /**
+    * Removes the given entry if it is still mapped, this is called when the {@link TimingWheel}
+    * detects that the entry expired.
+    *
+    * @param ref the expired entry
+    */
+   void expire(ObjectRef<K, V> ref)
+   {
+      if (map.remove(ref.name, ref))
+      {
+         if (isTraceEnabled())
+         {
+            trace("Expired item=" + ref.serial + " removed from the map");
+         }
+         queue.remove(ref);
+         config.statistics.onExpiration();
+         config.onExpire(ref.name, ref.getObject());
+      }
+   }
+
    public V remove(Serializable name)
    {
       boolean trace = isTraceEnabled();
@@ -159,6 +196,7 @@ class CacheState<K extends Serializable, V>
             trace("Removed item=" + item.serial + " from the map going to remove it");
          }
          boolean removed = queue.remove(item);
+         config.cancelExpiration(item);
          boolean valid = removed && item.isValid();
          V object = item.getObject();
          if (valid)
@@ -168,6 +206,10 @@ class CacheState<K extends Serializable, V>
          }
          else
          {
+            if (removed)
+            {
+               config.statistics.onExpiration();
+            }
             config.onExpire(item.name, object);
             return null;
          }
@@ -19,21 +19,35 @@
 package org.exoplatform.services.cache.concurrent;
 
 import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
+import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An {@link org.exoplatform.services.cache.ExoCache} implementation based on {@link java.util.concurrent.ConcurrentHashMap}
  * that minimize locking. Cache entries are maintained in a fifo list that is used for the fifo eviction policy.
+ * When a live time is defined, the expired entries are also removed in background thanks to a {@link TimingWheel}
+ * so that they don't keep their memory and their slot until they are touched or evicted.
  *
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
  * @version $Revision$
@@ -43,6 +57,12 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    private static int DEFAULT_MAX_SIZE = 50;
 
+   /**
+    * The duration in milliseconds of a tick of the timing wheel, the expired entries are
+    * removed in background between one and two ticks after their expiration time
+    */
+   private static final long EXPIRATION_TICK = 1000;
+
    private final Log log;
 
    private volatile long liveTimeMillis;
@@ -53,9 +73,7 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    private CacheState<K, V> state;
 
-   AtomicInteger hits = new AtomicInteger();
-
-   AtomicInteger misses = new AtomicInteger();
+   final CacheStatistics statistics = new CacheStatistics(this);
 
    private String label;
 
@@ -63,6 +81,13 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    private boolean logEnabled = false;
 
+   private final ConcurrentLoader<K, V> loader = new ConcurrentLoader<K, V>(this);
+
+   /**
+    * The timing wheel, lazily created once the first entry with a finite live time is added
+    */
+   private volatile TimingWheel<K, V> timingWheel;
+
    public ConcurrentFIFOExoCache()
    {
       this(DEFAULT_MAX_SIZE);
@@ -92,12 +117,24 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
    {
       this.maxSize = maxSize;
       this.name = name;
-      this.state = new CacheState<K, V>(this, log);
-      this.liveTimeMillis = -1;
       this.log = log;
+      this.state = new CacheState<K, V>(this, createQueue(log), log);
+      this.liveTimeMillis = -1;
       this.listeners = new CopyOnWriteArrayList<ListenerContext<K, V>>();
    }
 
+   /**
+    * Creates the queue used to apply the FIFO eviction policy, it is called each time
+    * the state of the cache is created.
+    *
+    * @param log the logger to use, can be <code>null</code>
+    * @return the queue to use
+    */
+   Queue<ObjectRef<K, V>> createQueue(Log log)
+   {
+      return new SynchronizedQueue<ObjectRef<K, V>>(log);
+   }
+
    public void assertConsistent()
    {
       state.assertConsistency();
@@ -174,7 +211,10 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
       {
          return null;
       }
-      return state.get(name);
+      long start = statistics.startTimer();
+      V value = state.get(name);
+      statistics.onGet(start);
+      return value;
    }
 
    public void put(K name, V obj)
@@ -185,8 +225,10 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
       }
       if (liveTimeMillis != 0)
       {
+         long start = statistics.startTimer();
          long expirationTime = liveTimeMillis > 0 ? System.currentTimeMillis() + liveTimeMillis : Long.MAX_VALUE;
          state.put(expirationTime, name, obj);
+         statistics.onPut(start);
       }
    }
 
@@ -210,6 +252,29 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
       }
    }
 
+   public Map<K, V> getMap(Collection<? extends K> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         V value = get(name);
+         if (value != null)
+         {
+            result.put(name, value);
+         }
+      }
+      return result;
+   }
+
+   public <C> V computeIfAbsent(K name, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(name, loader, context);
+   }
+
    public V remove(Serializable name)
    {
       if (name == null)
@@ -219,6 +284,25 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
       return state.remove(name);
    }
 
+   public void removeAll(Collection<? extends Serializable> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      for (Serializable name : names)
+      {
+         remove(name);
+      }
+   }
+
    public List<? extends V> getCachedObjects()
    {
       LinkedList<V> list = new LinkedList<V>();
@@ -242,7 +326,14 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    public void clearCache()
    {
-      state = new CacheState<K, V>(this, log);
+      // The wheel is cleared before publishing the new state so that the entries scheduled by the new
+      // state are kept, the entries of the old state scheduled in between are ignored by CacheState.expire
+      TimingWheel<K, V> wheel = timingWheel;
+      if (wheel != null)
+      {
+         wheel.clear();
+      }
+      state = new CacheState<K, V>(this, createQueue(log), log);
    }
 
    public void select(CachedObjectSelector<? super K, ? super V> selector) throws Exception
@@ -270,12 +361,17 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    public int getCacheHit()
    {
-      return hits.get();
+      return statistics.getCacheHit();
    }
 
    public int getCacheMiss()
    {
-      return misses.get();
+      return statistics.getCacheMiss();
+   }
+
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
    }
 
    public synchronized void addCacheListener(CacheListener<? super K, ? super V> listener)
@@ -299,6 +395,62 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    //
 
+   void scheduleExpiration(ObjectRef<K, V> ref)
+   {
+      if (ref.expirationTime != Long.MAX_VALUE)
+      {
+         getTimingWheel().schedule(ref);
+      }
+   }
+
+   void cancelExpiration(ObjectRef<K, V> ref)
+   {
+      TimingWheel<K, V> wheel = timingWheel;
+      if (wheel != null)
+      {
+         wheel.cancel(ref);
+      }
+   }
+
+   private TimingWheel<K, V> getTimingWheel()
+   {
+      TimingWheel<K, V> wheel = timingWheel;
+      if (wheel == null)
+      {
+         synchronized (this)
+         {
+            wheel = timingWheel;
+            if (wheel == null)
+            {
+               timingWheel = wheel = new TimingWheel<K, V>(EXPIRATION_TICK, System.currentTimeMillis());
+               ExpirationTask.schedule(this, EXPIRATION_TICK);
+            }
+         }
+      }
+      return wheel;
+   }
+
+   /**
+    * Removes the entries that have been detected as expired by the timing wheel
+    */
+   void expireEntries()
+   {
+      TimingWheel<K, V> wheel = timingWheel;
+      if (wheel == null)
+      {
+         return;
+      }
+      ArrayList<ObjectRef<K, V>> expiredRefs = wheel.advance(System.currentTimeMillis());
+      if (!expiredRefs.isEmpty())
+      {
+         CacheState<K, V> currentState = state;
+         for (ObjectRef<K, V> expiredRef : expiredRefs)
+         {
+            currentState.expire(expiredRef);
+         }
+      }
+   }
+
    void onExpire(K key, V obj)
    {
       if (!listeners.isEmpty())
@@ -333,4 +485,63 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
          for (ListenerContext<K, V> context : listeners)
             context.onClearCache();
    }
-}
\ No newline at end of file
+
+   /**
+    * The task that periodically advances the timing wheel of a cache. All the caches share the same
+    * daemon thread and the task only keeps a weak reference to its cache so that it stops by itself once
+    * the cache has been garbage collected.
+    */
+   private static class ExpirationTask implements Runnable
+   {
+
+      private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.ExpirationTask");
+
+      private static final ScheduledExecutorService SCHEDULER =
+         Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+         {
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "exo-cache-expiration");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+
+      private final WeakReference<ConcurrentFIFOExoCache<?, ?>> cacheRef;
+
+      private volatile ScheduledFuture<?> future;
+
+      private ExpirationTask(ConcurrentFIFOExoCache<?, ?> cache)
+      {
+         this.cacheRef = new WeakReference<ConcurrentFIFOExoCache<?, ?>>(cache);
+      }
+
+      static void schedule(ConcurrentFIFOExoCache<?, ?> cache, long period)
+      {
+         ExpirationTask task = new ExpirationTask(cache);
+         task.future = SCHEDULER.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+      }
+
+      public void run()
+      {
+         ConcurrentFIFOExoCache<?, ?> cache = cacheRef.get();
+         if (cache == null)
+         {
+            ScheduledFuture<?> f = future;
+            if (f != null)
+            {
+               f.cancel(false);
+            }
+            return;
+         }
+         try
+         {
+            cache.expireEntries();
+         }
+         catch (RuntimeException e)
+         {
+            LOG.error("Could not remove the expired entries of the cache " + cache.getName(), e);
+         }
+      }
+   }
+}
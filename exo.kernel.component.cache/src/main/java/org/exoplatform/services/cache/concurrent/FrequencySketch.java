@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+/**
+ * A Count-Min sketch used to estimate the popularity of the keys within a time window. Each key is
+ * mapped to four 4-bit counters packed into a <code>long</code> array, its frequency is the minimum of
+ * those counters. Once the amount of increments reaches the sample size, all the counters are halved
+ * so that the old popularity fades away.
+ * <p>
+ * This class is not thread safe, the caller is expected to guard the accesses.
+ *
+ * @version $Id$
+ */
+class FrequencySketch
+{
+
+   /**
+    * The seeds of the four hash functions
+    */
+   private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+      0xcbf29ce484222325L};
+
+   private static final long RESET_MASK = 0x7777777777777777L;
+
+   private static final long ONE_MASK = 0x1111111111111111L;
+
+   /**
+    * The maximum value of a counter
+    */
+   static final int MAX_FREQUENCY = 15;
+
+   /**
+    * The maximum length of the table, 1 << 19 longs that is 4 MB whatever the max size of the cache
+    */
+   static final int MAX_TABLE_LENGTH = 1 << 19;
+
+   private long[] table;
+
+   private int tableMask;
+
+   private int sampleSize;
+
+   private int size;
+
+   FrequencySketch(int maximumSize)
+   {
+      ensureCapacity(maximumSize);
+   }
+
+   /**
+    * Resizes the sketch according to the maximum amount of entries of the cache,
+    * the existing frequencies are lost. The table never exceeds {@link #MAX_TABLE_LENGTH}
+    * longs, beyond that size the sketch simply gets less accurate.
+    *
+    * @param maximumSize the maximum amount of entries of the cache
+    */
+   void ensureCapacity(int maximumSize)
+   {
+      int maximum = Math.min(Math.max(maximumSize, 1), MAX_TABLE_LENGTH);
+      int length = 1;
+      while (length < maximum)
+      {
+         length <<= 1;
+      }
+      this.table = new long[length];
+      this.tableMask = length - 1;
+      this.sampleSize = 10 * maximum;
+      this.size = 0;
+   }
+
+   /**
+    * Returns the amount of longs of the table
+    */
+   int length()
+   {
+      return table.length;
+   }
+
+   /**
+    * Returns the estimated amount of occurrences of the given key, up to {@link #MAX_FREQUENCY}
+    */
+   int frequency(Object key)
+   {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++)
+      {
+         int index = indexOf(hash, i);
+         int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+         frequency = Math.min(frequency, count);
+      }
+      return frequency;
+   }
+
+   /**
+    * Increments the popularity of the given key if it is not already at its maximum value.
+    */
+   void increment(Object key)
+   {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++)
+      {
+         added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++size >= sampleSize)
+      {
+         reset();
+      }
+   }
+
+   private boolean incrementAt(int i, int j)
+   {
+      int offset = j << 2;
+      long mask = (0xfL << offset);
+      if ((table[i] & mask) != mask)
+      {
+         table[i] += (1L << offset);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Halves every counter
+    */
+   private void reset()
+   {
+      int count = 0;
+      for (int i = 0; i < table.length; i++)
+      {
+         count += Long.bitCount(table[i] & ONE_MASK);
+         table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      size = (size >>> 1) - (count >>> 2);
+   }
+
+   private int indexOf(int item, int i)
+   {
+      long hash = (item + SEED[i]) * SEED[i];
+      hash += (hash >>> 32);
+      return ((int)hash) & tableMask;
+   }
+
+   /**
+    * Applies a supplemental hash function to defend against poor quality hash codes
+    */
+   private static int spread(int x)
+   {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+   }
+}
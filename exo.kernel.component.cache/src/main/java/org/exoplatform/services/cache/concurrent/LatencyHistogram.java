@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with buckets of exponentially growing size: the bucket <i>i</i> counts the
+ * durations between 2<sup>i-1</sup> and 2<sup>i</sup> microseconds, the first bucket counts the durations
+ * lower than 1 microsecond and the last one all the durations above about 1 minute. Like the
+ * {@link StripedCounter}, the buckets are striped per thread to limit the contention.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram
+{
+
+   /**
+    * The amount of buckets, the last bucket starts at 2^(BUCKETS - 2) microseconds
+    */
+   public static final int BUCKETS = 28;
+
+   /**
+    * The size of the data of a stripe: the buckets, the sum of the durations and a padding to
+    * prevent false sharing between the stripes
+    */
+   private static final int STRIPE_SIZE = BUCKETS + 1 + 7;
+
+   /** . */
+   private final AtomicLongArray data = new AtomicLongArray(StripedCounter.STRIPES * STRIPE_SIZE);
+
+   /**
+    * Records a duration
+    *
+    * @param nanos the duration in nanoseconds
+    */
+   public void record(long nanos)
+   {
+      if (nanos < 0)
+      {
+         nanos = 0;
+      }
+      int offset = StripedCounter.stripe() * STRIPE_SIZE;
+      data.incrementAndGet(offset + bucket(nanos / 1000));
+      data.addAndGet(offset + BUCKETS, nanos);
+   }
+
+   static int bucket(long micros)
+   {
+      int bucket = 64 - Long.numberOfLeadingZeros(micros);
+      return bucket < BUCKETS ? bucket : BUCKETS - 1;
+   }
+
+   /**
+    * @return the amount of durations recorded in each bucket
+    */
+   public long[] getCounts()
+   {
+      long[] counts = new long[BUCKETS];
+      for (int i = 0; i < StripedCounter.STRIPES; i++)
+      {
+         int offset = i * STRIPE_SIZE;
+         for (int j = 0; j < BUCKETS; j++)
+         {
+            counts[j] += data.get(offset + j);
+         }
+      }
+      return counts;
+   }
+
+   /**
+    * @return the amount of durations recorded
+    */
+   public long getCount()
+   {
+      long count = 0;
+      for (long c : getCounts())
+      {
+         count += c;
+      }
+      return count;
+   }
+
+   /**
+    * @return the sum of all the durations in nanoseconds
+    */
+   public long getTotalTime()
+   {
+      long total = 0;
+      for (int i = 0; i < StripedCounter.STRIPES; i++)
+      {
+         total += data.get(i * STRIPE_SIZE + BUCKETS);
+      }
+      return total;
+   }
+
+   /**
+    * @return the mean duration in microseconds or 0 if nothing has been recorded
+    */
+   public double getMean()
+   {
+      long count = getCount();
+      return count == 0 ? 0 : getTotalTime() / 1000d / count;
+   }
+
+   /**
+    * Gives the upper bound of the bucket in which the given percentile of the durations falls.
+    *
+    * @param percentile the percentile between 0 and 100
+    * @return the upper bound in microseconds or 0 if nothing has been recorded
+    */
+   public long getPercentile(double percentile)
+   {
+      long[] counts = getCounts();
+      long count = 0;
+      for (long c : counts)
+      {
+         count += c;
+      }
+      if (count == 0)
+      {
+         return 0;
+      }
+      long threshold = (long)Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         seen += counts[i];
+         if (seen >= threshold && counts[i] > 0)
+         {
+            return upperBound(i);
+         }
+      }
+      return upperBound(BUCKETS - 1);
+   }
+
+   /**
+    * @return the upper bound in microseconds of the given bucket
+    */
+   static long upperBound(int bucket)
+   {
+      return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+   }
+
+   public void reset()
+   {
+      for (int i = 0; i < data.length(); i++)
+      {
+         data.set(i, 0);
+      }
+   }
+
+   /**
+    * @return the non empty buckets in the form <i>&lt;upper bound&gt;us=count</i>
+    */
+   @Override
+   public String toString()
+   {
+      long[] counts = getCounts();
+      StringBuilder sb = new StringBuilder("{");
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         if (counts[i] > 0)
+         {
+            if (sb.length() > 1)
+            {
+               sb.append(", ");
+            }
+            if (i == BUCKETS - 1)
+            {
+               sb.append('>').append(1L << (i - 1));
+            }
+            else
+            {
+               sb.append("<").append(upperBound(i));
+            }
+            sb.append("us=").append(counts[i]);
+         }
+      }
+      return sb.append('}').toString();
+   }
+}
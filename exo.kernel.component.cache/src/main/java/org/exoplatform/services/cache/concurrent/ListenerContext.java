@@ -21,6 +21,7 @@ package org.exoplatform.services.cache.concurrent;
 import org.exoplatform.services.cache.CacheInfo;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
@@ -34,12 +35,12 @@ public class ListenerContext<K, V> implements CacheListenerContext, CacheInfo
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.ListenerContext");
 
    /** . */
-   private final ConcurrentFIFOExoCache cache;
+   private final ExoCache cache;
 
    /** . */
    final CacheListener<? super K, ? super V> listener;
 
-   public ListenerContext(CacheListener<? super K, ? super V> listener, ConcurrentFIFOExoCache cache)
+   public ListenerContext(CacheListener<? super K, ? super V> listener, ExoCache cache)
    {
       this.listener = listener;
       this.cache = cache;
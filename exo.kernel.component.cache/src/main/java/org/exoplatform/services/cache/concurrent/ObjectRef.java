@@ -35,6 +35,16 @@ abstract class ObjectRef<K extends Serializable, V> extends Item implements Obje
 
    protected final K name;
 
+   /**
+    * The next entry of the same bucket of the {@link TimingWheel}, guarded by the lock of the wheel
+    */
+   ObjectRef<K, V> timerNext;
+
+   /**
+    * Indicates whether the scheduled expiration of this entry has been canceled
+    */
+   volatile boolean cancelled;
+
    protected ObjectRef(long expirationTime, K name)
    {
       this.name = name;
@@ -0,0 +1,915 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheStatistics;
+import org.exoplatform.services.cache.CachedObjectSelector;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An {@link org.exoplatform.services.cache.ExoCache} implementation that stores the values outside the java
+ * heap in order to keep huge caches out of the reach of the garbage collector. Only the keys and the
+ * location of the values remain on the heap, the values are serialized into slabs of memory managed by a
+ * {@link SlabAllocator}, which are either direct buffers or memory mapped files.
+ * <p>
+ * The size of the cache can be limited both in entries thanks to the max size and in bytes thanks to the
+ * max memory. When one of the limits is reached, the oldest entries are evicted. Since the values are
+ * serialized, they must be {@link Serializable} and each lookup returns a new copy of the value.
+ * <p>
+ * The lookups are done under a shared lock, the modifications under an exclusive lock. It can be
+ * selected for a given cache by setting the implementation of the
+ * {@link org.exoplatform.services.cache.ExoCacheConfig} to the full qualified name of this class, the max
+ * memory is then defined by {@link org.exoplatform.services.cache.ExoCacheConfig#getMaxMemory()}.
+ *
+ * @version $Id$
+ */
+public class OffHeapExoCache<K extends Serializable, V> implements ExoCache<K, V>
+{
+
+   /** . */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.OffHeapExoCache");
+
+   private static final int DEFAULT_MAX_SIZE = 50;
+
+   /**
+    * The default max memory: 64 Mo
+    */
+   public static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024;
+
+   /**
+    * The default size of a slab: 1 Mo
+    */
+   public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+   private volatile long liveTimeMillis;
+
+   private volatile int maxSize;
+
+   private final CopyOnWriteArrayList<ListenerContext<K, V>> listeners;
+
+   private final ConcurrentHashMap<K, Entry<K>> map;
+
+   /**
+    * The lock that guards the slabs, the map is only modified while holding the write lock
+    */
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+   private final SlabAllocator allocator;
+
+   /**
+    * The entries of each slab class ordered from the oldest to the newest
+    */
+   private final Entry<K>[] queues;
+
+   /**
+    * The sequence used to find out the oldest entry among all the slab classes
+    */
+   private long sequence;
+
+   private final CacheStatistics statistics = new CacheStatistics(this);
+
+   private String label;
+
+   private String name;
+
+   private boolean logEnabled = false;
+
+   private final ConcurrentLoader<K, V> loader = new ConcurrentLoader<K, V>(this);
+
+   public OffHeapExoCache()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+   public OffHeapExoCache(int maxSize)
+   {
+      this(null, maxSize);
+   }
+
+   public OffHeapExoCache(String name, int maxSize)
+   {
+      this(name, maxSize, DEFAULT_MAX_MEMORY, DEFAULT_SLAB_SIZE, null);
+   }
+
+   /**
+    * @param name the name of the cache
+    * @param maxSize the maximum amount of entries
+    * @param maxMemory the maximum amount of bytes used to store the values
+    * @param slabSize the size in bytes of a slab, no value bigger than a slab can be cached
+    * @param directory the directory in which the slabs are mapped or <code>null</code> to use direct buffers
+    */
+   @SuppressWarnings("unchecked")
+   public OffHeapExoCache(String name, int maxSize, long maxMemory, int slabSize, File directory)
+   {
+      this.name = name;
+      this.liveTimeMillis = -1;
+      this.maxSize = maxSize;
+      this.listeners = new CopyOnWriteArrayList<ListenerContext<K, V>>();
+      this.map = new ConcurrentHashMap<K, Entry<K>>();
+      this.allocator = new SlabAllocator(slabSize, maxMemory, directory);
+      this.queues = new Entry[allocator.getClassCount()];
+      for (int i = 0; i < queues.length; i++)
+      {
+         queues[i] = new Entry<K>(null, -1, 0, i, Long.MAX_VALUE);
+      }
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public void setName(String s)
+   {
+      name = s;
+   }
+
+   public String getLabel()
+   {
+      if (label == null)
+      {
+         if (name.length() > 30)
+         {
+            String shortLabel = name.substring(name.lastIndexOf(".") + 1);
+            setLabel(shortLabel);
+            return shortLabel;
+         }
+         return name;
+      }
+      return label;
+   }
+
+   public void setLabel(String name)
+   {
+      label = name;
+   }
+
+   public long getLiveTime()
+   {
+      long tmp = getLiveTimeMillis();
+      return tmp == -1 ? -1 : tmp / 1000;
+   }
+
+   public void setLiveTime(long period)
+   {
+      setLiveTimeMillis(period * 1000);
+   }
+
+   public long getLiveTimeMillis()
+   {
+      return liveTimeMillis;
+   }
+
+   public void setLiveTimeMillis(long liveTimeMillis)
+   {
+      if (liveTimeMillis < 0)
+      {
+         liveTimeMillis = -1;
+      }
+      this.liveTimeMillis = liveTimeMillis;
+   }
+
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public void setMaxSize(int max)
+   {
+      Map<K, byte[]> evicted = null;
+      lock.writeLock().lock();
+      try
+      {
+         this.maxSize = max;
+         while (map.size() > max)
+         {
+            evicted = evictOldest(evicted);
+         }
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+      onEvict(evicted);
+   }
+
+   /**
+    * @return the maximum amount of bytes used to store the values
+    */
+   public long getMaxMemory()
+   {
+      lock.readLock().lock();
+      try
+      {
+         return allocator.getMaxMemory();
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Sets the maximum amount of bytes used to store the values, it is rounded down to a multiple of the
+    * slab size. If the memory already used exceeds the new limit, the oldest entries are evicted.
+    */
+   public void setMaxMemory(long maxMemory)
+   {
+      Map<K, byte[]> evicted = null;
+      lock.writeLock().lock();
+      try
+      {
+         allocator.setMaxMemory(maxMemory);
+         while (allocator.getReservedMemory() > allocator.getMaxMemory() && !map.isEmpty())
+         {
+            evicted = evictOldest(evicted);
+         }
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+      onEvict(evicted);
+   }
+
+   /**
+    * @return the amount of bytes of the memory reserved by the slabs
+    */
+   public long getReservedMemory()
+   {
+      lock.readLock().lock();
+      try
+      {
+         return allocator.getReservedMemory();
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the amount of bytes of the memory used by the values
+    */
+   public long getUsedMemory()
+   {
+      lock.readLock().lock();
+      try
+      {
+         return allocator.getUsedMemory();
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   public V get(Serializable name)
+   {
+      if (name == null)
+      {
+         return null;
+      }
+      long start = statistics.startTimer();
+      V value = doGet(name);
+      statistics.onGet(start);
+      return value;
+   }
+
+   private V doGet(Serializable name)
+   {
+      Entry<K> entry = map.get(name);
+      if (entry == null)
+      {
+         statistics.onMiss();
+         return null;
+      }
+      if (!entry.isValid())
+      {
+         statistics.onMiss();
+         byte[] data = null;
+         lock.writeLock().lock();
+         try
+         {
+            if (map.remove(name, entry))
+            {
+               data = release(entry, !listeners.isEmpty());
+               statistics.onExpiration();
+            }
+         }
+         finally
+         {
+            lock.writeLock().unlock();
+         }
+         if (data != null)
+         {
+            onExpire(entry.key, deserialize(entry.key, data));
+         }
+         return null;
+      }
+      byte[] data = read(entry);
+      if (data == null)
+      {
+         // The entry has been removed concurrently
+         statistics.onMiss();
+         return null;
+      }
+      V value = deserialize(entry.key, data);
+      statistics.onHit();
+      onGet(entry.key, value);
+      return value;
+   }
+
+   public void put(K name, V obj)
+   {
+      if (name == null)
+      {
+         throw new IllegalArgumentException("No null cache key accepted");
+      }
+      if (liveTimeMillis != 0)
+      {
+         long start = statistics.startTimer();
+         long expirationTime = liveTimeMillis > 0 ? System.currentTimeMillis() + liveTimeMillis : Long.MAX_VALUE;
+         put(expirationTime, name, obj);
+         statistics.onPut(start);
+      }
+   }
+
+   private void put(long expirationTime, K name, V obj)
+   {
+      // The value is serialized before acquiring the lock
+      byte[] data = serialize(name, obj);
+      Map<K, byte[]> evicted = null;
+      Entry<K> previous;
+      byte[] previousData = null;
+      boolean stored = false;
+      lock.writeLock().lock();
+      try
+      {
+         previous = map.remove(name);
+         if (previous != null)
+         {
+            // The previous value is needed to notify the listeners if the new value cannot be stored
+            previousData = release(previous, !listeners.isEmpty());
+         }
+         int slabClass = allocator.getSlabClass(data.length);
+         if (slabClass == -1)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("The value of " + name + " is too big to be cached: " + data.length + " bytes");
+            }
+         }
+         else
+         {
+            long address;
+            while ((address = allocator.allocate(slabClass)) == -1 && !map.isEmpty())
+            {
+               Entry<K> queue = queues[slabClass];
+               // We first evict the entries of the same class to reuse their chunks, otherwise we evict the
+               // oldest entries until a slab is released
+               evicted = queue.next == queue ? evictOldest(evicted) : evict(queue.next, evicted);
+            }
+            // If the address is still not valid, there is not enough memory to store even a single value
+            if (address != -1)
+            {
+               allocator.write(address, data);
+               Entry<K> entry = new Entry<K>(name, address, data.length, slabClass, expirationTime);
+               entry.sequence = sequence++;
+               map.put(name, entry);
+               entry.linkBefore(queues[slabClass]);
+               while (map.size() > maxSize)
+               {
+                  evicted = evictOldest(evicted);
+               }
+               stored = true;
+            }
+         }
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+      onEvict(evicted);
+      if (stored)
+      {
+         onPut(name, obj);
+      }
+      else if (previousData != null)
+      {
+         // The previous value has been dropped without being replaced
+         onRemove(previous.key, deserialize(previous.key, previousData));
+      }
+   }
+
+   public void putMap(Map<? extends K, ? extends V> objs)
+   {
+      if (objs == null)
+      {
+         throw new IllegalArgumentException("No null map accepted");
+      }
+      long expirationTime = liveTimeMillis > 0 ? System.currentTimeMillis() + liveTimeMillis : Long.MAX_VALUE;
+      for (Serializable name : objs.keySet())
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
+      {
+         put(expirationTime, entry.getKey(), entry.getValue());
+      }
+   }
+
+   public Map<K, V> getMap(Collection<? extends K> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         V value = get(name);
+         if (value != null)
+         {
+            result.put(name, value);
+         }
+      }
+      return result;
+   }
+
+   public <C> V computeIfAbsent(K name, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(name, loader, context);
+   }
+
+   public V remove(Serializable name)
+   {
+      if (name == null)
+      {
+         throw new IllegalArgumentException("No null cache key accepted");
+      }
+      Entry<K> entry;
+      byte[] data = null;
+      lock.writeLock().lock();
+      try
+      {
+         entry = map.remove(name);
+         if (entry != null)
+         {
+            data = release(entry, true);
+         }
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+      if (entry == null)
+      {
+         return null;
+      }
+      V object = deserialize(entry.key, data);
+      if (entry.isValid())
+      {
+         onRemove(entry.key, object);
+         return object;
+      }
+      else
+      {
+         statistics.onExpiration();
+         onExpire(entry.key, object);
+         return null;
+      }
+   }
+
+   public void removeAll(Collection<? extends Serializable> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      for (Serializable name : names)
+      {
+         remove(name);
+      }
+   }
+
+   public List<? extends V> getCachedObjects()
+   {
+      LinkedList<V> list = new LinkedList<V>();
+      for (Entry<K> entry : map.values())
+      {
+         if (entry.isValid())
+         {
+            byte[] data = read(entry);
+            if (data != null)
+            {
+               list.add(deserialize(entry.key, data));
+            }
+         }
+      }
+      return list;
+   }
+
+   public List<? extends V> removeCachedObjects()
+   {
+      List<? extends V> list = getCachedObjects();
+      clearCache();
+      return list;
+   }
+
+   public void clearCache()
+   {
+      lock.writeLock().lock();
+      try
+      {
+         for (Entry<K> entry : map.values())
+         {
+            entry.address = -1;
+         }
+         map.clear();
+         for (Entry<K> queue : queues)
+         {
+            queue.previous = queue;
+            queue.next = queue;
+         }
+         allocator.clear();
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+      onClearCache();
+   }
+
+   public void select(CachedObjectSelector<? super K, ? super V> selector) throws Exception
+   {
+      if (selector == null)
+      {
+         throw new IllegalArgumentException("No null selector");
+      }
+      for (Map.Entry<K, Entry<K>> entry : map.entrySet())
+      {
+         K key = entry.getKey();
+         ObjectCacheInfo<V> info = new EntryInfo(entry.getValue());
+         if (selector.select(key, info))
+         {
+            selector.onSelect(this, key, info);
+         }
+      }
+   }
+
+   public int getCacheSize()
+   {
+      return map.size();
+   }
+
+   public int getCacheHit()
+   {
+      return statistics.getCacheHit();
+   }
+
+   public int getCacheMiss()
+   {
+      return statistics.getCacheMiss();
+   }
+
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
+   }
+
+   public synchronized void addCacheListener(CacheListener<? super K, ? super V> listener)
+   {
+      if (listener == null)
+      {
+         throw new IllegalArgumentException("The listener cannot be null");
+      }
+      listeners.add(new ListenerContext<K, V>(listener, this));
+   }
+
+   public boolean isLogEnabled()
+   {
+      return logEnabled;
+   }
+
+   public void setLogEnabled(boolean logEnabled)
+   {
+      this.logEnabled = logEnabled;
+   }
+
+   /**
+    * Reads the serialized value of the given entry
+    *
+    * @return the serialized value or <code>null</code> if the entry has been removed
+    */
+   private byte[] read(Entry<K> entry)
+   {
+      lock.readLock().lock();
+      try
+      {
+         return entry.address == -1 ? null : allocator.read(entry.address, entry.length);
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   private byte[] serialize(K key, V value)
+   {
+      try
+      {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         ObjectOutputStream oos = new ObjectOutputStream(baos);
+         oos.writeObject(value);
+         oos.close();
+         return baos.toByteArray();
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("The value of " + key + " cannot be serialized", e);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private V deserialize(K key, byte[] data)
+   {
+      try
+      {
+         ObjectInputStream ois = new ContextObjectInputStream(new ByteArrayInputStream(data));
+         try
+         {
+            return (V)ois.readObject();
+         }
+         finally
+         {
+            ois.close();
+         }
+      }
+      catch (Exception e)
+      {
+         LOG.error("The value of " + key + " cannot be deserialized", e);
+         return null;
+      }
+   }
+
+   // All the methods below must be called while holding the write lock
+
+   /**
+    * Frees the memory of an entry that has been removed from the map
+    *
+    * @param read indicates whether the serialized value must be returned
+    * @return the serialized value if requested
+    */
+   private byte[] release(Entry<K> entry, boolean read)
+   {
+      byte[] data = read ? allocator.read(entry.address, entry.length) : null;
+      entry.unlink();
+      allocator.free(entry.address);
+      entry.address = -1;
+      return data;
+   }
+
+   private Map<K, byte[]> evictOldest(Map<K, byte[]> evicted)
+   {
+      Entry<K> oldest = null;
+      for (Entry<K> queue : queues)
+      {
+         Entry<K> first = queue.next;
+         if (first != queue && (oldest == null || first.sequence < oldest.sequence))
+         {
+            oldest = first;
+         }
+      }
+      return oldest == null ? evicted : evict(oldest, evicted);
+   }
+
+   private Map<K, byte[]> evict(Entry<K> entry, Map<K, byte[]> evicted)
+   {
+      map.remove(entry.key, entry);
+      byte[] data = release(entry, !listeners.isEmpty());
+      statistics.onEviction();
+      if (evicted == null)
+      {
+         evicted = new LinkedHashMap<K, byte[]>();
+      }
+      evicted.put(entry.key, data);
+      return evicted;
+   }
+
+   //
+
+   private void onEvict(Map<K, byte[]> evicted)
+   {
+      if (evicted != null && !listeners.isEmpty())
+      {
+         for (Map.Entry<K, byte[]> entry : evicted.entrySet())
+         {
+            byte[] data = entry.getValue();
+            onExpire(entry.getKey(), data == null ? null : deserialize(entry.getKey(), data));
+         }
+      }
+   }
+
+   void onExpire(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onExpire(key, obj);
+   }
+
+   void onRemove(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onRemove(key, obj);
+   }
+
+   void onPut(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onPut(key, obj);
+   }
+
+   void onGet(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onGet(key, obj);
+   }
+
+   void onClearCache()
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onClearCache();
+   }
+
+   /**
+    * The on heap part of an entry: its key and the location of its value. It is linked into the queue
+    * of its slab class.
+    */
+   private static class Entry<K>
+   {
+
+      final K key;
+
+      /**
+       * The address of the value, -1 once the entry has been removed
+       */
+      volatile long address;
+
+      final int length;
+
+      final int slabClass;
+
+      final long expirationTime;
+
+      long sequence;
+
+      Entry<K> previous;
+
+      Entry<K> next;
+
+      Entry(K key, long address, int length, int slabClass, long expirationTime)
+      {
+         this.key = key;
+         this.address = address;
+         this.length = length;
+         this.slabClass = slabClass;
+         this.expirationTime = expirationTime;
+         this.previous = this;
+         this.next = this;
+      }
+
+      boolean isValid()
+      {
+         return System.currentTimeMillis() < expirationTime;
+      }
+
+      void linkBefore(Entry<K> entry)
+      {
+         previous = entry.previous;
+         next = entry;
+         previous.next = this;
+         entry.previous = this;
+      }
+
+      void unlink()
+      {
+         previous.next = next;
+         next.previous = previous;
+         previous = null;
+         next = null;
+      }
+   }
+
+   /**
+    * Gives access to an entry to a {@link CachedObjectSelector}, the value is read lazily.
+    */
+   private class EntryInfo implements ObjectCacheInfo<V>
+   {
+
+      private final Entry<K> entry;
+
+      EntryInfo(Entry<K> entry)
+      {
+         this.entry = entry;
+      }
+
+      public long getExpireTime()
+      {
+         return entry.expirationTime;
+      }
+
+      public V get()
+      {
+         byte[] data = read(entry);
+         return data == null ? null : deserialize(entry.key, data);
+      }
+   }
+
+   /**
+    * Resolves the classes with the context class loader when possible since the values are
+    * deserialized from the thread that reads them.
+    */
+   private static class ContextObjectInputStream extends ObjectInputStream
+   {
+
+      ContextObjectInputStream(InputStream in) throws IOException
+      {
+         super(in);
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+      {
+         ClassLoader cl = Thread.currentThread().getContextClassLoader();
+         if (cl != null)
+         {
+            try
+            {
+               return Class.forName(desc.getName(), false, cl);
+            }
+            catch (ClassNotFoundException e)
+            {
+               // Try with the default mechanism
+            }
+         }
+         return super.resolveClass(desc);
+      }
+   }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Allocates chunks of memory outside the java heap. The memory is reserved by slabs of a fixed size, either
+ * direct {@link ByteBuffer} or memory mapped files, and each slab is cut into chunks of the same size. The
+ * chunk sizes are organized in classes growing by a constant factor, so that a value is stored in the
+ * smallest chunk that can hold it and the memory wasted per value remains bounded.
+ * <p>
+ * A slab is assigned to a class as long as at least one of its chunks is in use, once all its chunks have
+ * been freed it can be reused by any other class. A chunk is identified by an address made of the index
+ * of its slab and of its offset within the slab.
+ * <p>
+ * This class is not thread safe, the allocations and the writes must be done under an exclusive lock, the
+ * reads can be done concurrently as long as no allocation or write occurs at the same time.
+ *
+ * @version $Id$
+ */
+class SlabAllocator
+{
+
+   /**
+    * The size of the smallest chunk
+    */
+   private static final int MIN_CHUNK_SIZE = 64;
+
+   /**
+    * The factor applied to the chunk size from one class to the next one
+    */
+   private static final double GROWTH_FACTOR = 1.25;
+
+   /** . */
+   private final int slabSize;
+
+   /**
+    * The directory in which the memory mapped files are created, <code>null</code> to use direct buffers
+    */
+   private final File directory;
+
+   /** . */
+   private final int[] chunkSizes;
+
+   /**
+    * The slabs that have at least one free chunk per class
+    */
+   private final List<List<Slab>> partialSlabs;
+
+   /**
+    * All the slabs that have been reserved, the index of a slab in this list is part of its address
+    */
+   private final List<Slab> slabs = new ArrayList<Slab>();
+
+   /**
+    * The slabs that are not assigned to any class
+    */
+   private final List<Slab> freeSlabs = new ArrayList<Slab>();
+
+   /** . */
+   private int maxSlabs;
+
+   /**
+    * The total amount of slabs currently reserved
+    */
+   private int reservedSlabs;
+
+   /**
+    * The total amount of bytes of the chunks in use
+    */
+   private long usedMemory;
+
+   /**
+    * @param slabSize the size in bytes of a slab, which is also the size of the biggest value
+    * @param maxMemory the maximum amount of bytes that can be reserved
+    * @param directory the directory in which the memory mapped files are created or <code>null</code> to use
+    * direct buffers
+    */
+   SlabAllocator(int slabSize, long maxMemory, File directory)
+   {
+      if (slabSize < MIN_CHUNK_SIZE)
+      {
+         throw new IllegalArgumentException("The slab size cannot be lower than " + MIN_CHUNK_SIZE);
+      }
+      this.slabSize = slabSize;
+      this.directory = directory;
+      List<Integer> sizes = new ArrayList<Integer>();
+      for (double size = MIN_CHUNK_SIZE; size < slabSize; size *= GROWTH_FACTOR)
+      {
+         // The chunk sizes are aligned on 8 bytes
+         int chunkSize = ((int)size + 7) & ~7;
+         if (sizes.isEmpty() || sizes.get(sizes.size() - 1) < chunkSize)
+         {
+            sizes.add(chunkSize);
+         }
+      }
+      sizes.add(slabSize);
+      this.chunkSizes = new int[sizes.size()];
+      this.partialSlabs = new ArrayList<List<Slab>>(sizes.size());
+      for (int i = 0; i < chunkSizes.length; i++)
+      {
+         chunkSizes[i] = sizes.get(i);
+         partialSlabs.add(new ArrayList<Slab>());
+      }
+      setMaxMemory(maxMemory);
+   }
+
+   int getSlabSize()
+   {
+      return slabSize;
+   }
+
+   int getClassCount()
+   {
+      return chunkSizes.length;
+   }
+
+   /**
+    * @return the class of the chunks that can hold the given amount of bytes or -1 if it exceeds the size
+    * of a slab
+    */
+   int getSlabClass(int size)
+   {
+      int index = Arrays.binarySearch(chunkSizes, size);
+      if (index < 0)
+      {
+         index = -index - 1;
+      }
+      return index < chunkSizes.length ? index : -1;
+   }
+
+   int getChunkSize(int slabClass)
+   {
+      return chunkSizes[slabClass];
+   }
+
+   long getMaxMemory()
+   {
+      return (long)maxSlabs * slabSize;
+   }
+
+   /**
+    * Sets the maximum amount of memory that can be reserved. When it is lower than the memory already
+    * reserved, the slabs are released as soon as all their chunks are freed.
+    */
+   void setMaxMemory(long maxMemory)
+   {
+      this.maxSlabs = (int)Math.min(Integer.MAX_VALUE, Math.max(0, maxMemory / slabSize));
+      while (reservedSlabs > maxSlabs && !freeSlabs.isEmpty())
+      {
+         release(freeSlabs.remove(freeSlabs.size() - 1));
+      }
+   }
+
+   /**
+    * @return the amount of memory reserved by the slabs
+    */
+   long getReservedMemory()
+   {
+      return (long)reservedSlabs * slabSize;
+   }
+
+   /**
+    * @return the amount of memory of the chunks in use
+    */
+   long getUsedMemory()
+   {
+      return usedMemory;
+   }
+
+   /**
+    * Allocates a chunk of the given class
+    *
+    * @return the address of the chunk or -1 if there is no memory left for this class
+    */
+   long allocate(int slabClass)
+   {
+      List<Slab> partial = partialSlabs.get(slabClass);
+      Slab slab;
+      if (partial.isEmpty())
+      {
+         slab = reserve();
+         if (slab == null)
+         {
+            return -1;
+         }
+         slab.assign(slabClass, chunkSizes[slabClass]);
+         partial.add(slab);
+      }
+      else
+      {
+         slab = partial.get(partial.size() - 1);
+      }
+      int offset = slab.allocate();
+      if (slab.isFull())
+      {
+         partial.remove(partial.size() - 1);
+      }
+      usedMemory += slab.chunkSize;
+      return ((long)slab.index << 32) | offset;
+   }
+
+   /**
+    * Frees the chunk at the given address
+    */
+   void free(long address)
+   {
+      Slab slab = slabs.get((int)(address >>> 32));
+      boolean wasFull = slab.isFull();
+      slab.free((int)address);
+      usedMemory -= slab.chunkSize;
+      List<Slab> partial = partialSlabs.get(slab.slabClass);
+      if (slab.isEmpty())
+      {
+         if (!wasFull)
+         {
+            partial.remove(slab);
+         }
+         slab.assign(-1, 0);
+         if (reservedSlabs > maxSlabs)
+         {
+            release(slab);
+         }
+         else
+         {
+            freeSlabs.add(slab);
+         }
+      }
+      else if (wasFull)
+      {
+         partial.add(slab);
+      }
+   }
+
+   /**
+    * Writes the given data into the chunk at the given address
+    */
+   void write(long address, byte[] data)
+   {
+      ByteBuffer buffer = slabs.get((int)(address >>> 32)).buffer.duplicate();
+      buffer.position((int)address);
+      buffer.put(data);
+   }
+
+   /**
+    * Reads the given amount of bytes from the chunk at the given address
+    */
+   byte[] read(long address, int length)
+   {
+      ByteBuffer buffer = slabs.get((int)(address >>> 32)).buffer.duplicate();
+      buffer.position((int)address);
+      byte[] data = new byte[length];
+      buffer.get(data);
+      return data;
+   }
+
+   /**
+    * Frees all the chunks, the reserved memory is kept for later use
+    */
+   void clear()
+   {
+      for (List<Slab> partial : partialSlabs)
+      {
+         partial.clear();
+      }
+      freeSlabs.clear();
+      for (Slab slab : slabs)
+      {
+         if (slab != null)
+         {
+            slab.assign(-1, 0);
+            freeSlabs.add(slab);
+         }
+      }
+      usedMemory = 0;
+      setMaxMemory(getMaxMemory());
+   }
+
+   private Slab reserve()
+   {
+      if (!freeSlabs.isEmpty())
+      {
+         return freeSlabs.remove(freeSlabs.size() - 1);
+      }
+      if (reservedSlabs >= maxSlabs)
+      {
+         return null;
+      }
+      int index = slabs.indexOf(null);
+      if (index == -1)
+      {
+         index = slabs.size();
+         slabs.add(null);
+      }
+      Slab slab = new Slab(index, createBuffer());
+      slabs.set(index, slab);
+      reservedSlabs++;
+      return slab;
+   }
+
+   private void release(Slab slab)
+   {
+      // The memory will be released once the buffer is garbage collected
+      slabs.set(slab.index, null);
+      reservedSlabs--;
+   }
+
+   private ByteBuffer createBuffer()
+   {
+      if (directory == null)
+      {
+         return ByteBuffer.allocateDirect(slabSize);
+      }
+      try
+      {
+         File file = File.createTempFile("slab", ".bin", directory);
+         RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         try
+         {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, slabSize);
+         }
+         finally
+         {
+            // The mapping remains valid once the file is closed
+            raf.close();
+            if (!file.delete())
+            {
+               file.deleteOnExit();
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Could not map a slab in the directory " + directory, e);
+      }
+   }
+
+   /**
+    * A slab cut into chunks of the same size.
+    */
+   private static class Slab
+   {
+      /** . */
+      private final int index;
+
+      /** . */
+      private final ByteBuffer buffer;
+
+      /** . */
+      private int slabClass = -1;
+
+      /** . */
+      private int chunkSize;
+
+      /**
+       * The offsets of the free chunks
+       */
+      private int[] freeChunks;
+
+      /** . */
+      private int freeCount;
+
+      Slab(int index, ByteBuffer buffer)
+      {
+         this.index = index;
+         this.buffer = buffer;
+      }
+
+      void assign(int slabClass, int chunkSize)
+      {
+         this.slabClass = slabClass;
+         this.chunkSize = chunkSize;
+         if (slabClass == -1)
+         {
+            freeChunks = null;
+            freeCount = 0;
+            return;
+         }
+         int count = buffer.capacity() / chunkSize;
+         freeChunks = new int[count];
+         for (int i = 0; i < count; i++)
+         {
+            // The first chunks are allocated first
+            freeChunks[i] = (count - 1 - i) * chunkSize;
+         }
+         freeCount = count;
+      }
+
+      int allocate()
+      {
+         return freeChunks[--freeCount];
+      }
+
+      void free(int offset)
+      {
+         freeChunks[freeCount++] = offset;
+      }
+
+      boolean isFull()
+      {
+         return freeCount == 0;
+      }
+
+      boolean isEmpty()
+      {
+         return freeCount == freeChunks.length;
+      }
+   }
+}
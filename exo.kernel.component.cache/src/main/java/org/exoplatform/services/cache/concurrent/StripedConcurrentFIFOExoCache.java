@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import org.exoplatform.services.log.Log;
+
+import java.io.Serializable;
+
+/**
+ * A {@link ConcurrentFIFOExoCache} that relies on a {@link StripedQueue} to apply the eviction
+ * policy, which reduces the contention on write-heavy caches at the cost of an eviction order that is
+ * only approximately FIFO. It can be selected for a given cache by setting the implementation of
+ * the {@link org.exoplatform.services.cache.ExoCacheConfig} to the full qualified name of this class.
+ *
+ * @version $Id$
+ */
+public class StripedConcurrentFIFOExoCache<K extends Serializable, V> extends ConcurrentFIFOExoCache<K, V>
+{
+
+   public StripedConcurrentFIFOExoCache()
+   {
+      super();
+   }
+
+   public StripedConcurrentFIFOExoCache(Log log)
+   {
+      super(log);
+   }
+
+   public StripedConcurrentFIFOExoCache(int maxSize)
+   {
+      super(maxSize);
+   }
+
+   public StripedConcurrentFIFOExoCache(int maxSize, Log log)
+   {
+      super(maxSize, log);
+   }
+
+   public StripedConcurrentFIFOExoCache(String name, int maxSize)
+   {
+      super(name, maxSize);
+   }
+
+   public StripedConcurrentFIFOExoCache(String name, int maxSize, Log log)
+   {
+      super(name, maxSize, log);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   Queue<ObjectRef<K, V>> createQueue(Log log)
+   {
+      return new StripedQueue<ObjectRef<K, V>>(log);
+   }
+}
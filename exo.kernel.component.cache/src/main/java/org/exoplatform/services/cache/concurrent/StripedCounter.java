@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be updated by many threads with a low contention. The count is split into several
+ * cells and each thread updates the cell chosen according to its id, the value of the counter is the sum
+ * of all the cells. The cells are spread over distinct cache lines to prevent false sharing.
+ * <p>
+ * The sum is not an atomic snapshot: the updates made while the sum is computed may or may not be taken
+ * into account, which is acceptable for statistics.
+ *
+ * @version $Id$
+ */
+public class StripedCounter
+{
+
+   /**
+    * The distance between two cells in the array, 8 longs fill a cache line of 64 bytes
+    */
+   private static final int PADDING = 8;
+
+   /**
+    * The amount of cells, a power of 2 greater or equal to twice the amount of processors
+    */
+   static final int STRIPES;
+
+   static
+   {
+      int stripes = 1;
+      int processors = Runtime.getRuntime().availableProcessors();
+      while (stripes < 2 * processors)
+      {
+         stripes <<= 1;
+      }
+      STRIPES = stripes;
+   }
+
+   /** . */
+   private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+   public void increment()
+   {
+      add(1);
+   }
+
+   public void add(long value)
+   {
+      cells.addAndGet(index(), value);
+   }
+
+   /**
+    * @return the sum of all the cells
+    */
+   public long sum()
+   {
+      long sum = 0;
+      for (int i = 0; i < STRIPES; i++)
+      {
+         sum += cells.get(i * PADDING);
+      }
+      return sum;
+   }
+
+   /**
+    * Resets all the cells to 0
+    */
+   public void reset()
+   {
+      for (int i = 0; i < STRIPES; i++)
+      {
+         cells.set(i * PADDING, 0);
+      }
+   }
+
+   private static int index()
+   {
+      return stripe() * PADDING;
+   }
+
+   /**
+    * @return the cell assigned to the current thread
+    */
+   static int stripe()
+   {
+      long id = Thread.currentThread().getId();
+      // Spread the consecutive ids over the stripes
+      int h = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+      return (h ^ (h >>> 16)) & (STRIPES - 1);
+   }
+
+   @Override
+   public String toString()
+   {
+      return Long.toString(sum());
+   }
+}
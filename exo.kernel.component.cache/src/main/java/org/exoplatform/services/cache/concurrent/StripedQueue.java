@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Queue} split into several segments, each segment being a {@link SynchronizedQueue} with its
+ * own lock. An item is always assigned to the same segment according to its serial number, so that
+ * concurrent adds and removes are spread over the segments instead of contending on a single lock.
+ * To evict an item, the trim only looks at the tails of a few segments taken in turn and evicts the oldest
+ * one, so that an eviction does not lock all the segments, which gives an order that is approximately FIFO.
+ *
+ * @version $Id$
+ */
+public class StripedQueue<I extends Item> implements Queue<I>
+{
+
+   /**
+    * The default amount of segments
+    */
+   private static final int DEFAULT_CONCURRENCY_LEVEL = Runtime.getRuntime().availableProcessors() * 2;
+
+   /**
+    * The maximum amount of segments
+    */
+   private static final int MAX_CONCURRENCY_LEVEL = 1 << 8;
+
+   /**
+    * The amount of segments whose tail is compared to choose the item to evict
+    */
+   private static final int TRIM_SAMPLE_SIZE = 4;
+
+   private final SynchronizedQueue<I>[] segments;
+
+   private final int segmentMask;
+
+   private final AtomicInteger queueSize = new AtomicInteger();
+
+   private final AtomicBoolean trimming = new AtomicBoolean();
+
+   /**
+    * The index of the first segment of the next sample, only accessed by the thread that trims
+    */
+   private int trimCursor;
+
+   public StripedQueue(Log log)
+   {
+      this(log, DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   @SuppressWarnings("unchecked")
+   public StripedQueue(Log log, int concurrencyLevel)
+   {
+      if (concurrencyLevel <= 0)
+      {
+         throw new IllegalArgumentException("The concurrency level must be greater than 0");
+      }
+      int size = 1;
+      while (size < concurrencyLevel && size < MAX_CONCURRENCY_LEVEL)
+      {
+         size <<= 1;
+      }
+      this.segments = new SynchronizedQueue[size];
+      for (int i = 0; i < size; i++)
+      {
+         segments[i] = new SynchronizedQueue<I>(log);
+      }
+      this.segmentMask = size - 1;
+   }
+
+   private SynchronizedQueue<I> segmentFor(I item)
+   {
+      return segments[item.hashCode & segmentMask];
+   }
+
+   /**
+    * Returns the total amount of segments
+    */
+   public int getConcurrencyLevel()
+   {
+      return segments.length;
+   }
+
+   public int size()
+   {
+      return queueSize.get();
+   }
+
+   public void assertConsistency()
+   {
+      int effectiveQueueSize = 0;
+      for (SynchronizedQueue<I> segment : segments)
+      {
+         segment.assertConsistency();
+         effectiveQueueSize += segment.size();
+      }
+      int cachedQueueSize = queueSize.get();
+      if (effectiveQueueSize != cachedQueueSize)
+      {
+         throw new AssertionError("The cached queue size " + cachedQueueSize
+            + "  is different from the effective queue size" + effectiveQueueSize);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean remove(I item)
+   {
+      if (segmentFor(item).remove(item))
+      {
+         queueSize.decrementAndGet();
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void add(I item)
+   {
+      segmentFor(item).add(item);
+      queueSize.incrementAndGet();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ArrayList<I> trim(int size)
+   {
+      if (trimming.compareAndSet(false, true))
+      {
+         try
+         {
+            int currentSize = queueSize.get();
+            if (currentSize > size)
+            {
+               ArrayList<I> evictedItems = new ArrayList<I>(currentSize - size);
+               while (queueSize.get() > size)
+               {
+                  SynchronizedQueue<I> victim = null;
+                  long oldest = Long.MAX_VALUE;
+                  // Goes beyond the sample only if the sampled segments are empty
+                  for (int i = 0; i < segments.length && (i < TRIM_SAMPLE_SIZE || victim == null); i++)
+                  {
+                     SynchronizedQueue<I> segment = segments[(trimCursor + i) & segmentMask];
+                     long serial = segment.peekLastSerial();
+                     if (serial < oldest)
+                     {
+                        oldest = serial;
+                        victim = segment;
+                     }
+                  }
+                  trimCursor = (trimCursor + TRIM_SAMPLE_SIZE) & segmentMask;
+                  if (victim == null)
+                  {
+                     // All the segments have been emptied concurrently
+                     break;
+                  }
+                  I item = victim.pollLast(oldest);
+                  if (item != null)
+                  {
+                     queueSize.decrementAndGet();
+                     evictedItems.add(item);
+                  }
+               }
+               return evictedItems;
+            }
+         }
+         finally
+         {
+            trimming.set(false);
+         }
+      }
+
+      //
+      return null;
+   }
+}
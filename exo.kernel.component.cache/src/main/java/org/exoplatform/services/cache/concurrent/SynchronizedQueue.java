@@ -163,6 +163,51 @@ public class SynchronizedQueue<I extends Item> implements Queue<I>
       }
    }
 
+   /**
+    * Returns the serial number of the last item of the queue, which is the oldest one.
+    *
+    * @return the serial number or {@link Long#MAX_VALUE} if the queue is empty
+    */
+   long peekLastSerial()
+   {
+      queueLock.lock();
+      try
+      {
+         Item last = tail.previous;
+         return last == head ? Long.MAX_VALUE : last.serial;
+      }
+      finally
+      {
+         queueLock.unlock();
+      }
+   }
+
+   /**
+    * Removes the last item of the queue if its serial number is still the given one.
+    *
+    * @param serial the serial number returned by {@link #peekLastSerial()}
+    * @return the removed item or null if the last item has changed in the meantime
+    */
+   @SuppressWarnings("unchecked")
+   I pollLast(long serial)
+   {
+      queueLock.lock();
+      try
+      {
+         Item last = tail.previous;
+         if (last == head || last.serial != serial)
+         {
+            return null;
+         }
+         remove((I)last);
+         return (I)last;
+      }
+      finally
+      {
+         queueLock.unlock();
+      }
+   }
+
    /**
     * Attempt to trim the queue. Trim will occur if no other thread is already performing a trim
     * and the queue size is greater than the provided size.
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hierarchical timing wheel used to detect the expired entries of a cache. It is made of
+ * {@link #LEVELS} wheels of 64 buckets, a bucket of the first wheel covers one tick, a bucket of the
+ * next wheel covers 64 ticks and so on. An entry is placed into the bucket of the lowest wheel that
+ * can hold its deadline and is cascaded to a lower wheel when the bucket is reached.
+ * <p>
+ * Scheduling an entry only adds it to a lock-free queue, it is placed into its bucket by the thread that
+ * calls {@link #advance(long)}. Canceling an entry only marks it as canceled so that the writers never
+ * take the lock of the wheel, the canceled entries are dropped when their bucket is reached or by a
+ * sweep of all the buckets once they outnumber the live ones.
+ *
+ * @version $Id$
+ */
+class TimingWheel<K extends Serializable, V>
+{
+
+   private static final int WHEEL_BITS = 6;
+
+   private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+   private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+   /**
+    * The total amount of wheels
+    */
+   static final int LEVELS = 4;
+
+   /**
+    * The index of the bucket of the entries whose deadline is beyond the range of the highest wheel
+    */
+   private static final int OVERFLOW = LEVELS * WHEEL_SIZE;
+
+   private final long tickDuration;
+
+   /**
+    * The head of each bucket, the bucket of the slot <code>s</code> of the wheel <code>l</code> is at the
+    * index <code>l * 64 + s</code>, the last one is {@link #OVERFLOW}. The entries of a bucket are linked
+    * thanks to {@link ObjectRef#timerNext}, guarded by the lock of the wheel.
+    */
+   private final ObjectRef<K, V>[] buckets;
+
+   private final ConcurrentLinkedQueue<ObjectRef<K, V>> scheduled = new ConcurrentLinkedQueue<ObjectRef<K, V>>();
+
+   /**
+    * The amount of cancellations since the last sweep of the buckets
+    */
+   private final AtomicInteger cancellations = new AtomicInteger();
+
+   /**
+    * The amount of entries placed into the buckets, canceled or not, guarded by the lock of the wheel
+    */
+   private int placed;
+
+   private long currentTick;
+
+   @SuppressWarnings("unchecked")
+   TimingWheel(long tickDuration, long now)
+   {
+      if (tickDuration <= 0)
+      {
+         throw new IllegalArgumentException("The tick duration must be greater than 0");
+      }
+      this.tickDuration = tickDuration;
+      this.buckets = new ObjectRef[OVERFLOW + 1];
+      this.currentTick = now / tickDuration;
+   }
+
+   long getTickDuration()
+   {
+      return tickDuration;
+   }
+
+   /**
+    * Schedules the expiration of the given entry, the entry will be returned by {@link #advance(long)}
+    * at least one tick after its expiration time unless it has been canceled.
+    */
+   void schedule(ObjectRef<K, V> ref)
+   {
+      scheduled.offer(ref);
+   }
+
+   /**
+    * Cancels the expiration of the given entry, the entry is actually dropped later by the thread that
+    * calls {@link #advance(long)}.
+    */
+   void cancel(ObjectRef<K, V> ref)
+   {
+      if (!ref.cancelled)
+      {
+         ref.cancelled = true;
+         cancellations.incrementAndGet();
+      }
+   }
+
+   /**
+    * Drops all the scheduled entries.
+    */
+   synchronized void clear()
+   {
+      scheduled.clear();
+      for (int i = 0; i < buckets.length; i++)
+      {
+         ObjectRef<K, V> head = buckets[i];
+         buckets[i] = null;
+         while (head != null)
+         {
+            ObjectRef<K, V> next = head.timerNext;
+            head.timerNext = null;
+            head = next;
+         }
+      }
+      placed = 0;
+      cancellations.set(0);
+   }
+
+   /**
+    * Moves the wheel to the given time, this method must always be called by the same thread.
+    *
+    * @param now the current time in milliseconds
+    * @return the list of entries that expired and have not been canceled
+    */
+   synchronized ArrayList<ObjectRef<K, V>> advance(long now)
+   {
+      ArrayList<ObjectRef<K, V>> expired = new ArrayList<ObjectRef<K, V>>();
+      if (cancellations.get() > placed / 2 + WHEEL_SIZE)
+      {
+         sweep();
+      }
+      ObjectRef<K, V> ref;
+      while ((ref = scheduled.poll()) != null)
+      {
+         if (!ref.cancelled)
+         {
+            place(ref, expired);
+         }
+      }
+      long targetTick = now / tickDuration;
+      while (currentTick < targetTick)
+      {
+         currentTick++;
+         for (int level = 1; level < LEVELS; level++)
+         {
+            if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0)
+            {
+               break;
+            }
+            int slot = (int)((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            reschedule(level * WHEEL_SIZE + slot, expired);
+         }
+         if ((currentTick & ((1L << (WHEEL_BITS * LEVELS)) - 1)) == 0)
+         {
+            reschedule(OVERFLOW, expired);
+         }
+         reschedule((int)(currentTick & WHEEL_MASK), expired);
+      }
+      return expired;
+   }
+
+   /**
+    * Empties the given bucket and places again its entries according to the current tick
+    */
+   private void reschedule(int bucket, ArrayList<ObjectRef<K, V>> expired)
+   {
+      ObjectRef<K, V> head = buckets[bucket];
+      buckets[bucket] = null;
+      while (head != null)
+      {
+         ObjectRef<K, V> next = head.timerNext;
+         head.timerNext = null;
+         placed--;
+         if (!head.cancelled)
+         {
+            place(head, expired);
+         }
+         head = next;
+      }
+   }
+
+   /**
+    * Unlinks the canceled entries from all the buckets so that their values are not retained until
+    * their deadline
+    */
+   private void sweep()
+   {
+      cancellations.set(0);
+      for (int i = 0; i < buckets.length; i++)
+      {
+         ObjectRef<K, V> previous = null;
+         ObjectRef<K, V> ref = buckets[i];
+         while (ref != null)
+         {
+            ObjectRef<K, V> next = ref.timerNext;
+            if (ref.cancelled)
+            {
+               ref.timerNext = null;
+               placed--;
+               if (previous == null)
+               {
+                  buckets[i] = next;
+               }
+               else
+               {
+                  previous.timerNext = next;
+               }
+            }
+            else
+            {
+               previous = ref;
+            }
+            ref = next;
+         }
+      }
+   }
+
+   private void place(ObjectRef<K, V> ref, ArrayList<ObjectRef<K, V>> expired)
+   {
+      // We wait at least one full tick after the expiration time
+      long deadline = ref.expirationTime / tickDuration + 1;
+      if (deadline <= currentTick)
+      {
+         expired.add(ref);
+         return;
+      }
+      // The level is given by the highest group of bits that differs from the current tick
+      int level = (63 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / WHEEL_BITS;
+      int bucket;
+      if (level >= LEVELS)
+      {
+         bucket = OVERFLOW;
+      }
+      else
+      {
+         bucket = level * WHEEL_SIZE + (int)((deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+      }
+      ref.timerNext = buckets[bucket];
+      buckets[bucket] = ref;
+      placed++;
+   }
+
+   /**
+    * @return the amount of entries placed into the buckets, including the canceled ones that have not
+    *         been dropped yet, for testing purpose
+    */
+   synchronized int size()
+   {
+      int size = 0;
+      for (ObjectRef<K, V> head : buckets)
+      {
+         for (ObjectRef<K, V> ref = head; ref != null; ref = ref.timerNext)
+         {
+            size++;
+         }
+      }
+      return size;
+   }
+}
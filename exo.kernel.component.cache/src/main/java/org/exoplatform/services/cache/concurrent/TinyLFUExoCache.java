@@ -0,0 +1,860 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheStatistics;
+import org.exoplatform.services.cache.CachedObjectSelector;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
+import org.exoplatform.services.log.Log;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link org.exoplatform.services.cache.ExoCache} implementation based on the W-TinyLFU policy.
+ * A new entry first goes into a small LRU admission window, when it leaves the window it competes with
+ * the least recently used entry of the main space and only the one with the highest estimated frequency
+ * is kept. The main space is a segmented LRU made of a probation and a protected segment. The frequencies
+ * are estimated thanks to a {@link FrequencySketch}, which makes the cache resistant to scan-like
+ * workloads that would flush the hot entries of a FIFO cache.
+ * <p>
+ * The lookups are lock-free, the policy is updated under a lock that readers only try to acquire, so
+ * under heavy contention some accesses are not recorded which is acceptable for an approximated policy.
+ * It can be selected for a given cache by setting the implementation of the
+ * {@link org.exoplatform.services.cache.ExoCacheConfig} to the full qualified name of this class.
+ *
+ * @version $Id$
+ */
+public class TinyLFUExoCache<K extends Serializable, V> implements ExoCache<K, V>
+{
+
+   private static final int DEFAULT_MAX_SIZE = 50;
+
+   /**
+    * The percentage of the max size allocated to the admission window
+    */
+   private static final int WINDOW_PERCENTAGE = 1;
+
+   /**
+    * The percentage of the main space allocated to the protected segment
+    */
+   private static final int PROTECTED_PERCENTAGE = 80;
+
+   private final Log log;
+
+   private volatile long liveTimeMillis;
+
+   private volatile int maxSize;
+
+   private final CopyOnWriteArrayList<ListenerContext<K, V>> listeners;
+
+   private final ConcurrentHashMap<K, Node<K, V>> map;
+
+   /**
+    * The lock that guards the policy, the map is only modified while holding it
+    */
+   private final Lock policyLock = new ReentrantLock();
+
+   private final FrequencySketch sketch;
+
+   private final AccessQueue<K, V> window = new AccessQueue<K, V>(Node.WINDOW);
+
+   private final AccessQueue<K, V> probation = new AccessQueue<K, V>(Node.PROBATION);
+
+   private final AccessQueue<K, V> protectedSegment = new AccessQueue<K, V>(Node.PROTECTED);
+
+   private int windowMaxSize;
+
+   private int protectedMaxSize;
+
+   private final CacheStatistics statistics = new CacheStatistics(this);
+
+   private String label;
+
+   private String name;
+
+   private boolean logEnabled = false;
+
+   private final ConcurrentLoader<K, V> loader = new ConcurrentLoader<K, V>(this);
+
+   public TinyLFUExoCache()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+   public TinyLFUExoCache(int maxSize)
+   {
+      this(null, maxSize);
+   }
+
+   public TinyLFUExoCache(String name, int maxSize)
+   {
+      this(name, maxSize, null);
+   }
+
+   public TinyLFUExoCache(String name, int maxSize, Log log)
+   {
+      this.name = name;
+      this.log = log;
+      this.liveTimeMillis = -1;
+      this.listeners = new CopyOnWriteArrayList<ListenerContext<K, V>>();
+      this.map = new ConcurrentHashMap<K, Node<K, V>>();
+      this.sketch = new FrequencySketch(maxSize);
+      this.maxSize = maxSize;
+      computeMaxSizes(maxSize);
+   }
+
+   private void computeMaxSizes(int max)
+   {
+      if (max <= 0)
+      {
+         windowMaxSize = 0;
+         protectedMaxSize = 0;
+      }
+      else
+      {
+         windowMaxSize = Math.max(1, (int)((long)max * WINDOW_PERCENTAGE / 100));
+         protectedMaxSize = (int)((long)(max - windowMaxSize) * PROTECTED_PERCENTAGE / 100);
+      }
+   }
+
+   public void assertConsistent()
+   {
+      policyLock.lock();
+      try
+      {
+         int queueSize = window.size + probation.size + protectedSegment.size;
+         int mapSize = map.size();
+         if (queueSize != mapSize)
+         {
+            throw new AssertionError("The map size is " + mapSize + " is different from the queue size "
+               + queueSize);
+         }
+      }
+      finally
+      {
+         policyLock.unlock();
+      }
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public void setName(String s)
+   {
+      name = s;
+   }
+
+   public String getLabel()
+   {
+      if (label == null)
+      {
+         if (name.length() > 30)
+         {
+            String shortLabel = name.substring(name.lastIndexOf(".") + 1);
+            setLabel(shortLabel);
+            return shortLabel;
+         }
+         return name;
+      }
+      return label;
+   }
+
+   public void setLabel(String name)
+   {
+      label = name;
+   }
+
+   public long getLiveTime()
+   {
+      long tmp = getLiveTimeMillis();
+      return tmp == -1 ? -1 : tmp / 1000;
+   }
+
+   public void setLiveTime(long period)
+   {
+      setLiveTimeMillis(period * 1000);
+   }
+
+   public long getLiveTimeMillis()
+   {
+      return liveTimeMillis;
+   }
+
+   public void setLiveTimeMillis(long liveTimeMillis)
+   {
+      if (liveTimeMillis < 0)
+      {
+         liveTimeMillis = -1;
+      }
+      this.liveTimeMillis = liveTimeMillis;
+   }
+
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public void setMaxSize(int max)
+   {
+      List<Node<K, V>> evicted;
+      policyLock.lock();
+      try
+      {
+         this.maxSize = max;
+         computeMaxSizes(max);
+         sketch.ensureCapacity(max);
+         while (protectedSegment.size > protectedMaxSize)
+         {
+            demote(protectedSegment.first());
+         }
+         evicted = evict();
+      }
+      finally
+      {
+         policyLock.unlock();
+      }
+      onEvict(evicted);
+   }
+
+   public V get(Serializable name)
+   {
+      if (name == null)
+      {
+         return null;
+      }
+      long start = statistics.startTimer();
+      V value = doGet(name);
+      statistics.onGet(start);
+      return value;
+   }
+
+   private V doGet(Serializable name)
+   {
+      Node<K, V> node = map.get(name);
+      if (node == null)
+      {
+         statistics.onMiss();
+         recordAccess(name, null);
+         return null;
+      }
+      Content<V> content = node.content;
+      V value = content.value;
+      if (content.isValid())
+      {
+         statistics.onHit();
+         recordAccess(name, node);
+         onGet(node.key, value);
+         return value;
+      }
+      statistics.onMiss();
+      boolean removed;
+      policyLock.lock();
+      try
+      {
+         removed = map.remove(name, node);
+         if (removed)
+         {
+            unlink(node);
+         }
+      }
+      finally
+      {
+         policyLock.unlock();
+      }
+      if (removed)
+      {
+         statistics.onExpiration();
+         onExpire(node.key, value);
+      }
+      return null;
+   }
+
+   /**
+    * Records an access to the given key, if the lock is held by another thread the access is simply
+    * ignored in order to keep the lookups non blocking.
+    */
+   private void recordAccess(Serializable key, Node<K, V> node)
+   {
+      if (policyLock.tryLock())
+      {
+         try
+         {
+            sketch.increment(key);
+            if (node != null)
+            {
+               onHit(node);
+            }
+         }
+         finally
+         {
+            policyLock.unlock();
+         }
+      }
+   }
+
+   public void put(K name, V obj)
+   {
+      if (name == null)
+      {
+         throw new IllegalArgumentException("No null cache key accepted");
+      }
+      if (liveTimeMillis != 0)
+      {
+         long start = statistics.startTimer();
+         long expirationTime = liveTimeMillis > 0 ? System.currentTimeMillis() + liveTimeMillis : Long.MAX_VALUE;
+         put(expirationTime, name, obj);
+         statistics.onPut(start);
+      }
+   }
+
+   private void put(long expirationTime, K name, V obj)
+   {
+      List<Node<K, V>> evicted = null;
+      policyLock.lock();
+      try
+      {
+         sketch.increment(name);
+         Node<K, V> node = map.get(name);
+         if (node == null)
+         {
+            node = new Node<K, V>(name, obj, expirationTime);
+            map.put(name, node);
+            window.addLast(node);
+            evicted = evict();
+         }
+         else
+         {
+            node.content = new Content<V>(obj, expirationTime);
+            onHit(node);
+         }
+      }
+      finally
+      {
+         policyLock.unlock();
+      }
+      onEvict(evicted);
+      onPut(name, obj);
+   }
+
+   public void putMap(Map<? extends K, ? extends V> objs)
+   {
+      if (objs == null)
+      {
+         throw new IllegalArgumentException("No null map accepted");
+      }
+      long expirationTime = liveTimeMillis > 0 ? System.currentTimeMillis() + liveTimeMillis : Long.MAX_VALUE;
+      for (Serializable name : objs.keySet())
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
+      {
+         put(expirationTime, entry.getKey(), entry.getValue());
+      }
+   }
+
+   public Map<K, V> getMap(Collection<? extends K> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         V value = get(name);
+         if (value != null)
+         {
+            result.put(name, value);
+         }
+      }
+      return result;
+   }
+
+   public <C> V computeIfAbsent(K name, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(name, loader, context);
+   }
+
+   public V remove(Serializable name)
+   {
+      if (name == null)
+      {
+         throw new IllegalArgumentException("No null cache key accepted");
+      }
+      Node<K, V> node;
+      policyLock.lock();
+      try
+      {
+         node = map.remove(name);
+         if (node != null)
+         {
+            unlink(node);
+         }
+      }
+      finally
+      {
+         policyLock.unlock();
+      }
+      if (node == null)
+      {
+         return null;
+      }
+      Content<V> content = node.content;
+      V object = content.value;
+      if (content.isValid())
+      {
+         onRemove(node.key, object);
+         return object;
+      }
+      else
+      {
+         statistics.onExpiration();
+         onExpire(node.key, object);
+         return null;
+      }
+   }
+
+   public void removeAll(Collection<? extends Serializable> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      for (Serializable name : names)
+      {
+         remove(name);
+      }
+   }
+
+   public List<? extends V> getCachedObjects()
+   {
+      LinkedList<V> list = new LinkedList<V>();
+      for (Node<K, V> node : map.values())
+      {
+         Content<V> content = node.content;
+         if (content.isValid())
+         {
+            list.add(content.value);
+         }
+      }
+      return list;
+   }
+
+   public List<? extends V> removeCachedObjects()
+   {
+      List<? extends V> list = getCachedObjects();
+      clearCache();
+      return list;
+   }
+
+   public void clearCache()
+   {
+      policyLock.lock();
+      try
+      {
+         map.clear();
+         window.clear();
+         probation.clear();
+         protectedSegment.clear();
+      }
+      finally
+      {
+         policyLock.unlock();
+      }
+      onClearCache();
+   }
+
+   public void select(CachedObjectSelector<? super K, ? super V> selector) throws Exception
+   {
+      if (selector == null)
+      {
+         throw new IllegalArgumentException("No null selector");
+      }
+      for (Map.Entry<K, Node<K, V>> entry : map.entrySet())
+      {
+         K key = entry.getKey();
+         Content<V> info = entry.getValue().content;
+         if (selector.select(key, info))
+         {
+            selector.onSelect(this, key, info);
+         }
+      }
+   }
+
+   public int getCacheSize()
+   {
+      return map.size();
+   }
+
+   public int getCacheHit()
+   {
+      return statistics.getCacheHit();
+   }
+
+   public int getCacheMiss()
+   {
+      return statistics.getCacheMiss();
+   }
+
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
+   }
+
+   public synchronized void addCacheListener(CacheListener<? super K, ? super V> listener)
+   {
+      if (listener == null)
+      {
+         throw new IllegalArgumentException("The listener cannot be null");
+      }
+      listeners.add(new ListenerContext<K, V>(listener, this));
+   }
+
+   public boolean isLogEnabled()
+   {
+      return logEnabled;
+   }
+
+   public void setLogEnabled(boolean logEnabled)
+   {
+      this.logEnabled = logEnabled;
+   }
+
+   // Policy, all the methods below must be called while holding the policy lock
+
+   /**
+    * Reorders the queues after a hit
+    */
+   private void onHit(Node<K, V> node)
+   {
+      switch (node.queue)
+      {
+         case Node.WINDOW :
+            window.moveToLast(node);
+            break;
+         case Node.PROBATION :
+            probation.remove(node);
+            protectedSegment.addLast(node);
+            while (protectedSegment.size > protectedMaxSize)
+            {
+               demote(protectedSegment.first());
+            }
+            break;
+         case Node.PROTECTED :
+            protectedSegment.moveToLast(node);
+            break;
+         default :
+            // The entry has been removed concurrently
+            break;
+      }
+   }
+
+   private void demote(Node<K, V> node)
+   {
+      protectedSegment.remove(node);
+      probation.addLast(node);
+   }
+
+   private void unlink(Node<K, V> node)
+   {
+      switch (node.queue)
+      {
+         case Node.WINDOW :
+            window.remove(node);
+            break;
+         case Node.PROBATION :
+            probation.remove(node);
+            break;
+         case Node.PROTECTED :
+            protectedSegment.remove(node);
+            break;
+         default :
+            break;
+      }
+   }
+
+   /**
+    * Moves the overflow of the admission window to the main space and evicts the entries
+    * that exceed the max size.
+    *
+    * @return the list of evicted entries or <code>null</code> if nothing has been evicted
+    */
+   private List<Node<K, V>> evict()
+   {
+      List<Node<K, V>> evicted = null;
+      int size = window.size + probation.size + protectedSegment.size;
+      while (window.size > windowMaxSize)
+      {
+         Node<K, V> candidate = window.first();
+         window.remove(candidate);
+         probation.addLast(candidate);
+         if (size > maxSize)
+         {
+            // The candidate must compete with the victim of the main space
+            Node<K, V> victim = probation.first();
+            if (victim == candidate)
+            {
+               victim = protectedSegment.first();
+            }
+            Node<K, V> loser =
+               victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key) ? candidate : victim;
+            evicted = evict(loser, evicted);
+            size--;
+         }
+      }
+      while (size > maxSize)
+      {
+         Node<K, V> victim = probation.first();
+         if (victim == null)
+         {
+            victim = protectedSegment.first();
+            if (victim == null)
+            {
+               victim = window.first();
+            }
+         }
+         evicted = evict(victim, evicted);
+         size--;
+      }
+      return evicted;
+   }
+
+   private List<Node<K, V>> evict(Node<K, V> node, List<Node<K, V>> evicted)
+   {
+      unlink(node);
+      map.remove(node.key, node);
+      statistics.onEviction();
+      if (evicted == null)
+      {
+         evicted = new ArrayList<Node<K, V>>();
+      }
+      evicted.add(node);
+      return evicted;
+   }
+
+   //
+
+   private void onEvict(List<Node<K, V>> evicted)
+   {
+      if (evicted != null)
+      {
+         for (Node<K, V> node : evicted)
+         {
+            onExpire(node.key, node.content.value);
+         }
+      }
+   }
+
+   void onExpire(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onExpire(key, obj);
+   }
+
+   void onRemove(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onRemove(key, obj);
+   }
+
+   void onPut(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onPut(key, obj);
+   }
+
+   void onGet(K key, V obj)
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onGet(key, obj);
+   }
+
+   void onClearCache()
+   {
+      if (!listeners.isEmpty())
+         for (ListenerContext<K, V> context : listeners)
+            context.onClearCache();
+   }
+
+   /**
+    * An entry of the cache, it is linked into the queue of the segment it belongs to.
+    */
+   private static class Node<K, V>
+   {
+
+      static final int NONE = 0;
+
+      static final int WINDOW = 1;
+
+      static final int PROBATION = 2;
+
+      static final int PROTECTED = 3;
+
+      final K key;
+
+      volatile Content<V> content;
+
+      int queue;
+
+      Node<K, V> previous;
+
+      Node<K, V> next;
+
+      Node(K key, V value, long expirationTime)
+      {
+         this.key = key;
+         this.content = new Content<V>(value, expirationTime);
+      }
+   }
+
+   /**
+    * The value of an entry with its expiration time, always replaced as a whole so that a reader
+    * never sees the value of one put with the expiration time of another.
+    */
+   private static class Content<V> implements ObjectCacheInfo<V>
+   {
+
+      final V value;
+
+      final long expirationTime;
+
+      Content(V value, long expirationTime)
+      {
+         this.value = value;
+         this.expirationTime = expirationTime;
+      }
+
+      boolean isValid()
+      {
+         return System.currentTimeMillis() < expirationTime;
+      }
+
+      public long getExpireTime()
+      {
+         return expirationTime;
+      }
+
+      public V get()
+      {
+         return value;
+      }
+   }
+
+   /**
+    * A doubly linked list ordered from the least recently used entry to the most recently used one.
+    */
+   private static class AccessQueue<K, V>
+   {
+
+      private final int type;
+
+      private final Node<K, V> head;
+
+      int size;
+
+      AccessQueue(int type)
+      {
+         this.type = type;
+         this.head = new Node<K, V>(null, null, Long.MAX_VALUE);
+         head.previous = head;
+         head.next = head;
+      }
+
+      Node<K, V> first()
+      {
+         return head.next == head ? null : head.next;
+      }
+
+      void addLast(Node<K, V> node)
+      {
+         Node<K, V> last = head.previous;
+         node.previous = last;
+         node.next = head;
+         last.next = node;
+         head.previous = node;
+         node.queue = type;
+         size++;
+      }
+
+      void remove(Node<K, V> node)
+      {
+         node.previous.next = node.next;
+         node.next.previous = node.previous;
+         node.previous = null;
+         node.next = null;
+         node.queue = Node.NONE;
+         size--;
+      }
+
+      void moveToLast(Node<K, V> node)
+      {
+         if (head.previous != node)
+         {
+            remove(node);
+            addLast(node);
+         }
+      }
+
+      void clear()
+      {
+         for (Node<K, V> node = head.next; node != head;)
+         {
+            Node<K, V> next = node.next;
+            node.previous = null;
+            node.next = null;
+            node.queue = Node.NONE;
+            node = next;
+         }
+         head.previous = head;
+         head.next = head;
+         size = 0;
+      }
+   }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An asynchronous version of the {@link FutureCache}: the missing resources are loaded by an {@link Executor}
+ * and the callers get a {@link Future} instead of being blocked until the resource is loaded. Like in the
+ * {@link FutureCache}, the same resource is never loaded twice at the same time.
+ * <p>
+ * It also supports:
+ * <ul>
+ * <li>The refresh-ahead: once a value has been loaded for more than the <i>refreshAfter</i> delay, the next
+ * lookup triggers a reload in background while the current value keeps being returned until the new value
+ * is available.</li>
+ * <li>The negative caching: a resource that could not be found is remembered during the <i>negativeLiveTime</i>
+ * delay instead of being reloaded at each lookup.</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @param <K> the key type parameter
+ * @param <V> the value type parameter
+ * @param <C> the context type parameter
+ */
+public abstract class AsyncFutureCache<K, V, C>
+{
+
+   /** . */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.AsyncFutureCache");
+
+   /** . */
+   private final Loader<K, V, C> loader;
+
+   /** . */
+   private final Executor executor;
+
+   /** . */
+   private final ConcurrentMap<K, FutureTask<V>> futureEntries;
+
+   /**
+    * The delay in milliseconds after which a value is refreshed in background, a value lower or equal to 0
+    * disables the refresh-ahead
+    */
+   private final long refreshAfter;
+
+   /**
+    * The delay in milliseconds during which a resource that could not be found is not reloaded, a value lower
+    * or equal to 0 disables the negative caching
+    */
+   private final long negativeLiveTime;
+
+   public AsyncFutureCache(Loader<K, V, C> loader, Executor executor)
+   {
+      this(loader, executor, 0, 0);
+   }
+
+   /**
+    * @param loader the loader to use to retrieve the missing resources
+    * @param executor the executor in which the resources are loaded
+    * @param refreshAfter the delay in milliseconds after which a value is refreshed in background,
+    * 0 to disable the refresh-ahead
+    * @param negativeLiveTime the delay in milliseconds during which a resource that could not be found is
+    * not reloaded, 0 to disable the negative caching
+    */
+   public AsyncFutureCache(Loader<K, V, C> loader, Executor executor, long refreshAfter, long negativeLiveTime)
+   {
+      if (loader == null)
+      {
+         throw new IllegalArgumentException("The loader cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("The executor cannot be null");
+      }
+      this.loader = loader;
+      this.executor = executor;
+      this.futureEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+      this.refreshAfter = refreshAfter;
+      this.negativeLiveTime = negativeLiveTime;
+   }
+
+   protected abstract Entry<V> get(K key);
+
+   protected abstract void put(K key, Entry<V> entry);
+
+   protected abstract void remove(K key);
+
+   public long getRefreshAfter()
+   {
+      return refreshAfter;
+   }
+
+   public long getNegativeLiveTime()
+   {
+      return negativeLiveTime;
+   }
+
+   /**
+    * Performs a cache lookup for the specified key within the specified context. If the value is not available
+    * yet, it is loaded in background and the returned future is completed once the value is loaded. When the
+    * value cannot be loaded, the future provides the value null or the exception thrown by the loader.
+    * The returned future is shared with the other callers looking up the same key so it cannot be cancelled.
+    *
+    * @param context the context in which the resource is accessed
+    * @param key the key identifying the resource
+    * @return the future value
+    */
+   public final Future<V> getAsync(final C context, final K key)
+   {
+      Entry<V> entry = get(key);
+      if (entry != null)
+      {
+         long age = System.currentTimeMillis() - entry.creationTime;
+         if (entry.value != null)
+         {
+            if (refreshAfter > 0 && age >= refreshAfter)
+            {
+               // The stale value is returned while the new value is loaded
+               load(context, key, entry);
+            }
+            return new CompletedFuture<V>(entry.value);
+         }
+         else if (negativeLiveTime > 0 && age < negativeLiveTime)
+         {
+            return new CompletedFuture<V>(null);
+         }
+      }
+      return load(context, key, null);
+   }
+
+   /**
+    * Performs a cache lookup for the specified key within the specified context and waits for the value if it
+    * needs to be loaded. Like in {@link FutureCache#get(Object, Object)}, when the value cannot be loaded the
+    * value null is returned.
+    *
+    * @param context the context in which the resource is accessed
+    * @param key the key identifying the resource
+    * @return the value
+    */
+   public final V get(C context, K key)
+   {
+      try
+      {
+         return getAsync(context, key).get();
+      }
+      catch (ExecutionException e)
+      {
+         LOG.error("Computing of resource " + key + " threw an exception", e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         LOG.error("Retrieval of resource " + key + " has been interrupted", e);
+      }
+      return null;
+   }
+
+   /**
+    * Loads the value in the executor unless it is already being loaded
+    *
+    * @param stale the entry to refresh or <code>null</code> if there is no value to refresh
+    */
+   private Future<V> load(final C context, final K key, final Entry<V> stale)
+   {
+      LoadingTask task = new LoadingTask(key, new Callable<V>()
+      {
+         public V call() throws Exception
+         {
+            V value;
+            try
+            {
+               value = loader.retrieve(context, key);
+            }
+            catch (Exception e)
+            {
+               if (stale != null)
+               {
+                  // We keep on using the stale value but we wait for another refreshAfter delay
+                  // before the next attempt
+                  LOG.warn("The refresh of the resource " + key + " failed", e);
+                  put(key, new Entry<V>(stale.value));
+               }
+               throw e;
+            }
+            if (value != null || negativeLiveTime > 0)
+            {
+               put(key, new Entry<V>(value));
+            }
+            else if (stale != null)
+            {
+               // The resource doesn't exist anymore
+               remove(key);
+            }
+            return value;
+         }
+      });
+      FutureTask<V> phantom;
+      while ((phantom = futureEntries.putIfAbsent(key, task)) != null)
+      {
+         if (!phantom.isDone())
+         {
+            // Use the future that could have been inserted by another thread
+            return new SharedFuture<V>(phantom);
+         }
+         // The waiters of a task are released before it removes itself so it could still be there
+         futureEntries.remove(key, phantom);
+      }
+      try
+      {
+         executor.execute(task);
+      }
+      catch (RejectedExecutionException e)
+      {
+         // The executor is saturated, the caller loads the value itself which slows down the callers
+         task.run();
+      }
+      return new SharedFuture<V>(task);
+   }
+
+   /**
+    * The task that loads a value, it removes itself from the future entries once done.
+    */
+   private class LoadingTask extends FutureTask<V>
+   {
+      /** . */
+      private final K key;
+
+      LoadingTask(K key, Callable<V> callable)
+      {
+         super(callable);
+         this.key = key;
+      }
+
+      @Override
+      protected void done()
+      {
+         futureEntries.remove(key, this);
+      }
+   }
+
+   /**
+    * The cached value with its creation time, a value null means that the resource could not be found.
+    */
+   public static final class Entry<V> implements Serializable
+   {
+
+      /**
+       * The serial version UID
+       */
+      private static final long serialVersionUID = -4046426325432066405L;
+
+      /** . */
+      private final V value;
+
+      /** . */
+      private final long creationTime;
+
+      public Entry(V value)
+      {
+         this(value, System.currentTimeMillis());
+      }
+
+      public Entry(V value, long creationTime)
+      {
+         this.value = value;
+         this.creationTime = creationTime;
+      }
+
+      public V getValue()
+      {
+         return value;
+      }
+
+      public long getCreationTime()
+      {
+         return creationTime;
+      }
+   }
+
+   /**
+    * A view of a loading task that is shared between several callers, none of them can cancel it.
+    */
+   private static class SharedFuture<V> implements Future<V>
+   {
+      /** . */
+      private final Future<V> task;
+
+      SharedFuture(Future<V> task)
+      {
+         this.task = task;
+      }
+
+      public boolean cancel(boolean mayInterruptIfRunning)
+      {
+         return false;
+      }
+
+      public boolean isCancelled()
+      {
+         return false;
+      }
+
+      public boolean isDone()
+      {
+         return task.isDone();
+      }
+
+      public V get() throws InterruptedException, ExecutionException
+      {
+         return task.get();
+      }
+
+      public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+      {
+         return task.get(timeout, unit);
+      }
+   }
+
+   /**
+    * A future whose value is already known.
+    */
+   private static class CompletedFuture<V> implements Future<V>
+   {
+      /** . */
+      private final V value;
+
+      CompletedFuture(V value)
+      {
+         this.value = value;
+      }
+
+      public boolean cancel(boolean mayInterruptIfRunning)
+      {
+         return false;
+      }
+
+      public boolean isCancelled()
+      {
+         return false;
+      }
+
+      public boolean isDone()
+      {
+         return true;
+      }
+
+      public V get()
+      {
+         return value;
+      }
+
+      public V get(long timeout, TimeUnit unit)
+      {
+         return value;
+      }
+   }
+}
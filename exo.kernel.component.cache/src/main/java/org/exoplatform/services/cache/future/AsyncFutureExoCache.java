@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import org.exoplatform.services.cache.ExoCache;
+
+import java.io.Serializable;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link AsyncFutureCache} backed by an {@link ExoCache}. The cache stores the values wrapped into an
+ * {@link AsyncFutureCache.Entry} in order to know their creation time and to be able to store the
+ * resources that could not be found.
+ *
+ * @version $Id$
+ */
+public class AsyncFutureExoCache<K extends Serializable, V, C> extends AsyncFutureCache<K, V, C>
+{
+
+   /** . */
+   private final ExoCache<K, Entry<V>> cache;
+
+   public AsyncFutureExoCache(Loader<K, V, C> loader, ExoCache<K, Entry<V>> cache, Executor executor)
+   {
+      super(loader, executor);
+
+      //
+      this.cache = cache;
+   }
+
+   public AsyncFutureExoCache(Loader<K, V, C> loader, ExoCache<K, Entry<V>> cache, Executor executor,
+      long refreshAfter, long negativeLiveTime)
+   {
+      super(loader, executor, refreshAfter, negativeLiveTime);
+
+      //
+      this.cache = cache;
+   }
+
+   @Override
+   protected Entry<V> get(K key)
+   {
+      return cache.get(key);
+   }
+
+   @Override
+   protected void put(K key, Entry<V> entry)
+   {
+      cache.put(key, entry);
+   }
+
+   @Override
+   protected void remove(K key)
+   {
+      cache.remove(key);
+   }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A loader that gathers the keys requested by several threads into a single call to a {@link BatchLoader}.
+ * The first thread that requests a key opens a batch and waits until the batch is full or the time window is
+ * over, the keys requested meanwhile by other threads within the same context are added to the batch. Then
+ * it loads the whole batch and each thread gets the value of its own key.
+ * <p>
+ * It is meant to be used as loader of a {@link FutureCache}, which already makes sure that a key is never
+ * requested twice at the same time. Note that the threads may wait up to the time window before the batch
+ * is loaded, so the time window must remain small compared to the time needed to load a batch.
+ *
+ * @version $Id$
+ * @param <K> the key type parameter
+ * @param <V> the value type parameter
+ * @param <C> the context type parameter
+ */
+public class CoalescingLoader<K, V, C> implements BatchLoader<K, V, C>
+{
+
+   /**
+    * The key used for the batches of the context null
+    */
+   private static final Object NULL_CONTEXT = new Object();
+
+   /** . */
+   private final BatchLoader<K, V, C> loader;
+
+   /** . */
+   private final long window;
+
+   /** . */
+   private final int maxBatchSize;
+
+   /**
+    * The batches that still accept new keys per context
+    */
+   private final ConcurrentMap<Object, Batch> openBatches = new ConcurrentHashMap<Object, Batch>();
+
+   /**
+    * @param loader the loader used to load the batches
+    * @param window the maximum amount of milliseconds to wait for other keys before loading a batch
+    * @param maxBatchSize the maximum amount of keys in a batch, a full batch is loaded immediately
+    */
+   public CoalescingLoader(BatchLoader<K, V, C> loader, long window, int maxBatchSize)
+   {
+      if (loader == null)
+      {
+         throw new IllegalArgumentException("The loader cannot be null");
+      }
+      if (window < 0)
+      {
+         throw new IllegalArgumentException("The time window cannot be negative");
+      }
+      if (maxBatchSize <= 0)
+      {
+         throw new IllegalArgumentException("The maximum size of a batch must be greater than 0");
+      }
+      this.loader = loader;
+      this.window = window;
+      this.maxBatchSize = maxBatchSize;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public V retrieve(C context, K key) throws Exception
+   {
+      Object contextKey = context == null ? NULL_CONTEXT : context;
+      while (true)
+      {
+         Batch batch = openBatches.get(contextKey);
+         if (batch == null)
+         {
+            batch = new Batch(context);
+            batch.add(key);
+            Batch existing = openBatches.putIfAbsent(contextKey, batch);
+            if (existing == null)
+            {
+               // We opened the batch so we are in charge of loading it
+               return batch.load(contextKey, key);
+            }
+            batch = existing;
+         }
+         if (batch.add(key))
+         {
+            return batch.get(key);
+         }
+         // The batch has been closed meanwhile
+         openBatches.remove(contextKey, batch);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> retrieveAll(C context, Set<K> keys) throws Exception
+   {
+      return loader.retrieveAll(context, keys);
+   }
+
+   private class Batch
+   {
+      /** . */
+      private final C context;
+
+      /** . */
+      private final Set<K> keys = new LinkedHashSet<K>();
+
+      /** . */
+      private final CountDownLatch done = new CountDownLatch(1);
+
+      /** . */
+      private boolean closed;
+
+      /** . */
+      private Map<K, V> values;
+
+      /** . */
+      private Exception failure;
+
+      Batch(C context)
+      {
+         this.context = context;
+      }
+
+      /**
+       * Adds the given key to the batch unless it is closed
+       */
+      synchronized boolean add(K key)
+      {
+         if (closed)
+         {
+            return false;
+         }
+         keys.add(key);
+         if (keys.size() >= maxBatchSize)
+         {
+            closed = true;
+            notifyAll();
+         }
+         return true;
+      }
+
+      /**
+       * Waits for the other keys, loads the batch and returns the value of the given key
+       */
+      V load(Object contextKey, K key) throws Exception
+      {
+         Set<K> batchKeys;
+         synchronized (this)
+         {
+            long deadline = System.currentTimeMillis() + window;
+            long remaining = window;
+            try
+            {
+               while (!closed && remaining > 0)
+               {
+                  wait(remaining);
+                  remaining = deadline - System.currentTimeMillis();
+               }
+            }
+            catch (InterruptedException e)
+            {
+               // The other threads of the batch wait for us, so we load the batch anyway
+               Thread.currentThread().interrupt();
+            }
+            closed = true;
+            batchKeys = new LinkedHashSet<K>(keys);
+         }
+         openBatches.remove(contextKey, this);
+         try
+         {
+            values = loader.retrieveAll(context, batchKeys);
+         }
+         catch (Exception e)
+         {
+            failure = e;
+         }
+         finally
+         {
+            done.countDown();
+         }
+         return getValue(key);
+      }
+
+      /**
+       * Waits for the batch to be loaded and returns the value of the given key
+       */
+      V get(K key) throws Exception
+      {
+         done.await();
+         return getValue(key);
+      }
+
+      private V getValue(K key) throws Exception
+      {
+         if (failure != null)
+         {
+            throw failure;
+         }
+         else if (values == null)
+         {
+            throw new IllegalStateException("The batch could not be loaded");
+         }
+         return values.get(key);
+      }
+   }
+}
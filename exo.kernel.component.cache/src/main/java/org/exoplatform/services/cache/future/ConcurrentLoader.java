@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import org.exoplatform.services.cache.CacheStatistics;
+import org.exoplatform.services.cache.ExoCache;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Implements {@link ExoCache#computeIfAbsent(Serializable, Loader, Object)} on top of an {@link ExoCache}.
+ * Like the {@link FutureCache}, it prevents the loading of the same key twice at the same time, but unlike
+ * it the loader is provided at each call and the exceptions of the loader are propagated to the caller.
+ * <p>
+ * The implementations that can put a value atomically only if it is absent should override
+ * {@link #putIfAbsent(Serializable, Object)}.
+ *
+ * @version $Id$
+ * @param <K> the key type parameter
+ * @param <V> the value type parameter
+ */
+public class ConcurrentLoader<K extends Serializable, V>
+{
+
+   /** . */
+   private final ExoCache<K, V> cache;
+
+   /** . */
+   private final ConcurrentMap<K, FutureTask<V>> futureEntries;
+
+   public ConcurrentLoader(ExoCache<K, V> cache)
+   {
+      this.cache = cache;
+      this.futureEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+   }
+
+   /**
+    * Puts the loaded value into the cache.
+    *
+    * @param key the key
+    * @param value the value that has been loaded
+    * @return the value to return to the caller, which is the value that was already in the cache if any
+    */
+   protected V putIfAbsent(K key, V value)
+   {
+      cache.put(key, value);
+      return value;
+   }
+
+   /**
+    * Calls the loader and records the duration of the load in the statistics of the cache
+    */
+   private <C> V load(K key, Loader<K, V, C> loader, C context) throws Exception
+   {
+      CacheStatistics statistics = cache.getStatistics();
+      long start = System.nanoTime();
+      V value;
+      try
+      {
+         value = loader.retrieve(context, key);
+      }
+      catch (Exception e)
+      {
+         if (statistics != null)
+         {
+            statistics.onLoadFailure();
+         }
+         throw e;
+      }
+      if (statistics != null)
+      {
+         statistics.onLoad(System.nanoTime() - start);
+      }
+      return value;
+   }
+
+   /**
+    * @see ExoCache#computeIfAbsent(Serializable, Loader, Object)
+    */
+   public <C> V computeIfAbsent(final K key, final Loader<K, V, C> loader, final C context) throws Exception
+   {
+      if (key == null)
+      {
+         throw new IllegalArgumentException("No null cache key accepted");
+      }
+      if (loader == null)
+      {
+         throw new IllegalArgumentException("No null loader accepted");
+      }
+      V value = cache.get(key);
+      if (value != null)
+      {
+         return value;
+      }
+      FutureTask<V> future = new FutureTask<V>(new Callable<V>()
+      {
+         public V call() throws Exception
+         {
+            // The value could have been loaded since our first lookup
+            V value = cache.get(key);
+            if (value == null)
+            {
+               value = load(key, loader, context);
+               if (value != null)
+               {
+                  value = putIfAbsent(key, value);
+               }
+            }
+            return value;
+         }
+      });
+      FutureTask<V> phantom = futureEntries.putIfAbsent(key, future);
+      if (phantom != null)
+      {
+         // Someone else is loading the same key, we wait for its result
+         future = phantom;
+      }
+      else
+      {
+         try
+         {
+            future.run();
+         }
+         finally
+         {
+            futureEntries.remove(key, future);
+         }
+      }
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception)
+         {
+            throw (Exception)cause;
+         }
+         else if (cause instanceof Error)
+         {
+            throw (Error)cause;
+         }
+         throw e;
+      }
+   }
+}
@@ -21,6 +21,12 @@ package org.exoplatform.services.cache.future;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -145,4 +151,160 @@ public abstract class FutureCache<K, V, C>
       //
       return value;
    }
+
+   /**
+    * Perform a cache lookup for all the specified keys within the specified context. The missing values
+    * are loaded in a single call when the loader is a {@link BatchLoader}, the keys that are already being
+    * loaded by another thread are not loaded twice. The keys whose value cannot be loaded are not part of
+    * the returned map.
+    *
+    * @param context the context in which the resources are accessed
+    * @param keys the keys identifying the resources
+    * @return the values
+    */
+   public final Map<K, V> getAll(C context, Collection<? extends K> keys)
+   {
+      Map<K, V> result = new HashMap<K, V>();
+      Map<K, FutureTask<V>> ownFutures = new LinkedHashMap<K, FutureTask<V>>();
+      Map<K, FutureTask<V>> futures = new LinkedHashMap<K, FutureTask<V>>();
+      BatchResult batch = new BatchResult();
+      try
+      {
+         for (K key : keys)
+         {
+            if (result.containsKey(key) || futures.containsKey(key))
+            {
+               continue;
+            }
+            V value = get(key);
+            if (value != null)
+            {
+               result.put(key, value);
+               continue;
+            }
+            FutureTask<V> future = new FutureTask<V>(new BatchValue(batch, key));
+            FutureTask<V> phantom = futureEntries.putIfAbsent(key, future);
+            if (phantom == null)
+            {
+               ownFutures.put(key, future);
+            }
+            else
+            {
+               // Use the future that could have been inserted by another thread
+               future = phantom;
+            }
+            futures.put(key, future);
+         }
+         if (!ownFutures.isEmpty())
+         {
+            try
+            {
+               batch.values = retrieveAll(context, new LinkedHashSet<K>(ownFutures.keySet()));
+               for (Map.Entry<K, V> entry : batch.values.entrySet())
+               {
+                  if (entry.getValue() != null)
+                  {
+                     // Cache it, it is made available to other threads (unless someone removes it)
+                     put(entry.getKey(), entry.getValue());
+                  }
+               }
+            }
+            catch (Exception e)
+            {
+               batch.failure = e;
+            }
+         }
+      }
+      finally
+      {
+         for (Map.Entry<K, FutureTask<V>> entry : ownFutures.entrySet())
+         {
+            // Release the threads waiting for our keys then clean up the per key map but only with our futures
+            entry.getValue().run();
+            futureEntries.remove(entry.getKey(), entry.getValue());
+         }
+      }
+      for (Map.Entry<K, FutureTask<V>> entry : futures.entrySet())
+      {
+         try
+         {
+            V value = entry.getValue().get();
+            if (value != null)
+            {
+               result.put(entry.getKey(), value);
+            }
+         }
+         catch (ExecutionException e)
+         {
+            LOG.error("Computing of resource " + entry.getKey() + " threw an exception", e.getCause());
+         }
+         catch (Exception e)
+         {
+            LOG.error("Retrieval of resource " + entry.getKey() + " threw an exception", e);
+         }
+      }
+      return result;
+   }
+
+   private Map<K, V> retrieveAll(C context, Set<K> keys) throws Exception
+   {
+      if (loader instanceof BatchLoader)
+      {
+         Map<K, V> values = ((BatchLoader<K, V, C>)loader).retrieveAll(context, keys);
+         return values == null ? new HashMap<K, V>() : values;
+      }
+      Map<K, V> values = new HashMap<K, V>();
+      for (K key : keys)
+      {
+         V value = loader.retrieve(context, key);
+         if (value != null)
+         {
+            values.put(key, value);
+         }
+      }
+      return values;
+   }
+
+   /**
+    * The result of the loading of several keys at once.
+    */
+   private class BatchResult
+   {
+      /** . */
+      Map<K, V> values;
+
+      /** . */
+      Exception failure;
+   }
+
+   /**
+    * Gives access to the value of a given key once the batch has been loaded.
+    */
+   private class BatchValue implements Callable<V>
+   {
+      /** . */
+      private final BatchResult batch;
+
+      /** . */
+      private final K key;
+
+      BatchValue(BatchResult batch, K key)
+      {
+         this.batch = batch;
+         this.key = key;
+      }
+
+      public V call() throws Exception
+      {
+         if (batch.failure != null)
+         {
+            throw batch.failure;
+         }
+         else if (batch.values == null)
+         {
+            throw new IllegalStateException("The resource " + key + " could not be loaded");
+         }
+         return batch.values.get(key);
+      }
+   }
 }
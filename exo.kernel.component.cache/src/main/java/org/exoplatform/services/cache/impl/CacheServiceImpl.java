@@ -30,6 +30,7 @@ import org.exoplatform.services.cache.ExoCacheFactory;
 import org.exoplatform.services.cache.ExoCacheInitException;
 import org.exoplatform.services.cache.SimpleExoCache;
 import org.exoplatform.services.cache.invalidation.InvalidationExoCache;
+import org.exoplatform.services.cache.concurrent.OffHeapExoCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
@@ -268,6 +269,10 @@ public class CacheServiceImpl implements CacheService
          simple.setLabel(config.getLabel());
          simple.setMaxSize(config.getMaxSize());
          simple.setLiveTime(config.getLiveTime());
+         if (config.getMaxMemory() > 0 && simple instanceof OffHeapExoCache)
+         {
+            ((OffHeapExoCache)simple).setMaxMemory(config.getMaxMemory());
+         }
          simple.setLogEnabled(config.isLogEnabled());
          if (simple.isLogEnabled())
          {
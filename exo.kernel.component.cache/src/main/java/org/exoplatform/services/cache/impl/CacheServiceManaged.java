@@ -22,8 +22,10 @@ import org.exoplatform.management.ManagementAware;
 import org.exoplatform.management.ManagementContext;
 import org.exoplatform.management.annotations.Managed;
 import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
 import org.exoplatform.management.jmx.annotations.NameTemplate;
 import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -74,6 +76,88 @@ public class CacheServiceManaged implements ManagementAware
       }
    }
 
+   @Managed
+   @ManagedDescription("Reset the statistics of all registered cache instances")
+   public void resetStatistics()
+   {
+      for (ExoCache<?, ?> cache : cacheService.getAllCacheInstances())
+      {
+         CacheStatistics statistics = cache.getStatistics();
+         if (statistics != null)
+         {
+            statistics.reset();
+         }
+      }
+   }
+
+   @Managed
+   @ManagedName("HitCount")
+   @ManagedDescription("The count of cache hits of all registered cache instances")
+   public long getHitCount()
+   {
+      long count = 0;
+      for (ExoCache<?, ?> cache : cacheService.getAllCacheInstances())
+      {
+         CacheStatistics statistics = cache.getStatistics();
+         if (statistics != null)
+         {
+            count += statistics.getHitCount();
+         }
+      }
+      return count;
+   }
+
+   @Managed
+   @ManagedName("MissCount")
+   @ManagedDescription("The count of cache misses of all registered cache instances")
+   public long getMissCount()
+   {
+      long count = 0;
+      for (ExoCache<?, ?> cache : cacheService.getAllCacheInstances())
+      {
+         CacheStatistics statistics = cache.getStatistics();
+         if (statistics != null)
+         {
+            count += statistics.getMissCount();
+         }
+      }
+      return count;
+   }
+
+   @Managed
+   @ManagedName("EvictionCount")
+   @ManagedDescription("The count of evictions of all registered cache instances")
+   public long getEvictionCount()
+   {
+      long count = 0;
+      for (ExoCache<?, ?> cache : cacheService.getAllCacheInstances())
+      {
+         CacheStatistics statistics = cache.getStatistics();
+         if (statistics != null)
+         {
+            count += statistics.getEvictionCount();
+         }
+      }
+      return count;
+   }
+
+   @Managed
+   @ManagedName("ExpirationCount")
+   @ManagedDescription("The count of expirations of all registered cache instances")
+   public long getExpirationCount()
+   {
+      long count = 0;
+      for (ExoCache<?, ?> cache : cacheService.getAllCacheInstances())
+      {
+         CacheStatistics statistics = cache.getStatistics();
+         if (statistics != null)
+         {
+            count += statistics.getExpirationCount();
+         }
+      }
+      return count;
+   }
+
    public void setContext(ManagementContext context)
    {
       this.context = context;
@@ -84,6 +168,11 @@ public class CacheServiceManaged implements ManagementAware
       if (context != null)
       {
          context.register(cache);
+         CacheStatistics statistics = cache.getStatistics();
+         if (statistics != null)
+         {
+            context.register(statistics);
+         }
       }
    }
 }
@@ -20,9 +20,12 @@ package org.exoplatform.services.cache.invalidation;
 
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
@@ -32,6 +35,8 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -79,6 +84,11 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     * The local cache that contains the real values
     */
    private final ConcurrentMap<K, V> localCache;
+
+   /**
+    * Used to load the missing values of the cache
+    */
+   private final ConcurrentLoader<K, V> loader;
    
    /**
     * @param delegate the underneath eXo cache instance, we assume that the eXo cache
@@ -104,6 +114,7 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       this.delegate.addCacheListener(this);
       this.listeners = new CopyOnWriteArrayList<CacheListener<? super K, ? super V>>();
       this.localCache = new ConcurrentHashMap<K, V>(concurrencyLevel, 0.75f, concurrencyLevel);      
+      this.loader = new ConcurrentLoader<K, V>(this);
    }
    
    /**
@@ -147,6 +158,33 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       return result == null ? null : localCache.get(name);
    }
 
+   /**
+    * @see org.exoplatform.services.cache.ExoCache#getMap(java.util.Collection)
+    */
+   public Map<K, V> getMap(Collection<? extends K> keys) throws IllegalArgumentException
+   {
+      Map<K, HashCode<V>> hashCodes = delegate.getMap(keys);
+      Map<K, V> result = new HashMap<K, V>(hashCodes.size() * 4 / 3 + 1);
+      for (K key : hashCodes.keySet())
+      {
+         V value = localCache.get(key);
+         if (value != null)
+         {
+            result.put(key, value);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @see org.exoplatform.services.cache.ExoCache#computeIfAbsent(java.io.Serializable,
+    * org.exoplatform.services.cache.future.Loader, java.lang.Object)
+    */
+   public <C> V computeIfAbsent(K key, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(key, loader, context);
+   }
+
    /**
     * @see org.exoplatform.services.cache.ExoCache#remove(java.io.Serializable)
     */
@@ -157,6 +195,14 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       return value;
    }
 
+   /**
+    * @see org.exoplatform.services.cache.ExoCache#removeAll(java.util.Collection)
+    */
+   public void removeAll(Collection<? extends Serializable> keys) throws IllegalArgumentException
+   {
+      delegate.removeAll(keys);
+   }
+
    /**
     * @see org.exoplatform.services.cache.ExoCache#put(java.io.Serializable, java.lang.Object)
     */
@@ -287,6 +333,14 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       return delegate.getCacheMiss();
    }
 
+   /**
+    * @see org.exoplatform.services.cache.ExoCache#getStatistics()
+    */
+   public CacheStatistics getStatistics()
+   {
+      return delegate.getStatistics();
+   }
+
    /**
     * @see org.exoplatform.services.cache.ExoCache#getCachedObjects()
     */
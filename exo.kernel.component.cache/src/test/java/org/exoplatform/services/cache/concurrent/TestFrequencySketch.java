@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class TestFrequencySketch extends TestCase
+{
+
+   public void testLength()
+   {
+      assertEquals(1, new FrequencySketch(0).length());
+      assertEquals(64, new FrequencySketch(50).length());
+      assertEquals(FrequencySketch.MAX_TABLE_LENGTH, new FrequencySketch(Integer.MAX_VALUE).length());
+      FrequencySketch sketch = new FrequencySketch(50);
+      sketch.ensureCapacity(FrequencySketch.MAX_TABLE_LENGTH * 4);
+      assertEquals(FrequencySketch.MAX_TABLE_LENGTH, sketch.length());
+   }
+
+   public void testFrequency()
+   {
+      FrequencySketch sketch = new FrequencySketch(Integer.MAX_VALUE);
+      assertEquals(0, sketch.frequency("a"));
+      for (int i = 0; i < 20; i++)
+      {
+         sketch.increment("a");
+      }
+      assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency("a"));
+      assertEquals(0, sketch.frequency("b"));
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version $Id$
+ */
+public class TestTimingWheel extends TestCase
+{
+
+   private static final long TICK = 10;
+
+   private static ObjectRef<String, Object> ref(long expirationTime)
+   {
+      return new SimpleObjectRef<String, Object>(expirationTime, "key-" + expirationTime, null);
+   }
+
+   public void testExpireInFirstWheel()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 0);
+      ObjectRef<String, Object> ref = ref(35);
+      wheel.schedule(ref);
+      assertTrue(wheel.advance(35).isEmpty());
+      // The entry is expired at least one tick after its expiration time
+      assertTrue(wheel.advance(39).isEmpty());
+      List<ObjectRef<String, Object>> expired = wheel.advance(40);
+      assertEquals(1, expired.size());
+      assertSame(ref, expired.get(0));
+      assertTrue(wheel.advance(1000).isEmpty());
+   }
+
+   public void testCascade()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 0);
+      List<ObjectRef<String, Object>> refs = new ArrayList<ObjectRef<String, Object>>();
+      // Deadlines spread over the 3 first wheels
+      long[] times = {5, 650, 3000, 640 * 64 + 5, 640 * 64 * 3};
+      for (long time : times)
+      {
+         ObjectRef<String, Object> ref = ref(time);
+         refs.add(ref);
+         wheel.schedule(ref);
+      }
+      for (int i = 0; i < times.length; i++)
+      {
+         long deadline = (times[i] / TICK + 1) * TICK;
+         List<ObjectRef<String, Object>> expired = wheel.advance(deadline - 1);
+         for (ObjectRef<String, Object> ref : expired)
+         {
+            fail("The entry " + ref.name + " expired too early");
+         }
+         expired = wheel.advance(deadline);
+         assertEquals(1, expired.size());
+         assertSame(refs.get(i), expired.get(0));
+      }
+   }
+
+   public void testOverflow()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(1, 0);
+      long time = 1L << (6 * TimingWheel.LEVELS + 1);
+      ObjectRef<String, Object> ref = ref(time);
+      wheel.schedule(ref);
+      assertTrue(wheel.advance(time).isEmpty());
+      List<ObjectRef<String, Object>> expired = wheel.advance(time + 1);
+      assertEquals(1, expired.size());
+      assertSame(ref, expired.get(0));
+   }
+
+   public void testCancel()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 0);
+      ObjectRef<String, Object> ref1 = ref(15);
+      ObjectRef<String, Object> ref2 = ref(15);
+      wheel.schedule(ref1);
+      wheel.schedule(ref2);
+      wheel.advance(0);
+      assertEquals(2, wheel.size());
+      wheel.cancel(ref1);
+      // The canceled entry is only dropped once its bucket is reached
+      assertEquals(2, wheel.size());
+      List<ObjectRef<String, Object>> expired = wheel.advance(20);
+      assertEquals(1, expired.size());
+      assertSame(ref2, expired.get(0));
+      ObjectRef<String, Object> ref3 = ref(25);
+      wheel.schedule(ref3);
+      wheel.cancel(ref3);
+      assertTrue(wheel.advance(100).isEmpty());
+      assertEquals(0, wheel.size());
+   }
+
+   public void testCancelInBucket()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 0);
+      List<ObjectRef<String, Object>> refs = new ArrayList<ObjectRef<String, Object>>();
+      for (int i = 0; i < 5; i++)
+      {
+         ObjectRef<String, Object> ref = ref(3000);
+         refs.add(ref);
+         wheel.schedule(ref);
+      }
+      wheel.advance(0);
+      // Cancels the head, an entry in the middle and the tail of the same bucket
+      wheel.cancel(refs.get(4));
+      wheel.cancel(refs.get(2));
+      wheel.cancel(refs.get(0));
+      List<ObjectRef<String, Object>> expired = wheel.advance(3010);
+      assertEquals(2, expired.size());
+      assertTrue(expired.contains(refs.get(1)));
+      assertTrue(expired.contains(refs.get(3)));
+      assertEquals(0, wheel.size());
+   }
+
+   public void testSweep()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 0);
+      List<ObjectRef<String, Object>> refs = new ArrayList<ObjectRef<String, Object>>();
+      for (int i = 0; i < 1000; i++)
+      {
+         ObjectRef<String, Object> ref = ref(100000 + i * TICK);
+         refs.add(ref);
+         wheel.schedule(ref);
+      }
+      wheel.advance(0);
+      assertEquals(1000, wheel.size());
+      for (int i = 0; i < 900; i++)
+      {
+         wheel.cancel(refs.get(i));
+      }
+      // The canceled entries outnumber the live ones so they are unlinked before their deadline
+      assertTrue(wheel.advance(TICK).isEmpty());
+      assertEquals(100, wheel.size());
+      for (int i = 0; i < 900; i++)
+      {
+         assertNull(refs.get(i).timerNext);
+      }
+      List<ObjectRef<String, Object>> expired = wheel.advance(200000);
+      assertEquals(100, expired.size());
+      assertEquals(0, wheel.size());
+   }
+
+   public void testClear()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 0);
+      wheel.schedule(ref(15));
+      wheel.advance(0);
+      wheel.clear();
+      assertEquals(0, wheel.size());
+      assertTrue(wheel.advance(100).isEmpty());
+   }
+
+   public void testAlreadyExpired()
+   {
+      TimingWheel<String, Object> wheel = new TimingWheel<String, Object>(TICK, 100);
+      ObjectRef<String, Object> ref = ref(50);
+      wheel.schedule(ref);
+      List<ObjectRef<String, Object>> expired = wheel.advance(100);
+      assertEquals(1, expired.size());
+      assertSame(ref, expired.get(0));
+   }
+}
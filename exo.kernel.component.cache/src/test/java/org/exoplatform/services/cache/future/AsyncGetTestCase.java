@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Id$
+ */
+public class AsyncGetTestCase extends TestCase
+{
+
+   private ExecutorService executor;
+
+   private ConcurrentFIFOExoCache<String, AsyncFutureCache.Entry<String>> cache;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      executor = Executors.newFixedThreadPool(2);
+      cache = new ConcurrentFIFOExoCache<String, AsyncFutureCache.Entry<String>>(100);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      executor.shutdownNow();
+   }
+
+   public void testGet() throws Exception
+   {
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger calls = new AtomicInteger();
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            calls.incrementAndGet();
+            release.await();
+            return "foo_value";
+         }
+      };
+      Future<String> future1 = futureCache.getAsync(context, "foo");
+      Future<String> future2 = futureCache.getAsync(context, "foo");
+      // The caller is not blocked by the loader
+      assertFalse(future1.isDone());
+      release.countDown();
+      assertEquals("foo_value", future1.get(5, TimeUnit.SECONDS));
+      assertEquals("foo_value", future2.get(5, TimeUnit.SECONDS));
+      assertEquals(1, calls.get());
+      assertEquals("foo_value", cache.get("foo").getValue());
+      Future<String> future3 = futureCache.getAsync(context, "foo");
+      assertTrue(future3.isDone());
+      assertEquals("foo_value", future3.get());
+      assertEquals(1, calls.get());
+   }
+
+   public void testThrowException() throws Exception
+   {
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor);
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            throw new Exception("DON'T FREAK OUT");
+         }
+      };
+      try
+      {
+         futureCache.getAsync(context, "foo").get(5, TimeUnit.SECONDS);
+         fail("Was expecting an ExecutionException");
+      }
+      catch (ExecutionException e)
+      {
+         assertEquals("DON'T FREAK OUT", e.getCause().getMessage());
+      }
+      assertNull(futureCache.get(context, "foo"));
+      assertNull(cache.get("foo"));
+   }
+
+   public void testNegativeCaching() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            calls.incrementAndGet();
+            return null;
+         }
+      };
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor);
+      assertNull(futureCache.get(context, "foo"));
+      assertNull(futureCache.get(context, "foo"));
+      // Without negative caching, the missing resources are reloaded each time
+      assertEquals(2, calls.get());
+      assertNull(cache.get("foo"));
+
+      futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 0, 100);
+      assertNull(futureCache.get(context, "foo"));
+      assertNull(futureCache.get(context, "foo"));
+      assertEquals(3, calls.get());
+      assertNotNull(cache.get("foo"));
+      Thread.sleep(150);
+      assertNull(futureCache.get(context, "foo"));
+      assertEquals(4, calls.get());
+   }
+
+   public void testRefreshAhead() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      final CountDownLatch release = new CountDownLatch(1);
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            int call = calls.incrementAndGet();
+            if (call > 1)
+            {
+               release.await();
+            }
+            return "foo_value_" + call;
+         }
+      };
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 50, 0);
+      assertEquals("foo_value_1", futureCache.get(context, "foo"));
+      assertEquals("foo_value_1", futureCache.get(context, "foo"));
+      Thread.sleep(100);
+      // The stale value is served while the value is refreshed
+      assertEquals("foo_value_1", futureCache.get(context, "foo"));
+      assertEquals("foo_value_1", futureCache.get(context, "foo"));
+      release.countDown();
+      for (int i = 0; i < 50 && "foo_value_1".equals(cache.get("foo").getValue()); i++)
+      {
+         Thread.sleep(20);
+      }
+      assertEquals(2, calls.get());
+      assertEquals("foo_value_2", futureCache.get(context, "foo"));
+   }
+
+   public void testRefreshFailure() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            if (calls.incrementAndGet() > 1)
+            {
+               throw new Exception("DON'T FREAK OUT");
+            }
+            return "foo_value";
+         }
+      };
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 200, 0);
+      assertEquals("foo_value", futureCache.get(context, "foo"));
+      long creationTime = cache.get("foo").getCreationTime();
+      Thread.sleep(250);
+      assertEquals("foo_value", futureCache.get(context, "foo"));
+      for (int i = 0; i < 50 && cache.get("foo").getCreationTime() == creationTime; i++)
+      {
+         Thread.sleep(20);
+      }
+      assertEquals(2, calls.get());
+      // The stale value is kept but the failed refresh is not retried before the next refreshAfter delay
+      for (int i = 0; i < 5; i++)
+      {
+         assertEquals("foo_value", futureCache.get(context, "foo"));
+      }
+      assertEquals(2, calls.get());
+   }
+
+   public void testRefreshNotFound() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            return calls.incrementAndGet() > 1 ? null : "foo_value";
+         }
+      };
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 50, 0);
+      assertEquals("foo_value", futureCache.get(context, "foo"));
+      Thread.sleep(100);
+      assertEquals("foo_value", futureCache.get(context, "foo"));
+      for (int i = 0; i < 50 && cache.get("foo") != null; i++)
+      {
+         Thread.sleep(20);
+      }
+      // The resource that doesn't exist anymore is evicted
+      assertNull(cache.get("foo"));
+      assertNull(futureCache.get(context, "foo"));
+      assertEquals(3, calls.get());
+   }
+
+   public void testCancel() throws Exception
+   {
+      AsyncFutureExoCache<String, String, Callable<String>> futureCache =
+         new AsyncFutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor);
+      final CountDownLatch release = new CountDownLatch(1);
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            release.await();
+            return "foo_value";
+         }
+      };
+      Future<String> future1 = futureCache.getAsync(context, "foo");
+      Future<String> future2 = futureCache.getAsync(context, "foo");
+      // A caller cannot abort the loading shared with the other callers
+      assertFalse(future1.cancel(true));
+      assertFalse(future1.isCancelled());
+      release.countDown();
+      assertEquals("foo_value", future2.get(5, TimeUnit.SECONDS));
+      assertEquals("foo_value", future1.get(5, TimeUnit.SECONDS));
+   }
+}
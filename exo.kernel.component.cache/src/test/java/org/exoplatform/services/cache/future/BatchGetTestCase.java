@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @version $Id$
+ */
+public class BatchGetTestCase extends TestCase
+{
+
+   public void testGetAll()
+   {
+      RecordingLoader loader = new RecordingLoader();
+      FutureMap<String> futureCache = new FutureMap<String>(loader);
+      futureCache.data.put("foo", "foo_cached");
+      Map<String, String> values = futureCache.getAll("ctx", Arrays.asList("foo", "bar", "juu", "missing", "bar"));
+      assertEquals(3, values.size());
+      assertEquals("foo_cached", values.get("foo"));
+      assertEquals("ctx_bar", values.get("bar"));
+      assertEquals("ctx_juu", values.get("juu"));
+      // A single call for all the missing keys
+      assertEquals(1, loader.batches.size());
+      assertEquals(new HashSet<String>(Arrays.asList("bar", "juu", "missing")), loader.batches.get(0));
+      assertEquals("ctx_bar", futureCache.data.get("bar"));
+      assertFalse(futureCache.data.containsKey("missing"));
+   }
+
+   public void testGetAllWithSimpleLoader()
+   {
+      FutureMap<String> futureCache = new FutureMap<String>(new Loader<String, String, String>()
+      {
+         public String retrieve(String context, String key) throws Exception
+         {
+            return context + "_" + key;
+         }
+      });
+      Map<String, String> values = futureCache.getAll("ctx", Arrays.asList("foo", "bar"));
+      assertEquals(2, values.size());
+      assertEquals("ctx_foo", values.get("foo"));
+   }
+
+   public void testGetAllThrowException()
+   {
+      FutureMap<String> futureCache = new FutureMap<String>(new RecordingLoader()
+      {
+         @Override
+         public Map<String, String> retrieveAll(String context, Set<String> keys) throws Exception
+         {
+            throw new Exception("DON'T FREAK OUT");
+         }
+      });
+      assertTrue(futureCache.getAll("ctx", Arrays.asList("foo", "bar")).isEmpty());
+      // The keys are not considered as being loaded anymore
+      assertEquals("ctx_foo", futureCache.get("ctx", "foo"));
+   }
+
+   public void testGetAllWhileLoading() throws Exception
+   {
+      final CountDownLatch loading = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final RecordingLoader loader = new RecordingLoader()
+      {
+         @Override
+         public String retrieve(String context, String key) throws Exception
+         {
+            loading.countDown();
+            release.await();
+            return super.retrieve(context, key);
+         }
+      };
+      final FutureMap<String> futureCache = new FutureMap<String>(loader);
+      Thread thread = new Thread()
+      {
+         public void run()
+         {
+            futureCache.get("ctx", "foo");
+         }
+      };
+      thread.start();
+      loading.await();
+      Thread release2 = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               Thread.sleep(100);
+            }
+            catch (InterruptedException e)
+            {
+               return;
+            }
+            release.countDown();
+         }
+      };
+      release2.start();
+      // The key foo is loaded by the other thread so it must not be part of the batch
+      Map<String, String> values = futureCache.getAll("ctx", Arrays.asList("foo", "bar"));
+      thread.join();
+      assertEquals("ctx_foo", values.get("foo"));
+      assertEquals("ctx_bar", values.get("bar"));
+      assertEquals(1, loader.batches.size());
+      assertEquals(Collections.singleton("bar"), loader.batches.get(0));
+      assertEquals(1, loader.singles.size());
+   }
+
+   public void testCoalescing() throws Exception
+   {
+      RecordingLoader loader = new RecordingLoader();
+      final FutureMap<String> futureCache =
+         new FutureMap<String>(new CoalescingLoader<String, String, String>(loader, 200, 100));
+      int threads = 10;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final Map<String, String> results = Collections.synchronizedMap(new HashMap<String, String>());
+      for (int i = 0; i < threads; i++)
+      {
+         final String key = "key" + i;
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  results.put(key, futureCache.get("ctx", key));
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertEquals(threads, results.size());
+      for (int i = 0; i < threads; i++)
+      {
+         assertEquals("ctx_key" + i, results.get("key" + i));
+      }
+      assertTrue(loader.singles.isEmpty());
+      assertEquals(1, loader.batches.size());
+      assertEquals(threads, loader.batches.get(0).size());
+   }
+
+   public void testCoalescingMaxBatchSize() throws Exception
+   {
+      RecordingLoader loader = new RecordingLoader();
+      final CoalescingLoader<String, String, String> coalescingLoader =
+         new CoalescingLoader<String, String, String>(loader, 60000, 2);
+      final String[] result = new String[1];
+      Thread thread = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               result[0] = coalescingLoader.retrieve("ctx", "foo");
+            }
+            catch (Exception e)
+            {
+               result[0] = e.getMessage();
+            }
+         }
+      };
+      thread.start();
+      while (thread.getState() != Thread.State.TIMED_WAITING)
+      {
+         Thread.sleep(10);
+      }
+      // The batch is full so it is loaded without waiting for the end of the time window
+      assertEquals("ctx_bar", coalescingLoader.retrieve("ctx", "bar"));
+      thread.join();
+      assertEquals("ctx_foo", result[0]);
+      assertEquals(1, loader.batches.size());
+   }
+
+   private static class RecordingLoader implements BatchLoader<String, String, String>
+   {
+
+      final List<Set<String>> batches = Collections.synchronizedList(new ArrayList<Set<String>>());
+
+      final List<String> singles = Collections.synchronizedList(new ArrayList<String>());
+
+      public String retrieve(String context, String key) throws Exception
+      {
+         singles.add(key);
+         return context + "_" + key;
+      }
+
+      public Map<String, String> retrieveAll(String context, Set<String> keys) throws Exception
+      {
+         batches.add(new HashSet<String>(keys));
+         Map<String, String> values = new HashMap<String, String>();
+         for (String key : keys)
+         {
+            if (!key.equals("missing"))
+            {
+               values.put(key, context + "_" + key);
+            }
+         }
+         return values;
+      }
+   }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.TinyLFUExoCache;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays access traces against several cache implementations and reports their hit ratio. A trace
+ * is a sequence of keys, on a miss the key is put into the cache. A trace file with one key per line
+ * can be replayed thanks to the system property <i>exo.cache.trace</i>, otherwise synthetic traces
+ * are generated.
+ *
+ * @version $Id$
+ */
+public class HitRatioTestLoad extends TestCase
+{
+
+   private static final int CACHE_SIZE = 1000;
+
+   private static final int KEYS = 50000;
+
+   private static final int ACCESSES = 1000000;
+
+   private static void doTest(String name, List<CacheProvider> providers, int cacheSize, String[] trace)
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Trace " + name + " cacheSize=" + cacheSize + " accesses=" + trace.length);
+      for (CacheProvider provider : providers)
+      {
+         ExoCache<Serializable, Object> cache = provider.createCache(cacheSize);
+         long time = -System.currentTimeMillis();
+         int hits = replay(cache, trace);
+         time += System.currentTimeMillis();
+         System.out.println("Cache " + provider.name + ": hit ratio=" + (100.0 * hits / trace.length) + "% in "
+            + time + "ms");
+      }
+      System.out.println("");
+   }
+
+   private static int replay(ExoCache<Serializable, Object> cache, String[] trace)
+   {
+      int hits = 0;
+      for (String key : trace)
+      {
+         if (cache.get(key) == null)
+         {
+            cache.put(key, key);
+         }
+         else
+         {
+            hits++;
+         }
+      }
+      return hits;
+   }
+
+   List<CacheProvider> providers = Arrays.asList(concurrentFIFO, tinyLFU);
+
+   public void testTraceFile() throws IOException
+   {
+      String file = System.getProperty("exo.cache.trace");
+      if (file == null)
+      {
+         return;
+      }
+      List<String> keys = new ArrayList<String>();
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      try
+      {
+         String line;
+         while ((line = reader.readLine()) != null)
+         {
+            if (line.length() > 0)
+            {
+               keys.add(line.trim());
+            }
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
+      doTest(file, providers, CACHE_SIZE, keys.toArray(new String[keys.size()]));
+   }
+
+   public void testZipf()
+   {
+      doTest("Zipf", providers, CACHE_SIZE, zipf(new Random(1), KEYS, ACCESSES, 0.9));
+   }
+
+   public void testZipfWithScans()
+   {
+      String[] trace = zipf(new Random(1), KEYS, ACCESSES, 0.9);
+      // Every 100 000 accesses, a scan of 5 times the cache size replaces the regular traffic
+      int scanId = 0;
+      for (int i = 0; i + 5 * CACHE_SIZE < trace.length; i += 100000)
+      {
+         for (int j = 0; j < 5 * CACHE_SIZE; j++)
+         {
+            trace[i + j] = "scan-" + (scanId++);
+         }
+      }
+      doTest("Zipf with scans", providers, CACHE_SIZE, trace);
+   }
+
+   public void testLoop()
+   {
+      // A loop slightly bigger than the cache, the worst case of FIFO and LRU
+      String[] trace = new String[ACCESSES];
+      int loopSize = CACHE_SIZE + CACHE_SIZE / 10;
+      for (int i = 0; i < trace.length; i++)
+      {
+         trace[i] = "loop-" + (i % loopSize);
+      }
+      doTest("Loop", providers, CACHE_SIZE, trace);
+   }
+
+   private static String[] zipf(Random random, int keys, int accesses, double exponent)
+   {
+      double[] cumulative = new double[keys];
+      double sum = 0;
+      for (int i = 0; i < keys; i++)
+      {
+         sum += 1 / Math.pow(i + 1, exponent);
+         cumulative[i] = sum;
+      }
+      String[] trace = new String[accesses];
+      for (int i = 0; i < accesses; i++)
+      {
+         int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+         trace[i] = "key-" + (index < 0 ? -index - 1 : index);
+      }
+      return trace;
+   }
+
+   private abstract static class CacheProvider
+   {
+
+      String name;
+
+      private CacheProvider(String name)
+      {
+         this.name = name;
+      }
+
+      abstract ExoCache<Serializable, Object> createCache(int cacheSize);
+
+   }
+
+   private static CacheProvider concurrentFIFO = new CacheProvider("Concurrent FIFO cache")
+   {
+      public ExoCache<Serializable, Object> createCache(int cacheSize)
+      {
+         return new ConcurrentFIFOExoCache<Serializable, Object>(cacheSize);
+      }
+   };
+
+   private static CacheProvider tinyLFU = new CacheProvider("W-TinyLFU cache")
+   {
+      public ExoCache<Serializable, Object> createCache(int cacheSize)
+      {
+         return new TinyLFUExoCache<Serializable, Object>(cacheSize);
+      }
+   };
+}
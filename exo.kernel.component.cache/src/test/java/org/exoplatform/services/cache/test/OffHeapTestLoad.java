@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.OffHeapExoCache;
+
+import java.io.Serializable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the time spent in garbage collection and the throughput of a cache that keeps its values on
+ * the heap with the same cache keeping its values off heap. It must be launched with a heap big enough to
+ * hold all the values of the on heap cache, for example -Xmx2g.
+ *
+ * @version $Id$
+ */
+public class OffHeapTestLoad extends TestCase
+{
+
+   private static final int ENTRIES = 500000;
+
+   private static final int VALUE_SIZE = 512;
+
+   private static final int THREADS = 8;
+
+   private static final int OPERATIONS = 500000;
+
+   /**
+    * The percentage of puts among the operations
+    */
+   private static final int PUT_RATIO = 10;
+
+   public void testOnHeap() throws Exception
+   {
+      doTest("On heap", new ConcurrentFIFOExoCache<Integer, Value>(ENTRIES));
+   }
+
+   public void testOffHeap() throws Exception
+   {
+      long maxMemory = 2L * ENTRIES * VALUE_SIZE;
+      doTest("Off heap", new OffHeapExoCache<Integer, Value>("test", ENTRIES, maxMemory,
+         OffHeapExoCache.DEFAULT_SLAB_SIZE, null));
+   }
+
+   private void doTest(String name, final ExoCache<Integer, Value> cache) throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Test " + name + " entries=" + ENTRIES + " valueSize=" + VALUE_SIZE + " threads=" + THREADS
+         + " operations=" + OPERATIONS);
+      System.gc();
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < ENTRIES; i++)
+      {
+         cache.put(i, new Value(i));
+      }
+      System.out.println("Fill time: " + (System.currentTimeMillis() - start) + "ms");
+
+      // A full collection has to go through all the values kept on heap
+      long gcStart = System.currentTimeMillis();
+      System.gc();
+      System.out.println("Full GC time: " + (System.currentTimeMillis() - gcStart) + "ms");
+
+      long collections = getCollectionCount();
+      long collectionTime = getCollectionTime();
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(THREADS);
+      for (int i = 0; i < THREADS; i++)
+      {
+         final Random random = new Random(i);
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < OPERATIONS; j++)
+                  {
+                     int key = random.nextInt(ENTRIES);
+                     if (random.nextInt(100) < PUT_RATIO)
+                     {
+                        cache.put(key, new Value(key));
+                     }
+                     else
+                     {
+                        cache.get(key);
+                     }
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      start = System.currentTimeMillis();
+      startSignal.countDown();
+      doneSignal.await();
+      long time = System.currentTimeMillis() - start;
+      System.out.println("Throughput: " + (THREADS * (long)OPERATIONS * 1000 / Math.max(1, time)) + " ops/s");
+      System.out.println("GC: " + (getCollectionCount() - collections) + " collections in "
+         + (getCollectionTime() - collectionTime) + "ms");
+      System.out.println("");
+      cache.clearCache();
+   }
+
+   private static long getCollectionCount()
+   {
+      long count = 0;
+      for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+      {
+         count += Math.max(0, bean.getCollectionCount());
+      }
+      return count;
+   }
+
+   private static long getCollectionTime()
+   {
+      long time = 0;
+      for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+      {
+         time += Math.max(0, bean.getCollectionTime());
+      }
+      return time;
+   }
+
+   private static class Value implements Serializable
+   {
+
+      private static final long serialVersionUID = 1L;
+
+      private final int id;
+
+      private final byte[] data;
+
+      Value(int id)
+      {
+         this.id = id;
+         this.data = new byte[VALUE_SIZE];
+      }
+   }
+}
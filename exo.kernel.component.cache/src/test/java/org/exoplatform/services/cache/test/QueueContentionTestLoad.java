@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.Item;
+import org.exoplatform.services.cache.concurrent.Queue;
+import org.exoplatform.services.cache.concurrent.StripedQueue;
+import org.exoplatform.services.cache.concurrent.SynchronizedQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of the eviction queues under write contention, from 1 to 64 threads.
+ *
+ * @version $Id$
+ */
+public class QueueContentionTestLoad extends TestCase
+{
+
+   private static final int OPERATIONS = 200000;
+
+   private static final int QUEUE_SIZE = 500;
+
+   public void testContention() throws Exception
+   {
+      for (int threads = 1; threads <= 64; threads *= 2)
+      {
+         System.out.println("-----------------------------------------");
+         System.out.println("Contention threadSize=" + threads + " operations=" + OPERATIONS + " queueSize="
+            + QUEUE_SIZE);
+         long time = perform(new SynchronizedQueue<Item>(null), threads);
+         System.out.println("SynchronizedQueue: " + time + "ms");
+         StripedQueue<Item> striped = new StripedQueue<Item>(null);
+         time = perform(striped, threads);
+         System.out.println("StripedQueue (" + striped.getConcurrencyLevel() + " segments): " + time + "ms");
+         striped.assertConsistency();
+         System.out.println("");
+      }
+   }
+
+   private static long perform(final Queue<Item> queue, int threads) throws Exception
+   {
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final int operations = OPERATIONS / threads;
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  List<Item> items = new ArrayList<Item>();
+                  startSignal.await();
+                  for (int j = 0; j < operations; j++)
+                  {
+                     // Simulate a put that replaces an existing entry then adds the new one
+                     Item item = new Item();
+                     if (items.size() > 10)
+                     {
+                        queue.remove(items.remove(0));
+                     }
+                     queue.add(item);
+                     items.add(item);
+                     queue.trim(QUEUE_SIZE);
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      long time = -System.currentTimeMillis();
+      startSignal.countDown();
+      doneSignal.await();
+      time += System.currentTimeMillis();
+      return time;
+   }
+}
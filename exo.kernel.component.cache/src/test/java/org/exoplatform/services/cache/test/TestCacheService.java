@@ -25,6 +25,7 @@ import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ObjectParameter;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
@@ -33,6 +34,8 @@ import org.exoplatform.services.cache.ExoCacheInitException;
 import org.exoplatform.services.cache.FIFOExoCache;
 import org.exoplatform.services.cache.SimpleExoCache;
 import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.OffHeapExoCache;
+import org.exoplatform.services.cache.future.Loader;
 import org.exoplatform.services.cache.impl.CacheServiceImpl;
 
 import java.io.Serializable;
@@ -256,6 +259,17 @@ public class TestCacheService extends TestCase
          cs.getCacheInstance("UnKnownImplButCorrectFQN-MyExoCacheConfig") instanceof MyExoCache);
    }
 
+   public void testOffHeapCache() throws Exception
+   {
+      ExoCache<String, Object> cache = service_.getCacheInstance("offheapcache");
+      assertTrue("expect find off heap cache configuration", cache instanceof OffHeapExoCache);
+      assertEquals(1000, cache.getMaxSize());
+      assertEquals(4, cache.getLiveTime());
+      assertEquals(4 * 1024 * 1024, ((OffHeapExoCache<String, Object>)cache).getMaxMemory());
+      cache.put("key1", "object 1");
+      assertEquals("object 1", cache.get("key1"));
+   }
+
    public void testCacheService() throws Exception
    {
       assertNotNull(service_.getAllCacheInstances());
@@ -448,6 +462,23 @@ public class TestCacheService extends TestCase
          return null;
       }
 
+      /**
+       * @see org.exoplatform.services.cache.ExoCache#getMap(java.util.Collection)
+       */
+      public Map<Serializable, V> getMap(Collection<? extends Serializable> keys)
+      {
+         return Collections.emptyMap();
+      }
+
+      /**
+       * @see org.exoplatform.services.cache.ExoCache#computeIfAbsent(java.io.Serializable,
+       * org.exoplatform.services.cache.future.Loader, java.lang.Object)
+       */
+      public <C> V computeIfAbsent(Serializable key, Loader<Serializable, V, C> loader, C context)
+      {
+         return null;
+      }
+
       /**
        * @see org.exoplatform.services.cache.ExoCache#remove(java.io.Serializable)
        */
@@ -456,6 +487,13 @@ public class TestCacheService extends TestCase
          return null;
       }
 
+      /**
+       * @see org.exoplatform.services.cache.ExoCache#removeAll(java.util.Collection)
+       */
+      public void removeAll(Collection<? extends Serializable> keys)
+      {
+      }
+
       /**
        * @see org.exoplatform.services.cache.ExoCache#put(java.io.Serializable, java.lang.Object)
        */
@@ -543,6 +581,14 @@ public class TestCacheService extends TestCase
          return 0;
       }
 
+      /**
+       * @see org.exoplatform.services.cache.ExoCache#getStatistics()
+       */
+      public CacheStatistics getStatistics()
+      {
+         return null;
+      }
+
       /**
        * @see org.exoplatform.services.cache.ExoCache#getCachedObjects()
        */
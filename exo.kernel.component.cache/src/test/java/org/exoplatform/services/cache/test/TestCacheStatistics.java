@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.CacheStatistics;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.LatencyHistogram;
+import org.exoplatform.services.cache.concurrent.StripedCounter;
+import org.exoplatform.services.cache.future.Loader;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @version $Id$
+ */
+public class TestCacheStatistics extends TestCase
+{
+
+   public void testStripedCounter() throws Exception
+   {
+      final StripedCounter counter = new StripedCounter();
+      final int threads = 8;
+      final int increments = 10000;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < increments; j++)
+                  {
+                     counter.increment();
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertEquals(threads * increments, counter.sum());
+      counter.add(5);
+      assertEquals(threads * increments + 5, counter.sum());
+      counter.reset();
+      assertEquals(0, counter.sum());
+   }
+
+   public void testLatencyHistogram()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(0, histogram.getCount());
+      assertEquals(0, histogram.getPercentile(99));
+      assertEquals(0d, histogram.getMean());
+      // 98 durations of 500 ns, 1 of 3 us and 1 of 1 ms
+      for (int i = 0; i < 98; i++)
+      {
+         histogram.record(500);
+      }
+      histogram.record(3000);
+      histogram.record(1000000);
+      assertEquals(100, histogram.getCount());
+      assertEquals(98 * 500 + 3000 + 1000000, histogram.getTotalTime());
+      assertEquals(1, histogram.getPercentile(50));
+      assertEquals(4, histogram.getPercentile(99));
+      assertEquals(1024, histogram.getPercentile(100));
+      assertEquals("{<1us=98, <4us=1, <1024us=1}", histogram.toString());
+      // A duration longer than the last bucket
+      histogram.record(Long.MAX_VALUE / 2);
+      assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+      histogram.reset();
+      assertEquals(0, histogram.getCount());
+      assertEquals(0, histogram.getTotalTime());
+   }
+
+   public void testHitsAndMisses() throws Exception
+   {
+      ConcurrentFIFOExoCache<String, String> cache = new ConcurrentFIFOExoCache<String, String>("test", 10);
+      CacheStatistics statistics = cache.getStatistics();
+      assertEquals("test", statistics.getName());
+      statistics.setLatencyTracking(true);
+      cache.put("a", "a");
+      cache.get("a");
+      cache.get("a");
+      cache.setLiveTimeMillis(15);
+      cache.put("b", "b");
+      Thread.sleep(25);
+      assertNull(cache.get("b"));
+      assertEquals(2, statistics.getHitCount());
+      assertEquals(1, statistics.getMissCount());
+      assertEquals(2, cache.getCacheHit());
+      assertEquals(1, cache.getCacheMiss());
+      assertEquals(1, statistics.getExpirationCount());
+      assertEquals(2d / 3, statistics.getHitRatio(), 0.001);
+      assertEquals(3, statistics.getGetLatency().getCount());
+      assertEquals(2, statistics.getPutLatency().getCount());
+      statistics.reset();
+      assertEquals(0, cache.getCacheHit());
+      assertEquals(0, statistics.getGetLatency().getCount());
+   }
+
+   public void testEvictions()
+   {
+      ConcurrentFIFOExoCache<Integer, String> cache = new ConcurrentFIFOExoCache<Integer, String>("test", 5);
+      for (int i = 0; i < 8; i++)
+      {
+         cache.put(i, "value" + i);
+      }
+      assertEquals(3, cache.getStatistics().getEvictionCount());
+   }
+
+   public void testLatencyTracking()
+   {
+      ConcurrentFIFOExoCache<String, String> cache = new ConcurrentFIFOExoCache<String, String>("test", 10);
+      CacheStatistics statistics = cache.getStatistics();
+      // The latency tracking is disabled by default
+      assertFalse(statistics.isLatencyTracking());
+      cache.put("a", "a");
+      cache.get("a");
+      assertEquals(1, statistics.getHitCount());
+      assertEquals(0, statistics.getGetLatencyMean(), 0);
+      assertEquals("{}", statistics.getGetLatencyHistogram());
+      assertEquals(0, statistics.getGetLatency().getCount());
+      assertEquals(0, statistics.getPutLatency().getCount());
+      statistics.setLatencyTracking(true);
+      cache.get("a");
+      assertEquals(1, statistics.getGetLatency().getCount());
+      statistics.setLatencyTracking(false);
+      cache.get("a");
+      assertEquals(1, statistics.getGetLatency().getCount());
+   }
+
+   public void testLoads() throws Exception
+   {
+      ConcurrentFIFOExoCache<String, String> cache = new ConcurrentFIFOExoCache<String, String>("test", 10);
+      Loader<String, String, Object> loader = new Loader<String, String, Object>()
+      {
+         public String retrieve(Object context, String key) throws Exception
+         {
+            if ("error".equals(key))
+            {
+               throw new Exception();
+            }
+            return "value" + key;
+         }
+      };
+      assertEquals("valuea", cache.computeIfAbsent("a", loader, null));
+      assertEquals("valuea", cache.computeIfAbsent("a", loader, null));
+      try
+      {
+         cache.computeIfAbsent("error", loader, null);
+         fail("An exception was expected");
+      }
+      catch (Exception e)
+      {
+         // expected
+      }
+      CacheStatistics statistics = cache.getStatistics();
+      assertEquals(1, statistics.getLoadCount());
+      assertEquals(1, statistics.getLoadFailureCount());
+   }
+}
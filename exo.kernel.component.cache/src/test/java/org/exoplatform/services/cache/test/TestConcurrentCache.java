@@ -23,13 +23,17 @@ import junit.framework.TestCase;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
 import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.future.Loader;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -198,6 +202,20 @@ public class TestConcurrentCache extends TestCase
       cache.assertExpire("Foo", v1).assertEmpty();
    }
 
+   public void testActiveExpiration()
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>();
+      cache.setLiveTimeMillis(15);
+      cache.put("Foo", v1);
+      cache.assertPut("Foo", v1).assertEmpty();
+      assertEquals(1, cache.getCacheSize());
+      // The expired entry is removed in background without being touched
+      waitFor(2500);
+      assertEquals(0, cache.getCacheSize());
+      cache.assertExpire("Foo", v1).assertEmpty();
+      cache.assertConsistent();
+   }
+
    public void testGetCachedObjects()
    {
       CacheHelper<String, Object> cache = new CacheHelper<String, Object>(4);
@@ -212,6 +230,143 @@ public class TestConcurrentCache extends TestCase
       assertEquals(expectedSet, cachedSet);
    }
 
+   public void testGetMap()
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>(4);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.assertPut("Foo", v1).assertPut("Bar", v2).assertEmpty();
+      Map<String, Object> values = cache.getMap(Arrays.asList("Foo", "Bar", "Juu"));
+      assertEquals(2, values.size());
+      assertEquals(v1, values.get("Foo"));
+      assertEquals(v2, values.get("Bar"));
+      assertFalse(values.containsKey("Juu"));
+      cache.assertGet("Foo", v1).assertGet("Bar", v2).assertEmpty();
+      assertEquals(2, cache.getCacheHit());
+      try
+      {
+         cache.getMap(null);
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+      }
+   }
+
+   public void testRemoveAll()
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>(4);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.put("Juu", v3);
+      cache.assertPut("Foo", v1).assertPut("Bar", v2).assertPut("Juu", v3).assertEmpty();
+      try
+      {
+         cache.removeAll(Arrays.asList("Foo", null));
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+         assertEquals(3, cache.getCacheSize());
+      }
+      cache.removeAll(Arrays.asList("Foo", "Bar", "Daa"));
+      cache.assertRemove("Foo", v1).assertRemove("Bar", v2).assertEmpty();
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(v3, cache.get("Juu"));
+   }
+
+   public void testComputeIfAbsent() throws Exception
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>(4);
+      final AtomicInteger calls = new AtomicInteger();
+      Loader<String, Object, Object> loader = new Loader<String, Object, Object>()
+      {
+         public Object retrieve(Object context, String key) throws Exception
+         {
+            calls.incrementAndGet();
+            return context;
+         }
+      };
+      assertEquals(v1, cache.computeIfAbsent("Foo", loader, v1));
+      cache.assertPut("Foo", v1).assertEmpty();
+      assertEquals(v1, cache.computeIfAbsent("Foo", loader, v2));
+      cache.assertGet("Foo", v1).assertEmpty();
+      assertEquals(1, calls.get());
+      assertNull(cache.computeIfAbsent("Bar", loader, null));
+      assertEquals(2, calls.get());
+      assertEquals(1, cache.getCacheSize());
+      final Exception error = new Exception();
+      try
+      {
+         cache.computeIfAbsent("Bar", new Loader<String, Object, Object>()
+         {
+            public Object retrieve(Object context, String key) throws Exception
+            {
+               throw error;
+            }
+         }, null);
+         fail("Was expecting an exception");
+      }
+      catch (Exception e)
+      {
+         assertSame(error, e);
+      }
+   }
+
+   public void testConcurrentComputeIfAbsent() throws Exception
+   {
+      final ConcurrentFIFOExoCache<String, Object> cache = new ConcurrentFIFOExoCache<String, Object>(10);
+      final AtomicInteger calls = new AtomicInteger();
+      final CountDownLatch loading = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final Loader<String, Object, Object> loader = new Loader<String, Object, Object>()
+      {
+         public Object retrieve(Object context, String key) throws Exception
+         {
+            calls.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return context;
+         }
+      };
+      int threads = 10;
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final Object[] results = new Object[threads];
+      for (int i = 0; i < threads; i++)
+      {
+         final int index = i;
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  results[index] = cache.computeIfAbsent("Foo", loader, v1);
+               }
+               catch (Exception e)
+               {
+                  results[index] = e;
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      loading.await();
+      // Give a chance to the other threads to request the key while it is loaded
+      waitFor(100);
+      release.countDown();
+      doneSignal.await();
+      assertEquals(1, calls.get());
+      for (Object result : results)
+      {
+         assertSame(v1, result);
+      }
+   }
+
    private void waitFor(long millis)
    {
       try
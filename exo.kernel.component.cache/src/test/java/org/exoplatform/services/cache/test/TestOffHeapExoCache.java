@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.concurrent.OffHeapExoCache;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Id$
+ */
+public class TestOffHeapExoCache extends TestCase
+{
+
+   public void testPutGetRemove()
+   {
+      OffHeapExoCache<String, String> cache = new OffHeapExoCache<String, String>(10);
+      cache.put("Foo", "v1");
+      cache.put("Bar", "v2");
+      assertEquals(2, cache.getCacheSize());
+      assertEquals("v1", cache.get("Foo"));
+      assertEquals(1, cache.getCacheHit());
+      assertNull(cache.get("Juu"));
+      assertEquals(1, cache.getCacheMiss());
+      cache.put("Foo", "v3");
+      assertEquals("v3", cache.get("Foo"));
+      assertEquals("v3", cache.remove("Foo"));
+      assertNull(cache.get("Foo"));
+      assertEquals(1, cache.getCacheSize());
+      Set<Object> cachedSet = new HashSet<Object>(cache.getCachedObjects());
+      assertEquals(Collections.singleton("v2"), cachedSet);
+      assertTrue(cache.getUsedMemory() > 0);
+      cache.clearCache();
+      assertEquals(0, cache.getCacheSize());
+      assertEquals(0, cache.getUsedMemory());
+      assertNull(cache.get("Bar"));
+   }
+
+   public void testGetMapAndRemoveAll()
+   {
+      OffHeapExoCache<String, String> cache = new OffHeapExoCache<String, String>(10);
+      cache.put("a", "1");
+      cache.put("b", "2");
+      cache.put("c", "3");
+      Map<String, String> values = cache.getMap(Arrays.asList("a", "b", "d"));
+      assertEquals(2, values.size());
+      assertEquals("2", values.get("b"));
+      cache.removeAll(Arrays.asList("a", "b"));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals("3", cache.get("c"));
+   }
+
+   public void testValuesAreCopied()
+   {
+      OffHeapExoCache<String, StringBuilder> cache = new OffHeapExoCache<String, StringBuilder>(10);
+      StringBuilder value = new StringBuilder("foo");
+      cache.put("Foo", value);
+      value.append("bar");
+      assertEquals("foo", cache.get("Foo").toString());
+   }
+
+   public void testMaxSize()
+   {
+      OffHeapExoCache<Integer, String> cache = new OffHeapExoCache<Integer, String>(5);
+      for (int i = 0; i < 10; i++)
+      {
+         cache.put(i, "value" + i);
+      }
+      assertEquals(5, cache.getCacheSize());
+      // The oldest entries are evicted first
+      for (int i = 0; i < 5; i++)
+      {
+         assertNull(cache.get(i));
+      }
+      for (int i = 5; i < 10; i++)
+      {
+         assertEquals("value" + i, cache.get(i));
+      }
+      cache.setMaxSize(2);
+      assertEquals(2, cache.getCacheSize());
+      assertEquals("value9", cache.get(9));
+   }
+
+   public void testMaxMemory()
+   {
+      int slabSize = 4096;
+      OffHeapExoCache<Integer, byte[]> cache =
+         new OffHeapExoCache<Integer, byte[]>("test", 1000, 4 * slabSize, slabSize, null);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      for (int i = 0; i < 100; i++)
+      {
+         cache.put(i, new byte[500]);
+      }
+      assertTrue(cache.getCacheSize() < 100);
+      assertTrue(cache.getCacheSize() > 0);
+      assertEquals(100 - cache.getCacheSize(), listener.expire.get());
+      assertTrue(cache.getReservedMemory() <= 4 * slabSize);
+      assertNotNull(cache.get(99));
+      // The values of another size must be able to reuse the memory
+      for (int i = 0; i < 100; i++)
+      {
+         cache.put(1000 + i, new byte[100]);
+      }
+      assertNotNull(cache.get(1099));
+      assertTrue(cache.getReservedMemory() <= 4 * slabSize);
+      // A value bigger than a slab is not cached
+      cache.put(2000, new byte[2 * slabSize]);
+      assertNull(cache.get(2000));
+      cache.setMaxMemory(slabSize);
+      assertTrue(cache.getReservedMemory() <= slabSize);
+      assertNotNull(cache.get(1099));
+   }
+
+   public void testReplacedByValueTooBig()
+   {
+      int slabSize = 4096;
+      OffHeapExoCache<Integer, byte[]> cache =
+         new OffHeapExoCache<Integer, byte[]>("test", 1000, 4 * slabSize, slabSize, null);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      cache.put(1, new byte[100]);
+      cache.put(1, new byte[2 * slabSize]);
+      assertNull(cache.get(1));
+      assertEquals(0, cache.getCacheSize());
+      // The previous value has been dropped without being replaced
+      assertEquals(1, listener.put.get());
+      assertEquals(1, listener.remove.get());
+   }
+
+   public void testMemoryMapped() throws Exception
+   {
+      File directory = new File(System.getProperty("java.io.tmpdir"));
+      OffHeapExoCache<String, String> cache =
+         new OffHeapExoCache<String, String>("test", 10, 1024 * 1024, 64 * 1024, directory);
+      cache.put("Foo", "v1");
+      assertEquals("v1", cache.get("Foo"));
+   }
+
+   public void testListener()
+   {
+      OffHeapExoCache<String, String> cache = new OffHeapExoCache<String, String>(1);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      cache.put("Foo", "v1");
+      cache.get("Foo");
+      cache.put("Bar", "v2");
+      cache.remove("Foo");
+      cache.remove("Bar");
+      cache.clearCache();
+      assertEquals(2, listener.put.get());
+      assertEquals(1, listener.get.get());
+      assertEquals(1, listener.expire.get());
+      assertEquals(1, listener.remove.get());
+      assertEquals(1, listener.clear.get());
+   }
+
+   public void testExpire() throws Exception
+   {
+      OffHeapExoCache<String, String> cache = new OffHeapExoCache<String, String>(10);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      cache.setLiveTimeMillis(15);
+      cache.put("Foo", "v1");
+      Thread.sleep(25);
+      assertNull(cache.get("Foo"));
+      assertEquals(1, listener.expire.get());
+      assertEquals(0, cache.getCacheSize());
+      assertEquals(0, cache.getUsedMemory());
+   }
+
+   public void testConcurrentAccess() throws Exception
+   {
+      final OffHeapExoCache<Integer, String> cache =
+         new OffHeapExoCache<Integer, String>("test", 100, 64 * 1024, 4096, null);
+      final int threads = 8;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final AtomicInteger errors = new AtomicInteger();
+      for (int i = 0; i < threads; i++)
+      {
+         final int seed = i;
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < 5000; j++)
+                  {
+                     int key = (j * 31 + seed) % 200;
+                     String value = cache.get(key);
+                     if (value == null)
+                     {
+                        cache.put(key, "value" + key);
+                     }
+                     else if (!value.equals("value" + key))
+                     {
+                        errors.incrementAndGet();
+                     }
+                     if (j % 7 == 0)
+                     {
+                        cache.remove(key);
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.incrementAndGet();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertEquals(0, errors.get());
+      assertTrue(cache.getCacheSize() <= 100);
+   }
+
+   public static class CountingListener implements CacheListener<Serializable, Object>
+   {
+
+      final AtomicInteger expire = new AtomicInteger();
+
+      final AtomicInteger remove = new AtomicInteger();
+
+      final AtomicInteger put = new AtomicInteger();
+
+      final AtomicInteger get = new AtomicInteger();
+
+      final AtomicInteger clear = new AtomicInteger();
+
+      public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         expire.incrementAndGet();
+      }
+
+      public void onRemove(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         remove.incrementAndGet();
+      }
+
+      public void onPut(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         put.incrementAndGet();
+      }
+
+      public void onGet(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         get.incrementAndGet();
+      }
+
+      public void onClearCache(CacheListenerContext context) throws Exception
+      {
+         clear.incrementAndGet();
+      }
+   }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.Item;
+import org.exoplatform.services.cache.concurrent.StripedConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.StripedQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @version $Id$
+ */
+public class TestStripedConcurrentCache extends TestCase
+{
+
+   private final Object v1 = new Object();
+
+   private final Object v2 = new Object();
+
+   private final Object v3 = new Object();
+
+   private final Object v4 = new Object();
+
+   public void testConcurrencyLevel()
+   {
+      assertEquals(1, new StripedQueue<Item>(null, 1).getConcurrencyLevel());
+      assertEquals(4, new StripedQueue<Item>(null, 3).getConcurrencyLevel());
+      assertEquals(16, new StripedQueue<Item>(null, 16).getConcurrencyLevel());
+      try
+      {
+         new StripedQueue<Item>(null, 0);
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+      }
+   }
+
+   public void testTrim()
+   {
+      StripedQueue<Item> queue = new StripedQueue<Item>(null, 4);
+      Item i1 = new Item();
+      Item i2 = new Item();
+      Item i3 = new Item();
+      queue.add(i1);
+      queue.add(i2);
+      queue.add(i3);
+      assertEquals(3, queue.size());
+      assertNull(queue.trim(3));
+      List<Item> evicted = queue.trim(1);
+      assertEquals(2, evicted.size());
+      assertSame(i1, evicted.get(0));
+      assertSame(i2, evicted.get(1));
+      assertEquals(1, queue.size());
+      assertFalse(queue.remove(i1));
+      assertTrue(queue.remove(i3));
+      assertEquals(0, queue.size());
+      queue.assertConsistency();
+   }
+
+   public void testTrimManySegments()
+   {
+      StripedQueue<Item> queue = new StripedQueue<Item>(null, 64);
+      for (int i = 0; i < 100; i++)
+      {
+         queue.add(new Item());
+      }
+      List<Item> evicted = queue.trim(10);
+      assertEquals(90, evicted.size());
+      assertEquals(10, queue.size());
+      for (Item item : evicted)
+      {
+         assertFalse(queue.remove(item));
+      }
+      queue.assertConsistency();
+   }
+
+   public void testOverCapacity()
+   {
+      StripedConcurrentFIFOExoCache<String, Object> cache = new StripedConcurrentFIFOExoCache<String, Object>(2);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.put("Juu", v3);
+      assertEquals(2, cache.getCacheSize());
+      assertEquals(null, cache.get("Foo"));
+      assertEquals(v2, cache.get("Bar"));
+      assertEquals(v3, cache.get("Juu"));
+      cache.assertConsistent();
+   }
+
+   public void testPromotion()
+   {
+      StripedConcurrentFIFOExoCache<String, Object> cache = new StripedConcurrentFIFOExoCache<String, Object>(2);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.put("Foo", v3);
+      cache.put("Juu", v4);
+      assertEquals(v3, cache.get("Foo"));
+      assertEquals(null, cache.get("Bar"));
+      assertEquals(v4, cache.get("Juu"));
+      assertEquals(v3, cache.remove("Foo"));
+      assertEquals(1, cache.getCacheSize());
+      cache.assertConsistent();
+   }
+
+   public void testConsistency() throws Exception
+   {
+      final StripedConcurrentFIFOExoCache<Integer, Object> cache =
+         new StripedConcurrentFIFOExoCache<Integer, Object>(100);
+      int threads = 20;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  Random random = new Random();
+                  for (int i = 0; i < 10000; i++)
+                  {
+                     Integer key = random.nextInt(500);
+                     int decision = random.nextInt(3);
+                     if (decision == 0)
+                     {
+                        cache.put(key, v1);
+                     }
+                     else if (decision == 1)
+                     {
+                        cache.remove(key);
+                     }
+                     else
+                     {
+                        cache.get(key);
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.add(e);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      if (!errors.isEmpty())
+      {
+         throw errors.get(0);
+      }
+      cache.assertConsistent();
+      assertTrue(cache.getCacheSize() <= 100);
+   }
+}
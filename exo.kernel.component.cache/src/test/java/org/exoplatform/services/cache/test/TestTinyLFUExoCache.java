@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.concurrent.TinyLFUExoCache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Id$
+ */
+public class TestTinyLFUExoCache extends TestCase
+{
+
+   private final Object v1 = new Object();
+
+   private final Object v2 = new Object();
+
+   private final Object v3 = new Object();
+
+   public void testPutGetRemove()
+   {
+      TinyLFUExoCache<String, Object> cache = new TinyLFUExoCache<String, Object>(10);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      assertEquals(2, cache.getCacheSize());
+      assertEquals(v1, cache.get("Foo"));
+      assertEquals(1, cache.getCacheHit());
+      assertNull(cache.get("Juu"));
+      assertEquals(1, cache.getCacheMiss());
+      cache.put("Foo", v3);
+      assertEquals(v3, cache.get("Foo"));
+      assertEquals(v3, cache.remove("Foo"));
+      assertNull(cache.get("Foo"));
+      assertEquals(1, cache.getCacheSize());
+      Set<Object> cachedSet = new HashSet<Object>(cache.getCachedObjects());
+      assertEquals(Collections.singleton(v2), cachedSet);
+      cache.clearCache();
+      assertEquals(0, cache.getCacheSize());
+      cache.assertConsistent();
+   }
+
+   public void testListener()
+   {
+      TinyLFUExoCache<String, Object> cache = new TinyLFUExoCache<String, Object>(1);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      cache.put("Foo", v1);
+      cache.get("Foo");
+      cache.put("Bar", v2);
+      cache.remove("Foo");
+      cache.remove("Bar");
+      cache.clearCache();
+      assertEquals(2, listener.put.get());
+      assertEquals(1, listener.get.get());
+      assertEquals(1, listener.expire.get());
+      assertEquals(1, listener.remove.get());
+      assertEquals(1, listener.clear.get());
+   }
+
+   public void testExpire() throws Exception
+   {
+      TinyLFUExoCache<String, Object> cache = new TinyLFUExoCache<String, Object>(10);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      cache.setLiveTimeMillis(15);
+      cache.put("Foo", v1);
+      Thread.sleep(25);
+      assertNull(cache.get("Foo"));
+      assertEquals(1, listener.expire.get());
+      assertEquals(0, cache.getCacheSize());
+   }
+
+   public void testScanResistance()
+   {
+      TinyLFUExoCache<Integer, Object> cache = new TinyLFUExoCache<Integer, Object>(100);
+      // The hot entries
+      for (int j = 0; j < 5; j++)
+      {
+         for (int i = 0; i < 50; i++)
+         {
+            if (cache.get(i) == null)
+            {
+               cache.put(i, v1);
+            }
+         }
+      }
+      // A scan that is bigger than the cache
+      for (int i = 1000; i < 2000; i++)
+      {
+         if (cache.get(i) == null)
+         {
+            cache.put(i, v2);
+         }
+      }
+      int survivors = 0;
+      for (int i = 0; i < 50; i++)
+      {
+         if (cache.get(i) != null)
+         {
+            survivors++;
+         }
+      }
+      assertTrue("Only " + survivors + " hot entries survived the scan", survivors >= 45);
+      assertTrue(cache.getCacheSize() <= 100);
+      cache.assertConsistent();
+   }
+
+   public void testSetMaxSize()
+   {
+      TinyLFUExoCache<Integer, Object> cache = new TinyLFUExoCache<Integer, Object>(100);
+      for (int i = 0; i < 100; i++)
+      {
+         cache.put(i, v1);
+      }
+      assertEquals(100, cache.getCacheSize());
+      cache.setMaxSize(10);
+      assertEquals(10, cache.getCacheSize());
+      cache.assertConsistent();
+   }
+
+   public void testConsistency() throws Exception
+   {
+      final TinyLFUExoCache<Integer, Object> cache = new TinyLFUExoCache<Integer, Object>(100);
+      int threads = 20;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  Random random = new Random();
+                  for (int i = 0; i < 10000; i++)
+                  {
+                     Integer key = random.nextInt(500);
+                     int decision = random.nextInt(3);
+                     if (decision == 0)
+                     {
+                        cache.put(key, v1);
+                     }
+                     else if (decision == 1)
+                     {
+                        cache.remove(key);
+                     }
+                     else
+                     {
+                        cache.get(key);
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.add(e);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      if (!errors.isEmpty())
+      {
+         throw errors.get(0);
+      }
+      cache.assertConsistent();
+      assertTrue(cache.getCacheSize() <= 100);
+   }
+
+   private static class CountingListener implements CacheListener<Serializable, Object>
+   {
+
+      final AtomicInteger put = new AtomicInteger();
+
+      final AtomicInteger get = new AtomicInteger();
+
+      final AtomicInteger expire = new AtomicInteger();
+
+      final AtomicInteger remove = new AtomicInteger();
+
+      final AtomicInteger clear = new AtomicInteger();
+
+      public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         expire.incrementAndGet();
+      }
+
+      public void onRemove(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         remove.incrementAndGet();
+      }
+
+      public void onPut(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         put.incrementAndGet();
+      }
+
+      public void onGet(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         get.incrementAndGet();
+      }
+
+      public void onClearCache(CacheListenerContext context) throws Exception
+      {
+         clear.incrementAndGet();
+      }
+   }
+}
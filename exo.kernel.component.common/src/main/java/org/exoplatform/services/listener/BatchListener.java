@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.listener;
+
+import java.util.List;
+
+/**
+ * A {@link Listener} annotated with {@link Asynchronous} can implement this interface to be notified of
+ * several events at once: the events waiting in its queue are then given together, in the order in which
+ * they have been broadcasted. The thread context used to notify the listener is the one of the thread
+ * that broadcasted the first event of the list.
+ *
+ * @version $Id$
+ * @LevelAPI Platform
+ */
+public interface BatchListener<S, D>
+{
+
+   /**
+    * Called with the events broadcasted since the last notification
+    * @param events the events in the order in which they have been broadcasted
+    * @throws Exception if an exception occurs
+    */
+   void onEvents(List<Event<S, D>> events) throws Exception;
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.listener;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.listener.ListenerService.RunListener;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of the events broadcasted to a given asynchronous listener. The events are delivered in the
+ * order in which they have been queued by at most one thread at a time, taken from the pool shared by all
+ * the asynchronous listeners, so a slow listener only delays its own events. To be fair with the other
+ * listeners, the thread gives back the hand to the pool once it has delivered up to <code>batchSize</code>
+ * events.
+ * <p>
+ * If the listener is a {@link BatchListener}, the events waiting in the queue are given together, up to
+ * <code>batchSize</code> events at a time. When the queue is full, the {@link OverflowPolicy} decides
+ * what to do with the new events.
+ *
+ * @version $Id$
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "ListenerService"), @Property(key = "type", value = "listener"),
+   @Property(key = "name", value = "{Name}"), @Property(key = "event", value = "{EventName}")})
+@ManagedDescription("The queue of an asynchronous listener")
+public class ListenerQueue
+{
+
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.ListenerQueue");
+
+   /**
+    * Indicates whether the current thread is delivering the events of a queue, in which case it must never
+    * wait for room in a queue since all the threads of the pool could end up waiting for each other
+    */
+   private static final ThreadLocal<Boolean> DELIVERING = new ThreadLocal<Boolean>();
+
+   /** . */
+   private final String eventName;
+
+   /** . */
+   private final Listener<?, ?> listener;
+
+   /** . */
+   private final Executor executor;
+
+   /** . */
+   private final OverflowPolicy policy;
+
+   /** . */
+   private final int capacity;
+
+   /** . */
+   private final int batchSize;
+
+   /** . */
+   private final BlockingQueue<RunListener<?, ?>> queue;
+
+   /**
+    * Indicates whether a task that delivers the events has been submitted to the executor
+    */
+   private final AtomicBoolean scheduled = new AtomicBoolean();
+
+   /** . */
+   private final Runnable drain = new Runnable()
+   {
+      public void run()
+      {
+         DELIVERING.set(Boolean.TRUE);
+         try
+         {
+            deliver();
+         }
+         finally
+         {
+            DELIVERING.remove();
+            scheduled.set(false);
+            // Events may have been queued after the last poll, or there are still events to deliver
+            if (!queue.isEmpty())
+            {
+               schedule();
+            }
+         }
+      }
+   };
+
+   /** . */
+   private final AtomicLong events = new AtomicLong();
+
+   /** . */
+   private final AtomicLong deliveries = new AtomicLong();
+
+   /** . */
+   private final AtomicLong drops = new AtomicLong();
+
+   /**
+    * The sum of the times in nanoseconds that the delivered events spent in the queue
+    */
+   private final AtomicLong totalLag = new AtomicLong();
+
+   /** . */
+   private volatile long maxLag;
+
+   /**
+    * @param eventName the name of the events to which the listener has been registered
+    * @param listener the listener to notify
+    * @param executor the executor shared by all the asynchronous listeners
+    * @param policy the policy to apply when the queue is full
+    * @param capacity the maximum amount of events in the queue, no limit if lower or equal to 0
+    * @param batchSize the maximum amount of events delivered before giving back the hand to the executor
+    */
+   ListenerQueue(String eventName, Listener<?, ?> listener, Executor executor, OverflowPolicy policy, int capacity,
+      int batchSize)
+   {
+      this.eventName = eventName;
+      this.listener = listener;
+      this.executor = executor;
+      this.policy = policy;
+      this.capacity = capacity;
+      this.batchSize = Math.max(1, batchSize);
+      this.queue =
+         capacity > 0 ? new ArrayBlockingQueue<RunListener<?, ?>>(capacity)
+            : new LinkedBlockingQueue<RunListener<?, ?>>();
+   }
+
+   /**
+    * Queues the given task, applying the overflow policy if the queue is full
+    */
+   void offer(RunListener<?, ?> task)
+   {
+      events.incrementAndGet();
+      if (!queue.offer(task))
+      {
+         switch (policy)
+         {
+            case DISCARD :
+               drop();
+               return;
+            case DISCARD_OLDEST :
+               while (!queue.offer(task))
+               {
+                  RunListener<?, ?> oldest = queue.poll();
+                  if (oldest != null)
+                  {
+                     drop();
+                  }
+               }
+               break;
+            case CALLER_RUNS :
+               runInCaller(task);
+               return;
+            default :
+               if (DELIVERING.get() != null)
+               {
+                  // Never block a thread of the pool
+                  runInCaller(task);
+                  return;
+               }
+               try
+               {
+                  queue.put(task);
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+                  drop();
+                  return;
+               }
+         }
+      }
+      schedule();
+   }
+
+   private void runInCaller(RunListener<?, ?> task)
+   {
+      task.runInCaller();
+      deliveries.incrementAndGet();
+   }
+
+   private void drop()
+   {
+      drops.incrementAndGet();
+      if (LOG.isDebugEnabled())
+      {
+         LOG.debug("The queue of the listener " + getName() + " is full, the event " + eventName
+            + " has been dropped");
+      }
+   }
+
+   private void schedule()
+   {
+      if (scheduled.compareAndSet(false, true))
+      {
+         try
+         {
+            executor.execute(drain);
+         }
+         catch (RejectedExecutionException e)
+         {
+            scheduled.set(false);
+            throw e;
+         }
+      }
+   }
+
+   /**
+    * Delivers up to <code>batchSize</code> events
+    */
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   private void deliver()
+   {
+      if (listener instanceof BatchListener)
+      {
+         List<RunListener<?, ?>> tasks = new ArrayList<RunListener<?, ?>>(Math.min(batchSize, queue.size()));
+         queue.drainTo(tasks, batchSize);
+         if (tasks.isEmpty())
+         {
+            return;
+         }
+         List events = new ArrayList(tasks.size());
+         for (int i = 0, length = tasks.size(); i < length; i++)
+         {
+            RunListener<?, ?> task = tasks.get(i);
+            events.add(task.getEvent());
+            onDelivery(task);
+         }
+         tasks.get(0).run(events);
+         return;
+      }
+      for (int i = 0; i < batchSize; i++)
+      {
+         RunListener<?, ?> task = queue.poll();
+         if (task == null)
+         {
+            return;
+         }
+         onDelivery(task);
+         task.run();
+      }
+   }
+
+   private void onDelivery(RunListener<?, ?> task)
+   {
+      long lag = System.nanoTime() - task.getCreationTime();
+      totalLag.addAndGet(lag);
+      if (lag > maxLag)
+      {
+         maxLag = lag;
+      }
+      deliveries.incrementAndGet();
+   }
+
+   @Managed
+   @ManagedName("Name")
+   @ManagedDescription("The name of the listener")
+   public String getName()
+   {
+      return listener.getName();
+   }
+
+   @Managed
+   @ManagedName("EventName")
+   @ManagedDescription("The name of the events to which the listener has been registered")
+   public String getEventName()
+   {
+      return eventName;
+   }
+
+   @Managed
+   @ManagedName("OverflowPolicy")
+   @ManagedDescription("The policy applied when the queue is full")
+   public String getOverflowPolicy()
+   {
+      return policy.name();
+   }
+
+   @Managed
+   @ManagedName("QueueCapacity")
+   @ManagedDescription("The maximum amount of events in the queue, no limit if lower or equal to 0")
+   public int getQueueCapacity()
+   {
+      return capacity;
+   }
+
+   @Managed
+   @ManagedName("QueueDepth")
+   @ManagedDescription("The amount of events waiting in the queue")
+   public int getQueueDepth()
+   {
+      return queue.size();
+   }
+
+   @Managed
+   @ManagedName("Lag")
+   @ManagedDescription("The time in milliseconds spent in the queue by the oldest waiting event")
+   public long getLag()
+   {
+      RunListener<?, ?> oldest = queue.peek();
+      return oldest == null ? 0 : (System.nanoTime() - oldest.getCreationTime()) / 1000000;
+   }
+
+   @Managed
+   @ManagedName("AverageLag")
+   @ManagedDescription("The average time in milliseconds spent in the queue by the delivered events")
+   public double getAverageLag()
+   {
+      long count = deliveries.get();
+      return count == 0 ? 0 : totalLag.get() / 1000000d / count;
+   }
+
+   @Managed
+   @ManagedName("MaxLag")
+   @ManagedDescription("The maximum time in milliseconds spent in the queue by a delivered event")
+   public long getMaxLag()
+   {
+      return maxLag / 1000000;
+   }
+
+   @Managed
+   @ManagedName("EventCount")
+   @ManagedDescription("The count of events broadcasted to the listener")
+   public long getEventCount()
+   {
+      return events.get();
+   }
+
+   @Managed
+   @ManagedName("DeliveryCount")
+   @ManagedDescription("The count of events delivered to the listener")
+   public long getDeliveryCount()
+   {
+      return deliveries.get();
+   }
+
+   @Managed
+   @ManagedName("DropCount")
+   @ManagedDescription("The count of events dropped because the queue was full")
+   public long getDropCount()
+   {
+      return drops.get();
+   }
+
+   @Managed
+   @ManagedDescription("Reset the statistics of the queue")
+   public void resetStatistics()
+   {
+      events.set(0);
+      deliveries.set(0);
+      drops.set(0);
+      totalLag.set(0);
+      maxLag = 0;
+   }
+}
@@ -24,34 +24,85 @@ import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.component.RequestLifeCycle;
 import org.exoplatform.container.component.ThreadContextHandler;
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.ManagementAware;
+import org.exoplatform.management.ManagementContext;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.naming.InitialContextInitializer;
 
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 /**
  * Created by The eXo Platform SAS Author : Nhu Dinh Thuan
  * nhudinhthuan@exoplatform.com Apr 6, 2007
+ * <p>
+ * The listeners annotated with {@link Asynchronous} are notified by a pool of threads whose size is defined by
+ * the value parameter <code>asynchPoolSize</code>. Each asynchronous listener has its own queue so that its
+ * events are delivered in the order in which they have been broadcasted, and a slow listener only delays its
+ * own events. The queues are bounded, their capacity is defined by the value parameter
+ * <code>asynchQueueCapacity</code> and what to do when a queue is full by the value parameter
+ * <code>asynchOverflowPolicy</code> whose value is one of {@link OverflowPolicy}, {@link OverflowPolicy#CALLER_RUNS}
+ * by default so that a full queue never blocks the thread that broadcasts the event. The value parameter
+ * <code>asynchBatchSize</code> is the maximum amount of events given at once to a {@link BatchListener}.
+ * 
  * @LevelAPI Platform
  */
-public class ListenerService
+@Managed
+@NameTemplate(@Property(key = "service", value = "ListenerService"))
+@ManagedDescription("Listener Service")
+public class ListenerService implements ManagementAware
 {
+   /**
+    * The default maximum amount of events waiting in the queue of an asynchronous listener
+    */
+   private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+   /**
+    * The default maximum amount of events given at once to a {@link BatchListener}
+    */
+   private static final int DEFAULT_BATCH_SIZE = 100;
+
    /** 
     * This executor used for asynchronously event broadcast. 
     */
    private final Executor executor;
 
    /**
-    * Listeners by name map.
+    * The policy to apply when the queue of an asynchronous listener is full
+    */
+   private final OverflowPolicy overflowPolicy;
+
+   /** . */
+   private final int queueCapacity;
+
+   /** . */
+   private final int batchSize;
+
+   /**
+    * The queues of all the asynchronous listeners
     */
-   private final Map<String, List<Listener>> listeners_;
+   private final List<ListenerQueue> queues = new CopyOnWriteArrayList<ListenerQueue>();
+
+   /** . */
+   private volatile ManagementContext managementContext;
+
+   /**
+    * Listeners by name map. The arrays are never modified, they are replaced by a copy each time
+    * a listener is added so that the events can be broadcasted without any lock.
+    */
+   private final ConcurrentMap<String, Listener[]> listeners_;
 
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.ListenerService");
 
@@ -87,7 +138,7 @@ public class ListenerService
    public ListenerService(ExoContainerContext ctx, InitialContextInitializer initializer, InitParams params)
    {
       container = ctx.getContainer();
-      listeners_ = new HashMap<String, List<Listener>>();
+      listeners_ = new ConcurrentHashMap<String, Listener[]>();
       int poolSize = 1;
 
       if (params != null && params.getValueParam("asynchPoolSize") != null)
@@ -95,6 +146,40 @@ public class ListenerService
          poolSize = Integer.parseInt(params.getValueParam("asynchPoolSize").getValue());
       }
       executor = Executors.newFixedThreadPool(poolSize, new ListenerThreadFactory());
+      queueCapacity = getIntValue(params, "asynchQueueCapacity", DEFAULT_QUEUE_CAPACITY);
+      batchSize = getIntValue(params, "asynchBatchSize", DEFAULT_BATCH_SIZE);
+      ValueParam vp = params == null ? null : params.getValueParam("asynchOverflowPolicy");
+      overflowPolicy =
+         vp == null ? OverflowPolicy.CALLER_RUNS : OverflowPolicy.valueOf(vp.getValue().trim().toUpperCase());
+   }
+
+   private static int getIntValue(InitParams params, String name, int defaultValue)
+   {
+      ValueParam vp = params == null ? null : params.getValueParam(name);
+      return vp == null ? defaultValue : Integer.parseInt(vp.getValue().trim());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void setContext(ManagementContext context)
+   {
+      this.managementContext = context;
+      if (context != null)
+      {
+         for (ListenerQueue queue : queues)
+         {
+            context.register(queue);
+         }
+      }
+   }
+
+   /**
+    * @return the queues of all the asynchronous listeners
+    */
+   List<ListenerQueue> getQueues()
+   {
+      return queues;
    }
 
    /**
@@ -117,8 +202,9 @@ public class ListenerService
     * <ol>
     * <li>Check if it exists a list of listeners that have been registered for the
     * given event name, create a new list if no list exists</li>
-    * <li>Add the listener to the list</li>
+    * <li>Replace the list by a copy to which the listener has been added</li>
     * </ol>
+    * The listeners can be added at any time, even while events are broadcasted.
     * @param eventName The name of the event to listen to
     * @param listener The Listener to notify any time the event with the given
     * name is triggered
@@ -132,7 +218,7 @@ public class ListenerService
       {
          if (listenerClass.isAnnotationPresent(Asynchronous.class))
          {
-            listener = new AsynchronousListener(listener);
+            listener = new AsynchronousListener(eventName, listener);
             break;
          }
          else
@@ -142,13 +228,27 @@ public class ListenerService
       }
       while (listenerClass != null);
 
-      List<Listener> list = listeners_.get(eventName);
-      if (list == null)
+      for (;;)
       {
-         list = new ArrayList<Listener>();
-         listeners_.put(eventName, list);
+         Listener[] oldListeners = listeners_.get(eventName);
+         if (oldListeners == null)
+         {
+            if (listeners_.putIfAbsent(eventName, new Listener[]{listener}) == null)
+            {
+               return;
+            }
+         }
+         else
+         {
+            Listener[] newListeners = Arrays.copyOf(oldListeners, oldListeners.length + 1);
+            newListeners[oldListeners.length] = listener;
+            if (listeners_.replace(eventName, oldListeners, newListeners))
+            {
+               return;
+            }
+         }
+         // A listener has been added concurrently, we try again with the new listeners
       }
-      list.add(listener);
    }
 
    /**
@@ -156,7 +256,7 @@ public class ListenerService
     * there is a list of listener that listen to the event name. 2. If there is a
     * list of listener, create the event object with the given name , source and
     * data 3. For each listener in the listener list, invoke the method
-    * onEvent(Event)
+    * onEvent(Event). The same event object is given to all the listeners.
     * 
     * @param <S> The type of the source that broacast the event
     * @param <D> The type of the data that the source object is working on
@@ -167,11 +267,13 @@ public class ListenerService
     */
    final public <S, D> void broadcast(String name, S source, D data) throws Exception
    {
-      List<Listener> list = listeners_.get(name);
+      Listener[] list = listeners_.get(name);
       if (list == null)
          return;
-      for (Listener<S, D> listener : list)
+      Event<S, D> event = new Event<S, D>(name, source, data);
+      for (int i = 0; i < list.length; i++)
       {
+         Listener<S, D> listener = list[i];
          if (LOG.isDebugEnabled())
          {
             LOG.debug("broadcasting event " + name + " on " + listener.getName());
@@ -179,7 +281,7 @@ public class ListenerService
 
          try
          {
-            listener.onEvent(new Event<S, D>(name, source, data));
+            listener.onEvent(event);
          }
          catch (Exception e)
          {
@@ -202,16 +304,16 @@ public class ListenerService
     */
    final public <T extends Event> void broadcast(T event) throws Exception
    {
-      List<Listener> list = listeners_.get(event.getEventName());
+      Listener[] list = listeners_.get(event.getEventName());
       if (list == null)
       {
          return;
       }
-      for (Listener listener : list)
+      for (int i = 0; i < list.length; i++)
       {
          try
          {
-            listener.onEvent(event);
+            list[i].onEvent(event);
          }
          catch (Exception e)
          {
@@ -222,15 +324,30 @@ public class ListenerService
 
    /**
     * This AsynchronousListener is a wrapper for original listener, that 
-    * executes wrapped listeners onEvent() in separate thread. 
+    * executes wrapped listeners onEvent() in separate thread. The events
+    * are queued in the {@link ListenerQueue} of the listener.
     */
    protected class AsynchronousListener<S, D> extends Listener<S, D>
    {
       private Listener<S, D> listener;
 
+      private final ListenerQueue queue;
+
       public AsynchronousListener(Listener<S, D> listener)
+      {
+         this(listener.getName(), listener);
+      }
+
+      public AsynchronousListener(String eventName, Listener<S, D> listener)
       {
          this.listener = listener;
+         this.queue = new ListenerQueue(eventName, listener, executor, overflowPolicy, queueCapacity, batchSize);
+         queues.add(queue);
+         ManagementContext context = managementContext;
+         if (context != null)
+         {
+            context.register(queue);
+         }
       }
 
       @Override
@@ -260,7 +377,7 @@ public class ListenerService
       @Override
       public void onEvent(Event<S, D> event) throws Exception
       {
-         executor.execute(new RunListener<S, D>(listener, event));
+         queue.offer(new RunListener<S, D>(listener, event));
       }
    }
 
@@ -275,6 +392,11 @@ public class ListenerService
       
       private final ThreadContextHandler handler;
 
+      /**
+       * The time in nanoseconds at which the event has been broadcasted
+       */
+      private final long creationTime = System.nanoTime();
+
       public RunListener(Listener<S, D> listener, Event<S, D> event)
       {
          this.listener = listener;
@@ -283,10 +405,46 @@ public class ListenerService
          handler.store();
       }
 
+      Event<S, D> getEvent()
+      {
+         return event;
+      }
+
+      long getCreationTime()
+      {
+         return creationTime;
+      }
+
       /**
        * {@inheritDoc}
        */
       public void run()
+      {
+         run(null);
+      }
+
+      /**
+       * Notifies the listener in the thread that broadcasted the event, the thread context is left unchanged
+       */
+      void runInCaller()
+      {
+         try
+         {
+            listener.onEvent(event);
+         }
+         catch (Exception e)
+         {
+            LOG.error("Exception on broadcasting events occurs: " + e.getMessage(), e);
+         }
+      }
+
+      /**
+       * Notifies the listener within the thread context of the thread that broadcasted the event
+       * @param events the events to give to the listener if it is a {@link BatchListener}, <code>null</code>
+       * to notify it of the event of this task only
+       */
+      @SuppressWarnings("unchecked")
+      void run(List<Event<S, D>> events)
       {
          try
          {
@@ -300,7 +458,14 @@ public class ListenerService
             });
             RequestLifeCycle.begin(container);
             handler.push();
-            listener.onEvent(event);
+            if (events == null)
+            {
+               listener.onEvent(event);
+            }
+            else
+            {
+               ((BatchListener<S, D>)listener).onEvents(events);
+            }
          }
          catch (Exception e)
          {
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.listener;
+
+/**
+ * Defines what happens when an event is broadcasted to an asynchronous listener whose queue is full.
+ *
+ * @version $Id$
+ * @LevelAPI Platform
+ */
+public enum OverflowPolicy {
+
+   /**
+    * The thread that broadcasts the event waits until there is room in the queue. If the event is broadcasted
+    * by a thread of the pool of the asynchronous listeners, the listener is notified by this thread as with
+    * {@link #CALLER_RUNS} since waiting could prevent the queue from being drained
+    */
+   BLOCK,
+
+   /**
+    * The new event is dropped
+    */
+   DISCARD,
+
+   /**
+    * The oldest event of the queue is dropped to make room for the new event
+    */
+   DISCARD_OLDEST,
+
+   /**
+    * The listener is notified by the thread that broadcasts the event as if it was synchronous, so the
+    * event can be delivered before the events of the queue. This is the default policy.
+    */
+   CALLER_RUNS
+}
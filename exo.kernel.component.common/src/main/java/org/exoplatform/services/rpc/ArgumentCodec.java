@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * This interface allows to define how the arguments of a given type are written into the messages
+ * sent to the other cluster nodes and read from them. The arguments whose type has no codec are
+ * written using the Java serialization, which is much more expensive in terms of CPU and of size
+ * since the class descriptors are written in each message.
+ * <p>
+ * A codec is identified by its id that must be the same on all the cluster nodes, the codecs
+ * must then be registered on all the cluster nodes before executing any command that uses them.
+ * 
+ * @version $Id$
+ */
+public interface ArgumentCodec<T extends Serializable>
+{
+
+   /**
+    * Gives the id of the codec, it must be a positive integer unique among the codecs registered
+    * on the {@link RPCService} and the same on all the cluster nodes.
+    */
+   int getId();
+
+   /**
+    * Gives the exact type of the arguments supported by this codec, the sub classes of this
+    * type are not supported.
+    */
+   Class<T> getType();
+
+   /**
+    * Writes the given argument
+    * @param out the output into which the argument must be written
+    * @param value the argument to write, never <code>null</code>
+    * @throws IOException if the argument cannot be written
+    */
+   void write(DataOutput out, T value) throws IOException;
+
+   /**
+    * Reads an argument previously written by {@link #write(DataOutput, Serializable)}
+    * @param in the input from which the argument must be read
+    * @return the argument
+    * @throws IOException if the argument cannot be read
+    */
+   T read(DataInput in) throws IOException;
+}
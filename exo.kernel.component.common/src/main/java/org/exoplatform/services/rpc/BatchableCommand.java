@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc;
+
+/**
+ * A {@link RemoteCommand} that accepts to be batched with other commands when it is executed
+ * asynchronously on all the cluster nodes, which is typically the case of the invalidation commands.
+ * Instead of sending one message per call, the {@link RPCService} collects such commands during
+ * a short amount of time or until a maximum amount of commands is reached and sends them all in
+ * one single message, the commands are then executed on each node in the order of the calls.
+ * <p>
+ * Since the command is sent later, the arguments given to the {@link RPCService} must not be modified
+ * after the call.
+ * 
+ * @version $Id$
+ */
+public interface BatchableCommand extends RemoteCommand
+{
+}
@@ -20,6 +20,7 @@ package org.exoplatform.services.rpc;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * This service provides mechanism to communicate with the other cluster nodes. This service will
@@ -105,6 +106,84 @@ public interface RPCService
    Object executeCommandOnCoordinator(RemoteCommand command, long timeout, Serializable... args) throws RPCException,
       SecurityException;
 
+   /**
+    * Executes a command on all the cluster nodes without blocking the caller. This method is equivalent
+    * to the other method of the same type but with the default timeout. The command must be registered
+    * first otherwise an {@link RPCException} will be thrown.
+    *
+    * @param command The command to execute on each cluster node
+    * @param listener the listener notified of the response of each node as soon as it is received,
+    * can be <code>null</code>
+    * @param args an array of {@link Serializable} objects corresponding to parameters of the command 
+    * to execute remotely
+    * @return a future giving the list of responses from all the members of the cluster once all of them
+    * have replied. If we met an exception on a given node, the RPCException will be the corresponding
+    * response of this particular node
+    * @throws RPCException in the event of problems.
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   Future<List<Object>> executeCommandOnAllNodesAsync(RemoteCommand command, RPCResponseListener listener,
+      Serializable... args) throws RPCException, SecurityException;
+
+   /**
+    * Executes a command on all the cluster nodes without blocking the caller. The command is sent
+    * to each node separately so that the response of a node is available as soon as this node has replied,
+    * whatever the time needed by the other nodes. The command must be registered first otherwise an 
+    * {@link RPCException} will be thrown.
+    *
+    * @param command The command to execute on each cluster node
+    * @param timeout a timeout after which the response of a node will be a replication exception.
+    * @param listener the listener notified of the response of each node as soon as it is received,
+    * can be <code>null</code>
+    * @param args an array of {@link Serializable} objects corresponding to parameters of the command 
+    * to execute remotely
+    * @return a future giving the list of responses from all the members of the cluster once all of them
+    * have replied. If we met an exception on a given node, the RPCException will be the corresponding
+    * response of this particular node
+    * @throws RPCException in the event of problems.
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   Future<List<Object>> executeCommandOnAllNodesAsync(RemoteCommand command, long timeout,
+      RPCResponseListener listener, Serializable... args) throws RPCException, SecurityException;
+
+   /**
+    * Executes a command on the coordinator only without blocking the caller. This method is equivalent
+    * to the other method of the same type but with the default timeout. The command must be registered
+    * first otherwise an {@link RPCException} will be thrown.
+    *
+    * @param command The command to execute on the coordinator node
+    * @param args an array of {@link Serializable} objects corresponding to parameters of the command 
+    * to execute remotely
+    * @return a future giving the response of the coordinator. If we met an exception on the coordinator,
+    * {@link Future#get()} will throw an {@link java.util.concurrent.ExecutionException} caused by the
+    * corresponding RPCException
+    * @throws RPCException in the event of problems.
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   Future<Object> executeCommandOnCoordinatorAsync(RemoteCommand command, Serializable... args)
+      throws RPCException, SecurityException;
+
+   /**
+    * Executes a command on the coordinator only without blocking the caller. The command must be
+    * registered first otherwise an {@link RPCException} will be thrown.
+    *
+    * @param command The command to execute on the coordinator node
+    * @param timeout a timeout after which to throw a replication exception.
+    * @param args an array of {@link Serializable} objects corresponding to parameters of the command 
+    * to execute remotely
+    * @return a future giving the response of the coordinator. If we met an exception on the coordinator,
+    * {@link Future#get()} will throw an {@link java.util.concurrent.ExecutionException} caused by the
+    * corresponding RPCException
+    * @throws RPCException in the event of problems.
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   Future<Object> executeCommandOnCoordinatorAsync(RemoteCommand command, long timeout, Serializable... args)
+      throws RPCException, SecurityException;
+
    /**
     * Register a new {@link RemoteCommand} instance, it will be mapped to its id. If a command with the
     * same Id has already been registered, a warning will be printed into the log file and the new
@@ -125,6 +204,18 @@ public interface RPCService
     */
    void unregisterCommand(RemoteCommand command) throws SecurityException;
    
+   /**
+    * Register a new {@link ArgumentCodec}, it will be used to write and read all the arguments of
+    * the exact type supported by the codec. The codec must be registered with the same id on all
+    * the cluster nodes.
+    * @param codec the codec to register
+    * @throws IllegalArgumentException if a codec has already been registered with the same id
+    * for another type
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   void registerArgumentCodec(ArgumentCodec<?> codec) throws SecurityException;
+   
    /**
     * Indicates whether the local node is the coordinator of the cluster
     * @return <code>true</code> if the coordinator is the coordinator, <code>false</code> otherwise
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc;
+
+/**
+ * A {@link RemoteCommand} that doesn't need to be executed in the order in which the commands have been
+ * sent. By default, the commands are executed by the thread that delivers the messages of the sender, so
+ * a slow command delays all the commands sent after it by the same node. The executions of an unordered
+ * command are delivered out of band and executed by a pool of threads shared by all the unordered commands,
+ * with a limited amount of concurrent executions per command id.
+ * <p>
+ * When all the executions allowed are in progress, the new executions are queued. When the queue is full,
+ * the thread that delivers the message waits for a free slot during a configurable amount of time which slows
+ * down the sender, and then the execution is rejected: the caller gets an {@link RPCException} if it expects
+ * a response, otherwise the rejection is logged.
+ * 
+ * @version $Id$
+ */
+public interface UnorderedCommand extends RemoteCommand
+{
+
+   /**
+    * Gives the maximum amount of executions of this command that can be in progress at the same time
+    * on a given node
+    */
+   int getMaxConcurrency();
+
+   /**
+    * Gives the maximum amount of executions of this command that can wait for a free slot on a given node
+    */
+   int getQueueCapacity();
+}
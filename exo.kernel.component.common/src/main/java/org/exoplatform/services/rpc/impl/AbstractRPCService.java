@@ -25,13 +25,23 @@ import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.ManagementAware;
+import org.exoplatform.management.ManagementContext;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.services.rpc.ArgumentCodec;
+import org.exoplatform.services.rpc.BatchableCommand;
 import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.RPCResponseListener;
 import org.exoplatform.services.rpc.RPCService;
 import org.exoplatform.services.rpc.RemoteCommand;
 import org.exoplatform.services.rpc.TopologyChangeEvent;
 import org.exoplatform.services.rpc.TopologyChangeListener;
+import org.exoplatform.services.rpc.UnorderedCommand;
 import org.jgroups.Address;
 import org.jgroups.Channel;
 import org.jgroups.MembershipListener;
@@ -60,8 +70,20 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class is a basic implementation of the {@link RPCService}, it is mainly based on the
@@ -71,7 +93,11 @@ import java.util.concurrent.CountDownLatch;
  * @author <a href="mailto:nicolas.filotto@exoplatform.com">Nicolas Filotto</a>
  * @version $Id$
  */
-public abstract class AbstractRPCService implements RPCService, Startable, RequestHandler, MembershipListener
+@Managed
+@NameTemplate(@Property(key = "service", value = "RPCService"))
+@ManagedDescription("RPC Service")
+public abstract class AbstractRPCService implements RPCService, Startable, RequestHandler, MembershipListener,
+   ManagementAware
 {
 
    /**
@@ -103,6 +129,35 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     * The name of the parameter for the retry timeout
     */
    protected static final String PARAM_RETRY_TIMEOUT = "retry-timeout";
+
+   /**
+    * The name of the parameter for the maximum amount of threads used to send the commands asynchronously
+    * when the underlying {@link MessageDispatcher} has no non-blocking API
+    */
+   protected static final String PARAM_MAX_ASYNC_THREADS = "max-async-threads";
+
+   /**
+    * The name of the parameter for the maximum amount of commands per batch
+    */
+   protected static final String PARAM_BATCH_MAX_SIZE = "batch-max-size";
+
+   /**
+    * The name of the parameter for the maximum amount of time in milliseconds a batched command
+    * can wait before being sent
+    */
+   protected static final String PARAM_BATCH_MAX_DELAY = "batch-max-delay";
+
+   /**
+    * The name of the parameter for the maximum amount of threads used to execute the incoming
+    * {@link UnorderedCommand}
+    */
+   protected static final String PARAM_MAX_COMMAND_THREADS = "max-command-threads";
+
+   /**
+    * The name of the parameter for the maximum amount of time in milliseconds to wait for a free slot
+    * in the queue of an {@link UnorderedCommand} before rejecting its execution
+    */
+   protected static final String PARAM_COMMAND_QUEUE_TIMEOUT = "command-queue-timeout";
    
    /**
     * The value of the default timeout
@@ -114,6 +169,32 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     */
    protected static final int DEFAULT_RETRY_TIMEOUT = 20000;
 
+   /**
+    * The default value of the maximum amount of threads used to send the commands asynchronously
+    */
+   protected static final int DEFAULT_MAX_ASYNC_THREADS = 10;
+
+   /**
+    * The default value of the maximum amount of commands per batch
+    */
+   protected static final int DEFAULT_BATCH_MAX_SIZE = 100;
+
+   /**
+    * The default value of the maximum amount of time in milliseconds a batched command can wait
+    */
+   protected static final long DEFAULT_BATCH_MAX_DELAY = 10;
+
+   /**
+    * The default value of the maximum amount of threads used to execute the incoming {@link UnorderedCommand}
+    */
+   protected static final int DEFAULT_MAX_COMMAND_THREADS = 20;
+
+   /**
+    * The default value of the maximum amount of time in milliseconds to wait for a free slot in the queue
+    * of an {@link UnorderedCommand}
+    */
+   protected static final long DEFAULT_COMMAND_QUEUE_TIMEOUT = 1000;
+
    /**
     * The default value of the cluster name
     */
@@ -168,6 +249,43 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     * Indicates whether the failover capabilities are enabled
     */
    private boolean allowFailover = true;
+
+   /**
+    * The maximum amount of threads used to send the commands asynchronously
+    */
+   private int maxAsyncThreads = DEFAULT_MAX_ASYNC_THREADS;
+
+   /**
+    * The executor used to send the commands asynchronously, it is only created if needed
+    */
+   private volatile ExecutorService asyncExecutor;
+
+   /**
+    * The maximum amount of threads used to execute the incoming {@link UnorderedCommand}
+    */
+   private int maxCommandThreads = DEFAULT_MAX_COMMAND_THREADS;
+
+   /**
+    * The maximum amount of time in milliseconds to wait for a free slot in the queue of an
+    * {@link UnorderedCommand}
+    */
+   private long commandQueueTimeout = DEFAULT_COMMAND_QUEUE_TIMEOUT;
+
+   /**
+    * The pool of threads shared by all the {@link UnorderedCommand}, it is only created if needed
+    */
+   private volatile ExecutorService commandExecutor;
+
+   /**
+    * The executors of the {@link UnorderedCommand} that have been received
+    */
+   private final ConcurrentMap<String, CommandExecutor> commandExecutors =
+      new ConcurrentHashMap<String, CommandExecutor>();
+
+   /**
+    * The context in which the managed objects of the service are registered
+    */
+   private volatile ManagementContext managementContext;
    
    /**
     * The dispatcher used to launch the command of the cluster nodes
@@ -198,6 +316,16 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
    private volatile Map<String, RemoteCommand> commands =
       Collections.unmodifiableMap(new HashMap<String, RemoteCommand>());
 
+   /**
+    * The codec used to write and read the content of the messages
+    */
+   private final MessageCodec codec = new MessageCodec();
+
+   /**
+    * The batcher of the {@link BatchableCommand} launched asynchronously on all the nodes
+    */
+   private final CommandBatcher batcher;
+
    /**
     * The public constructor
     * @param ctx the {@link ExoContainerContext} from which we will extract the corresponding
@@ -208,32 +336,20 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     */
    public AbstractRPCService(ExoContainerContext ctx, InitParams params, ConfigurationManager configManager)
    {
-      if (params == null)
-      {
-         throw new IllegalArgumentException("The RPCServiceImpl requires some parameters");
-      }
-      final URL properties = getProperties(params, configManager);
-      if (LOG.isInfoEnabled())
-      {
-         LOG.info("The JGroups configuration used for the RPCServiceImpl will be loaded from " + properties);
-      }
-
-      try
-      {
-         this.configurator = SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<ProtocolStackConfigurator>()
-         {
-            public ProtocolStackConfigurator run() throws Exception
-            {
-               return ConfiguratorFactory.getStackConfigurator(properties);
-            }
-         });
-      }
-      catch (PrivilegedActionException pae)
-      {
-         throw new RuntimeException("Cannot load the JGroups configuration from " + properties, pae.getCause());
-      }
+      this(params, getConfigurator(params, configManager), getClusterName(ctx, params));
+   }
 
-      this.clusterName = getClusterName(ctx, params);
+   /**
+    * The constructor used by the implementations that don't rely on a JGroups configuration
+    * @param params the list of initial parameters
+    * @param configurator the configurator used to create the JGroups Channel, it can be <code>null</code>
+    * if {@link #connect()} is overridden
+    * @param clusterName the name of the cluster
+    */
+   protected AbstractRPCService(InitParams params, ProtocolStackConfigurator configurator, String clusterName)
+   {
+      this.configurator = configurator;
+      this.clusterName = clusterName;
       if (LOG.isDebugEnabled())
       {
          LOG.debug("The cluster name of the RPCServiceImpl has been set to " + clusterName);
@@ -265,6 +381,57 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
             LOG.debug("The retry timeout of the RPCServiceImpl has been set to " + retryTimeout);
          }
       }
+      String sMaxAsyncThreads = getValueParam(params, PARAM_MAX_ASYNC_THREADS);
+      if (sMaxAsyncThreads != null)
+      {
+         maxAsyncThreads = Integer.parseInt(sMaxAsyncThreads);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The maximum amount of async threads of the RPCServiceImpl has been set to "
+               + maxAsyncThreads);
+         }
+      }
+      int batchMaxSize = DEFAULT_BATCH_MAX_SIZE;
+      String sBatchMaxSize = getValueParam(params, PARAM_BATCH_MAX_SIZE);
+      if (sBatchMaxSize != null)
+      {
+         batchMaxSize = Integer.parseInt(sBatchMaxSize);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The maximum amount of commands per batch of the RPCServiceImpl has been set to "
+               + batchMaxSize);
+         }
+      }
+      long batchMaxDelay = DEFAULT_BATCH_MAX_DELAY;
+      String sBatchMaxDelay = getValueParam(params, PARAM_BATCH_MAX_DELAY);
+      if (sBatchMaxDelay != null)
+      {
+         batchMaxDelay = Long.parseLong(sBatchMaxDelay);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The maximum delay of the batches of the RPCServiceImpl has been set to " + batchMaxDelay);
+         }
+      }
+      String sMaxCommandThreads = getValueParam(params, PARAM_MAX_COMMAND_THREADS);
+      if (sMaxCommandThreads != null)
+      {
+         maxCommandThreads = Integer.parseInt(sMaxCommandThreads);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The maximum amount of command threads of the RPCServiceImpl has been set to "
+               + maxCommandThreads);
+         }
+      }
+      String sCommandQueueTimeout = getValueParam(params, PARAM_COMMAND_QUEUE_TIMEOUT);
+      if (sCommandQueueTimeout != null)
+      {
+         commandQueueTimeout = Long.parseLong(sCommandQueueTimeout);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The command queue timeout of the RPCServiceImpl has been set to " + commandQueueTimeout);
+         }
+      }
+      this.batcher = new CommandBatcher(this, batchMaxSize, batchMaxDelay);
       this.state = State.INITIALIZED;
    }
 
@@ -381,6 +548,119 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Future<List<Object>> executeCommandOnAllNodesAsync(RemoteCommand command, RPCResponseListener listener,
+      Serializable... args) throws RPCException
+   {
+      return executeCommandOnAllNodesAsync(command, defaultTimeout, listener, args);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Future<List<Object>> executeCommandOnAllNodesAsync(RemoteCommand command, long timeout,
+      RPCResponseListener listener, Serializable... args) throws RPCException
+   {
+      String commandId = checkCommand(command);
+      List<Address> dests = members;
+      ResponseCollector collector = new ResponseCollector(dests, listener);
+      excecuteCommandAsync(dests, commandId, timeout, collector, args);
+      return collector.future;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Future<Object> executeCommandOnCoordinatorAsync(RemoteCommand command, Serializable... args)
+      throws RPCException
+   {
+      return executeCommandOnCoordinatorAsync(command, defaultTimeout, args);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Future<Object> executeCommandOnCoordinatorAsync(final RemoteCommand command, final long timeout,
+      final Serializable... args) throws RPCException
+   {
+      String commandId = checkCommand(command);
+      final ResultFuture<Object> future = new ResultFuture<Object>();
+      ResponseHandler handler = new ResponseHandler()
+      {
+         public void onResponse(int index, Address member, Object response)
+         {
+            if (allowFailover && response instanceof MemberHasLeftException)
+            {
+               // The coordinator seems to have left, the failover is done by the synchronous
+               // method in another thread since it may need to wait for a topology change
+               if (LOG.isTraceEnabled())
+                  LOG.trace("The coordinator has left, the command will be relaunched synchronously");
+               Runnable failover = new Runnable()
+               {
+                  public void run()
+                  {
+                     try
+                     {
+                        future.complete(executeCommandOnCoordinatorMain(command, true, timeout, args));
+                     }
+                     catch (RPCException e)
+                     {
+                        future.fail(e);
+                     }
+                  }
+               };
+               try
+               {
+                  getAsyncExecutor().execute(failover);
+               }
+               catch (RejectedExecutionException e)
+               {
+                  future.fail(new RPCException("Cannot relaunch the command " + command.getId()
+                     + " since the service is stopped", e));
+               }
+            }
+            else if (response instanceof RPCException)
+            {
+               future.fail((RPCException)response);
+            }
+            else
+            {
+               future.complete(response);
+            }
+         }
+      };
+      excecuteCommandAsync(Collections.singletonList(coordinator), commandId, timeout, handler, args);
+      return future;
+   }
+
+   /**
+    * Checks whether the given command can be executed
+    * @param command the command to check
+    * @return the id of the command
+    * @throws RPCException if the service is not started or the command has not been registered
+    */
+   private String checkCommand(RemoteCommand command) throws RPCException
+   {
+      SecurityManager security = System.getSecurityManager();
+      if (security != null)
+      {
+         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
+      }
+      if (state != State.STARTED)
+      {
+         throw new RPCException(
+            "Cannot execute any commands if the service is not started, the current state of the service is " + state);
+      }
+      final String commandId = command.getId();
+      if (commands.get(commandId) != command)
+      {
+         throw new RPCException("Command " + commandId + " unknown, please register your command first");
+      }
+      return commandId;
+   }
+
    /**
     * Execute the command on all the nodes corresponding to the list of destinations.
     * @param dests the list of members on which the command needs to be executed
@@ -395,90 +675,544 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
    protected List<Object> excecuteCommand(final List<Address> dests, RemoteCommand command,
       final boolean synchronous, final long timeout, Serializable... args) throws RPCException
    {
-      SecurityManager security = System.getSecurityManager();
-      if (security != null)
+      final String commandId = checkCommand(command);
+      if (!synchronous && dests == members && command instanceof BatchableCommand)
       {
-         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
+         batcher.add(new MessageBody(null, commandId, args, true));
+         return Collections.emptyList();
       }
-      if (state != State.STARTED)
+      else
       {
-         throw new RPCException(
-            "Cannot execute any commands if the service is not started, the current state of the service is " + state);
+         // Send the pending commands first and wait for the batch being sent if any, to preserve the order
+         // of the commands
+         batcher.flush();
       }
-      final String commandId = command.getId();
-      if (commands.get(commandId) != command)
+      final Message msg = new Message();
+      MessageBody body = new MessageBody(dests.size() == 1 && dests != members ? dests.get(0) : null, //NOSONAR
+         commandId, args, !synchronous);
+      setBody(msg, body, dests);
+      boolean unordered = command instanceof UnorderedCommand;
+      if (unordered)
       {
-         throw new RPCException("Command " + commandId + " unknown, please register your command first");
+         setOutOfBand(msg);
       }
-      final Message msg = new Message();
-      setObject(msg, new MessageBody(dests.size() == 1 && dests != members ? dests.get(0) : null, commandId, args)); //NOSONAR
       RspList rsps = SecurityHelper.doPrivilegedAction(new PrivilegedAction<RspList>()
       {
-         public RspList run()
+         public RspList run()
+         {
+            try
+            {
+               return castMessage(dests, msg, synchronous, timeout);
+            }
+            catch (Exception e)
+            {
+               LOG.error("Could not cast the message corresponding to the command " + commandId + ".", e);
+            }
+            return null;
+         }
+      });
+
+      if (LOG.isTraceEnabled())
+         LOG.trace("responses: " + rsps);
+      if (rsps == null)
+         throw new RPCException("Could not get the responses for command " + commandId + ".");
+      if (!synchronous)
+         return Collections.emptyList();// async case
+      if (LOG.isTraceEnabled())
+      {
+         LOG.trace("(" + getLocalAddress() + "): responses for command " + commandId + ":\n" + rsps);
+      }
+      List<Object> retval = new ArrayList<Object>(rsps.size());
+      for (Address dest : dests)
+      {
+         Object response = getResponse(dest, rsps.get(dest));
+         if (response instanceof UnknownCommandIndexException)
+         {
+            // The member has lost the mapping of the index of the command
+            codec.unacknowledge(commandId, dest);
+            response = resend(dest, body, unordered, timeout);
+         }
+         acknowledge(commandId, dest, response);
+         retval.add(response);
+      }
+      return retval;
+   }
+
+   /**
+    * Sends again the given body to the given member with the id of the command, this is called when the
+    * member replied that it doesn't know the index of the command
+    * @param dest the member to which the body is sent
+    * @param body the body to send
+    * @param unordered indicates whether the message must be marked as out of band
+    * @param timeout a timeout after which the response will be a replication exception
+    * @return the response of the member
+    */
+   private Object resend(final Address dest, MessageBody body, boolean unordered, final long timeout)
+   {
+      final Message msg = new Message();
+      try
+      {
+         setBodyWithId(msg, body);
+      }
+      catch (RPCException e)
+      {
+         return e;
+      }
+      if (unordered)
+      {
+         setOutOfBand(msg);
+      }
+      RspList rsps;
+      try
+      {
+         rsps = SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<RspList>()
+         {
+            public RspList run() throws Exception
+            {
+               return castMessage(Collections.singletonList(dest), msg, true, timeout);
+            }
+         });
+      }
+      catch (PrivilegedActionException pae)
+      {
+         return new RPCException("Could not send the message to the member " + dest + ".", pae.getException());
+      }
+      return getResponse(dest, rsps == null ? null : rsps.get(dest));
+   }
+
+   /**
+    * Updates the members that know the index of the given command according to the response of a member
+    */
+   private void acknowledge(String commandId, Address member, Object response)
+   {
+      if (!(response instanceof RPCException))
+      {
+         // The member could read the message so it knows the index of the command
+         codec.acknowledge(commandId, member);
+      }
+      else
+      {
+         // The member may not know the index of the command anymore, the id will be sent again
+         codec.unacknowledge(commandId, member);
+      }
+   }
+
+   /**
+    * Sends the given commands in one single message to all the nodes
+    * @param bodies the message bodies of the commands
+    * @throws Exception if the message could not be sent
+    */
+   void sendBatch(List<MessageBody> bodies) throws Exception
+   {
+      final List<Address> dests = members;
+      final Message msg = new Message();
+      msg.setBuffer(codec.encode(bodies));
+      try
+      {
+         SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<RspList>()
+         {
+            public RspList run() throws Exception
+            {
+               return castMessage(dests, msg, false, 0);
+            }
+         });
+      }
+      catch (PrivilegedActionException pae)
+      {
+         throw pae.getException();
+      }
+   }
+
+   /**
+    * Gives the batcher of the {@link BatchableCommand}
+    */
+   CommandBatcher getBatcher()
+   {
+      return batcher;
+   }
+
+   /**
+    * Gives the codec of the messages
+    */
+   MessageCodec getCodec()
+   {
+      return codec;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void setContext(ManagementContext context)
+   {
+      this.managementContext = context;
+      if (context != null)
+      {
+         context.register(batcher);
+         for (CommandExecutor executor : commandExecutors.values())
+         {
+            context.register(executor);
+         }
+      }
+   }
+
+   /**
+    * Gives the executor of the given command if it has already been received
+    */
+   CommandExecutor getCommandExecutor(String commandId)
+   {
+      return commandExecutors.get(commandId);
+   }
+
+   /**
+    * Gives the executor of the given command, it is created at the first call
+    */
+   private CommandExecutor getCommandExecutor(UnorderedCommand command)
+   {
+      CommandExecutor executor = commandExecutors.get(command.getId());
+      if (executor == null)
+      {
+         executor = new CommandExecutor(command, getExecutor());
+         CommandExecutor oldValue = commandExecutors.putIfAbsent(command.getId(), executor);
+         if (oldValue == null)
+         {
+            ManagementContext context = managementContext;
+            if (context != null)
+            {
+               context.register(executor);
+            }
+         }
+         else
+         {
+            executor = oldValue;
+         }
+      }
+      return executor;
+   }
+
+   /**
+    * Gives the pool of threads shared by all the {@link UnorderedCommand}, it is created at the first call
+    */
+   private ExecutorService getExecutor()
+   {
+      ExecutorService executor = commandExecutor;
+      if (executor == null)
+      {
+         synchronized (this)
+         {
+            executor = commandExecutor;
+            if (executor == null)
+            {
+               if (state == State.STOPPED)
+               {
+                  throw new RejectedExecutionException("The service is stopped");
+               }
+               ThreadPoolExecutor tpe =
+                  new ThreadPoolExecutor(maxCommandThreads, maxCommandThreads, 60, TimeUnit.SECONDS,
+                     new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                     {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r)
+                        {
+                           Thread t = new Thread(r, "RPCService-Command-" + count.incrementAndGet());
+                           t.setDaemon(true);
+                           return t;
+                        }
+                     });
+               tpe.allowCoreThreadTimeOut(true);
+               commandExecutor = executor = tpe;
+            }
+         }
+      }
+      return executor;
+   }
+
+   /**
+    * Marks the given message as out of band, so that it can be delivered without waiting for the
+    * messages sent before it by the same member
+    * @param msg the message to mark
+    */
+   protected abstract void setOutOfBand(Message msg);
+
+   /**
+    * Writes the given body into the given message
+    * @param msg the message to fill
+    * @param body the body to write
+    * @param dests the members to which the message will be sent
+    * @throws RPCException if the body cannot be written
+    */
+   private void setBody(Message msg, MessageBody body, List<Address> dests) throws RPCException
+   {
+      try
+      {
+         msg.setBuffer(codec.encode(body, dests));
+      }
+      catch (IOException e)
+      {
+         throw new RPCException("Cannot write the message corresponding to the command " + body.getCommandId(), e);
+      }
+   }
+
+   /**
+    * Writes the given body into the given message with the id of the command
+    * @param msg the message to fill
+    * @param body the body to write
+    * @throws RPCException if the body cannot be written
+    */
+   private void setBodyWithId(Message msg, MessageBody body) throws RPCException
+   {
+      try
+      {
+         msg.setBuffer(codec.encodeWithId(body));
+      }
+      catch (IOException e)
+      {
+         throw new RPCException("Cannot write the message corresponding to the command " + body.getCommandId(), e);
+      }
+   }
+
+   /**
+    * Converts the response of a given member into the value expected by the caller.
+    * @param dest the member that has been targeted
+    * @param rsp the response of the member
+    * @return the value returned by the member, a {@link MemberHasLeftException} if the member has left
+    * or an {@link RPCException} if the timeout has been reached
+    */
+   protected Object getResponse(Address dest, Rsp rsp)
+   {
+      if (rsp == null || (rsp.wasSuspected() && !rsp.wasReceived()))
+      {
+         // The corresponding member has left
+         return new MemberHasLeftException("No response for the member " + dest
+            + ", this member has probably left the cluster.");
+      }
+      else if (!rsp.wasReceived())
+      {
+         return new RPCException("Replication timeout for " + rsp.getSender() + ", rsp=" + rsp);
+      }
+      Object value = rsp.getValue();
+      if (value instanceof RPCException)
+      {
+         // if we have any application-level exceptions make sure we throw them!!
+         if (LOG.isTraceEnabled())
+            LOG.trace("Recieved exception'" + value + "' from " + rsp.getSender(), (RPCException)value);
+      }
+      return value;
+   }
+
+   /**
+    * Execute the command asynchronously on all the nodes corresponding to the list of destinations.
+    * A message is sent to each destination separately so that the response of each node can be
+    * given to the handler as soon as the node has replied.
+    * @param dests the list of members on which the command needs to be executed
+    * @param commandId the id of the command to execute, the command must have been checked first
+    * @param timeout a timeout after which the response of a node will be a replication exception.
+    * @param handler the handler to which the response of each member is given
+    * @param args the list of parameters
+    * @throws RPCException in the event of problems.
+    */
+   protected void excecuteCommandAsync(List<Address> dests, final String commandId, final long timeout,
+      final ResponseHandler handler, final Serializable... args) throws RPCException
+   {
+      final boolean unordered = getCommand(commandId) instanceof UnorderedCommand;
+      final ResponseHandler acknowledgingHandler = new ResponseHandler()
+      {
+         public void onResponse(int index, Address member, Object response)
+         {
+            acknowledge(commandId, member, response);
+            handler.onResponse(index, member, response);
+         }
+      };
+      final ResponseHandler resendingHandler = new ResponseHandler()
+      {
+         public void onResponse(final int index, final Address member, Object response)
+         {
+            if (!(response instanceof UnknownCommandIndexException))
+            {
+               acknowledgingHandler.onResponse(index, member, response);
+               return;
+            }
+            // The member has lost the mapping of the index of the command, it is sent again once with the id
+            codec.unacknowledge(commandId, member);
+            final Message msg = new Message();
+            try
+            {
+               setBodyWithId(msg, new MessageBody(member, commandId, args));
+            }
+            catch (RPCException e)
+            {
+               acknowledgingHandler.onResponse(index, member, e);
+               return;
+            }
+            if (unordered)
+            {
+               setOutOfBand(msg);
+            }
+            SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+            {
+               public Void run()
+               {
+                  sendMessage(index, member, msg, timeout, acknowledgingHandler);
+                  return null;
+               }
+            });
+         }
+      };
+      for (int i = 0; i < dests.size(); i++)
+      {
+         final int index = i;
+         final Address dest = dests.get(i);
+         final Message msg = new Message();
+         setBody(msg, new MessageBody(dest, commandId, args), Collections.singletonList(dest));
+         if (unordered)
+         {
+            setOutOfBand(msg);
+         }
+         SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+         {
+            public Void run()
+            {
+               sendMessage(index, dest, msg, timeout, resendingHandler);
+               return null;
+            }
+         });
+      }
+   }
+
+   /**
+    * Sends a message to the given member without waiting for its response. The default implementation
+    * relies on a bounded pool of threads that use {@link #castMessage(List, Message, boolean, long)},
+    * it should be overridden when the underlying {@link MessageDispatcher} provides a non-blocking API.
+    * Whatever happens, the handler must be called exactly once.
+    * @param index the index of the member in the list of destinations
+    * @param dest the member to which the message is sent
+    * @param msg the message to send
+    * @param timeout If 0: wait forever. Otherwise, wait for the response or timeout time.
+    * @param handler the handler to which the response of the member is given
+    */
+   protected void sendMessage(final int index, final Address dest, final Message msg, final long timeout,
+      final ResponseHandler handler)
+   {
+      Runnable task = new Runnable()
+      {
+         public void run()
+         {
+            Object response;
+            try
+            {
+               RspList rsps = castMessage(Collections.singletonList(dest), msg, true, timeout);
+               response = getResponse(dest, rsps == null ? null : rsps.get(dest));
+            }
+            catch (Exception e)
+            {
+               response = new RPCException("Could not send the message to the member " + dest + ".", e);
+            }
+            handler.onResponse(index, dest, response);
+         }
+      };
+      try
+      {
+         getAsyncExecutor().execute(task);
+      }
+      catch (RejectedExecutionException e)
+      {
+         handler.onResponse(index, dest, new RPCException("Could not send the message to the member " + dest
+            + " since the service is stopped", e));
+      }
+   }
+
+   /**
+    * Gives the executor used to send the commands asynchronously, it is created at the first call
+    */
+   private ExecutorService getAsyncExecutor()
+   {
+      ExecutorService executor = asyncExecutor;
+      if (executor == null)
+      {
+         synchronized (this)
          {
-            try
+            executor = asyncExecutor;
+            if (executor == null)
             {
-               return castMessage(dests, msg, synchronous, timeout);
+               if (state == State.STOPPED)
+               {
+                  throw new RejectedExecutionException("The service is stopped");
+               }
+               ThreadPoolExecutor tpe =
+                  new ThreadPoolExecutor(maxAsyncThreads, maxAsyncThreads, 60, TimeUnit.SECONDS,
+                     new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                     {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r)
+                        {
+                           Thread t = new Thread(r, "RPCService-Async-" + count.incrementAndGet());
+                           t.setDaemon(true);
+                           return t;
+                        }
+                     });
+               tpe.allowCoreThreadTimeOut(true);
+               asyncExecutor = executor = tpe;
             }
-            catch (Exception e)
+         }
+      }
+      return executor;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Object handle(Message msg)
+   {
+      try
+      {
+         // Ensure that the service is fully started before trying to execute any command
+         startSignal.await();
+         byte[] buffer = msg.getBuffer();
+         if (MessageCodec.isBatch(buffer))
+         {
+            // The commands of a batch have been launched asynchronously, so no response is expected
+            for (MessageBody body : codec.decodeBatch(msg.getSrc(), buffer))
             {
-               LOG.error("Could not cast the message corresponding to the command " + commandId + ".", e);
+               Object result = execute(body);
+               if (result instanceof RPCException && LOG.isDebugEnabled())
+               {
+                  LOG.debug("The command " + body.getCommandId() + " of a batch failed", (RPCException)result);
+               }
             }
             return null;
          }
-      });
-
-      if (LOG.isTraceEnabled())
-         LOG.trace("responses: " + rsps);
-      if (rsps == null)
-         throw new RPCException("Could not get the responses for command " + commandId + ".");
-      if (!synchronous)
-         return Collections.emptyList();// async case
-      if (LOG.isTraceEnabled())
-      {
-         LOG.trace("(" + getLocalAddress() + "): responses for command " + commandId + ":\n" + rsps);
+         return execute(codec.decode(msg.getSrc(), buffer));
       }
-      List<Object> retval = new ArrayList<Object>(rsps.size());
-      for (Address dest : dests)
+      catch (UnknownCommandIndexException e)
       {
-         Rsp rsp = rsps.get(dest);
-         if (rsp == null || (rsp.wasSuspected() && !rsp.wasReceived()))
-         {
-            // The corresponding member has left
-            retval.add(new MemberHasLeftException("No response for the member " + dest
-               + ", this member has probably left the cluster."));
-         }
-         else if (!rsp.wasReceived())
+         if (LOG.isDebugEnabled())
          {
-            retval.add(new RPCException("Replication timeout for " + rsp.getSender() + ", rsp=" + rsp));
+            LOG.debug(e.getMessage() + ", the sender will send the id of the command");
          }
-         else
+         // The sender will send the message again with the id of the command
+         return e;
+      }
+      catch (Throwable x) //NOSONAR
+      {
+         if (LOG.isTraceEnabled())
          {
-            Object value = rsp.getValue();
-            if (value instanceof RPCException)
-            {
-               // if we have any application-level exceptions make sure we throw them!!
-               if (LOG.isTraceEnabled())
-                  LOG.trace("Recieved exception'" + value + "' from " + rsp.getSender(), (RPCException)value);
-            }
-            retval.add(value);
+            LOG.trace("Problems reading the message.", x);
          }
+         return new RPCException("Cannot read the message", x);
       }
-      return retval;
    }
 
    /**
-    * {@inheritDoc}
+    * Executes the command corresponding to the given message body
+    * @param body the message body
+    * @return the result of the command or an {@link RPCException} if the command could not be executed
     */
-   public Object handle(Message msg)
+   private Object execute(MessageBody body)
    {
-      String commandId = null;
+      String commandId = body.getCommandId();
       try
       {
-         // Ensure that the service is fully started before trying to execute any command
-         startSignal.await();
-         MessageBody body = (MessageBody)msg.getObject();
-         commandId = body.getCommandId();
          if (!body.accept(getLocalAddress()))
          {
             if (LOG.isTraceEnabled())
@@ -493,6 +1227,10 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          {
             return new RPCException("Command " + commandId + " unkown, please register your command first");
          }
+         if (command instanceof UnorderedCommand)
+         {
+            return execute((UnorderedCommand)command, body);
+         }
          Object execResult = command.execute(body.getArgs());
          if (LOG.isTraceEnabled())
          {
@@ -506,8 +1244,44 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          {
             LOG.trace("Problems invoking command.", x);
          }
-         return new RPCException("Cannot execute the command " + (commandId == null ? "" : commandId), x);
+         return new RPCException("Cannot execute the command " + commandId, x);
+      }
+   }
+
+   /**
+    * Executes the given {@link UnorderedCommand} thanks to its executor
+    * @param command the command to execute
+    * @param body the message body
+    * @return the result of the command or an {@link RPCException} if the command could not be executed,
+    * <code>null</code> if the sender doesn't expect any response
+    * @throws Exception if the execution could not be submitted or if the thread has been interrupted
+    */
+   private Object execute(UnorderedCommand command, MessageBody body) throws Exception
+   {
+      Future<Object> future;
+      try
+      {
+         future = getCommandExecutor(command).submit(body.getArgs(), commandQueueTimeout);
+      }
+      catch (RejectedExecutionException e)
+      {
+         if (body.isAsync())
+         {
+            LOG.warn("The command " + command.getId() + " has been rejected: " + e.getMessage());
+            return null;
+         }
+         return new RPCException("The command " + command.getId() + " has been rejected", e);
+      }
+      if (body.isAsync())
+      {
+         return null;
+      }
+      Object execResult = future.get();
+      if (LOG.isTraceEnabled())
+      {
+         LOG.trace("Command : " + command.getId() + " executed, result is: " + execResult);
       }
+      return execResult;
    }
 
    /**
@@ -533,6 +1307,10 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       synchronized (topologyChangeLock)
       {
          this.members = getMembers(view);
+         if (members != null)
+         {
+            codec.retainMembers(members);
+         }
          Address currentCoordinator = coordinator;
          this.coordinator = members != null && members.size() > 0 ? members.get(0) : null;
          this.isCoordinator = coordinator != null && coordinator.equals(getLocalAddress());
@@ -627,9 +1405,32 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          Map<String, RemoteCommand> tmpCommands = new HashMap<String, RemoteCommand>(this.commands);
          tmpCommands.remove(commandId);
          this.commands = Collections.unmodifiableMap(tmpCommands);
+         CommandExecutor executor = commandExecutors.remove(commandId);
+         ManagementContext context = managementContext;
+         if (executor != null && context != null)
+         {
+            context.unregister(executor);
+         }
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public void registerArgumentCodec(ArgumentCodec<?> codec)
+   {
+      SecurityManager security = System.getSecurityManager();
+      if (security != null)
+      {
+         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
+      }
+      if (codec == null)
+      {
+         return;
+      }
+      this.codec.registerArgumentCodec(codec);
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -704,9 +1505,7 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          {
             public Void run() throws Exception
             {
-               channel = createChannel();
-               dispatcher = new MessageDispatcher(channel, null, AbstractRPCService.this, AbstractRPCService.this);
-               channel.connect(clusterName);
+               connect();
                return null;
             }
          });
@@ -733,21 +1532,57 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
       }
 
+      // Send the pending commands before disconnecting
+      batcher.stop();
       this.state = State.STOPPED;
       this.isCoordinator = false;
+      SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+      {
+         public Void run()
+         {
+            disconnect();
+            return null;
+         }
+      });
+      synchronized (this)
+      {
+         if (asyncExecutor != null)
+         {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+         }
+         if (commandExecutor != null)
+         {
+            commandExecutor.shutdown();
+            commandExecutor = null;
+         }
+      }
+   }
+
+   /**
+    * Creates the channel and the dispatcher, then connects to the cluster. This method is called within
+    * a privileged block.
+    * @throws Exception if the service could not be connected
+    */
+   protected void connect() throws Exception
+   {
+      channel = createChannel();
+      dispatcher = new MessageDispatcher(channel, null, this, this);
+      channel.connect(clusterName);
+   }
+
+   /**
+    * Disconnects from the cluster and closes the channel and the dispatcher. This method is called within
+    * a privileged block.
+    */
+   protected void disconnect()
+   {
       if (channel != null && channel.isOpen())
       {
          if (LOG.isInfoEnabled())
             LOG.info("Disconnecting and closing the Channel");
-         SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
-         {
-            public Void run()
-            {
-               channel.disconnect();
-               channel.close();
-               return null;
-            }
-         });
+         channel.disconnect();
+         channel.close();
          channel = null;
       }
       if (dispatcher != null)
@@ -830,12 +1665,6 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     */
    protected abstract List<Address> getMembers(View view);
    
-   /**
-    * Takes an object and uses Java serialization to generate the byte[] buffer which
-    * is set in the message.
-    */
-   protected abstract void setObject(Message m, Object o);
-   
    /**
     * Gives the value of the {@link ValueParam} corresponding to the given key
     * @param params the list of initial parameters from which we want to extract the {@link ValueParam}
@@ -870,6 +1699,10 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     */
    private static URL getProperties(InitParams params, ConfigurationManager configManager)
    {
+      if (params == null)
+      {
+         throw new IllegalArgumentException("The RPCServiceImpl requires some parameters");
+      }
       String configPath = getValueParam(params, PARAM_JGROUPS_CONFIG);
       if (configPath == null)
       {
@@ -892,6 +1725,38 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       return properties;
    }
 
+   /**
+    * Loads the JGroups configuration defined in the given parameters
+    * @param params the initial parameters from which we extract the parameter
+    * <code>PARAM_JGROUPS_CONFIG</code>
+    * @param configManager the configuration manager used to get the {@link URL} corresponding
+    * to the path given in the configuration of the RPCServiceImpl
+    * @return the configurator used to create the JGroups Channel
+    */
+   private static ProtocolStackConfigurator getConfigurator(InitParams params, ConfigurationManager configManager)
+   {
+      final URL properties = getProperties(params, configManager);
+      if (LOG.isInfoEnabled())
+      {
+         LOG.info("The JGroups configuration used for the RPCServiceImpl will be loaded from " + properties);
+      }
+
+      try
+      {
+         return SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<ProtocolStackConfigurator>()
+         {
+            public ProtocolStackConfigurator run() throws Exception
+            {
+               return ConfiguratorFactory.getStackConfigurator(properties);
+            }
+         });
+      }
+      catch (PrivilegedActionException pae)
+      {
+         throw new RuntimeException("Cannot load the JGroups configuration from " + properties, pae.getCause());
+      }
+   }
+
    /**
     * Gives the name of the cluster that will be able to support several portal containers
     * since the name will be post fixed with "-${container-name}"
@@ -929,6 +1794,11 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
        */
       private int destination;
 
+      /**
+       * Indicates whether the sender doesn't expect any response
+       */
+      private boolean async;
+
       public MessageBody()
       {
       }
@@ -939,10 +1809,34 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
        * @param args the arguments to use
        */
       public MessageBody(Address dest, String commandId, Serializable[] args)
+      {
+         this(dest, commandId, args, false);
+      }
+
+      /**
+       * @param dest The destination of the message
+       * @param commandId the id of the command to execute
+       * @param args the arguments to use
+       * @param async indicates whether the sender doesn't expect any response
+       */
+      MessageBody(Address dest, String commandId, Serializable[] args, boolean async)
+      {
+         this(dest == null ? 0 : dest.hashCode(), commandId, args, async);
+      }
+
+      /**
+       * @param destination The hash code of the destination of the message or 0 if the message
+       * is for everybody
+       * @param commandId the id of the command to execute
+       * @param args the arguments to use
+       * @param async indicates whether the sender doesn't expect any response
+       */
+      MessageBody(int destination, String commandId, Serializable[] args, boolean async)
       {
          this.commandId = commandId;
          this.args = args;
-         this.destination = dest == null ? 0 : dest.hashCode();
+         this.destination = destination;
+         this.async = async;
       }
 
       public String getCommandId()
@@ -955,6 +1849,22 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          return args;
       }      
 
+      /**
+       * @return the hash code of the expected destination or 0 if the message is for everybody
+       */
+      int getDestination()
+      {
+         return destination;
+      }
+
+      /**
+       * @return <code>true</code> if the sender doesn't expect any response, <code>false</code> otherwise
+       */
+      boolean isAsync()
+      {
+         return async;
+      }
+
       /**
        * Indicates whether or not the given message body accepts the given address
        * @param address the address to check
@@ -1019,6 +1929,118 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       }
    }
 
+   /**
+    * The handler to which the response of each member targeted by a command launched asynchronously is given
+    */
+   protected static interface ResponseHandler
+   {
+      /**
+       * Called once per targeted member when the member has replied, when the timeout is reached or
+       * when the member has left
+       * @param index the index of the member in the list of destinations
+       * @param member the member
+       * @param response the response of the member, a {@link MemberHasLeftException} if it has left or an
+       * {@link RPCException} in the event of problems
+       */
+      void onResponse(int index, Address member, Object response);
+   }
+
+   /**
+    * A {@link Future} whose value is set by the handler of the responses.
+    */
+   private static class ResultFuture<V> extends FutureTask<V>
+   {
+      /**
+       * The task that does nothing since the result is set externally
+       */
+      private static final Runnable NO_TASK = new Runnable()
+      {
+         public void run()
+         {
+         }
+      };
+
+      public ResultFuture()
+      {
+         super(NO_TASK, null);
+      }
+
+      void complete(V value)
+      {
+         set(value);
+      }
+
+      void fail(Throwable t)
+      {
+         setException(t);
+      }
+   }
+
+   /**
+    * Collects the responses of all the targeted members, notifies the {@link RPCResponseListener} 
+    * of each response as soon as it is received and completes the future once all the members
+    * have replied.
+    */
+   private static class ResponseCollector implements ResponseHandler
+   {
+      /** . */
+      private final List<Address> dests;
+
+      /** . */
+      private final RPCResponseListener listener;
+
+      /** . */
+      private final AtomicReferenceArray<Object> responses;
+
+      /**
+       * The amount of members that did not reply yet
+       */
+      private final AtomicInteger remaining;
+
+      /** . */
+      private final ResultFuture<List<Object>> future = new ResultFuture<List<Object>>();
+
+      ResponseCollector(List<Address> dests, RPCResponseListener listener)
+      {
+         this.dests = dests;
+         this.listener = listener;
+         this.responses = new AtomicReferenceArray<Object>(dests.size());
+         this.remaining = new AtomicInteger(dests.size());
+         if (dests.isEmpty())
+         {
+            future.complete(Collections.emptyList());
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void onResponse(int index, Address member, Object response)
+      {
+         responses.set(index, response);
+         if (listener != null)
+         {
+            try
+            {
+               listener.onResponse(String.valueOf(member), response);
+            }
+            catch (Exception e)
+            {
+               LOG.warn("An error occurs with the listener of type " + listener.getClass(), e);
+            }
+         }
+         if (remaining.decrementAndGet() == 0)
+         {
+            List<Object> retval = new ArrayList<Object>(dests.size());
+            for (int i = 0; i < dests.size(); i++)
+            {
+               retval.add(responses.get(i));
+            }
+            future.complete(retval);
+         }
+      }
+   }
+
    /**
     * All the potential states of the {@link RPCServiceImpl}
     */
@@ -1040,4 +2062,22 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          super(message);
       }
    }
+
+   /**
+    * The response of a member that received a message containing only the index of a command whose
+    * mapping it doesn't know, the message is then sent again to this member with the id of the command
+    */
+   public static class UnknownCommandIndexException extends RPCException
+   {
+
+      /**
+       * The serial version UID
+       */
+      private static final long serialVersionUID = -2405218316553862517L;
+
+      public UnknownCommandIndexException(String message)
+      {
+         super(message);
+      }
+   }
 }
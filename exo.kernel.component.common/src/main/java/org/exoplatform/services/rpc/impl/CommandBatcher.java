@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.rpc.BatchableCommand;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the {@link BatchableCommand} executed asynchronously on all the cluster nodes and sends them
+ * in one single message once the maximum amount of commands per batch is reached or once the first
+ * collected command has waited for the maximum delay. The batches are sent in the order in which they
+ * have been collected.
+ * 
+ * @version $Id$
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "RPCService"), @Property(key = "type", value = "batching")})
+@ManagedDescription("The batching of the asynchronous commands of the RPC Service")
+public class CommandBatcher
+{
+
+   /**
+    * Logger.
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.CommandBatcher");
+
+   /** . */
+   private final AbstractRPCService service;
+
+   /**
+    * The maximum amount of commands per batch
+    */
+   private volatile int maxSize;
+
+   /**
+    * The maximum amount of time in milliseconds a command can wait before being sent
+    */
+   private volatile long maxDelay;
+
+   /**
+    * The commands waiting to be sent
+    */
+   private List<MessageBody> pending = new ArrayList<MessageBody>();
+
+   /**
+    * The time in nanoseconds at which the first pending command has been collected
+    */
+   private long firstPendingTime;
+
+   /**
+    * Incremented each time the pending commands are taken, it allows to ignore the scheduled
+    * flushes of the batches that have already been sent
+    */
+   private long generation;
+
+   /**
+    * The amount of commands collected that have not been sent yet, including the commands of the batch
+    * being sent, it allows to flush without any lock when there is nothing to send
+    */
+   private final AtomicInteger unsent = new AtomicInteger();
+
+   /**
+    * The lock used to ensure that the batches are sent in the right order
+    */
+   private final Object sendLock = new Object();
+
+   /** . */
+   private ScheduledExecutorService scheduler;
+
+   /**
+    * Indicates whether the batcher has been stopped, in which case the commands are sent immediately,
+    * guarded by the lock of this object
+    */
+   private boolean stopped;
+
+   /** . */
+   private final AtomicLong batches = new AtomicLong();
+
+   /** . */
+   private final AtomicLong commands = new AtomicLong();
+
+   /** . */
+   private volatile int maxBatchSize;
+
+   /**
+    * The sum of the flush latencies in nanoseconds
+    */
+   private final AtomicLong totalLatency = new AtomicLong();
+
+   /**
+    * The maximum flush latency in nanoseconds
+    */
+   private volatile long maxLatency;
+
+   /** . */
+   private final AtomicLong droppedBatches = new AtomicLong();
+
+   /** . */
+   private final AtomicLong droppedCommands = new AtomicLong();
+
+   /**
+    * @param service the service used to send the batches
+    * @param maxSize the maximum amount of commands per batch
+    * @param maxDelay the maximum amount of time in milliseconds a command can wait before being sent
+    */
+   CommandBatcher(AbstractRPCService service, int maxSize, long maxDelay)
+   {
+      this.service = service;
+      this.maxSize = maxSize;
+      this.maxDelay = maxDelay;
+   }
+
+   /**
+    * Adds a command to the current batch, the batch is sent immediately if it is full or if the batcher
+    * has been stopped
+    */
+   void add(MessageBody body)
+   {
+      boolean full;
+      synchronized (this)
+      {
+         if (pending.isEmpty())
+         {
+            firstPendingTime = System.nanoTime();
+            if (!stopped)
+            {
+               scheduleFlush(generation);
+            }
+         }
+         pending.add(body);
+         unsent.incrementAndGet();
+         full = pending.size() >= maxSize || stopped;
+      }
+      if (full)
+      {
+         flush();
+      }
+   }
+
+   /**
+    * Sends all the pending commands, if a batch is being sent by another thread it waits until it is
+    * sent so that a command sent afterwards cannot overtake it
+    */
+   @Managed
+   @ManagedDescription("Sends immediately all the pending commands")
+   public void flush()
+   {
+      if (unsent.get() == 0)
+      {
+         // Nothing is pending or being sent
+         return;
+      }
+      synchronized (sendLock)
+      {
+         List<MessageBody> bodies;
+         long startTime;
+         synchronized (this)
+         {
+            if (pending.isEmpty())
+            {
+               return;
+            }
+            bodies = pending;
+            startTime = firstPendingTime;
+            pending = new ArrayList<MessageBody>();
+            generation++;
+         }
+         try
+         {
+            service.sendBatch(bodies);
+         }
+         catch (Exception e)
+         {
+            droppedBatches.incrementAndGet();
+            droppedCommands.addAndGet(bodies.size());
+            LOG.error("Could not send the batch of " + bodies.size() + " commands, they are dropped.", e);
+            return;
+         }
+         finally
+         {
+            unsent.addAndGet(-bodies.size());
+         }
+         long latency = System.nanoTime() - startTime;
+         batches.incrementAndGet();
+         commands.addAndGet(bodies.size());
+         totalLatency.addAndGet(latency);
+         if (bodies.size() > maxBatchSize)
+         {
+            maxBatchSize = bodies.size();
+         }
+         if (latency > maxLatency)
+         {
+            maxLatency = latency;
+         }
+      }
+   }
+
+   /**
+    * Flushes the batch of the given generation once the maximum delay is reached, the caller
+    * must hold the lock of this object and the batcher must not be stopped
+    */
+   private void scheduleFlush(final long batchGeneration)
+   {
+      if (scheduler == null)
+      {
+         ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+         {
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "RPCService-Batcher");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+         scheduler = executor;
+      }
+      scheduler.schedule(new Runnable()
+      {
+         public void run()
+         {
+            synchronized (CommandBatcher.this)
+            {
+               if (generation != batchGeneration)
+               {
+                  // This batch has already been sent
+                  return;
+               }
+            }
+            flush();
+         }
+      }, maxDelay, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Sends the pending commands and stops the thread used to flush the batches, the commands added
+    * afterwards are sent immediately
+    */
+   void stop()
+   {
+      synchronized (this)
+      {
+         stopped = true;
+      }
+      flush();
+      synchronized (this)
+      {
+         if (scheduler != null)
+         {
+            scheduler.shutdownNow();
+            scheduler = null;
+         }
+      }
+   }
+
+   @Managed
+   @ManagedName("MaxSize")
+   @ManagedDescription("The maximum amount of commands per batch")
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   @Managed
+   public void setMaxSize(int maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   @Managed
+   @ManagedName("MaxDelay")
+   @ManagedDescription("The maximum amount of time in milliseconds a command can wait before being sent")
+   public long getMaxDelay()
+   {
+      return maxDelay;
+   }
+
+   @Managed
+   public void setMaxDelay(long maxDelay)
+   {
+      this.maxDelay = maxDelay;
+   }
+
+   @Managed
+   @ManagedName("PendingCount")
+   @ManagedDescription("The amount of commands waiting to be sent")
+   public synchronized int getPendingCount()
+   {
+      return pending.size();
+   }
+
+   @Managed
+   @ManagedName("BatchCount")
+   @ManagedDescription("The amount of batches sent")
+   public long getBatchCount()
+   {
+      return batches.get();
+   }
+
+   @Managed
+   @ManagedName("CommandCount")
+   @ManagedDescription("The amount of commands sent in a batch")
+   public long getCommandCount()
+   {
+      return commands.get();
+   }
+
+   @Managed
+   @ManagedName("AverageBatchSize")
+   @ManagedDescription("The average amount of commands per batch")
+   public double getAverageBatchSize()
+   {
+      long count = batches.get();
+      return count == 0 ? 0 : (double)commands.get() / count;
+   }
+
+   @Managed
+   @ManagedName("MaxBatchSize")
+   @ManagedDescription("The maximum amount of commands sent in one batch")
+   public int getMaxBatchSize()
+   {
+      return maxBatchSize;
+   }
+
+   @Managed
+   @ManagedName("AverageFlushLatency")
+   @ManagedDescription("The average time in milliseconds between the collect of the first command of a batch"
+      + " and the end of its sending")
+   public double getAverageFlushLatency()
+   {
+      long count = batches.get();
+      return count == 0 ? 0 : totalLatency.get() / 1000000d / count;
+   }
+
+   @Managed
+   @ManagedName("MaxFlushLatency")
+   @ManagedDescription("The maximum time in milliseconds between the collect of the first command of a batch"
+      + " and the end of its sending")
+   public double getMaxFlushLatency()
+   {
+      return maxLatency / 1000000d;
+   }
+
+   @Managed
+   @ManagedName("DroppedBatchCount")
+   @ManagedDescription("The amount of batches that could not be sent")
+   public long getDroppedBatchCount()
+   {
+      return droppedBatches.get();
+   }
+
+   @Managed
+   @ManagedName("DroppedCommandCount")
+   @ManagedDescription("The amount of commands dropped because their batch could not be sent")
+   public long getDroppedCommandCount()
+   {
+      return droppedCommands.get();
+   }
+
+   @Managed
+   @ManagedDescription("Reset the statistics of the batching")
+   public void resetStatistics()
+   {
+      batches.set(0);
+      commands.set(0);
+      totalLatency.set(0);
+      maxBatchSize = 0;
+      maxLatency = 0;
+      droppedBatches.set(0);
+      droppedCommands.set(0);
+   }
+}
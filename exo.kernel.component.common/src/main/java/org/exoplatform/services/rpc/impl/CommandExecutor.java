@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.UnorderedCommand;
+
+import java.io.Serializable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the incoming executions of a given {@link UnorderedCommand} thanks to a pool of threads shared
+ * by all the commands, ensuring that no more than {@link UnorderedCommand#getMaxConcurrency()} executions
+ * of the command are in progress at the same time. The other executions wait in a bounded queue.
+ * 
+ * @version $Id$
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "RPCService"), @Property(key = "type", value = "command"),
+   @Property(key = "name", value = "{CommandId}")})
+@ManagedDescription("The executions of a command of the RPC Service")
+public class CommandExecutor
+{
+
+   /** . */
+   private final UnorderedCommand command;
+
+   /** . */
+   private final int maxConcurrency;
+
+   /** . */
+   private final Executor executor;
+
+   /**
+    * The executions waiting for a free slot, a {@link SynchronousQueue} if no execution can wait
+    */
+   private final BlockingQueue<Runnable> queue;
+
+   /**
+    * The amount of executions in progress, guarded by the lock of this object
+    */
+   private int active;
+
+   /** . */
+   private final AtomicLong executions = new AtomicLong();
+
+   /** . */
+   private final AtomicLong rejections = new AtomicLong();
+
+   /**
+    * The sum of the execution times in nanoseconds
+    */
+   private final AtomicLong totalLatency = new AtomicLong();
+
+   /**
+    * The maximum execution time in nanoseconds
+    */
+   private volatile long maxLatency;
+
+   /**
+    * @param command the command to execute
+    * @param executor the pool of threads shared by all the commands
+    */
+   CommandExecutor(UnorderedCommand command, Executor executor)
+   {
+      this.command = command;
+      this.maxConcurrency = Math.max(1, command.getMaxConcurrency());
+      int capacity = command.getQueueCapacity();
+      this.queue =
+         capacity > 0 ? new ArrayBlockingQueue<Runnable>(capacity) : new SynchronousQueue<Runnable>();
+      this.executor = executor;
+   }
+
+   /**
+    * Submits an execution of the command
+    * @param args the arguments of the command
+    * @param timeout the maximum amount of time in milliseconds to wait for a free slot in the queue
+    * @return the task giving the result of the command or an {@link RPCException} if the command failed
+    * @throws RejectedExecutionException if the execution has been rejected
+    * @throws InterruptedException if the thread has been interrupted while waiting for a free slot
+    */
+   FutureTask<Object> submit(final Serializable[] args, long timeout) throws InterruptedException
+   {
+      FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>()
+      {
+         public Object call()
+         {
+            long start = System.nanoTime();
+            try
+            {
+               return command.execute(args);
+            }
+            catch (Throwable t) //NOSONAR
+            {
+               return new RPCException("Cannot execute the command " + command.getId(), t);
+            }
+            finally
+            {
+               onExecuted(System.nanoTime() - start);
+            }
+         }
+      });
+      synchronized (this)
+      {
+         if (active < maxConcurrency)
+         {
+            active++;
+            start(task);
+            return task;
+         }
+      }
+      if (!queue.offer(task, timeout, TimeUnit.MILLISECONDS))
+      {
+         rejections.incrementAndGet();
+         throw new RejectedExecutionException("The execution of the command " + command.getId()
+            + " has been rejected since " + queue.size() + " executions are already waiting");
+      }
+      synchronized (this)
+      {
+         // All the workers could have stopped while the task was added to the queue
+         if (active < maxConcurrency)
+         {
+            Runnable next = queue.poll();
+            if (next != null)
+            {
+               active++;
+               start(next);
+            }
+         }
+      }
+      return task;
+   }
+
+   /**
+    * Launches a worker that executes the given task and then the waiting tasks until the queue is empty
+    */
+   private void start(final Runnable first)
+   {
+      Runnable worker = new Runnable()
+      {
+         public void run()
+         {
+            Runnable task = first;
+            while (task != null)
+            {
+               task.run();
+               synchronized (CommandExecutor.this)
+               {
+                  task = queue.poll();
+                  if (task == null)
+                  {
+                     active--;
+                  }
+               }
+            }
+         }
+      };
+      try
+      {
+         executor.execute(worker);
+      }
+      catch (RejectedExecutionException e)
+      {
+         active--;
+         rejections.incrementAndGet();
+         throw e;
+      }
+   }
+
+   private void onExecuted(long latency)
+   {
+      executions.incrementAndGet();
+      totalLatency.addAndGet(latency);
+      if (latency > maxLatency)
+      {
+         maxLatency = latency;
+      }
+   }
+
+   @Managed
+   @ManagedName("CommandId")
+   @ManagedDescription("The id of the command")
+   public String getCommandId()
+   {
+      return command.getId();
+   }
+
+   @Managed
+   @ManagedName("MaxConcurrency")
+   @ManagedDescription("The maximum amount of executions in progress at the same time")
+   public int getMaxConcurrency()
+   {
+      return maxConcurrency;
+   }
+
+   @Managed
+   @ManagedName("ActiveCount")
+   @ManagedDescription("The amount of executions in progress")
+   public synchronized int getActiveCount()
+   {
+      return active;
+   }
+
+   @Managed
+   @ManagedName("QueueDepth")
+   @ManagedDescription("The amount of executions waiting for a free slot")
+   public int getQueueDepth()
+   {
+      return queue.size();
+   }
+
+   @Managed
+   @ManagedName("QueueCapacity")
+   @ManagedDescription("The maximum amount of executions that can wait for a free slot")
+   public int getQueueCapacity()
+   {
+      return queue.size() + queue.remainingCapacity();
+   }
+
+   @Managed
+   @ManagedName("ExecutionCount")
+   @ManagedDescription("The amount of executions of the command")
+   public long getExecutionCount()
+   {
+      return executions.get();
+   }
+
+   @Managed
+   @ManagedName("RejectionCount")
+   @ManagedDescription("The amount of executions rejected because the queue was full")
+   public long getRejectionCount()
+   {
+      return rejections.get();
+   }
+
+   @Managed
+   @ManagedName("AverageExecutionLatency")
+   @ManagedDescription("The average execution time of the command in milliseconds")
+   public double getAverageExecutionLatency()
+   {
+      long count = executions.get();
+      return count == 0 ? 0 : totalLatency.get() / 1000000d / count;
+   }
+
+   @Managed
+   @ManagedName("MaxExecutionLatency")
+   @ManagedDescription("The maximum execution time of the command in milliseconds")
+   public double getMaxExecutionLatency()
+   {
+      return maxLatency / 1000000d;
+   }
+
+   @Managed
+   @ManagedDescription("Reset the statistics of the command")
+   public void resetStatistics()
+   {
+      executions.set(0);
+      rejections.set(0);
+      totalLatency.set(0);
+      maxLatency = 0;
+   }
+}
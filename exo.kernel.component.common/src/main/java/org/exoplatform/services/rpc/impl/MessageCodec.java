@@ -0,0 +1,659 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.services.rpc.ArgumentCodec;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.UnknownCommandIndexException;
+import org.jgroups.Address;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The codec used to write the {@link MessageBody} into the messages sent to the other cluster nodes
+ * and to read them, instead of the Java serialization. The format is:
+ * <pre>
+ * flags (byte) [destination (int)] [command index (var int)] [command id (UTF)] arguments count + 1 (var int)
+ *  then for each argument: tag (byte) value
+ * </pre>
+ * The primitive wrappers, the strings and the byte arrays have their own tag, the arguments whose type has
+ * a registered {@link ArgumentCodec} are written by the codec, the others are written using the Java
+ * serialization.
+ * <p>
+ * To avoid writing the command id in each message, each command id is given a local index. The first
+ * messages of a command contain both the command id and its index so that each member can learn the mapping
+ * of the sender, once a member has replied to such message the sender knows that the member knows the
+ * mapping, then the next messages sent to members that all know the mapping only contain the index. If a
+ * member doesn't know the index anymore, it replies with an {@link UnknownCommandIndexException} and the
+ * message is sent again with the id. Since no reply is expected for the asynchronous messages, they
+ * always contain the id.
+ * <p>
+ * Several message bodies can also be written into one single message, in that case the content of the message is
+ * the batch flag followed by the amount of bodies and then the bodies. The first body of each command contains
+ * the id of the command so that a batch can always be read on its own.
+ * 
+ * @version $Id$
+ */
+class MessageCodec
+{
+   /**
+    * The flag indicating that the message is for a given member only
+    */
+   private static final int FLAG_UNICAST = 1;
+
+   /**
+    * The flag indicating that the message contains the index of the command
+    */
+   private static final int FLAG_INDEX = 2;
+
+   /**
+    * The flag indicating that the message contains the id of the command
+    */
+   private static final int FLAG_ID = 4;
+
+   /**
+    * The flag indicating that the message contains several message bodies
+    */
+   private static final int FLAG_BATCH = 8;
+
+   /**
+    * The flag indicating that the sender doesn't expect any response
+    */
+   private static final int FLAG_ASYNC = 16;
+
+   private static final byte TAG_NULL = 0;
+
+   private static final byte TAG_STRING = 1;
+
+   private static final byte TAG_INTEGER = 2;
+
+   private static final byte TAG_LONG = 3;
+
+   private static final byte TAG_BOOLEAN = 4;
+
+   private static final byte TAG_BYTE_ARRAY = 5;
+
+   private static final byte TAG_DOUBLE = 6;
+
+   private static final byte TAG_FLOAT = 7;
+
+   private static final byte TAG_SHORT = 8;
+
+   private static final byte TAG_BYTE = 9;
+
+   private static final byte TAG_CHARACTER = 10;
+
+   private static final byte TAG_CODEC = 11;
+
+   private static final byte TAG_SERIALIZED = 12;
+
+   /**
+    * The tags of the types supported natively
+    */
+   private static final Map<Class<?>, Byte> TAGS;
+   static
+   {
+      Map<Class<?>, Byte> tags = new HashMap<Class<?>, Byte>();
+      tags.put(String.class, TAG_STRING);
+      tags.put(Integer.class, TAG_INTEGER);
+      tags.put(Long.class, TAG_LONG);
+      tags.put(Boolean.class, TAG_BOOLEAN);
+      tags.put(byte[].class, TAG_BYTE_ARRAY);
+      tags.put(Double.class, TAG_DOUBLE);
+      tags.put(Float.class, TAG_FLOAT);
+      tags.put(Short.class, TAG_SHORT);
+      tags.put(Byte.class, TAG_BYTE);
+      tags.put(Character.class, TAG_CHARACTER);
+      TAGS = Collections.unmodifiableMap(tags);
+   }
+
+   /**
+    * The registered codecs indexed by type
+    */
+   private volatile Map<Class<?>, ArgumentCodec<?>> codecsByType = Collections.emptyMap();
+
+   /**
+    * The registered codecs indexed by id
+    */
+   private volatile Map<Integer, ArgumentCodec<?>> codecsById = Collections.emptyMap();
+
+   /**
+    * The local index of each command id
+    */
+   private final ConcurrentMap<String, Integer> indexes = new ConcurrentHashMap<String, Integer>();
+
+   /** . */
+   private final AtomicInteger nextIndex = new AtomicInteger();
+
+   /**
+    * The members that know the local index of each command id
+    */
+   private final ConcurrentMap<String, Set<Address>> acknowledgements = new ConcurrentHashMap<String, Set<Address>>();
+
+   /**
+    * The mapping between the indexes and the command ids of each member
+    */
+   private final ConcurrentMap<Address, ConcurrentMap<Integer, String>> remoteIds =
+      new ConcurrentHashMap<Address, ConcurrentMap<Integer, String>>();
+
+   /**
+    * Registers a new codec
+    * @throws IllegalArgumentException if another codec has been registered with the same id for another type
+    */
+   synchronized void registerArgumentCodec(ArgumentCodec<?> codec)
+   {
+      if (codec.getId() < 0)
+      {
+         throw new IllegalArgumentException("The id of a codec must be positive");
+      }
+      ArgumentCodec<?> oldCodec = codecsById.get(codec.getId());
+      if (oldCodec != null && !oldCodec.getType().equals(codec.getType()))
+      {
+         throw new IllegalArgumentException("A codec has already been registered with the id " + codec.getId()
+            + " for the type " + oldCodec.getType().getName());
+      }
+      Map<Class<?>, ArgumentCodec<?>> tmpCodecsByType = new HashMap<Class<?>, ArgumentCodec<?>>(codecsByType);
+      Map<Integer, ArgumentCodec<?>> tmpCodecsById = new HashMap<Integer, ArgumentCodec<?>>(codecsById);
+      ArgumentCodec<?> previous = tmpCodecsByType.put(codec.getType(), codec);
+      if (previous != null)
+      {
+         tmpCodecsById.remove(previous.getId());
+      }
+      tmpCodecsById.put(codec.getId(), codec);
+      this.codecsByType = Collections.unmodifiableMap(tmpCodecsByType);
+      this.codecsById = Collections.unmodifiableMap(tmpCodecsById);
+   }
+
+   /**
+    * Notifies the codec that the given member could read a message of the given command, which
+    * means that it knows the local index of this command
+    */
+   void acknowledge(String commandId, Address member)
+   {
+      Set<Address> members = acknowledgements.get(commandId);
+      if (members == null)
+      {
+         members = Collections.newSetFromMap(new ConcurrentHashMap<Address, Boolean>());
+         Set<Address> oldValue = acknowledgements.putIfAbsent(commandId, members);
+         if (oldValue != null)
+         {
+            members = oldValue;
+         }
+      }
+      members.add(member);
+   }
+
+   /**
+    * Notifies the codec that the given member could not execute a message of the given command, the
+    * member may have lost the mapping of the local index of this command so the id of the command will
+    * be sent again to this member until it acknowledges it
+    */
+   void unacknowledge(String commandId, Address member)
+   {
+      Set<Address> members = acknowledgements.get(commandId);
+      if (members != null)
+      {
+         members.remove(member);
+      }
+   }
+
+   /**
+    * Forgets everything related to the members that are no longer part of the cluster
+    */
+   void retainMembers(Collection<Address> members)
+   {
+      for (Set<Address> set : acknowledgements.values())
+      {
+         set.retainAll(members);
+      }
+      remoteIds.keySet().retainAll(members);
+   }
+
+   /**
+    * Writes the given message body
+    * @param body the body to write
+    * @param dests the members to which the message will be sent
+    * @return the content of the message
+    * @throws IOException if the message cannot be written
+    */
+   byte[] encode(MessageBody body, List<Address> dests) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(baos);
+      writeBody(out, body, body.isAsync() || !isKnownByAll(body.getCommandId(), dests));
+      out.flush();
+      return baos.toByteArray();
+   }
+
+   /**
+    * Writes the given message body with the id of its command whatever the members know
+    * @param body the body to write
+    * @return the content of the message
+    * @throws IOException if the message cannot be written
+    */
+   byte[] encodeWithId(MessageBody body) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(baos);
+      writeBody(out, body, true);
+      out.flush();
+      return baos.toByteArray();
+   }
+
+   /**
+    * Writes the given message bodies into one single message
+    * @param bodies the bodies to write
+    * @return the content of the message
+    * @throws IOException if the message cannot be written
+    */
+   byte[] encode(List<MessageBody> bodies) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * bodies.size());
+      DataOutputStream out = new DataOutputStream(baos);
+      out.writeByte(FLAG_BATCH);
+      writeVarInt(out, bodies.size());
+      Set<String> written = new HashSet<String>();
+      for (int i = 0, length = bodies.size(); i < length; i++)
+      {
+         MessageBody body = bodies.get(i);
+         writeBody(out, body, written.add(body.getCommandId()));
+      }
+      out.flush();
+      return baos.toByteArray();
+   }
+
+   /**
+    * Indicates whether the given content of message contains several message bodies
+    */
+   static boolean isBatch(byte[] buffer)
+   {
+      return buffer != null && buffer.length > 0 && (buffer[0] & FLAG_BATCH) != 0;
+   }
+
+   private void writeBody(DataOutputStream out, MessageBody body, boolean withId) throws IOException
+   {
+      String commandId = body.getCommandId();
+      Integer index = indexes.get(commandId);
+      if (index == null)
+      {
+         index = nextIndex.getAndIncrement();
+         Integer oldValue = indexes.putIfAbsent(commandId, index);
+         if (oldValue != null)
+         {
+            index = oldValue;
+         }
+      }
+      int destination = body.getDestination();
+      int flags = FLAG_INDEX;
+      if (destination != 0)
+      {
+         flags |= FLAG_UNICAST;
+      }
+      if (withId)
+      {
+         flags |= FLAG_ID;
+      }
+      if (body.isAsync())
+      {
+         flags |= FLAG_ASYNC;
+      }
+      out.writeByte(flags);
+      if (destination != 0)
+      {
+         out.writeInt(destination);
+      }
+      writeVarInt(out, index);
+      if ((flags & FLAG_ID) != 0)
+      {
+         out.writeUTF(commandId);
+      }
+      Serializable[] args = body.getArgs();
+      if (args == null)
+      {
+         writeVarInt(out, 0);
+      }
+      else
+      {
+         writeVarInt(out, args.length + 1);
+         for (int i = 0; i < args.length; i++)
+         {
+            writeArgument(out, args[i]);
+         }
+      }
+   }
+
+   /**
+    * Reads a message body
+    * @param src the member that sent the message
+    * @param buffer the content of the message
+    * @return the message body
+    * @throws IOException if the message cannot be read
+    * @throws ClassNotFoundException if the class of an argument cannot be found
+    * @throws UnknownCommandIndexException if the message only contains an index of command that is unknown
+    */
+   MessageBody decode(Address src, byte[] buffer) throws IOException, ClassNotFoundException,
+      UnknownCommandIndexException
+   {
+      return readBody(src, new DataInputStream(new ByteArrayInputStream(buffer)));
+   }
+
+   /**
+    * Reads all the message bodies of a message written by {@link #encode(List)}
+    * @param src the member that sent the message
+    * @param buffer the content of the message
+    * @return the message bodies in the order in which they have been written
+    * @throws IOException if the message cannot be read
+    * @throws ClassNotFoundException if the class of an argument cannot be found
+    * @throws UnknownCommandIndexException if a body only contains an index of command that is unknown
+    */
+   List<MessageBody> decodeBatch(Address src, byte[] buffer) throws IOException, ClassNotFoundException,
+      UnknownCommandIndexException
+   {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer));
+      if ((in.readByte() & FLAG_BATCH) == 0)
+      {
+         throw new IOException("The message doesn't contain a batch");
+      }
+      int size = readVarInt(in);
+      List<MessageBody> bodies = new ArrayList<MessageBody>(size);
+      for (int i = 0; i < size; i++)
+      {
+         bodies.add(readBody(src, in));
+      }
+      return bodies;
+   }
+
+   private MessageBody readBody(Address src, DataInputStream in) throws IOException, ClassNotFoundException,
+      UnknownCommandIndexException
+   {
+      int flags = in.readByte();
+      int destination = (flags & FLAG_UNICAST) == 0 ? 0 : in.readInt();
+      int index = (flags & FLAG_INDEX) == 0 ? -1 : readVarInt(in);
+      String commandId;
+      if ((flags & FLAG_ID) != 0)
+      {
+         commandId = in.readUTF();
+         if (index != -1 && src != null)
+         {
+            getRemoteIds(src).put(index, commandId);
+         }
+      }
+      else
+      {
+         Map<Integer, String> ids = src == null ? null : remoteIds.get(src);
+         commandId = ids == null ? null : ids.get(index);
+         if (commandId == null)
+         {
+            throw new UnknownCommandIndexException("The command index " + index + " of the member " + src
+               + " is unknown");
+         }
+      }
+      int size = readVarInt(in) - 1;
+      Serializable[] args = null;
+      if (size >= 0)
+      {
+         args = new Serializable[size];
+         for (int i = 0; i < size; i++)
+         {
+            args[i] = readArgument(in);
+         }
+      }
+      return new MessageBody(destination, commandId, args, (flags & FLAG_ASYNC) != 0);
+   }
+
+   private boolean isKnownByAll(String commandId, List<Address> dests)
+   {
+      Set<Address> members = acknowledgements.get(commandId);
+      if (members == null)
+      {
+         return false;
+      }
+      for (int i = 0, length = dests.size(); i < length; i++)
+      {
+         if (!members.contains(dests.get(i)))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private ConcurrentMap<Integer, String> getRemoteIds(Address src)
+   {
+      ConcurrentMap<Integer, String> ids = remoteIds.get(src);
+      if (ids == null)
+      {
+         ids = new ConcurrentHashMap<Integer, String>();
+         ConcurrentMap<Integer, String> oldValue = remoteIds.putIfAbsent(src, ids);
+         if (oldValue != null)
+         {
+            ids = oldValue;
+         }
+      }
+      return ids;
+   }
+
+   @SuppressWarnings("unchecked")
+   private void writeArgument(DataOutputStream out, Serializable arg) throws IOException
+   {
+      if (arg == null)
+      {
+         out.writeByte(TAG_NULL);
+         return;
+      }
+      Class<?> type = arg.getClass();
+      Byte tag = TAGS.get(type);
+      if (tag == null)
+      {
+         ArgumentCodec<Serializable> codec = (ArgumentCodec<Serializable>)codecsByType.get(type);
+         if (codec == null)
+         {
+            out.writeByte(TAG_SERIALIZED);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(arg);
+            oos.close();
+            writeVarInt(out, baos.size());
+            baos.writeTo(out);
+         }
+         else
+         {
+            out.writeByte(TAG_CODEC);
+            writeVarInt(out, codec.getId());
+            codec.write(out, arg);
+         }
+         return;
+      }
+      out.writeByte(tag);
+      switch (tag)
+      {
+         case TAG_STRING :
+            byte[] bytes = ((String)arg).getBytes("UTF-8");
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+            break;
+         case TAG_INTEGER :
+            out.writeInt((Integer)arg);
+            break;
+         case TAG_LONG :
+            out.writeLong((Long)arg);
+            break;
+         case TAG_BOOLEAN :
+            out.writeBoolean((Boolean)arg);
+            break;
+         case TAG_BYTE_ARRAY :
+            writeVarInt(out, ((byte[])arg).length);
+            out.write((byte[])arg);
+            break;
+         case TAG_DOUBLE :
+            out.writeDouble((Double)arg);
+            break;
+         case TAG_FLOAT :
+            out.writeFloat((Float)arg);
+            break;
+         case TAG_SHORT :
+            out.writeShort((Short)arg);
+            break;
+         case TAG_BYTE :
+            out.writeByte((Byte)arg);
+            break;
+         case TAG_CHARACTER :
+            out.writeChar((Character)arg);
+            break;
+         default :
+            throw new IOException("Unknown tag " + tag);
+      }
+   }
+
+   private Serializable readArgument(DataInputStream in) throws IOException, ClassNotFoundException
+   {
+      byte tag = in.readByte();
+      switch (tag)
+      {
+         case TAG_NULL :
+            return null;
+         case TAG_STRING :
+            return new String(readBytes(in), "UTF-8");
+         case TAG_INTEGER :
+            return in.readInt();
+         case TAG_LONG :
+            return in.readLong();
+         case TAG_BOOLEAN :
+            return in.readBoolean();
+         case TAG_BYTE_ARRAY :
+            return readBytes(in);
+         case TAG_DOUBLE :
+            return in.readDouble();
+         case TAG_FLOAT :
+            return in.readFloat();
+         case TAG_SHORT :
+            return in.readShort();
+         case TAG_BYTE :
+            return in.readByte();
+         case TAG_CHARACTER :
+            return in.readChar();
+         case TAG_CODEC :
+            int id = readVarInt(in);
+            ArgumentCodec<?> codec = codecsById.get(id);
+            if (codec == null)
+            {
+               throw new IOException("No codec has been registered with the id " + id);
+            }
+            return codec.read(in);
+         case TAG_SERIALIZED :
+            ObjectInputStream ois = new ContextObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+            try
+            {
+               return (Serializable)ois.readObject();
+            }
+            finally
+            {
+               ois.close();
+            }
+         default :
+            throw new IOException("Unknown tag " + tag);
+      }
+   }
+
+   private static byte[] readBytes(DataInput in) throws IOException
+   {
+      byte[] bytes = new byte[readVarInt(in)];
+      in.readFully(bytes);
+      return bytes;
+   }
+
+   /**
+    * Writes a positive integer using 7 bits per byte, so that the small values take only one byte
+    */
+   static void writeVarInt(DataOutput out, int value) throws IOException
+   {
+      while ((value & ~0x7F) != 0)
+      {
+         out.writeByte((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      out.writeByte(value);
+   }
+
+   static int readVarInt(DataInput in) throws IOException
+   {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7)
+      {
+         int b = in.readByte();
+         value |= (b & 0x7F) << shift;
+         if ((b & 0x80) == 0)
+         {
+            return value;
+         }
+      }
+      throw new IOException("Malformed var int");
+   }
+
+   /**
+    * An {@link ObjectInputStream} that loads the classes from the context class loader first
+    */
+   private static class ContextObjectInputStream extends ObjectInputStream
+   {
+      ContextObjectInputStream(InputStream in) throws IOException
+      {
+         super(in);
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+      {
+         ClassLoader cl = Thread.currentThread().getContextClassLoader();
+         if (cl != null)
+         {
+            try
+            {
+               return Class.forName(desc.getName(), false, cl);
+            }
+            catch (ClassNotFoundException e)
+            {
+               // Try with the default class loader
+            }
+         }
+         return super.resolveClass(desc);
+      }
+   }
+}
@@ -29,7 +29,6 @@ import org.jgroups.View;
 import org.jgroups.blocks.GroupRequest;
 import org.jgroups.util.RspList;
 
-import java.io.Serializable;
 import java.util.List;
 import java.util.Vector;
 
@@ -66,6 +65,14 @@ public class RPCServiceImpl extends AbstractRPCService
       return dispatcher.castMessage(dests instanceof Vector ? (Vector<Address>)dests : new Vector<Address>(dests), msg,
          synchronous ? GroupRequest.GET_ALL : GroupRequest.GET_NONE, timeout);
    }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setOutOfBand(Message msg)
+   {
+      msg.setFlag(Message.OOB);
+   }
    
    /**
     * {@inheritDoc}
@@ -84,12 +91,4 @@ public class RPCServiceImpl extends AbstractRPCService
    {
       return view.getMembers();
    }
-
-   /**
-    * {@inheritDoc}
-    */
-   protected void setObject(Message m, Object o)
-   {
-      m.setObject((Serializable)o);
-   }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.listener;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.PortalContainer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the throughput and the amount of memory allocated by the broadcast of events to many
+ * synchronous listeners.
+ *
+ * @version $Id$
+ */
+public class ListenerServiceTestLoad extends TestCase
+{
+
+   private static final int EVENTS = 1000000;
+
+   private ListenerService service;
+
+   public void setUp() throws Exception
+   {
+      PortalContainer container = PortalContainer.getInstance();
+      service = (ListenerService)container.getComponentInstanceOfType(ListenerService.class);
+   }
+
+   public void testBroadcast() throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Test broadcast events=" + EVENTS);
+      Listener<Object, Object> listener = new Listener<Object, Object>()
+      {
+         private long count;
+
+         public void onEvent(Event<Object, Object> event) throws Exception
+         {
+            count++;
+         }
+      };
+      for (int listeners : new int[]{1, 10, 100})
+      {
+         String eventName = "load.event." + listeners;
+         for (int i = 0; i < listeners; i++)
+         {
+            service.addListener(eventName, listener);
+         }
+         doTest(eventName, listeners);
+      }
+      System.out.println("");
+   }
+
+   private void doTest(String eventName, int listeners) throws Exception
+   {
+      Object source = new Object();
+      Object data = new Object();
+      int events = EVENTS / listeners;
+      for (int i = 0; i < events; i++)
+      {
+         service.broadcast(eventName, source, data);
+      }
+      long allocated = getAllocatedBytes();
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < events; i++)
+      {
+         service.broadcast(eventName, source, data);
+      }
+      long time = System.currentTimeMillis() - start;
+      allocated = getAllocatedBytes() - allocated;
+      System.out.println(listeners + " listeners: " + (events * 1000L / Math.max(1, time)) + " events/s, "
+         + (allocated < 0 ? "n/a" : Long.toString(allocated / events)) + " bytes/event");
+   }
+
+   /**
+    * @return the amount of bytes allocated by the current thread or -1 if the JVM cannot provide it
+    */
+   private static long getAllocatedBytes()
+   {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean)
+      {
+         return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return -1;
+   }
+}
@@ -21,6 +21,16 @@ import junit.framework.TestCase;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.component.ThreadContext;
 import org.exoplatform.container.component.ThreadContextHolder;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by The eXo Platform SAS.
@@ -177,6 +187,191 @@ public class TestAsynchronousListener extends TestCase
       }
    }
 
+   public void testListenerQueues() throws Exception
+   {
+      ListenerService service = createService("4", "1000", "BLOCK");
+      final CountDownLatch release = new CountDownLatch(1);
+      final List<Integer> slowValues = Collections.synchronizedList(new ArrayList<Integer>());
+      final List<Integer> fastValues = Collections.synchronizedList(new ArrayList<Integer>());
+      final CountDownLatch fastDone = new CountDownLatch(100);
+      final CountDownLatch slowDone = new CountDownLatch(100);
+      service.addListener("test_queues", new AsynchIntListener()
+      {
+         @Override
+         public void onEvent(Event<Object, Integer> event) throws Exception
+         {
+            release.await();
+            slowValues.add(event.getData());
+            slowDone.countDown();
+         }
+      });
+      service.addListener("test_queues", new AsynchIntListener()
+      {
+         @Override
+         public void onEvent(Event<Object, Integer> event) throws Exception
+         {
+            fastValues.add(event.getData());
+            fastDone.countDown();
+         }
+      });
+      List<Integer> expected = new ArrayList<Integer>();
+      for (int i = 0; i < 100; i++)
+      {
+         expected.add(i);
+         service.broadcast("test_queues", null, i);
+      }
+      // The slow listener must not delay the other one
+      assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+      assertEquals(expected, fastValues);
+      assertTrue(slowValues.isEmpty());
+      ListenerQueue slowQueue = service.getQueues().get(0);
+      assertEquals("test_queues", slowQueue.getEventName());
+      assertTrue(slowQueue.getQueueDepth() >= 99);
+      assertEquals(100, slowQueue.getEventCount());
+      release.countDown();
+      assertTrue(slowDone.await(10, TimeUnit.SECONDS));
+      assertEquals(expected, slowValues);
+      assertEquals(100, slowQueue.getDeliveryCount());
+      assertEquals(0, slowQueue.getDropCount());
+   }
+
+   public void testOverflowPolicies() throws Exception
+   {
+      assertEquals(Arrays.asList(0, 1, 2), broadcastOnFullQueue(OverflowPolicy.DISCARD, 7));
+      assertEquals(Arrays.asList(0, 8, 9), broadcastOnFullQueue(OverflowPolicy.DISCARD_OLDEST, 7));
+      assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8, 9, 0, 1, 2),
+         broadcastOnFullQueue(OverflowPolicy.CALLER_RUNS, 0));
+   }
+
+   public void testBlockInPoolThread() throws Exception
+   {
+      final ListenerService service = createService("1", "1", "BLOCK");
+      final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+      final CountDownLatch done = new CountDownLatch(4);
+      service.addListener("test_block", new AsynchIntListener()
+      {
+         @Override
+         public void onEvent(Event<Object, Integer> event) throws Exception
+         {
+            if (event.getData() == 0)
+            {
+               // The queue is full from the second event, the only thread of the pool must not wait
+               for (int i = 1; i < 4; i++)
+               {
+                  service.broadcast("test_block", null, i);
+               }
+            }
+            values.add(event.getData());
+            done.countDown();
+         }
+      });
+      service.broadcast("test_block", null, 0);
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2, 3)), new HashSet<Integer>(values));
+      assertEquals(0, service.getQueues().get(0).getDropCount());
+   }
+
+   /**
+    * Broadcasts 10 events to a listener whose queue can contain 2 events, the first event blocks the
+    * listener until all the events have been broadcasted
+    * @return the values of the delivered events in the order in which they have been delivered
+    */
+   private List<Integer> broadcastOnFullQueue(OverflowPolicy policy, int expectedDrops) throws Exception
+   {
+      ListenerService service = createService("1", "2", policy.name());
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+      service.addListener("test_overflow", new AsynchIntListener()
+      {
+         @Override
+         public void onEvent(Event<Object, Integer> event) throws Exception
+         {
+            if (event.getData() == 0)
+            {
+               started.countDown();
+               release.await();
+            }
+            values.add(event.getData());
+         }
+      });
+      ListenerQueue queue = service.getQueues().get(0);
+      service.broadcast("test_overflow", null, 0);
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      for (int i = 1; i < 10; i++)
+      {
+         service.broadcast("test_overflow", null, i);
+      }
+      assertEquals(expectedDrops, queue.getDropCount());
+      release.countDown();
+      long end = System.currentTimeMillis() + 10000;
+      while (queue.getDeliveryCount() + queue.getDropCount() < queue.getEventCount()
+         || values.size() < queue.getDeliveryCount())
+      {
+         assertTrue(System.currentTimeMillis() < end);
+         Thread.sleep(10);
+      }
+      return values;
+   }
+
+   public void testBatchListener() throws Exception
+   {
+      ListenerService service = createService("1", "100", "BLOCK");
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(10);
+      final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+      service.addListener("test_batch", new AsynchBatchListener()
+      {
+         public void onEvents(List<Event<Object, Integer>> events) throws Exception
+         {
+            started.countDown();
+            release.await();
+            List<Integer> batch = new ArrayList<Integer>();
+            for (Event<Object, Integer> event : events)
+            {
+               batch.add(event.getData() + Integer.parseInt(TestHolder.tl.get()));
+            }
+            batches.add(batch);
+            for (int i = 0; i < batch.size(); i++)
+            {
+               done.countDown();
+            }
+         }
+      });
+      TestHolder.tl.set("0");
+      service.broadcast("test_batch", null, 0);
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      for (int i = 1; i < 10; i++)
+      {
+         TestHolder.tl.set(i == 1 ? "100" : "200");
+         service.broadcast("test_batch", null, i);
+      }
+      release.countDown();
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertEquals(2, batches.size());
+      assertEquals(Collections.singletonList(0), batches.get(0));
+      // The thread context is the one of the first event of the batch
+      assertEquals(Arrays.asList(101, 102, 103, 104, 105, 106, 107, 108, 109), batches.get(1));
+   }
+
+   private ListenerService createService(String poolSize, String queueCapacity, String overflowPolicy)
+   {
+      InitParams params = new InitParams();
+      addValueParam(params, "asynchPoolSize", poolSize);
+      addValueParam(params, "asynchQueueCapacity", queueCapacity);
+      addValueParam(params, "asynchOverflowPolicy", overflowPolicy);
+      return new ListenerService(PortalContainer.getInstance().getContext(), params);
+   }
+
+   private static void addValueParam(InitParams params, String name, String value)
+   {
+      ValueParam param = new ValueParam();
+      param.setName(name);
+      param.setValue(value);
+      params.addParameter(param);
+   }
+
    class StrValue
    {
       private String val;
@@ -214,6 +409,19 @@ public class TestAsynchronousListener extends TestCase
       }
    }
 
+   @Asynchronous
+   class AsynchIntListener extends Listener<Object, Integer>
+   {
+      @Override
+      public void onEvent(Event<Object, Integer> event) throws Exception
+      {
+      }
+   }
+
+   abstract class AsynchBatchListener extends AsynchIntListener implements BatchListener<Object, Integer>
+   {
+   }
+
    class SynchListener extends Listener<Object, StrValue>
    {
       @Override
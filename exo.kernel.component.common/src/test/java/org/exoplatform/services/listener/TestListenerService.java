@@ -22,6 +22,11 @@ import junit.framework.TestCase;
 
 import org.exoplatform.container.PortalContainer;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by The eXo Platform SAS Author : Chung Nguyen
  * nguyenchung136@yahoo.com Feb 13, 2006
@@ -50,6 +55,77 @@ public class TestListenerService extends TestCase
       handler.setValue("thuan");
    }
 
+   public void testSharedEvent() throws Exception
+   {
+      final List<Event<Object, String>> events = new ArrayList<Event<Object, String>>();
+      for (int i = 0; i < 3; i++)
+      {
+         service_.addListener("shared.event", new Listener<Object, String>()
+         {
+            public void onEvent(Event<Object, String> event) throws Exception
+            {
+               events.add(event);
+            }
+         });
+      }
+      service_.broadcast("shared.event", this, "data");
+      assertEquals(3, events.size());
+      assertEquals("data", events.get(0).getData());
+      assertSame(events.get(0), events.get(1));
+      assertSame(events.get(0), events.get(2));
+   }
+
+   public void testConcurrentRegistration() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      final Listener<Object, Object> listener = new Listener<Object, Object>()
+      {
+         public void onEvent(Event<Object, Object> event) throws Exception
+         {
+            calls.incrementAndGet();
+         }
+      };
+      final int threads = 8;
+      final int listeners = 100;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < listeners; j++)
+                  {
+                     service_.addListener("concurrent.event", listener);
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      // Broadcast while the listeners are added
+      while (doneSignal.getCount() > 0)
+      {
+         service_.broadcast("concurrent.event", this, null);
+      }
+      calls.set(0);
+      service_.broadcast("concurrent.event", this, null);
+      assertEquals(threads * listeners, calls.get());
+   }
+
    public class BeanHandler
    {
 
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.stack.IpAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory network shared by several {@link LoopbackRPCService} running in the same JVM, it allows to
+ * test and to benchmark the {@link AbstractRPCService} without any JGroups channel.
+ * <p>
+ * The messages can be delayed to simulate the latency of the network and can be lost to simulate a lossy
+ * network. Like with JGroups, the network is reliable so a lost message is retransmitted once the
+ * retransmission timeout is reached, and the regular messages received after it by the same member wait
+ * for it. The out of band messages are delivered concurrently by a shared pool of threads.
+ * <p>
+ * A member joins the network when it is started and leaves it when it is stopped, each time a new view
+ * is installed on all the remaining members. A member can also be removed with {@link #crash(LoopbackRPCService)}
+ * to simulate a member that leaves the cluster abruptly: the requests waiting for its response are considered
+ * as suspected.
+ *
+ * @version $Id$
+ */
+public class LoopbackNetwork
+{
+
+   /**
+    * The default retransmission timeout in milliseconds
+    */
+   public static final long DEFAULT_RETRANSMIT_TIMEOUT = 300;
+
+   /**
+    * The members that joined the network in order of arrival, the first one is the coordinator
+    */
+   private volatile Map<Address, LoopbackRPCService> members = Collections.emptyMap();
+
+   /** . */
+   private long viewId;
+
+   /** . */
+   private final AtomicInteger nextPort = new AtomicInteger(7800);
+
+   /** . */
+   private final Random random = new Random();
+
+   /**
+    * The latency of the network in milliseconds
+    */
+   private volatile long latency;
+
+   /**
+    * The probability that a message is lost
+    */
+   private volatile double lossRate;
+
+   /** . */
+   private volatile long retransmitTimeout = DEFAULT_RETRANSMIT_TIMEOUT;
+
+   /**
+    * The scheduler used to deliver the delayed out of band messages and responses
+    */
+   private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+      "LoopbackNetwork-Scheduler"));
+
+   /**
+    * The pool of threads used to deliver the out of band messages and the responses
+    */
+   private final ExecutorService oobPool = Executors.newCachedThreadPool(new DaemonThreadFactory("LoopbackNetwork-OOB"));
+
+   public long getLatency()
+   {
+      return latency;
+   }
+
+   /**
+    * @param latency the amount of time in milliseconds needed to transmit a message from a member to another
+    */
+   public void setLatency(long latency)
+   {
+      this.latency = latency;
+   }
+
+   public double getLossRate()
+   {
+      return lossRate;
+   }
+
+   /**
+    * @param lossRate the probability between 0 and 1 that a message needs to be retransmitted
+    */
+   public void setLossRate(double lossRate)
+   {
+      this.lossRate = lossRate;
+   }
+
+   public long getRetransmitTimeout()
+   {
+      return retransmitTimeout;
+   }
+
+   /**
+    * @param retransmitTimeout the amount of time in milliseconds after which a lost message is retransmitted
+    */
+   public void setRetransmitTimeout(long retransmitTimeout)
+   {
+      this.retransmitTimeout = retransmitTimeout;
+   }
+
+   /**
+    * @return the addresses of the current members in order of arrival
+    */
+   public List<Address> getMembers()
+   {
+      return new ArrayList<Address>(members.keySet());
+   }
+
+   /**
+    * Removes abruptly the given member from the network, the member is not stopped but it cannot
+    * send or receive any message anymore. This method must not be called by a command.
+    */
+   public void crash(LoopbackRPCService member)
+   {
+      leave(member);
+   }
+
+   /**
+    * Stops the threads of the network
+    */
+   public void close()
+   {
+      scheduler.shutdownNow();
+      oobPool.shutdownNow();
+   }
+
+   /**
+    * @return a new unique address
+    */
+   Address newAddress()
+   {
+      return new IpAddress(nextPort.getAndIncrement());
+   }
+
+   /**
+    * Adds the given member and installs the new view on all the members
+    */
+   void join(LoopbackRPCService member)
+   {
+      View view;
+      List<LoopbackRPCService> targets;
+      synchronized (this)
+      {
+         Map<Address, LoopbackRPCService> newMembers = new LinkedHashMap<Address, LoopbackRPCService>(members);
+         newMembers.put(member.getLocalAddress(), member);
+         members = newMembers;
+         view = createView();
+         targets = new ArrayList<LoopbackRPCService>(newMembers.values());
+      }
+      installView(view, targets);
+   }
+
+   /**
+    * Removes the given member, installs the new view on the remaining members and considers as suspected
+    * the requests waiting for a response of this member
+    */
+   void leave(LoopbackRPCService member)
+   {
+      Address address = member.getLocalAddress();
+      View view;
+      List<LoopbackRPCService> targets;
+      synchronized (this)
+      {
+         if (address == null || members.get(address) != member)
+         {
+            return;
+         }
+         Map<Address, LoopbackRPCService> newMembers = new LinkedHashMap<Address, LoopbackRPCService>(members);
+         newMembers.remove(address);
+         members = newMembers;
+         view = createView();
+         targets = new ArrayList<LoopbackRPCService>(newMembers.values());
+      }
+      installView(view, targets);
+      for (LoopbackRPCService target : targets)
+      {
+         target.onLeft(address);
+      }
+   }
+
+   private View createView()
+   {
+      Vector<Address> addresses = new Vector<Address>(members.keySet());
+      return new View(addresses.isEmpty() ? null : addresses.get(0), ++viewId, addresses);
+   }
+
+   /**
+    * Installs the given view on the given members and waits until all of them have received it
+    */
+   private void installView(View view, List<LoopbackRPCService> targets)
+   {
+      List<Future<?>> futures = new ArrayList<Future<?>>(targets.size());
+      for (LoopbackRPCService target : targets)
+      {
+         futures.add(target.installView(view));
+      }
+      for (Future<?> future : futures)
+      {
+         try
+         {
+            future.get();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            return;
+         }
+         catch (Exception e)
+         {
+            // The member has been disconnected in the meantime
+         }
+      }
+   }
+
+   /**
+    * Sends a message to the given member
+    * @param src the address of the sender
+    * @param dest the address of the receiver
+    * @param buffer the content of the message
+    * @param oob indicates whether the message is out of band
+    * @param callback the callback to which the response is given or <code>null</code> if no response is expected
+    */
+   void send(Address src, final Address dest, byte[] buffer, boolean oob, final ResponseCallback callback)
+   {
+      Map<Address, LoopbackRPCService> members = this.members;
+      final LoopbackRPCService receiver = members.get(dest);
+      if (receiver == null || !members.containsKey(src))
+      {
+         if (callback != null)
+         {
+            callback.onSuspect(dest);
+         }
+         return;
+      }
+      final Message msg = new Message(dest, src, buffer);
+      Runnable task = new Runnable()
+      {
+         public void run()
+         {
+            final Object response = receiver.handle(msg);
+            if (callback != null)
+            {
+               execute(new Runnable()
+               {
+                  public void run()
+                  {
+                     callback.onResponse(dest, response);
+                  }
+               }, getDelay());
+            }
+         }
+      };
+      if (oob)
+      {
+         execute(task, getDelay());
+      }
+      else
+      {
+         receiver.deliver(task, getDelay());
+      }
+   }
+
+   /**
+    * @return the amount of time in milliseconds needed to transmit a message
+    */
+   private long getDelay()
+   {
+      long delay = latency;
+      if (lossRate > 0 && random.nextDouble() < lossRate)
+      {
+         delay += retransmitTimeout;
+      }
+      return delay;
+   }
+
+   /**
+    * Executes the given task in the pool of threads once the given delay has elapsed
+    */
+   private void execute(final Runnable task, long delay)
+   {
+      try
+      {
+         if (delay <= 0)
+         {
+            oobPool.execute(task);
+         }
+         else
+         {
+            scheduler.schedule(new Runnable()
+            {
+               public void run()
+               {
+                  oobPool.execute(task);
+               }
+            }, delay, TimeUnit.MILLISECONDS);
+         }
+      }
+      catch (RejectedExecutionException e)
+      {
+         // The network is closed
+      }
+   }
+
+   /**
+    * The callback to which the response of a member is given
+    */
+   static interface ResponseCallback
+   {
+      /**
+       * Called when the given member has sent its response
+       */
+      void onResponse(Address member, Object response);
+
+      /**
+       * Called when the given member has left the network before sending its response
+       */
+      void onSuspect(Address member);
+   }
+
+   /**
+    * Creates daemon threads with the given name followed by a counter
+    */
+   static class DaemonThreadFactory implements ThreadFactory
+   {
+      /** . */
+      private final String name;
+
+      /** . */
+      private final AtomicInteger count = new AtomicInteger();
+
+      DaemonThreadFactory(String name)
+      {
+         this.name = name;
+      }
+
+      public Thread newThread(Runnable r)
+      {
+         Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      }
+   }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.rpc.impl.LoopbackNetwork.DaemonThreadFactory;
+import org.exoplatform.services.rpc.impl.LoopbackNetwork.ResponseCallback;
+import org.jgroups.Address;
+import org.jgroups.Channel;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.util.RspList;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An implementation of the {@link AbstractRPCService} that exchanges its messages through a {@link LoopbackNetwork}
+ * instead of a JGroups channel, so that several members can run in the same JVM. The regular messages and the
+ * views received by a member are delivered one at a time by a dedicated thread in the order in which they
+ * have been sent.
+ *
+ * @version $Id$
+ */
+public class LoopbackRPCService extends AbstractRPCService
+{
+
+   /** . */
+   private final LoopbackNetwork network;
+
+   /** . */
+   private volatile Address address;
+
+   /**
+    * The thread that delivers the regular messages and the views
+    */
+   private volatile ExecutorService delivery;
+
+   /**
+    * The time in nanoseconds at which the last regular message will be delivered, guarded by the lock
+    * of the delivery
+    */
+   private long lastDelivery;
+
+   /** . */
+   private final Object deliveryLock = new Object();
+
+   /**
+    * The synchronous requests waiting for responses
+    */
+   private final Set<Request> requests = Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+
+   /**
+    * @param network the network to join once started
+    * @param params the list of initial parameters, the JGroups parameters are ignored
+    */
+   public LoopbackRPCService(LoopbackNetwork network, InitParams params)
+   {
+      super(params, null, CLUSTER_NAME + "-loopback");
+      this.network = network;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void connect()
+   {
+      address = network.newAddress();
+      lastDelivery = System.nanoTime();
+      delivery = Executors.newSingleThreadExecutor(new DaemonThreadFactory("LoopbackRPCService-" + address));
+      network.join(this);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void disconnect()
+   {
+      if (delivery != null)
+      {
+         network.leave(this);
+         delivery.shutdown();
+         delivery = null;
+      }
+      for (Request request : requests)
+      {
+         request.cancel();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected Address getLocalAddress()
+   {
+      return address;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected RspList castMessage(List<Address> dests, Message msg, boolean synchronous, long timeout) throws Exception
+   {
+      boolean oob = msg.isFlagSet(Message.OOB);
+      byte[] buffer = msg.getBuffer();
+      if (!synchronous)
+      {
+         for (Address dest : dests)
+         {
+            network.send(address, dest, buffer, oob, null);
+         }
+         return new RspList();
+      }
+      Request request = new Request(dests);
+      requests.add(request);
+      try
+      {
+         for (Address dest : dests)
+         {
+            network.send(address, dest, buffer, oob, request);
+         }
+         return request.await(timeout);
+      }
+      finally
+      {
+         requests.remove(request);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected Channel createChannel() throws Exception
+   {
+      throw new UnsupportedOperationException("The loopback implementation doesn't use any channel");
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected List<Address> getMembers(View view)
+   {
+      return view.getMembers();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setOutOfBand(Message msg)
+   {
+      msg.setFlag(Message.OOB);
+   }
+
+   /**
+    * Delivers a regular message once the given delay has elapsed and once the previous regular messages
+    * have been delivered
+    * @param task the task that delivers the message
+    * @param delay the delay in milliseconds
+    */
+   void deliver(final Runnable task, long delay)
+   {
+      ExecutorService executor = delivery;
+      if (executor == null)
+      {
+         // The member is disconnected, the message is lost
+         return;
+      }
+      final long due;
+      synchronized (deliveryLock)
+      {
+         due = Math.max(lastDelivery, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+         lastDelivery = due;
+      }
+      try
+      {
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               long remaining;
+               while ((remaining = due - System.nanoTime()) > 0)
+               {
+                  try
+                  {
+                     TimeUnit.NANOSECONDS.sleep(remaining);
+                  }
+                  catch (InterruptedException e)
+                  {
+                     Thread.currentThread().interrupt();
+                     return;
+                  }
+               }
+               task.run();
+            }
+         });
+      }
+      catch (RejectedExecutionException e)
+      {
+         // The member is disconnected, the message is lost
+      }
+   }
+
+   /**
+    * Installs the given view after the regular messages already received
+    * @return the future indicating when the view has been installed
+    */
+   Future<?> installView(final View view)
+   {
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable()
+      {
+         public void run()
+         {
+            viewAccepted(view);
+         }
+      }, null);
+      deliver(task, 0);
+      if (delivery == null)
+      {
+         task.cancel(false);
+      }
+      return task;
+   }
+
+   /**
+    * Called when the given member has left the network
+    */
+   void onLeft(Address member)
+   {
+      for (Request request : requests)
+      {
+         request.onSuspect(member);
+      }
+   }
+
+   /**
+    * A synchronous request waiting for the responses of the members
+    */
+   private static class Request implements ResponseCallback
+   {
+      /** . */
+      private final RspList rsps = new RspList();
+
+      /**
+       * The members that did not reply yet
+       */
+      private final Set<Address> pending;
+
+      /** . */
+      private final CountDownLatch remaining;
+
+      Request(List<Address> dests)
+      {
+         this.pending = new HashSet<Address>(dests);
+         this.remaining = new CountDownLatch(pending.size());
+         for (Address dest : pending)
+         {
+            rsps.addNotReceived(dest);
+         }
+      }
+
+      public void onResponse(Address member, Object response)
+      {
+         synchronized (this)
+         {
+            if (!pending.remove(member))
+            {
+               return;
+            }
+            rsps.addRsp(member, response);
+         }
+         remaining.countDown();
+      }
+
+      public void onSuspect(Address member)
+      {
+         synchronized (this)
+         {
+            if (!pending.remove(member))
+            {
+               return;
+            }
+            rsps.addSuspect(member);
+         }
+         remaining.countDown();
+      }
+
+      /**
+       * Releases the caller, the members that did not reply yet are considered as suspected
+       */
+      void cancel()
+      {
+         synchronized (this)
+         {
+            for (Address member : pending)
+            {
+               rsps.addSuspect(member);
+            }
+            pending.clear();
+         }
+         while (remaining.getCount() > 0)
+         {
+            remaining.countDown();
+         }
+      }
+
+      /**
+       * Waits for the responses, the responses received after the timeout are ignored
+       * @param timeout the timeout in milliseconds or 0 to wait forever
+       */
+      RspList await(long timeout) throws InterruptedException
+      {
+         if (timeout > 0)
+         {
+            remaining.await(timeout, TimeUnit.MILLISECONDS);
+         }
+         else
+         {
+            remaining.await();
+         }
+         synchronized (this)
+         {
+            pending.clear();
+            return rsps;
+         }
+      }
+   }
+}
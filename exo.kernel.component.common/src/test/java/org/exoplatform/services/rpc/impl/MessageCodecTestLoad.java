@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+import org.exoplatform.services.rpc.impl.TestMessageCodec.Point;
+import org.exoplatform.services.rpc.impl.TestMessageCodec.PointCodec;
+import org.jgroups.Address;
+import org.jgroups.stack.IpAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the size and the throughput of the encoding and of the decoding of the messages written with
+ * the Java serialization as done before the {@link MessageCodec}, with the same messages written with the
+ * {@link MessageCodec}.
+ *
+ * @version $Id$
+ */
+public class MessageCodecTestLoad extends TestCase
+{
+
+   private static final int MESSAGES = 500000;
+
+   private static final String COMMAND_ID = "org.exoplatform.services.cache.impl.infinispan.SomeComponent-invalidate";
+
+   private final Address node1 = new IpAddress(7800);
+
+   private final Address node2 = new IpAddress(7801);
+
+   public void testPrimitiveArguments() throws Exception
+   {
+      doTest("Primitives", new Serializable[]{"repository/workspace", 123456, 789L, Boolean.TRUE});
+   }
+
+   public void testByteArrayArgument() throws Exception
+   {
+      doTest("Byte array", new Serializable[]{new byte[256]});
+   }
+
+   public void testCustomArguments() throws Exception
+   {
+      doTest("Custom type", new Serializable[]{new Point(1, 2), new Point(3, 4)});
+   }
+
+   private void doTest(String name, Serializable[] args) throws Exception
+   {
+      MessageBody body = new MessageBody(null, COMMAND_ID, args);
+      System.out.println("-----------------------------------------");
+      System.out.println("Test " + name + " messages=" + MESSAGES);
+
+      // Java serialization
+      byte[] content = serialize(body);
+      deserialize(content);
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         deserialize(serialize(body));
+      }
+      long time = System.currentTimeMillis() - start;
+      System.out.println("Java serialization: " + content.length + " bytes/message, "
+         + (MESSAGES * 1000L / Math.max(1, time)) + " messages/s");
+
+      // Codec without the index of the command
+      List<Address> dests = Collections.singletonList(node2);
+      MessageCodec sender = new MessageCodec();
+      MessageCodec receiver = new MessageCodec();
+      sender.registerArgumentCodec(new PointCodec());
+      receiver.registerArgumentCodec(new PointCodec());
+      content = sender.encode(body, dests);
+      receiver.decode(node1, content);
+      System.out.println("Codec with the command id: " + content.length + " bytes/message");
+
+      // Codec with the index of the command
+      sender.acknowledge(COMMAND_ID, node2);
+      content = sender.encode(body, dests);
+      start = System.currentTimeMillis();
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         receiver.decode(node1, sender.encode(body, dests));
+      }
+      time = System.currentTimeMillis() - start;
+      System.out.println("Codec with the command index: " + content.length + " bytes/message, "
+         + (MESSAGES * 1000L / Math.max(1, time)) + " messages/s");
+      System.out.println("");
+   }
+
+   private static byte[] serialize(MessageBody body) throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(body);
+      oos.close();
+      return baos.toByteArray();
+   }
+
+   private static MessageBody deserialize(byte[] content) throws Exception
+   {
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(content));
+      try
+      {
+         return (MessageBody)ois.readObject();
+      }
+      finally
+      {
+         ois.close();
+      }
+   }
+}
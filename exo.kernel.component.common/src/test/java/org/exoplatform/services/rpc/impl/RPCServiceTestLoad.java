@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.rpc.RemoteCommand;
+import org.exoplatform.services.rpc.impl.TestMessageCodec.Point;
+import org.exoplatform.services.rpc.impl.TestMessageCodec.PointCodec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of the {@link AbstractRPCService} on top of a {@link LoopbackNetwork}: the dispatch
+ * of the commands, the cost of the serialization of the arguments and the fan-out to several members.
+ *
+ * @version $Id$
+ */
+public class RPCServiceTestLoad extends TestCase
+{
+
+   private static final int WARM_UP = 5000;
+
+   private static final int COMMANDS = 50000;
+
+   private LoopbackNetwork network;
+
+   private List<LoopbackRPCService> services;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      network = new LoopbackNetwork();
+      services = new ArrayList<LoopbackRPCService>();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      for (LoopbackRPCService service : services)
+      {
+         service.stop();
+      }
+      network.close();
+   }
+
+   public void testDispatch() throws Exception
+   {
+      RemoteCommand cmd = startMembers(2);
+      LoopbackRPCService service = services.get(0);
+      System.out.println("-----------------------------------------");
+      System.out.println("Test dispatch commands=" + COMMANDS);
+      Serializable[] args = {"foo"};
+      for (int i = 0; i < WARM_UP; i++)
+      {
+         service.executeCommandOnCoordinator(cmd, true, args);
+      }
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < COMMANDS; i++)
+      {
+         service.executeCommandOnCoordinator(cmd, true, args);
+      }
+      print("Synchronous on the coordinator", start, COMMANDS);
+      start = System.currentTimeMillis();
+      for (int i = 0; i < COMMANDS; i++)
+      {
+         service.executeCommandOnAllNodes(cmd, false, args);
+      }
+      // Wait for the asynchronous commands
+      service.executeCommandOnAllNodes(cmd, true, args);
+      print("Asynchronous on all the nodes", start, COMMANDS);
+      System.out.println("");
+   }
+
+   public void testSerialization() throws Exception
+   {
+      RemoteCommand cmd = startMembers(2);
+      LoopbackRPCService service = services.get(0);
+      System.out.println("-----------------------------------------");
+      System.out.println("Test serialization commands=" + COMMANDS);
+      HashMap<String, String> map = new HashMap<String, String>();
+      for (int i = 0; i < 10; i++)
+      {
+         map.put("key" + i, "value" + i);
+      }
+      doTestSerialization(service, cmd, "Primitives", new Serializable[]{"repository/workspace", 123456, 789L,
+         Boolean.TRUE});
+      doTestSerialization(service, cmd, "Byte array", new Serializable[]{new byte[1024]});
+      doTestSerialization(service, cmd, "Custom type", new Serializable[]{new Point(1, 2), new Point(3, 4)});
+      doTestSerialization(service, cmd, "Serializable map", new Serializable[]{map});
+      System.out.println("");
+   }
+
+   private void doTestSerialization(LoopbackRPCService service, RemoteCommand cmd, String name, Serializable[] args)
+      throws Exception
+   {
+      for (int i = 0; i < WARM_UP; i++)
+      {
+         service.executeCommandOnAllNodes(cmd, true, args);
+      }
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < COMMANDS; i++)
+      {
+         service.executeCommandOnAllNodes(cmd, true, args);
+      }
+      print(name, start, COMMANDS);
+   }
+
+   public void testFanOut() throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Test fan-out commands=" + COMMANDS);
+      int count = 0;
+      for (int members : new int[]{1, 2, 4, 8})
+      {
+         RemoteCommand cmd = startMembers(members - count);
+         count = members;
+         LoopbackRPCService service = services.get(0);
+         for (int i = 0; i < WARM_UP; i++)
+         {
+            service.executeCommandOnAllNodes(cmd, true);
+         }
+         long start = System.currentTimeMillis();
+         for (int i = 0; i < COMMANDS; i++)
+         {
+            service.executeCommandOnAllNodes(cmd, true);
+         }
+         print(members + " members synchronous", start, COMMANDS);
+         start = System.currentTimeMillis();
+         List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>(COMMANDS);
+         for (int i = 0; i < COMMANDS; i++)
+         {
+            futures.add(service.executeCommandOnAllNodesAsync(cmd, null));
+         }
+         for (Future<List<Object>> future : futures)
+         {
+            future.get();
+         }
+         print(members + " members with futures", start, COMMANDS);
+      }
+      System.out.println("");
+   }
+
+   public void testFanOutWithLatency() throws Exception
+   {
+      int commands = COMMANDS / 100;
+      network.setLatency(1);
+      System.out.println("-----------------------------------------");
+      System.out.println("Test fan-out with a latency of " + network.getLatency() + " ms commands=" + commands);
+      int count = 0;
+      for (int members : new int[]{1, 2, 4, 8})
+      {
+         RemoteCommand cmd = startMembers(members - count);
+         count = members;
+         LoopbackRPCService service = services.get(0);
+         long start = System.currentTimeMillis();
+         for (int i = 0; i < commands; i++)
+         {
+            service.executeCommandOnAllNodes(cmd, true);
+         }
+         print(members + " members synchronous", start, commands);
+         start = System.currentTimeMillis();
+         List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>(commands);
+         for (int i = 0; i < commands; i++)
+         {
+            futures.add(service.executeCommandOnAllNodesAsync(cmd, null));
+         }
+         for (Future<List<Object>> future : futures)
+         {
+            future.get();
+         }
+         print(members + " members with futures", start, commands);
+      }
+      System.out.println("");
+   }
+
+   /**
+    * Starts the given amount of new members
+    * @return the command registered on the first member
+    */
+   private RemoteCommand startMembers(int count)
+   {
+      for (int i = 0; i < count; i++)
+      {
+         LoopbackRPCService service = new LoopbackRPCService(network, new InitParams());
+         service.registerArgumentCodec(new PointCodec());
+         service.registerCommand(new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "echo";
+            }
+
+            public Serializable execute(Serializable[] args) throws Throwable
+            {
+               return args == null || args.length == 0 ? null : args[0];
+            }
+         });
+         service.start();
+         services.add(service);
+      }
+      return services.get(0).getCommand("echo");
+   }
+
+   private static void print(String name, long start, int commands)
+   {
+      long time = System.currentTimeMillis() - start;
+      System.out.println(name + ": " + (commands * 1000L / Math.max(1, time)) + " commands/s");
+   }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.RPCResponseListener;
+import org.exoplatform.services.rpc.RemoteCommand;
+import org.exoplatform.services.rpc.TopologyChangeEvent;
+import org.exoplatform.services.rpc.TopologyChangeListener;
+import org.exoplatform.services.rpc.UnorderedCommand;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This is the unit test class for the {@link LoopbackRPCService} and the {@link LoopbackNetwork}
+ * 
+ * @version $Id$
+ */
+public class TestLoopbackRPCService extends TestCase
+{
+
+   private LoopbackNetwork network;
+
+   private List<LoopbackRPCService> services;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      network = new LoopbackNetwork();
+      services = new ArrayList<LoopbackRPCService>();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      for (LoopbackRPCService service : services)
+      {
+         service.stop();
+      }
+      network.close();
+   }
+
+   public void testViewChanges() throws Exception
+   {
+      LoopbackRPCService service1 = createService(null);
+      LoopbackRPCService service2 = createService(null);
+      LoopbackRPCService service3 = createService(null);
+      final List<TopologyChangeEvent> events = Collections.synchronizedList(new ArrayList<TopologyChangeEvent>());
+      service2.registerTopologyChangeListener(new TopologyChangeListener()
+      {
+         public void onChange(TopologyChangeEvent event)
+         {
+            events.add(event);
+         }
+      });
+      RemoteCommand[] cmds = new RemoteCommand[3];
+      for (int i = 0; i < cmds.length; i++)
+      {
+         cmds[i] = registerNameCommand(services.get(i), "service" + (i + 1));
+      }
+      for (LoopbackRPCService service : services)
+      {
+         service.start();
+      }
+      assertTrue(service1.isCoordinator());
+      assertFalse(service2.isCoordinator());
+      assertFalse(service3.isCoordinator());
+      assertEquals(3, network.getMembers().size());
+      assertEquals(2, events.size());
+      assertFalse(events.get(1).isCoordinatorHasChanged());
+
+      List<Object> result = service3.executeCommandOnAllNodes(cmds[2], true);
+      assertEquals(3, result.size());
+      assertEquals("service1", result.get(0));
+      assertEquals("service2", result.get(1));
+      assertEquals("service3", result.get(2));
+      assertEquals("service1", service3.executeCommandOnCoordinator(cmds[2], true));
+
+      service1.stop();
+      assertEquals(2, network.getMembers().size());
+      assertTrue(service2.isCoordinator());
+      assertEquals(3, events.size());
+      assertTrue(events.get(2).isCoordinatorHasChanged());
+      assertTrue(events.get(2).isCoordinator());
+      result = service3.executeCommandOnAllNodes(cmds[2], true);
+      assertEquals(2, result.size());
+      assertEquals("service2", result.get(0));
+      assertEquals("service3", result.get(1));
+      assertEquals("service2", service3.executeCommandOnCoordinator(cmds[2], true));
+   }
+
+   public void testCoordinatorFailover() throws Exception
+   {
+      final LoopbackRPCService service1 = createService(null);
+      final LoopbackRPCService service2 = createService(null);
+      final LoopbackRPCService service3 = createService(null);
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch releaseSignal = new CountDownLatch(1);
+      RemoteCommand slowCmd = new UnorderedCommand()
+      {
+         public String getId()
+         {
+            return "name";
+         }
+
+         public int getMaxConcurrency()
+         {
+            return 1;
+         }
+
+         public int getQueueCapacity()
+         {
+            return 1;
+         }
+
+         public String execute(Serializable[] args) throws Throwable
+         {
+            startSignal.countDown();
+            releaseSignal.await();
+            return "service1";
+         }
+      };
+      service1.registerCommand(slowCmd);
+      registerNameCommand(service2, "service2");
+      final RemoteCommand cmd = registerNameCommand(service3, "service3");
+      for (LoopbackRPCService service : services)
+      {
+         service.start();
+      }
+      final AtomicReference<Object> result = new AtomicReference<Object>();
+      Thread caller = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               result.set(service3.executeCommandOnCoordinator(cmd, true));
+            }
+            catch (RPCException e)
+            {
+               result.set(e);
+            }
+         }
+      };
+      caller.start();
+      startSignal.await();
+      // The coordinator leaves abruptly while executing the command
+      network.crash(service1);
+      caller.join();
+      releaseSignal.countDown();
+      assertEquals("service2", result.get());
+      assertTrue(service2.isCoordinator());
+      // The crashed member is isolated
+      List<Object> results = service1.executeCommandOnAllNodes(slowCmd, true);
+      assertEquals(3, results.size());
+      for (Object o : results)
+      {
+         assertTrue(o instanceof AbstractRPCService.MemberHasLeftException);
+      }
+   }
+
+   public void testLatencyAndLoss() throws Exception
+   {
+      network.setLatency(5);
+      network.setLossRate(0.3);
+      network.setRetransmitTimeout(20);
+      LoopbackRPCService service1 = createService(null);
+      LoopbackRPCService service2 = createService(null);
+      final List<String> calls1 = Collections.synchronizedList(new ArrayList<String>());
+      final List<String> calls2 = Collections.synchronizedList(new ArrayList<String>());
+      RemoteCommand cmd = registerRecordCommand(service1, calls1);
+      registerRecordCommand(service2, calls2);
+      service1.start();
+      service2.start();
+      List<String> expected = new ArrayList<String>();
+      for (int i = 0; i < 30; i++)
+      {
+         service1.executeCommandOnAllNodes(cmd, false, "cmd" + i);
+         expected.add("cmd" + i);
+      }
+      long start = System.currentTimeMillis();
+      List<Object> result = service1.executeCommandOnAllNodes(cmd, true, "sync");
+      expected.add("sync");
+      // At least the time needed to send the request and the response
+      assertTrue(System.currentTimeMillis() - start >= 10);
+      assertEquals(2, result.size());
+      // The regular messages are delivered in the order in which they have been sent despite the losses
+      assertEquals(expected, calls1);
+      assertEquals(expected, calls2);
+
+      // A timeout shorter than the latency
+      result = service1.executeCommandOnAllNodes(cmd, 1, "timeout");
+      assertTrue(result.get(0) instanceof RPCException);
+      assertTrue(result.get(1) instanceof RPCException);
+   }
+
+   public void testUnknownCommandIndex() throws Exception
+   {
+      LoopbackRPCService service1 = createService(null);
+      LoopbackRPCService service2 = createService(null);
+      RemoteCommand cmd = registerNameCommand(service1, "service1");
+      RemoteCommand cmd2 = registerNameCommand(service2, "service2");
+      service1.start();
+      service2.start();
+      // The members learn the index of the command
+      assertEquals(Arrays.<Object> asList("service1", "service2"), service1.executeCommandOnAllNodes(cmd, true));
+      // The second member loses the mapping of the index of the command
+      service2.getCodec().retainMembers(Collections.singletonList(service2.getLocalAddress()));
+      assertEquals(Arrays.<Object> asList("service1", "service2"), service1.executeCommandOnAllNodes(cmd, true));
+      service2.getCodec().retainMembers(Collections.singletonList(service2.getLocalAddress()));
+      assertEquals(Arrays.<Object> asList("service1", "service2"),
+         service1.executeCommandOnAllNodesAsync(cmd, (RPCResponseListener)null).get());
+      service1.getCodec().retainMembers(Collections.singletonList(service1.getLocalAddress()));
+      assertEquals("service1", service2.executeCommandOnCoordinator(cmd2, true));
+      service1.getCodec().retainMembers(Collections.singletonList(service1.getLocalAddress()));
+      assertEquals("service1", service2.executeCommandOnCoordinatorAsync(cmd2).get());
+   }
+
+   public void testDroppedBatches() throws Exception
+   {
+      final List<Integer> sent = Collections.synchronizedList(new ArrayList<Integer>());
+      LoopbackRPCService service = new LoopbackRPCService(network, new InitParams())
+      {
+         @Override
+         void sendBatch(List<MessageBody> bodies) throws Exception
+         {
+            sent.add(bodies.size());
+            throw new Exception("The batch cannot be sent");
+         }
+      };
+      CommandBatcher batcher = new CommandBatcher(service, 3, 60000);
+      // Nothing to send
+      batcher.flush();
+      assertTrue(sent.isEmpty());
+      for (int i = 0; i < 4; i++)
+      {
+         batcher.add(new MessageBody(null, "cmd", new Serializable[]{i}, true));
+      }
+      assertEquals(1, batcher.getPendingCount());
+      assertEquals(1, batcher.getDroppedBatchCount());
+      assertEquals(3, batcher.getDroppedCommandCount());
+      assertEquals(0, batcher.getBatchCount());
+      batcher.stop();
+      assertEquals(2, batcher.getDroppedBatchCount());
+      assertEquals(4, batcher.getDroppedCommandCount());
+      // Once stopped, the commands are sent immediately instead of waiting for a scheduled flush
+      batcher.add(new MessageBody(null, "cmd", new Serializable[]{4}, true));
+      assertEquals(0, batcher.getPendingCount());
+      assertEquals(Arrays.asList(3, 1, 1), sent);
+      batcher.flush();
+      assertEquals(3, sent.size());
+      batcher.resetStatistics();
+      assertEquals(0, batcher.getDroppedBatchCount());
+      assertEquals(0, batcher.getDroppedCommandCount());
+   }
+
+   private LoopbackRPCService createService(InitParams params)
+   {
+      if (params == null)
+      {
+         params = new InitParams();
+         ValueParam paramRetryTimeout = new ValueParam();
+         paramRetryTimeout.setName(AbstractRPCService.PARAM_RETRY_TIMEOUT);
+         paramRetryTimeout.setValue("5000");
+         params.addParameter(paramRetryTimeout);
+      }
+      LoopbackRPCService service = new LoopbackRPCService(network, params);
+      services.add(service);
+      return service;
+   }
+
+   private static RemoteCommand registerNameCommand(LoopbackRPCService service, final String name)
+   {
+      RemoteCommand cmd = new RemoteCommand()
+      {
+         public String getId()
+         {
+            return "name";
+         }
+
+         public String execute(Serializable[] args) throws Throwable
+         {
+            return name;
+         }
+      };
+      service.registerCommand(cmd);
+      return cmd;
+   }
+
+   private static RemoteCommand registerRecordCommand(LoopbackRPCService service, final List<String> calls)
+   {
+      RemoteCommand cmd = new RemoteCommand()
+      {
+         public String getId()
+         {
+            return "record";
+         }
+
+         public String execute(Serializable[] args) throws Throwable
+         {
+            calls.add((String)args[0]);
+            return null;
+         }
+      };
+      service.registerCommand(cmd);
+      return cmd;
+   }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.rpc.ArgumentCodec;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.UnknownCommandIndexException;
+import org.jgroups.Address;
+import org.jgroups.stack.IpAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * This is the unit test class for the {@link MessageCodec}
+ * 
+ * @version $Id$
+ */
+public class TestMessageCodec extends TestCase
+{
+   private final Address node1 = new IpAddress(7800);
+
+   private final Address node2 = new IpAddress(7801);
+
+   public void testArguments() throws Exception
+   {
+      MessageCodec codec = new MessageCodec();
+      codec.registerArgumentCodec(new PointCodec());
+      List<Address> dests = Collections.singletonList(node2);
+      Serializable[] args =
+         new Serializable[]{null, "foo \u00e9\u20ac", Integer.MIN_VALUE, Long.MAX_VALUE, Boolean.TRUE,
+            new byte[]{1, 2, 3}, 1.5d, 2.5f, (short)-3, (byte)4, 'c', new Point(5, 6), new Date(7),
+            new ArrayList<String>(Arrays.asList("a", "b"))};
+      MessageBody body = codec.decode(node1, codec.encode(new MessageBody(node2, "cmd", args), dests));
+      assertEquals("cmd", body.getCommandId());
+      assertTrue(body.accept(node2));
+      assertFalse(body.accept(node1));
+      assertFalse(body.isAsync());
+      Serializable[] result = body.getArgs();
+      assertEquals(args.length, result.length);
+      for (int i = 0; i < args.length; i++)
+      {
+         if (args[i] instanceof byte[])
+         {
+            assertTrue(Arrays.equals((byte[])args[i], (byte[])result[i]));
+         }
+         else
+         {
+            assertEquals(args[i], result[i]);
+         }
+      }
+
+      body = codec.decode(node1, codec.encode(new MessageBody(null, "cmd", null, true), dests));
+      assertNull(body.getArgs());
+      assertTrue(body.accept(node1));
+      assertTrue(body.isAsync());
+      body = codec.decode(node1, codec.encode(new MessageBody(null, "cmd", new Serializable[0]), dests));
+      assertEquals(0, body.getArgs().length);
+   }
+
+   public void testArgumentCodecRegistration() throws Exception
+   {
+      MessageCodec codec = new MessageCodec();
+      codec.registerArgumentCodec(new PointCodec());
+      // Registering the same codec twice is allowed
+      codec.registerArgumentCodec(new PointCodec());
+      try
+      {
+         codec.registerArgumentCodec(new ArgumentCodec<String>()
+         {
+            public int getId()
+            {
+               return 1;
+            }
+
+            public Class<String> getType()
+            {
+               return String.class;
+            }
+
+            public void write(DataOutput out, String value) throws IOException
+            {
+            }
+
+            public String read(DataInput in) throws IOException
+            {
+               return null;
+            }
+         });
+         fail("An IllegalArgumentException was expected since the id is already used");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // expected
+      }
+      // A codec unknown by the receiver
+      MessageCodec receiver = new MessageCodec();
+      byte[] content =
+         codec.encode(new MessageBody(null, "cmd", new Serializable[]{new Point(1, 2)}),
+            Collections.singletonList(node2));
+      try
+      {
+         receiver.decode(node1, content);
+         fail("An IOException was expected since the codec is unknown");
+      }
+      catch (IOException e)
+      {
+         // expected
+      }
+   }
+
+   public void testCommandIndex() throws Exception
+   {
+      MessageCodec sender = new MessageCodec();
+      MessageCodec receiver = new MessageCodec();
+      List<Address> dests = Arrays.asList(node1, node2);
+      MessageBody body = new MessageBody(null, "a.very.long.command.Id", new Serializable[]{"foo"});
+      byte[] withId = sender.encode(body, dests);
+      assertEquals("a.very.long.command.Id", receiver.decode(node1, withId).getCommandId());
+      // Only one member knows the index
+      sender.acknowledge("a.very.long.command.Id", node1);
+      assertEquals(withId.length, sender.encode(body, dests).length);
+      sender.acknowledge("a.very.long.command.Id", node2);
+      byte[] withIndex = sender.encode(body, dests);
+      assertTrue(withIndex.length < withId.length);
+      MessageBody result = receiver.decode(node1, withIndex);
+      assertEquals("a.very.long.command.Id", result.getCommandId());
+      assertEquals("foo", result.getArgs()[0]);
+      try
+      {
+         // The mapping of the second node is unknown
+         receiver.decode(node2, withIndex);
+         fail("An UnknownCommandIndexException was expected since the index is unknown");
+      }
+      catch (UnknownCommandIndexException e)
+      {
+         // expected
+      }
+      // The second node has left
+      sender.retainMembers(Collections.singletonList(node1));
+      assertEquals(withId.length, sender.encode(body, dests).length);
+      assertEquals(withIndex.length, sender.encode(body, Collections.singletonList(node1)).length);
+      receiver.retainMembers(Collections.singletonList(node2));
+      try
+      {
+         receiver.decode(node1, withIndex);
+         fail("An UnknownCommandIndexException was expected since the mapping of the first node has been removed");
+      }
+      catch (UnknownCommandIndexException e)
+      {
+         // expected
+      }
+      // The message sent again with the id restores the mapping
+      assertEquals(withId.length, sender.encodeWithId(body).length);
+      receiver.decode(node1, sender.encodeWithId(body));
+      assertEquals("a.very.long.command.Id", receiver.decode(node1, withIndex).getCommandId());
+      // No reply is expected for the asynchronous messages so they always contain the id
+      MessageBody asyncBody = new MessageBody(null, "a.very.long.command.Id", new Serializable[]{"foo"}, true);
+      assertEquals(withId.length, sender.encode(asyncBody, Collections.singletonList(node1)).length);
+   }
+
+   public void testBatch() throws Exception
+   {
+      MessageCodec sender = new MessageCodec();
+      List<MessageBody> bodies = new ArrayList<MessageBody>();
+      for (int i = 0; i < 4; i++)
+      {
+         bodies.add(new MessageBody(null, i % 2 == 0 ? "command1" : "command2", new Serializable[]{i}, true));
+      }
+      sender.acknowledge("command1", node1);
+      sender.acknowledge("command2", node1);
+      byte[] content = sender.encode(bodies);
+      assertTrue(MessageCodec.isBatch(content));
+      // The first body of each command contains the id so that a batch can always be read on its own
+      List<MessageBody> result = new MessageCodec().decodeBatch(node1, content);
+      assertEquals(4, result.size());
+      for (int i = 0; i < 4; i++)
+      {
+         assertEquals(i % 2 == 0 ? "command1" : "command2", result.get(i).getCommandId());
+         assertEquals(i, result.get(i).getArgs()[0]);
+         assertTrue(result.get(i).isAsync());
+      }
+   }
+
+   public void testCommandIndexRemapping() throws Exception
+   {
+      MessageCodec sender = new MessageCodec();
+      MessageCodec receiver = new MessageCodec();
+      List<Address> dests = Collections.singletonList(node1);
+      MessageBody body = new MessageBody(null, "command1", null);
+      receiver.decode(node1, sender.encode(body, dests));
+      sender.acknowledge("command1", node1);
+      // The sender restarted, the same index now refers to another command
+      MessageCodec restarted = new MessageCodec();
+      receiver.decode(node1, restarted.encode(new MessageBody(null, "command2", null), dests));
+      restarted.acknowledge("command2", node1);
+      byte[] withIndex = restarted.encode(new MessageBody(null, "command2", null), dests);
+      assertEquals("command2", receiver.decode(node1, withIndex).getCommandId());
+      // A failure forces the id to be sent again
+      int length = sender.encode(new MessageBody(null, "command1", null), dests).length;
+      sender.unacknowledge("command1", node1);
+      assertTrue(sender.encode(new MessageBody(null, "command1", null), dests).length > length);
+      sender.unacknowledge("unknown", node1);
+   }
+
+   public void testVarInt() throws Exception
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(baos);
+      int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+      for (int value : values)
+      {
+         MessageCodec.writeVarInt(out, value);
+      }
+      assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5, baos.size());
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+      for (int value : values)
+      {
+         assertEquals(value, MessageCodec.readVarInt(in));
+      }
+   }
+
+   public static class Point implements Serializable
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int x;
+
+      private final int y;
+
+      public Point(int x, int y)
+      {
+         this.x = x;
+         this.y = y;
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         return o instanceof Point && ((Point)o).x == x && ((Point)o).y == y;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * x + y;
+      }
+   }
+
+   public static class PointCodec implements ArgumentCodec<Point>
+   {
+      public int getId()
+      {
+         return 1;
+      }
+
+      public Class<Point> getType()
+      {
+         return Point.class;
+      }
+
+      public void write(DataOutput out, Point value) throws IOException
+      {
+         out.writeInt(value.x);
+         out.writeInt(value.y);
+      }
+
+      public Point read(DataInput in) throws IOException
+      {
+         return new Point(in.readInt(), in.readInt());
+      }
+   }
+}
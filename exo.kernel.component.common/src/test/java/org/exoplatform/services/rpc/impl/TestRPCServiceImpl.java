@@ -24,11 +24,14 @@ import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.rpc.BatchableCommand;
 import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.RPCResponseListener;
 import org.exoplatform.services.rpc.RemoteCommand;
 import org.exoplatform.services.rpc.SingleMethodCallCommand;
 import org.exoplatform.services.rpc.TopologyChangeEvent;
 import org.exoplatform.services.rpc.TopologyChangeListener;
+import org.exoplatform.services.rpc.UnorderedCommand;
 import org.exoplatform.services.rpc.impl.AbstractRPCService.MemberHasLeftException;
 import org.jgroups.Address;
 
@@ -37,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -1252,6 +1256,366 @@ public class TestRPCServiceImpl extends TestCase
       }
    }
    
+   public void testExecAsync() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam paramConf = new ValueParam();
+      paramConf.setName(RPCServiceImpl.PARAM_JGROUPS_CONFIG);
+      paramConf.setValue("jar:/conf/portal/udp.xml");
+      params.addParameter(paramConf);
+
+      final CountDownLatch slowNodeSignal = new CountDownLatch(1);
+
+      RPCServiceImpl service1 = null;
+      RPCServiceImpl service2 = null;
+      try
+      {
+         service1 = new RPCServiceImpl(container.getContext(), params, configManager);
+         RemoteCommand service1Cmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               return "service 1";
+            }
+         };
+         service1.registerCommand(service1Cmd);
+         RemoteCommand unknownCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "UnknownAsyncCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               return null;
+            }
+         };
+
+         service2 = new RPCServiceImpl(container.getContext(), params, configManager);
+         RemoteCommand service2Cmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               slowNodeSignal.await();
+               return "service 2";
+            }
+         };
+         service2.registerCommand(service2Cmd);
+         try
+         {
+            service1.executeCommandOnAllNodesAsync(service1Cmd, null);
+            fail("We expect a RPCException since the current state is not the expected one");
+         }
+         catch (RPCException e)
+         {
+            // expected
+         }
+         // starting services
+         service1.start();
+         service2.start();
+         try
+         {
+            service1.executeCommandOnAllNodesAsync(unknownCmd, null);
+            fail("We expect a RPCException since the command is unknown");
+         }
+         catch (RPCException e)
+         {
+            // expected
+         }
+
+         final List<Object> responses = Collections.synchronizedList(new ArrayList<Object>());
+         final CountDownLatch fastNodeSignal = new CountDownLatch(1);
+         RPCResponseListener listener = new RPCResponseListener()
+         {
+            public void onResponse(String member, Object response)
+            {
+               responses.add(response);
+               fastNodeSignal.countDown();
+            }
+         };
+         Future<List<Object>> future = service1.executeCommandOnAllNodesAsync(service1Cmd, listener);
+         // The response of the first node must be available before the second node replies
+         fastNodeSignal.await();
+         assertFalse(future.isDone());
+         assertEquals(1, responses.size());
+         assertEquals("service 1", responses.get(0));
+         slowNodeSignal.countDown();
+         List<Object> result = future.get();
+         assertEquals(2, result.size());
+         assertEquals("service 1", result.get(0));
+         assertEquals("service 2", result.get(1));
+         assertEquals(2, responses.size());
+
+         Future<Object> coordinatorFuture = service2.executeCommandOnCoordinatorAsync(service2Cmd);
+         assertEquals("service 1", coordinatorFuture.get());
+      }
+      finally
+      {
+         slowNodeSignal.countDown();
+         if (service1 != null)
+         {
+            service1.stop();
+         }
+         if (service2 != null)
+         {
+            service2.stop();
+         }
+      }
+   }
+
+   public void testBatching() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam paramConf = new ValueParam();
+      paramConf.setName(RPCServiceImpl.PARAM_JGROUPS_CONFIG);
+      paramConf.setValue("jar:/conf/portal/udp.xml");
+      params.addParameter(paramConf);
+      ValueParam paramMaxSize = new ValueParam();
+      paramMaxSize.setName(RPCServiceImpl.PARAM_BATCH_MAX_SIZE);
+      paramMaxSize.setValue("4");
+      params.addParameter(paramMaxSize);
+      ValueParam paramMaxDelay = new ValueParam();
+      paramMaxDelay.setName(RPCServiceImpl.PARAM_BATCH_MAX_DELAY);
+      paramMaxDelay.setValue("1000");
+      params.addParameter(paramMaxDelay);
+
+      final List<String> calls1 = Collections.synchronizedList(new ArrayList<String>());
+      final List<String> calls2 = Collections.synchronizedList(new ArrayList<String>());
+      final CountDownLatch doneSignal = new CountDownLatch(20);
+
+      RPCServiceImpl service1 = null;
+      RPCServiceImpl service2 = null;
+      try
+      {
+         service1 = new RPCServiceImpl(container.getContext(), params, configManager);
+         RemoteCommand service1Cmd = new BatchableCommand()
+         {
+            public String getId()
+            {
+               return "BatchedCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               calls1.add((String)args[0]);
+               doneSignal.countDown();
+               return null;
+            }
+         };
+         service1.registerCommand(service1Cmd);
+         RemoteCommand service1SyncCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "NotBatchedCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               calls1.add("sync");
+               return null;
+            }
+         };
+         service1.registerCommand(service1SyncCmd);
+         service2 = new RPCServiceImpl(container.getContext(), params, configManager);
+         RemoteCommand service2Cmd = new BatchableCommand()
+         {
+            public String getId()
+            {
+               return "BatchedCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               calls2.add((String)args[0]);
+               doneSignal.countDown();
+               return null;
+            }
+         };
+         service2.registerCommand(service2Cmd);
+         RemoteCommand service2SyncCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "NotBatchedCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               calls2.add("sync");
+               return null;
+            }
+         };
+         service2.registerCommand(service2SyncCmd);
+         // starting services
+         service1.start();
+         service2.start();
+
+         CommandBatcher batcher = service1.getBatcher();
+         for (int i = 0; i < 10; i++)
+         {
+            service1.executeCommandOnAllNodes(service1Cmd, false, "cmd" + i);
+         }
+         // The last 2 commands are sent once the max delay is reached
+         assertEquals(2, batcher.getPendingCount());
+         doneSignal.await();
+         assertEquals(3, batcher.getBatchCount());
+         assertEquals(10, batcher.getCommandCount());
+         assertEquals(4, batcher.getMaxBatchSize());
+         assertTrue(batcher.getMaxFlushLatency() >= 1000);
+         // The pending commands are sent before the command that cannot be batched
+         service1.executeCommandOnAllNodes(service1Cmd, false, "cmd10");
+         service1.executeCommandOnAllNodes(service1Cmd, false, "cmd11");
+         service1.executeCommandOnAllNodes(service1SyncCmd, true);
+         assertEquals(0, batcher.getPendingCount());
+         List<String> expected = new ArrayList<String>();
+         for (int i = 0; i < 12; i++)
+         {
+            expected.add("cmd" + i);
+         }
+         expected.add("sync");
+         assertEquals(expected, calls1);
+         assertEquals(expected, calls2);
+      }
+      finally
+      {
+         if (service1 != null)
+         {
+            service1.stop();
+         }
+         if (service2 != null)
+         {
+            service2.stop();
+         }
+      }
+   }
+
+   public void testUnorderedCommands() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam paramConf = new ValueParam();
+      paramConf.setName(RPCServiceImpl.PARAM_JGROUPS_CONFIG);
+      paramConf.setValue("jar:/conf/portal/udp.xml");
+      params.addParameter(paramConf);
+      ValueParam paramQueueTimeout = new ValueParam();
+      paramQueueTimeout.setName(RPCServiceImpl.PARAM_COMMAND_QUEUE_TIMEOUT);
+      paramQueueTimeout.setValue("100");
+      params.addParameter(paramQueueTimeout);
+
+      final CountDownLatch startSignal = new CountDownLatch(2);
+      final CountDownLatch releaseSignal = new CountDownLatch(1);
+
+      RPCServiceImpl service1 = null;
+      RPCServiceImpl service2 = null;
+      try
+      {
+         service1 = new RPCServiceImpl(container.getContext(), params, configManager);
+         service2 = new RPCServiceImpl(container.getContext(), params, configManager);
+         RemoteCommand[] slowCmds = new RemoteCommand[2];
+         RemoteCommand[] fastCmds = new RemoteCommand[2];
+         RPCServiceImpl[] services = {service1, service2};
+         for (int i = 0; i < services.length; i++)
+         {
+            slowCmds[i] = new UnorderedCommand()
+            {
+               public String getId()
+               {
+                  return "SlowCommand";
+               }
+
+               public int getMaxConcurrency()
+               {
+                  return 1;
+               }
+
+               public int getQueueCapacity()
+               {
+                  return 0;
+               }
+
+               public String execute(Serializable[] args) throws Throwable
+               {
+                  startSignal.countDown();
+                  releaseSignal.await();
+                  return "slow";
+               }
+            };
+            services[i].registerCommand(slowCmds[i]);
+            fastCmds[i] = new RemoteCommand()
+            {
+               public String getId()
+               {
+                  return "FastCommand";
+               }
+
+               public String execute(Serializable[] args) throws Throwable
+               {
+                  return "fast";
+               }
+            };
+            services[i].registerCommand(fastCmds[i]);
+         }
+         // starting services
+         service1.start();
+         service2.start();
+
+         service1.executeCommandOnAllNodes(slowCmds[0], false);
+         startSignal.await();
+         // The slow commands in progress don't prevent the other commands from being executed
+         List<Object> result = service1.executeCommandOnAllNodes(fastCmds[0], true);
+         assertEquals(2, result.size());
+         assertEquals("fast", result.get(0));
+         assertEquals("fast", result.get(1));
+         // No more executions of the slow command are allowed
+         result = service1.executeCommandOnAllNodes(slowCmds[0], true);
+         assertEquals(2, result.size());
+         assertTrue(result.get(0) instanceof RPCException);
+         assertTrue(result.get(1) instanceof RPCException);
+
+         releaseSignal.countDown();
+         result = service1.executeCommandOnAllNodes(slowCmds[0], true);
+         assertEquals(2, result.size());
+         assertEquals("slow", result.get(0));
+         assertEquals("slow", result.get(1));
+         for (RPCServiceImpl service : services)
+         {
+            CommandExecutor executor = service.getCommandExecutor("SlowCommand");
+            assertNotNull(executor);
+            assertEquals(2, executor.getExecutionCount());
+            assertEquals(1, executor.getRejectionCount());
+            assertEquals(0, executor.getQueueDepth());
+            assertEquals(0, executor.getQueueCapacity());
+            assertEquals(1, executor.getMaxConcurrency());
+            assertTrue(executor.getMaxExecutionLatency() > 0);
+            assertNull(service.getCommandExecutor("FastCommand"));
+         }
+         service2.unregisterCommand(slowCmds[1]);
+         assertNull(service2.getCommandExecutor("SlowCommand"));
+      }
+      finally
+      {
+         if (service1 != null)
+         {
+            service1.stop();
+         }
+         if (service2 != null)
+         {
+            service2.stop();
+         }
+      }
+   }
+
    private static class MyListener implements TopologyChangeListener
    {
 
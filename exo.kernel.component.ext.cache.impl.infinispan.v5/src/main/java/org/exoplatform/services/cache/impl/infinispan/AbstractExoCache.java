@@ -19,13 +19,18 @@
 package org.exoplatform.services.cache.impl.infinispan;
 
 import org.exoplatform.commons.utils.SecurityHelper;
+import org.exoplatform.management.ManagementAware;
+import org.exoplatform.management.ManagementContext;
 import org.exoplatform.services.cache.CacheInfo;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.infinispan.AdvancedCache;
@@ -33,9 +38,11 @@ import org.infinispan.Cache;
 import org.infinispan.context.Flag;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
 import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 
@@ -44,10 +51,13 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * An {@link org.exoplatform.services.cache.ExoCache} implementation based on {@link Cache}.
@@ -56,7 +66,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @version $Id$
  *
  */
-public abstract class AbstractExoCache<K extends Serializable, V> implements ExoCache<K, V>
+public abstract class AbstractExoCache<K extends Serializable, V> implements ExoCache<K, V>, ManagementAware
 {
 
    /**
@@ -64,9 +74,7 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
     */
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.ext.cache.impl.infinispan.v5.AbstractExoCache"); //NOSONAR
 
-   private final AtomicInteger hits = new AtomicInteger(0);
-
-   private final AtomicInteger misses = new AtomicInteger(0);
+   private final CacheStatistics statistics = new CacheStatistics(this);
 
    private String label;
 
@@ -82,10 +90,26 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
 
    protected final AdvancedCache<K, V> cache;
 
+   private final ConcurrentLoader<K, V> loader;
+
+   /**
+    * The local cache kept in front of the Infinispan cache, <code>null</code> if there is none
+    */
+   private final NearCache<K, V> nearCache;
+
    public AbstractExoCache(ExoCacheConfig config, Cache<K, V> cache)
    {
       this.cache = cache.getAdvancedCache();
+      this.nearCache = NearCache.create(config, cache);
       this.listeners = new CopyOnWriteArrayList<ListenerContext<K, V>>();
+      this.loader = new ConcurrentLoader<K, V>(this)
+      {
+         @Override
+         protected V putIfAbsent(K key, V value)
+         {
+            return AbstractExoCache.this.putIfAbsent(key, value);
+         }
+      };
       setDistributed(config.isDistributed());
       setLabel(config.getLabel());
       setName(config.getName());
@@ -112,6 +136,10 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
    public void clearCache()
    {
       cache.withFlags(Flag.CACHE_MODE_LOCAL).clear();
+      if (nearCache != null)
+      {
+         nearCache.clear();
+      }
       onClearCache();
    }
 
@@ -125,25 +153,196 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
       {
          return null;
       }      
-      final V result = cache.get(name);
+      long start = statistics.startTimer();
+      final V result = getFromCache(name);
+      statistics.onGet(start);
       if (result == null)
       {
-         misses.incrementAndGet();
+         statistics.onMiss();
       }
       else
       {
-         hits.incrementAndGet();
+         statistics.onHit();
       }
       onGet((K)name, result);
       return result;
    }
 
+   /**
+    * Reads the value from the near cache if any, from the Infinispan cache otherwise
+    */
+   @SuppressWarnings("unchecked")
+   private V getFromCache(Serializable name)
+   {
+      if (nearCache == null)
+      {
+         return cache.get(name);
+      }
+      V result = nearCache.get(name);
+      if (result == null)
+      {
+         long version = nearCache.getVersion();
+         result = cache.get(name);
+         nearCache.put((K)name, result, version);
+      }
+      return result;
+   }
+
+   /**
+    * @return the near cache or <code>null</code> if there is none
+    */
+   public NearCache<K, V> getNearCache()
+   {
+      return nearCache;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void setContext(ManagementContext context)
+   {
+      if (context != null && nearCache != null)
+      {
+         context.register(nearCache);
+      }
+   }
+
+   /**
+    * Removes the given key from the near cache if any
+    */
+   void invalidate(Serializable key)
+   {
+      if (nearCache != null)
+      {
+         nearCache.invalidate(key);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> getMap(final Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<K, V>>()
+      {
+
+         @Override
+         public Map<K, V> run()
+         {
+            return getAllOnly(names);
+         }
+      });
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         V value = result.get(name);
+         if (value == null)
+         {
+            statistics.onMiss();
+         }
+         else
+         {
+            statistics.onHit();
+         }
+         onGet(name, value);
+      }
+      return result;
+   }
+
+   /**
+    * Only gets the data corresponding to the given keys from the cache nothing more. Infinispan 5 has no bulk
+    * get, so all the lookups are first sent asynchronously and then collected, this way the remote lookups
+    * are done in parallel instead of one after the other.
+    */
+   protected Map<K, V> getAllOnly(Collection<? extends K> names)
+   {
+      Map<K, Future<V>> futures = new LinkedHashMap<K, Future<V>>();
+      for (K name : names)
+      {
+         if (name != null && !futures.containsKey(name))
+         {
+            futures.put(name, cache.getAsync(name));
+         }
+      }
+      return collect(futures);
+   }
+
+   /**
+    * Waits for the result of all the given asynchronous lookups, a lookup that fails is considered as a miss.
+    */
+   private static <K, V> Map<K, V> collect(Map<K, Future<V>> futures)
+   {
+      Map<K, V> result = new HashMap<K, V>(futures.size() * 4 / 3 + 1);
+      for (Map.Entry<K, Future<V>> entry : futures.entrySet())
+      {
+         try
+         {
+            V value = entry.getValue().get();
+            if (value != null)
+            {
+               result.put(entry.getKey(), value);
+            }
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while getting the value of " + entry.getKey());
+            break;
+         }
+         catch (ExecutionException e)
+         {
+            LOG.warn("Cannot get the value of " + entry.getKey(), e.getCause());
+         }
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public <C> V computeIfAbsent(K key, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(key, loader, context);
+   }
+
+   /**
+    * Puts the data into the cache only if there is no value yet for this key, this is used to make sure
+    * that all the cluster nodes that concurrently load the same key end up with the same value.
+    *
+    * @return the value that is in the cache once the method is called
+    */
+   protected V putIfAbsent(final K key, final V value)
+   {
+      V previous = SecurityHelper.doPrivilegedAction(new PrivilegedAction<V>()
+      {
+
+         @Override
+         public V run()
+         {
+            return cache.putIfAbsent(key, value);
+         }
+      });
+      if (previous != null)
+      {
+         return previous;
+      }
+      onPut(key, value);
+      return value;
+   }
+
    /**
     * {@inheritDoc}
     */
    public int getCacheHit()
    {
-      return hits.get();
+      return statistics.getCacheHit();
    }
 
    /**
@@ -151,7 +350,15 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
     */
    public int getCacheMiss()
    {
-      return misses.get();
+      return statistics.getCacheMiss();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
    }
 
    /**
@@ -232,6 +439,7 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
          // ignore null values
          return;
       }
+      long start = statistics.startTimer();
       SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
       {
 
@@ -242,6 +450,8 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
             return null;
          }
       });
+      invalidate(key);
+      statistics.onPut(start);
       onPut(key, value);
    }
 
@@ -287,6 +497,7 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
                // End transaction
                for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
                {
+                  invalidate(entry.getKey());
                   onPut(entry.getKey(), entry.getValue());
                }
             }
@@ -319,10 +530,62 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
             return cache.remove(name);
          }
       });
+      invalidate(name);
       onRemove((K)name, result);
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @SuppressWarnings("unchecked")
+   public void removeAll(final Collection<? extends Serializable> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      Map<K, V> removed = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<K, V>>()
+      {
+
+         @Override
+         public Map<K, V> run()
+         {
+            Map<K, V> removed = new LinkedHashMap<K, V>();
+            cache.startBatch();
+            try
+            {
+               // Start transaction
+               for (Serializable name : names)
+               {
+                  removed.put((K)name, cache.remove(name));
+               }
+               cache.endBatch(true);
+               // End transaction
+            }
+            catch (Exception e) //NOSONAR
+            {
+               cache.endBatch(false);
+               LOG.warn("An error occurs while executing the removeAll method", e);
+               removed.clear();
+            }
+            return removed;
+         }
+      });
+      for (Map.Entry<K, V> entry : removed.entrySet())
+      {
+         invalidate(entry.getKey());
+         onRemove(entry.getKey(), entry.getValue());
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -518,9 +781,17 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
          {
             for (Map.Entry<K, V> entry : evt.getEntries().entrySet())
             {
+               statistics.onEviction();
                onExpire(entry.getKey(), entry.getValue());               
             }
          }
+         else
+         {
+            for (K key : evt.getEntries().keySet())
+            {
+               invalidate(key);
+            }
+         }
       }
 
       @CacheEntryRemoved
@@ -532,6 +803,10 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
             final V value = evt.getValue();
             onRemove(key, value);
          }
+         else if (!evt.isPre() && !evt.isOriginLocal())
+         {
+            invalidate(evt.getKey());
+         }
       }
 
       @CacheEntryModified
@@ -541,9 +816,19 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
          {
             final K key = evt.getKey();
             final V value = evt.getValue();
+            invalidate(key);
             onPut(key, value);
          }
       }
+
+      @CacheEntryInvalidated
+      public void cacheEntryInvalidated(CacheEntryInvalidatedEvent<K, V> evt)
+      {
+         if (!evt.isPre())
+         {
+            invalidate(evt.getKey());
+         }
+      }
    }
    
    private static class ListenerContext<K extends Serializable, V> implements CacheListenerContext, CacheInfo
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.impl.infinispan;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.cache.ExoCacheConfig;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.StripedCounter;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ClusteringConfiguration;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded local cache kept in front of a clustered Infinispan cache, it allows to read the most
+ * frequently accessed entries without going through the interceptor stack of Infinispan and without
+ * any network hop when the entries are owned by remote nodes.
+ * <p>
+ * The near cache is kept coherent by invalidation: the entries are removed when they are modified locally,
+ * when they are evicted or when Infinispan notifies a remote modification, a remote removal or an invalidation. To prevent a
+ * value read before an invalidation from being added after it, a value is only kept if no invalidation
+ * occurred since its read started, which is checked thanks to a version incremented by each invalidation.
+ * <p>
+ * The entries of the near cache never live longer than the entries of the clustered cache. In distribution
+ * mode, the nodes that are not owners of an entry are only notified of its modifications if the L1 cache of
+ * Infinispan is enabled, so when it is not, the near cache is only created if a positive live time is set.
+ *
+ * @version $Id$
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "cache"), @Property(key = "name", value = "{Name}"),
+   @Property(key = "type", value = "nearcache")})
+@ManagedDescription("Exo Near Cache")
+public class NearCache<K extends Serializable, V>
+{
+
+   /**
+    * Logger.
+    */
+   private static final Log LOG = ExoLogger//NOSONAR
+      .getLogger("exo.kernel.component.ext.cache.impl.infinispan.v5.NearCache");//NOSONAR
+
+   /** . */
+   private final String name;
+
+   /** . */
+   private final ConcurrentFIFOExoCache<K, V> entries;
+
+   /**
+    * The version incremented by each invalidation
+    */
+   private final AtomicLong version = new AtomicLong();
+
+   /** . */
+   private final StripedCounter hits = new StripedCounter();
+
+   /** . */
+   private final StripedCounter misses = new StripedCounter();
+
+   /** . */
+   private final StripedCounter invalidations = new StripedCounter();
+
+   /**
+    * @param name the name of the clustered cache
+    * @param maxSize the maximum amount of entries in the near cache
+    * @param liveTime the amount of time in seconds an entry is kept, no limit if lower or equal to 0
+    */
+   public NearCache(String name, int maxSize, long liveTime)
+   {
+      this.name = name;
+      this.entries = new ConcurrentFIFOExoCache<K, V>(name, maxSize);
+      entries.setLiveTimeMillis(liveTime > 0 ? liveTime * 1000 : -1);
+   }
+
+   /**
+    * Creates the near cache defined in the given configuration. The live time of its entries is capped by
+    * the live time of the entries of the clustered cache. In distribution mode without L1 cache, the near
+    * cache is only created if its live time has been explicitly defined.
+    *
+    * @param config the configuration of the eXo cache
+    * @param cache the clustered cache in front of which the near cache is kept
+    * @return the near cache or <code>null</code> if the configuration doesn't define any near cache or if
+    * the near cache could not be kept coherent with the clustered cache
+    */
+   public static <K extends Serializable, V> NearCache<K, V> create(ExoCacheConfig config, Cache<?, ?> cache)
+   {
+      if (config.getNearCacheSize() <= 0)
+      {
+         return null;
+      }
+      long liveTime = config.getNearCacheLiveTime();
+      ClusteringConfiguration clustering = cache.getCacheConfiguration().clustering();
+      if (liveTime <= 0 && clustering.cacheMode().isDistributed() && !clustering.l1().enabled())
+      {
+         // Without L1, the remote modifications are not notified so only an explicit live time of the near
+         // cache bounds the staleness of its entries
+         LOG.warn("The near cache of the cache " + config.getName() + " is disabled since the L1 cache is disabled "
+            + "in distribution mode and no near cache live time has been defined, the remote modifications could "
+            + "be missed");
+         return null;
+      }
+      if (config.getLiveTime() > 0 && (liveTime <= 0 || liveTime > config.getLiveTime()))
+      {
+         liveTime = config.getLiveTime();
+      }
+      LOG.info("The near cache of the cache " + config.getName() + " keeps up to " + config.getNearCacheSize()
+         + " entries " + (liveTime > 0 ? "for at most " + liveTime + " seconds." : "until they are modified."));
+      return new NearCache<K, V>(config.getName(), config.getNearCacheSize(), liveTime);
+   }
+
+   /**
+    * @return the value kept locally or <code>null</code> if there is none
+    */
+   public V get(Serializable key)
+   {
+      V value = entries.get(key);
+      if (value == null)
+      {
+         misses.increment();
+      }
+      else
+      {
+         hits.increment();
+      }
+      return value;
+   }
+
+   /**
+    * Gives the current version, it must be called before reading a value from the clustered cache
+    * and given to {@link #put(Serializable, Object, long)} once the value is read.
+    */
+   public long getVersion()
+   {
+      return version.get();
+   }
+
+   /**
+    * Keeps a value read from the clustered cache unless an invalidation occurred since the read started.
+    *
+    * @param key the key of the value
+    * @param value the value read
+    * @param version the version returned by {@link #getVersion()} before the read started
+    */
+   public void put(K key, V value, long version)
+   {
+      if (value == null || this.version.get() != version)
+      {
+         return;
+      }
+      entries.put(key, value);
+      if (this.version.get() != version)
+      {
+         // An invalidation occurred while the value was added, it could have been missed
+         entries.remove(key);
+      }
+   }
+
+   /**
+    * Removes the given key from the near cache
+    */
+   public void invalidate(Serializable key)
+   {
+      version.incrementAndGet();
+      invalidations.increment();
+      entries.remove(key);
+   }
+
+   /**
+    * Removes all the entries from the near cache
+    */
+   @Managed
+   @ManagedDescription("Evict all entries of the near cache")
+   public void clear()
+   {
+      version.incrementAndGet();
+      invalidations.increment();
+      entries.clearCache();
+   }
+
+   @Managed
+   @ManagedName("Name")
+   @ManagedDescription("The cache name")
+   public String getName()
+   {
+      return name;
+   }
+
+   @Managed
+   @ManagedName("Size")
+   @ManagedDescription("The amount of entries in the near cache")
+   public int getSize()
+   {
+      return entries.getCacheSize();
+   }
+
+   @Managed
+   @ManagedName("Capacity")
+   @ManagedDescription("The maximum amount of entries in the near cache")
+   public int getMaxSize()
+   {
+      return entries.getMaxSize();
+   }
+
+   @Managed
+   public void setMaxSize(int maxSize)
+   {
+      entries.setMaxSize(maxSize);
+   }
+
+   @Managed
+   @ManagedName("HitCount")
+   @ManagedDescription("The count of lookups that found the entry in the near cache")
+   public long getHitCount()
+   {
+      return hits.sum();
+   }
+
+   @Managed
+   @ManagedName("MissCount")
+   @ManagedDescription("The count of lookups that had to go through the clustered cache")
+   public long getMissCount()
+   {
+      return misses.sum();
+   }
+
+   @Managed
+   @ManagedName("HitRatio")
+   @ManagedDescription("The ratio of lookups that found the entry in the near cache")
+   public double getHitRatio()
+   {
+      long hitCount = getHitCount();
+      long total = hitCount + getMissCount();
+      return total == 0 ? 0 : (double)hitCount / total;
+   }
+
+   @Managed
+   @ManagedName("InvalidationCount")
+   @ManagedDescription("The count of invalidations of the near cache")
+   public long getInvalidationCount()
+   {
+      return invalidations.sum();
+   }
+
+   @Managed
+   @ManagedDescription("Reset the statistics of the near cache")
+   public void resetStatistics()
+   {
+      hits.reset();
+      misses.reset();
+      invalidations.reset();
+   }
+}
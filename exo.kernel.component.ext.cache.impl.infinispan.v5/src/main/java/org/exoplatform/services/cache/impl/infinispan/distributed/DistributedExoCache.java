@@ -19,35 +19,42 @@
 package org.exoplatform.services.cache.impl.infinispan.distributed;
 
 import org.exoplatform.commons.utils.SecurityHelper;
-import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.management.ManagementAware;
+import org.exoplatform.management.ManagementContext;
 import org.exoplatform.management.annotations.Managed;
 import org.exoplatform.management.annotations.ManagedDescription;
 import org.exoplatform.management.annotations.ManagedName;
 import org.exoplatform.services.cache.CacheInfo;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ObjectCacheInfo;
-import org.exoplatform.services.ispn.AbstractMapper;
-import org.exoplatform.services.ispn.DistributedCacheManager;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
+import org.exoplatform.services.cache.impl.infinispan.NearCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.infinispan.AdvancedCache;
 import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.context.Flag;
-import org.infinispan.distexec.mapreduce.Collector;
-import org.infinispan.distexec.mapreduce.MapReduceTask;
-import org.infinispan.distexec.mapreduce.Reducer;
+import org.infinispan.distexec.DefaultExecutorService;
+import org.infinispan.distexec.DistributedCallable;
+import org.infinispan.distexec.DistributedExecutorService;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
 import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.remoting.transport.Address;
 
 import java.io.Externalizable;
 import java.io.IOException;
@@ -56,21 +63,28 @@ import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * @author <a href="mailto:nfilotto@exoplatform.com">Nicolas Filotto</a>
  * @version $Id$
  *
  */
-public class DistributedExoCache<K extends Serializable, V> implements ExoCache<K, V>
+public class DistributedExoCache<K extends Serializable, V> implements ExoCache<K, V>, ManagementAware
 {
 
    /**
@@ -81,9 +95,12 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
 
    public static final String CACHE_NAME = "eXoCache";
 
-   private final AtomicInteger hits = new AtomicInteger(0);
+   /**
+    * The default amount of entries fetched at once from each node when the entries are enumerated
+    */
+   public static final int DEFAULT_PAGE_SIZE = 1000;
 
-   private final AtomicInteger misses = new AtomicInteger(0);
+   private final CacheStatistics statistics = new CacheStatistics(this);
 
    private String label;
 
@@ -101,13 +118,43 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
    private static final ConcurrentMap<Cache, ConcurrentMap<String, List<ListenerContext>>> ALL_LISTENERS =
       new ConcurrentHashMap<Cache, ConcurrentMap<String, List<ListenerContext>>>();
 
+   @SuppressWarnings("rawtypes")
+   private static final ConcurrentMap<Cache, ConcurrentMap<String, NearCache>> ALL_NEAR_CACHES =
+      new ConcurrentHashMap<Cache, ConcurrentMap<String, NearCache>>();
+
    protected final AdvancedCache<CacheKey<K>, V> cache;
 
+   private final ConcurrentLoader<K, V> loader;
+
+   /**
+    * The index of the keys stored locally
+    */
+   private final LocalEntryIndex index;
+
+   /**
+    * The local cache kept in front of the Infinispan cache, <code>null</code> if there is none
+    */
+   private final NearCache<K, V> nearCache;
+
    @SuppressWarnings("unchecked")
    public DistributedExoCache(ExoContainerContext ctx, ExoCacheConfig config, Cache<K, V> cache)
    {
       this.fullName = ctx.getName() + "-" + config.getName();
       this.cache = (AdvancedCache<CacheKey<K>, V>)cache.getAdvancedCache();
+      this.index = LocalEntryIndex.getInstance(this.cache);
+      this.nearCache = NearCache.create(config, cache);
+      if (nearCache != null)
+      {
+         getOrCreateNearCaches().put(fullName, nearCache);
+      }
+      this.loader = new ConcurrentLoader<K, V>(this)
+      {
+         @Override
+         protected V putIfAbsent(K key, V value)
+         {
+            return DistributedExoCache.this.putIfAbsent(key, value);
+         }
+      };
       setDistributed(config.isDistributed());
       setLabel(config.getLabel());
       setName(config.getName());
@@ -185,6 +232,57 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       return listeners;
    }
 
+   @SuppressWarnings("rawtypes")
+   private ConcurrentMap<String, NearCache> getOrCreateNearCaches()
+   {
+      ConcurrentMap<String, NearCache> nearCaches = ALL_NEAR_CACHES.get(cache);
+      if (nearCaches == null)
+      {
+         nearCaches = new ConcurrentHashMap<String, NearCache>();
+         ConcurrentMap<String, NearCache> oldValue = ALL_NEAR_CACHES.putIfAbsent(cache, nearCaches);
+         if (oldValue == null)
+         {
+            // Ensure that the listener is added only once
+            cache.addListener(new NearCacheListener(nearCaches));
+         }
+         else
+         {
+            nearCaches = oldValue;
+         }
+      }
+      return nearCaches;
+   }
+
+   /**
+    * @return the near cache or <code>null</code> if there is none
+    */
+   public NearCache<K, V> getNearCache()
+   {
+      return nearCache;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void setContext(ManagementContext context)
+   {
+      if (context != null && nearCache != null)
+      {
+         context.register(nearCache);
+      }
+   }
+
+   /**
+    * Removes the given key from the near cache if any
+    */
+   private void invalidate(Serializable key)
+   {
+      if (nearCache != null)
+      {
+         nearCache.invalidate(key);
+      }
+   }
+
    @SuppressWarnings("rawtypes")
    private List<ListenerContext> getListeners(String fullName)
    {
@@ -203,14 +301,15 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          @Override
          public Void run()
          {
-            MapReduceTask<CacheKey<K>, V, Void, Void> task =
-               new MapReduceTask<CacheKey<K>, V, Void, Void>(cache);
-            task.mappedWith(new ClearCacheMapper<K, V>(fullName)).reducedWith(new ClearCacheReducer());
-            task.execute();
+            execute(new ClearCacheTask<K, V>(fullName));
             return null;
          }
 
       });
+      if (nearCache != null)
+      {
+         nearCache.clear();
+      }
       onClearCache();
    }
 
@@ -226,34 +325,164 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       }
       @SuppressWarnings("rawtypes")
       final CacheKey key = new CacheKey<Serializable>(fullName, name);
-      final V result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<V>()
+      long start = statistics.startTimer();
+      V result = nearCache == null ? null : nearCache.get(name);
+      if (result == null)
       {
+         long version = nearCache == null ? 0 : nearCache.getVersion();
+         result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<V>()
+         {
 
-         @Override
-         public V run()
+            @Override
+            public V run()
+            {
+               return cache.get(key);
+            }
+
+         });
+         if (nearCache != null)
          {
-            return cache.get(key);
+            nearCache.put((K)name, result, version);
          }
-
-      });
+      }
+      statistics.onGet(start);
       if (result == null)
       {
-         misses.incrementAndGet();
+         statistics.onMiss();
       }
       else
       {
-         hits.incrementAndGet();
+         statistics.onHit();
       }
       onGet(key, result);
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> getMap(final Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<CacheKey<K>, V> result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<CacheKey<K>, V>>()
+      {
+
+         @Override
+         public Map<CacheKey<K>, V> run()
+         {
+            // Infinispan 5 has no bulk get, so all the lookups are first sent asynchronously and then
+            // collected, this way the remote lookups are done in parallel instead of one after the other
+            Map<CacheKey<K>, Future<V>> futures = new LinkedHashMap<CacheKey<K>, Future<V>>();
+            for (K name : names)
+            {
+               if (name == null)
+               {
+                  continue;
+               }
+               CacheKey<K> key = new CacheKey<K>(fullName, name);
+               if (!futures.containsKey(key))
+               {
+                  futures.put(key, cache.getAsync(key));
+               }
+            }
+            return collect(futures);
+         }
+      });
+      Map<K, V> values = new HashMap<K, V>(result.size() * 4 / 3 + 1);
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         CacheKey<K> key = new CacheKey<K>(fullName, name);
+         V value = result.get(key);
+         if (value == null)
+         {
+            statistics.onMiss();
+         }
+         else
+         {
+            statistics.onHit();
+            values.put(name, value);
+         }
+         onGet(key, value);
+      }
+      return values;
+   }
+
+   /**
+    * Waits for the result of all the given asynchronous lookups, a lookup that fails is considered as a miss.
+    */
+   private static <K, V> Map<K, V> collect(Map<K, Future<V>> futures)
+   {
+      Map<K, V> result = new HashMap<K, V>(futures.size() * 4 / 3 + 1);
+      for (Map.Entry<K, Future<V>> entry : futures.entrySet())
+      {
+         try
+         {
+            V value = entry.getValue().get();
+            if (value != null)
+            {
+               result.put(entry.getKey(), value);
+            }
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while getting the value of " + entry.getKey());
+            break;
+         }
+         catch (ExecutionException e)
+         {
+            LOG.warn("Cannot get the value of " + entry.getKey(), e.getCause());
+         }
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public <C> V computeIfAbsent(K key, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(key, loader, context);
+   }
+
+   /**
+    * Puts the data into the cache only if there is no value yet for this key, this is used to make sure
+    * that all the cluster nodes that concurrently load the same key end up with the same value.
+    *
+    * @return the value that is in the cache once the method is called
+    */
+   protected V putIfAbsent(final K key, final V value)
+   {
+      V previous = SecurityHelper.doPrivilegedAction(new PrivilegedAction<V>()
+      {
+
+         @Override
+         public V run()
+         {
+            return cache.putIfAbsent(new CacheKey<K>(fullName, key), value);
+         }
+      });
+      if (previous != null)
+      {
+         return previous;
+      }
+      onPut(key, value);
+      return value;
+   }
+
    /**
     * {@inheritDoc}
     */
    public int getCacheHit()
    {
-      return hits.get();
+      return statistics.getCacheHit();
    }
 
    /**
@@ -261,7 +490,15 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
     */
    public int getCacheMiss()
    {
-      return misses.get();
+      return statistics.getCacheMiss();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
    }
 
    /**
@@ -269,21 +506,23 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
     */
    public int getCacheSize()
    {
-      Map<String, Integer> map = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<String, Integer>>()
+      if (cache.getDistributionManager() == null)
+      {
+         // All the entries are available locally
+         return index.size(fullName);
+      }
+      List<Integer> sizes = SecurityHelper.doPrivilegedAction(new PrivilegedAction<List<Integer>>()
       {
 
          @Override
-         public Map<String, Integer> run()
+         public List<Integer> run()
          {
-            MapReduceTask<CacheKey<K>, V, String, Integer> task =
-               new MapReduceTask<CacheKey<K>, V, String, Integer>(cache);
-            task.mappedWith(new GetSizeMapper<K, V>(fullName)).reducedWith(new GetSizeReducer<String>());
-            return task.execute();
+            return execute(new GetSizeTask<K, V>(fullName));
          }
 
       });
       int sum = 0;
-      for (Integer i : map.values())
+      for (Integer i : sizes)
       {
          sum += i;
       }
@@ -295,24 +534,10 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
     */
    public List<V> getCachedObjects()
    {
-      Map<String, List<V>> map = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<String, List<V>>>()
-      {
-
-         @Override
-         public Map<String, List<V>> run()
-         {
-            MapReduceTask<CacheKey<K>, V, String, List<V>> task =
-               new MapReduceTask<CacheKey<K>, V, String, List<V>>(cache);
-            task.mappedWith(new GetCachedObjectsMapper<K, V>(fullName)).reducedWith(
-               new GetCachedObjectsReducer<String, V>());
-            return task.execute();
-         }
-
-      });
       List<V> result = new ArrayList<V>();
-      for (List<V> vals : map.values())
+      for (Iterator<Map.Entry<K, V>> it = entryIterator(DEFAULT_PAGE_SIZE); it.hasNext();)
       {
-         result.addAll(vals);
+         result.add(it.next().getValue());
       }
       return result;
    }
@@ -371,6 +596,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          // ignore null values
          return;
       }
+      long start = statistics.startTimer();
       SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
       {
 
@@ -382,6 +608,8 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          }
 
       });
+      invalidate(key);
+      statistics.onPut(start);
       onPut(key, value);
    }
 
@@ -427,6 +655,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
                // End transaction
                for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
                {
+                  invalidate(entry.getKey());
                   onPut(entry.getKey(), entry.getValue());
                }
             }
@@ -460,10 +689,63 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
             return cache.remove(key);
          }
       });
+      invalidate(name);
       onRemove(key, result);
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   public void removeAll(final Collection<? extends Serializable> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      Map<CacheKey, V> removed = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<CacheKey, V>>()
+      {
+
+         @Override
+         public Map<CacheKey, V> run()
+         {
+            Map<CacheKey, V> removed = new LinkedHashMap<CacheKey, V>();
+            cache.startBatch();
+            try
+            {
+               // Start transaction
+               for (Serializable name : names)
+               {
+                  CacheKey key = new CacheKey<Serializable>(fullName, name);
+                  removed.put(key, cache.remove(key));
+               }
+               cache.endBatch(true);
+               // End transaction
+            }
+            catch (Exception e)//NOSONAR
+            {
+               cache.endBatch(false);
+               LOG.warn("An error occurs while executing the removeAll method", e);
+               removed.clear();
+            }
+            return removed;
+         }
+      });
+      for (Map.Entry<CacheKey, V> entry : removed.entrySet())
+      {
+         invalidate((Serializable)entry.getKey().getKey());
+         onRemove(entry.getKey(), entry.getValue());
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -483,26 +765,15 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       {
          throw new IllegalArgumentException("No null selector");
       }
-      Map<K, V> map = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<K, V>>()
-      {
-
-         @Override
-         public Map<K, V> run()
-         {
-            MapReduceTask<CacheKey<K>, V, K, V> task = new MapReduceTask<CacheKey<K>, V, K, V>(cache);
-            task.mappedWith(new GetEntriesMapper<K, V>(fullName)).reducedWith(new GetEntriesReducer<K, V>());
-            return task.execute();
-         }
-
-      });
-
-      for (K key : map.keySet())
+      for (Iterator<Map.Entry<K, V>> it = entryIterator(DEFAULT_PAGE_SIZE); it.hasNext();)
       {
+         Map.Entry<K, V> entry = it.next();
+         K key = entry.getKey();
          if (key == null)
          {
             continue;
          }
-         final V value = map.get(key);
+         final V value = entry.getValue();
          ObjectCacheInfo<V> info = new ObjectCacheInfo<V>()
          {
             public V get()
@@ -523,6 +794,76 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       }
    }
 
+   /**
+    * Gives an iterator over the entries of this cache instance. The entries are fetched by pages from
+    * the nodes of the cluster, each node only goes through the keys of this cache instance that it owns
+    * thanks to its local index, so the entries of the other cache instances sharing the same Infinispan
+    * cache are never read. The iterator is weakly consistent: an entry added or removed while it is
+    * used may or may not be returned.
+    *
+    * @param pageSize the maximum amount of entries fetched at once from each node
+    * @return an iterator over the entries, the {@link Iterator#remove()} operation is not supported
+    */
+   public Iterator<Map.Entry<K, V>> entryIterator(int pageSize)
+   {
+      if (pageSize <= 0)
+      {
+         throw new IllegalArgumentException("The page size must be positive");
+      }
+      return new EntryIterator(pageSize);
+   }
+
+   /**
+    * Executes the given task on all the nodes of the cluster in distribution mode, only locally otherwise
+    * since all the entries are then available locally.
+    *
+    * @return the results of all the nodes
+    */
+   @SuppressWarnings("unchecked")
+   private <T> List<T> execute(DistributedCallable<CacheKey<K>, V, T> task)
+   {
+      try
+      {
+         if (cache.getDistributionManager() == null)
+         {
+            task.setEnvironment(cache, null);
+            return Collections.singletonList(task.call());
+         }
+         DistributedExecutorService des = new DefaultExecutorService(cache);
+         try
+         {
+            List<Future<T>> futures = des.submitEverywhere(task);
+            List<T> results = new ArrayList<T>(futures.size());
+            for (Future<T> future : futures)
+            {
+               results.add(future.get());
+            }
+            return results;
+         }
+         finally
+         {
+            des.shutdown();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("Interrupted while executing the task " + task, e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new RuntimeException("Could not execute the task " + task, e.getCause());
+      }
+      catch (RuntimeException e)
+      {
+         throw e;
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Could not execute the task " + task, e);
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -726,6 +1067,74 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       }
    }
 
+   /**
+    * Removes from the near caches the entries evicted locally and the entries modified, removed or invalidated
+    * by the other nodes, it is shared by all the cache instances using the same Infinispan cache.
+    */
+   @Listener
+   @SuppressWarnings("rawtypes")
+   public static class NearCacheListener
+   {
+      /** . */
+      private final ConcurrentMap<String, NearCache> nearCaches;
+
+      NearCacheListener(ConcurrentMap<String, NearCache> nearCaches)
+      {
+         this.nearCaches = nearCaches;
+      }
+
+      private void invalidate(Object key)
+      {
+         if (key instanceof CacheKey)
+         {
+            NearCache nearCache = nearCaches.get(((CacheKey)key).getFullName());
+            if (nearCache != null)
+            {
+               nearCache.invalidate((Serializable)((CacheKey)key).getKey());
+            }
+         }
+      }
+
+      @CacheEntryModified
+      public void cacheEntryModified(CacheEntryModifiedEvent evt)
+      {
+         if (!evt.isOriginLocal() && !evt.isPre())
+         {
+            invalidate(evt.getKey());
+         }
+      }
+
+      @CacheEntryRemoved
+      public void cacheEntryRemoved(CacheEntryRemovedEvent evt)
+      {
+         if (!evt.isOriginLocal() && !evt.isPre())
+         {
+            invalidate(evt.getKey());
+         }
+      }
+
+      @CacheEntryInvalidated
+      public void cacheEntryInvalidated(CacheEntryInvalidatedEvent evt)
+      {
+         if (!evt.isPre())
+         {
+            invalidate(evt.getKey());
+         }
+      }
+
+      @CacheEntriesEvicted
+      public void cacheEntriesEvicted(CacheEntriesEvictedEvent evt)
+      {
+         if (!evt.isPre())
+         {
+            for (Object key : ((Map)evt.getEntries()).keySet())
+            {
+               invalidate(key);
+            }
+         }
+      }
+   }
+
    private static class ListenerContext<K extends Serializable, V> implements CacheListenerContext, CacheInfo
    {
 
@@ -944,19 +1353,152 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       }
    }
 
-   private abstract static class AbstractExoCacheMapper<K, V, KOut, VOut> extends
-      AbstractMapper<CacheKey<K>, V, KOut, VOut> implements Externalizable
+   /**
+    * Gives the name of a node in the offsets of a {@link GetEntriesTask}
+    */
+   private static String getNodeName(Cache<?, ?> cache)
+   {
+      Address address = cache.getCacheManager().getAddress();
+      return address == null ? "local" : address.toString();
+   }
+
+   /**
+    * Iterates over the entries of a cache instance by fetching pages of entries from all the nodes at once.
+    */
+   private class EntryIterator implements Iterator<Map.Entry<K, V>>
+   {
+      /**
+       * The id of the iteration, used by the nodes to find the snapshot of their keys
+       */
+      private final String iterationId = UUID.randomUUID().toString();
+
+      /**
+       * The maximum amount of entries to fetch at once from each node
+       */
+      private final int pageSize;
+
+      /**
+       * The offset of the next page to fetch per node, -1 when there is no more entry to fetch from a node
+       */
+      private HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+
+      /**
+       * The entries of the current pages
+       */
+      private Iterator<Map.Entry<K, V>> current = Collections.<K, V> emptyMap().entrySet().iterator();
+
+      /**
+       * Indicates whether all the entries have been fetched
+       */
+      private boolean exhausted;
+
+      EntryIterator(int pageSize)
+      {
+         this.pageSize = pageSize;
+      }
+
+      public boolean hasNext()
+      {
+         while (!current.hasNext() && !exhausted)
+         {
+            fetch();
+         }
+         return current.hasNext();
+      }
+
+      public Map.Entry<K, V> next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+         return current.next();
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException("Remove is not supported");
+      }
+
+      private void fetch()
+      {
+         final GetEntriesTask<K, V> task = new GetEntriesTask<K, V>(fullName, iterationId, offsets, pageSize);
+         List<EntryPage<K, V>> pages = SecurityHelper.doPrivilegedAction(new PrivilegedAction<List<EntryPage<K, V>>>()
+         {
+            @Override
+            public List<EntryPage<K, V>> run()
+            {
+               return execute(task);
+            }
+         });
+         HashMap<String, Integer> newOffsets = new HashMap<String, Integer>(offsets);
+         Map<K, V> entries = new LinkedHashMap<K, V>();
+         exhausted = true;
+         for (EntryPage<K, V> page : pages)
+         {
+            newOffsets.put(page.node, page.next);
+            entries.putAll(page.entries);
+            if (page.next >= 0)
+            {
+               exhausted = false;
+            }
+         }
+         offsets = newOffsets;
+         current = entries.entrySet().iterator();
+      }
+   }
+
+   /**
+    * A page of entries returned by a node
+    */
+   public static class EntryPage<K, V> implements Serializable
+   {
+      /**
+       * The serial version UID
+       */
+      private static final long serialVersionUID = -3418893475447917218L;
+
+      /**
+       * The name of the node
+       */
+      private final String node;
+
+      /**
+       * The entries
+       */
+      private final LinkedHashMap<K, V> entries;
+
+      /**
+       * The offset of the next page, -1 if there are no more entries
+       */
+      private final int next;
+
+      EntryPage(String node, LinkedHashMap<K, V> entries, int next)
+      {
+         this.node = node;
+         this.entries = entries;
+         this.next = next;
+      }
+   }
+
+   private abstract static class AbstractExoCacheTask<K, V, T> implements
+      DistributedCallable<CacheKey<K>, V, T>, Externalizable
    {
       /**
        * The full name of the cache instance
        */
-      private String fullName;
+      protected String fullName;
 
-      public AbstractExoCacheMapper()
+      /**
+       * The local cache on which the task is executed
+       */
+      protected AdvancedCache<CacheKey<K>, V> cache;
+
+      public AbstractExoCacheTask()
       {
       }
 
-      public AbstractExoCacheMapper(String fullName)
+      public AbstractExoCacheTask(String fullName)
       {
          this.fullName = fullName;
       }
@@ -967,12 +1509,19 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       private static final long serialVersionUID = 7962676854308932222L;
 
       /**
-       * @see org.exoplatform.services.ispn.AbstractMapper#isValid(java.lang.Object)
+       * @see org.infinispan.distexec.DistributedCallable#setEnvironment(org.infinispan.Cache, java.util.Set)
        */
-      @Override
-      protected boolean isValid(CacheKey<K> key)
+      public void setEnvironment(Cache<CacheKey<K>, V> cache, Set<CacheKey<K>> inputKeys)
       {
-         return fullName.equals(key.getFullName());
+         this.cache = cache.getAdvancedCache();
+      }
+
+      /**
+       * @return the index of the keys stored on the node on which the task is executed
+       */
+      protected LocalEntryIndex getIndex()
+      {
+         return LocalEntryIndex.getInstance(cache);
       }
 
       /**
@@ -994,32 +1543,18 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          in.readFully(buf);
          fullName = new String(buf, "UTF-8");
       }
-   }
-
-   public static class GetSizeMapper<K, V> extends AbstractExoCacheMapper<K, V, String, Integer>
-   {
-
-      public GetSizeMapper()
-      {
-      }
-
-      public GetSizeMapper(String fullName)
-      {
-         super(fullName);
-      }
 
       /**
-       * {@inheritDoc}
+       * @see java.lang.Object#toString()
        */
       @Override
-      protected void _map(CacheKey<K> key, V value, Collector<String, Integer> collector)
+      public String toString()
       {
-         collector.emit("total", Integer.valueOf(1));
+         return getClass().getSimpleName() + " [fullName=" + fullName + "]";
       }
-
    }
 
-   public static class GetSizeReducer<K> implements Reducer<K, Integer>
+   public static class GetSizeTask<K, V> extends AbstractExoCacheTask<K, V, Integer>
    {
 
       /**
@@ -1027,30 +1562,11 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
        */
       private static final long serialVersionUID = -5264142863835473112L;
 
-      /**
-       * @see org.infinispan.distexec.mapreduce.Reducer#reduce(java.lang.Object, java.util.Iterator)
-       */
-      @Override
-      public Integer reduce(K reducedKey, Iterator<Integer> iter)
-      {
-         int sum = 0;
-         while (iter.hasNext())
-         {
-            Integer i = iter.next();
-            sum += i;
-         }
-         return sum;
-      }
-   }
-
-   public static class GetCachedObjectsMapper<K, V> extends AbstractExoCacheMapper<K, V, String, List<V>>
-   {
-
-      public GetCachedObjectsMapper()
+      public GetSizeTask()
       {
       }
 
-      public GetCachedObjectsMapper(String fullName)
+      public GetSizeTask(String fullName)
       {
          super(fullName);
       }
@@ -1058,46 +1574,25 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       /**
        * {@inheritDoc}
        */
-      @Override
-      protected void _map(CacheKey<K> key, V value, Collector<String, List<V>> collector)
+      public Integer call()
       {
-         collector.emit("values", Collections.singletonList(value));
+         return getIndex().size(fullName);
       }
-
    }
 
-   public static class GetCachedObjectsReducer<K, V> implements Reducer<K, List<V>>
+   public static class ClearCacheTask<K, V> extends AbstractExoCacheTask<K, V, Void>
    {
 
       /**
        * The serial version UID
        */
-      private static final long serialVersionUID = 8069024420056440405L;
-
-      /**
-       * @see org.infinispan.distexec.mapreduce.Reducer#reduce(java.lang.Object, java.util.Iterator)
-       */
-      @Override
-      public List<V> reduce(K reducedKey, Iterator<List<V>> iter)
-      {
-         List<V> values = new ArrayList<V>();
-         while (iter.hasNext())
-         {
-            List<V> vals = iter.next();
-            values.addAll(vals);
-         }
-         return values;
-      }
-   }
-
-   public static class ClearCacheMapper<K, V> extends AbstractExoCacheMapper<K, V, Void, Void>
-   {
+      private static final long serialVersionUID = -8111087186325793256L;
 
-      public ClearCacheMapper()
+      public ClearCacheTask()
       {
       }
 
-      public ClearCacheMapper(String fullName)
+      public ClearCacheTask(String fullName)
       {
          super(fullName);
       }
@@ -1105,81 +1600,108 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       /**
        * {@inheritDoc}
        */
-      @Override
-      protected void _map(CacheKey<K> key, V value, Collector<Void, Void> collector)
+      @SuppressWarnings("rawtypes")
+      public Void call()
       {
-         ExoContainer container = ExoContainerContext.getTopContainer();
-         if (container == null)
+         AdvancedCache<CacheKey<K>, V> localCache = cache.withFlags(Flag.SKIP_REMOTE_LOOKUP, Flag.FAIL_SILENTLY);
+         for (CacheKey key : getIndex().getKeys(fullName))
          {
-            LOG.error("The top container could not be found");
-            return;
+            localCache.remove(key);
          }
-         DistributedCacheManager dcm =
-            (DistributedCacheManager)container.getComponentInstanceOfType(DistributedCacheManager.class);
-         if (dcm == null)
-         {
-            LOG.error("The DistributedCacheManager could not be found at top container level, please configure it.");
-            return;
-         }
-         Cache<CacheKey<K>, V> cache = dcm.getCache(CACHE_NAME);
-         cache.getAdvancedCache().withFlags(Flag.SKIP_REMOTE_LOOKUP, Flag.FAIL_SILENTLY).remove(key);
+         return null;
       }
    }
 
-   public static class ClearCacheReducer implements Reducer<Void, Void>
+   public static class GetEntriesTask<K, V> extends AbstractExoCacheTask<K, V, EntryPage<K, V>>
    {
 
       /**
        * The serial version UID
        */
-      private static final long serialVersionUID = -8111087186325793256L;
+      private static final long serialVersionUID = 5153826700048219537L;
 
       /**
-       * @see org.infinispan.distexec.mapreduce.Reducer#reduce(java.lang.Object, java.util.Iterator)
+       * The id of the iteration
        */
-      @Override
-      public Void reduce(Void reducedKey, Iterator<Void> iter)
-      {
-         return null;
-      }
-   }
+      private String iterationId;
 
-   public static class GetEntriesMapper<K, V> extends AbstractExoCacheMapper<K, V, K, V>
-   {
-      public GetEntriesMapper()
+      /**
+       * The offset of the page to read per node
+       */
+      private HashMap<String, Integer> offsets;
+
+      /**
+       * The maximum amount of entries to read
+       */
+      private int pageSize;
+
+      public GetEntriesTask()
       {
       }
 
-      public GetEntriesMapper(String fullName)
+      public GetEntriesTask(String fullName, String iterationId, HashMap<String, Integer> offsets, int pageSize)
       {
          super(fullName);
+         this.iterationId = iterationId;
+         this.offsets = offsets;
+         this.pageSize = pageSize;
       }
 
       /**
        * {@inheritDoc}
        */
-      @Override
-      protected void _map(CacheKey<K> key, V value, Collector<K, V> collector)
+      @SuppressWarnings({"rawtypes", "unchecked"})
+      public EntryPage<K, V> call()
       {
-         collector.emit(key.getKey(), value);
+         String node = getNodeName(cache);
+         Integer offset = offsets.get(node);
+         LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>();
+         if (offset == null)
+         {
+            // First page or new node
+            offset = 0;
+         }
+         else if (offset < 0)
+         {
+            // All the entries have already been read
+            return new EntryPage<K, V>(node, entries, -1);
+         }
+         List<CacheKey> keys = getIndex().getKeys(fullName, iterationId, offset, pageSize);
+         long now = System.currentTimeMillis();
+         for (CacheKey key : keys)
+         {
+            InternalCacheEntry entry = cache.getDataContainer().peek(key);
+            if (entry != null && !entry.isExpired(now))
+            {
+               entries.put((K)key.getKey(), (V)entry.getValue());
+            }
+         }
+         return new EntryPage<K, V>(node, entries, keys.size() < pageSize ? -1 : offset + keys.size());
       }
-   }
-
-   public static class GetEntriesReducer<K, V> implements Reducer<K, V>
-   {
 
       /**
-       * The serial version UID
+       * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
        */
-      private static final long serialVersionUID = 5153826700048219537L;
+      @Override
+      public void writeExternal(ObjectOutput out) throws IOException
+      {
+         super.writeExternal(out);
+         out.writeUTF(iterationId);
+         out.writeInt(pageSize);
+         out.writeObject(offsets);
+      }
 
       /**
-       * @see org.infinispan.distexec.mapreduce.Reducer#reduce(java.lang.Object, java.util.Iterator)
+       * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
        */
       @Override
-      public V reduce(K reducedKey, Iterator<V> iter)
+      @SuppressWarnings("unchecked")
+      public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
       {
-         return iter == null || !iter.hasNext() ? null : iter.next();
+         super.readExternal(in);
+         iterationId = in.readUTF();
+         pageSize = in.readInt();
+         offsets = (HashMap<String, Integer>)in.readObject();
       }
    }
-}
\ No newline at end of file
+}
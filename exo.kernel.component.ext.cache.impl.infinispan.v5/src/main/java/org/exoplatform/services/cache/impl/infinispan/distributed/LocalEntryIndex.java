@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.impl.infinispan.distributed;
+
+import org.exoplatform.services.cache.impl.infinispan.distributed.DistributedExoCache.CacheKey;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.container.DataContainer;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.annotation.DataRehashed;
+import org.infinispan.notifications.cachelistener.annotation.TopologyChanged;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachelistener.event.Event;
+import org.infinispan.remoting.transport.Address;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the keys of each {@link DistributedExoCache} that are stored locally, grouped by full name.
+ * In distribution mode only the keys for which the local node is the primary owner are tracked so that
+ * the sum of the sizes of all the nodes gives the size of a cache instance, and the backups and the L1
+ * entries are not counted twice.
+ * <p>
+ * The index is maintained incrementally from the events of the shared cache, so the size and the keys of a
+ * given cache instance can be known without going through all the entries of the shared cache. As the expiration
+ * of the entries does not trigger any event, the keys of the expired entries are purged at most once per
+ * wake up interval of the shared cache. After a topology change the index is rebuilt from the local data
+ * container the next time it is accessed since the primary owners may have changed. The keys modified while
+ * the data container is read are checked again once the rebuilt index is in place.
+ * <p>
+ * The keys are read page by page from a snapshot taken at the first page of each iteration, so that each page
+ * can be read directly from its offset. The snapshots of the iterations that have been abandoned are released
+ * once they have not been accessed for {@link #SNAPSHOT_TIMEOUT} milliseconds.
+ *
+ * @version $Id$
+ */
+@Listener
+@SuppressWarnings("rawtypes")
+class LocalEntryIndex
+{
+
+   /**
+    * Logger.
+    */
+   private static final Log LOG = ExoLogger//NOSONAR
+      .getLogger("exo.kernel.component.ext.cache.impl.infinispan.v5.LocalEntryIndex");//NOSONAR
+
+   /**
+    * The default interval in milliseconds between two purges of the keys of the expired entries
+    */
+   private static final long DEFAULT_PURGE_INTERVAL = 60000;
+
+   /**
+    * The time in milliseconds after which the snapshot of an iteration that has not been accessed is released
+    */
+   static final long SNAPSHOT_TIMEOUT = 300000;
+
+   /**
+    * All the indexes, one per shared cache
+    */
+   private static final ConcurrentMap<Cache, LocalEntryIndex> ALL_INDEXES =
+      new ConcurrentHashMap<Cache, LocalEntryIndex>();
+
+   /** . */
+   private final AdvancedCache cache;
+
+   /** . */
+   private final long purgeInterval;
+
+   /** . */
+   private volatile ConcurrentMap<String, Set<CacheKey>> keys = new ConcurrentHashMap<String, Set<CacheKey>>();
+
+   /**
+    * The snapshots of the keys of the iterations in progress, by iteration id
+    */
+   private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+
+   /**
+    * Indicates whether the index needs to be rebuilt from the data container
+    */
+   private volatile boolean dirty = true;
+
+   /**
+    * The keys modified while the index is being rebuilt, <code>null</code> if no rebuild is in progress
+    */
+   private volatile ModifiedKeys modifiedKeys;
+
+   /** . */
+   private volatile long lastPurge = System.currentTimeMillis();
+
+   private LocalEntryIndex(AdvancedCache cache)
+   {
+      this.cache = cache;
+      long wakeUpInterval = cache.getCacheConfiguration().expiration().wakeUpInterval();
+      this.purgeInterval = wakeUpInterval > 0 ? wakeUpInterval : DEFAULT_PURGE_INTERVAL;
+   }
+
+   /**
+    * Gives the index of the given shared cache, the index is created and registered as listener of the
+    * cache if it doesn't exist yet.
+    */
+   static LocalEntryIndex getInstance(AdvancedCache cache)
+   {
+      LocalEntryIndex index = ALL_INDEXES.get(cache);
+      if (index == null)
+      {
+         index = new LocalEntryIndex(cache);
+         LocalEntryIndex oldValue = ALL_INDEXES.putIfAbsent(cache, index);
+         if (oldValue == null)
+         {
+            cache.addListener(index);
+         }
+         else
+         {
+            index = oldValue;
+         }
+      }
+      return index;
+   }
+
+   /**
+    * @return the amount of entries of the given cache instance stored locally
+    */
+   int size(String fullName)
+   {
+      Set<CacheKey> set = getKeys().get(fullName);
+      return set == null ? 0 : set.size();
+   }
+
+   /**
+    * Gives a page of the keys of the given cache instance stored locally. The keys are read from a snapshot
+    * of the index taken at the first page of the iteration, so a key added or removed while the pages are
+    * read may be missed. The snapshot is released once its last page has been read.
+    *
+    * @param fullName the full name of the cache instance
+    * @param iterationId the id of the iteration
+    * @param offset the index of the first key to return
+    * @param max the maximum amount of keys to return
+    * @return the keys, if less than <code>max</code> keys are returned there are no more keys
+    */
+   List<CacheKey> getKeys(String fullName, String iterationId, int offset, int max)
+   {
+      Snapshot snapshot = snapshots.get(iterationId);
+      if (snapshot == null)
+      {
+         // First page or the snapshot has been released in the meantime
+         snapshot = new Snapshot(getKeys(fullName));
+         snapshots.put(iterationId, snapshot);
+      }
+      snapshot.lastAccess = System.currentTimeMillis();
+      List<CacheKey> keys = snapshot.keys;
+      int from = Math.min(offset, keys.size());
+      int to = Math.min(from + max, keys.size());
+      if (to - from < max)
+      {
+         // Last page
+         snapshots.remove(iterationId);
+      }
+      return new ArrayList<CacheKey>(keys.subList(from, to));
+   }
+
+   /**
+    * @return a copy of all the keys of the given cache instance stored locally
+    */
+   List<CacheKey> getKeys(String fullName)
+   {
+      Set<CacheKey> set = getKeys().get(fullName);
+      return set == null ? Collections.<CacheKey> emptyList() : new ArrayList<CacheKey>(set);
+   }
+
+   private ConcurrentMap<String, Set<CacheKey>> getKeys()
+   {
+      if (dirty)
+      {
+         rebuild();
+      }
+      else if (System.currentTimeMillis() - lastPurge > purgeInterval)
+      {
+         purge();
+      }
+      return keys;
+   }
+
+   /**
+    * Rebuilds the whole index from the local data container
+    */
+   private synchronized void rebuild()
+   {
+      if (!dirty)
+      {
+         return;
+      }
+      // Reset the flag first to know if a new topology change occurs in the meantime
+      dirty = false;
+      ModifiedKeys modified = new ModifiedKeys();
+      modifiedKeys = modified;
+      ConcurrentMap<String, Set<CacheKey>> newKeys = new ConcurrentHashMap<String, Set<CacheKey>>();
+      long now = System.currentTimeMillis();
+      DataContainer container = cache.getDataContainer();
+      for (Object key : container.keySet())
+      {
+         if (isIndexed(key))
+         {
+            InternalCacheEntry entry = container.peek(key);
+            if (entry != null && !entry.isExpired(now))
+            {
+               add(newKeys, (CacheKey)key);
+            }
+         }
+      }
+      keys = newKeys;
+      // The entries created or removed while the data container was read may have been missed
+      for (Object key : modified.close())
+      {
+         reconcile(key);
+      }
+      modifiedKeys = null;
+      lastPurge = now;
+      if (LOG.isDebugEnabled())
+      {
+         LOG.debug("The local entry index of the cache " + cache.getName() + " has been rebuilt");
+      }
+   }
+
+   /**
+    * Removes from the index the keys of the entries that have expired or that are no longer in the data
+    * container, and releases the snapshots of the iterations that have been abandoned
+    */
+   private synchronized void purge()
+   {
+      long now = System.currentTimeMillis();
+      if (now - lastPurge <= purgeInterval)
+      {
+         return;
+      }
+      DataContainer container = cache.getDataContainer();
+      for (Set<CacheKey> set : keys.values())
+      {
+         for (Iterator<CacheKey> it = set.iterator(); it.hasNext();)
+         {
+            InternalCacheEntry entry = container.peek(it.next());
+            if (entry == null || entry.isExpired(now))
+            {
+               it.remove();
+            }
+         }
+      }
+      for (Iterator<Snapshot> it = snapshots.values().iterator(); it.hasNext();)
+      {
+         if (now - it.next().lastAccess > SNAPSHOT_TIMEOUT)
+         {
+            it.remove();
+         }
+      }
+      lastPurge = now;
+   }
+
+   /**
+    * Indicates whether the given key must be indexed: it must be a key of a {@link DistributedExoCache}
+    * and in distribution mode, the local node must be its primary owner.
+    */
+   private boolean isIndexed(Object key)
+   {
+      if (!(key instanceof CacheKey))
+      {
+         return false;
+      }
+      DistributionManager dm = cache.getDistributionManager();
+      if (dm == null)
+      {
+         return true;
+      }
+      Address primary = dm.getPrimaryLocation(key);
+      return primary != null && primary.equals(cache.getRpcManager().getAddress());
+   }
+
+   private static void add(ConcurrentMap<String, Set<CacheKey>> keys, CacheKey key)
+   {
+      Set<CacheKey> set = keys.get(key.getFullName());
+      if (set == null)
+      {
+         set = Collections.newSetFromMap(new ConcurrentHashMap<CacheKey, Boolean>());
+         Set<CacheKey> oldValue = keys.putIfAbsent(key.getFullName(), set);
+         if (oldValue != null)
+         {
+            set = oldValue;
+         }
+      }
+      set.add(key);
+   }
+
+   /**
+    * Updates the index according to the entry of the given key currently in the data container
+    */
+   private void reconcile(Object key)
+   {
+      InternalCacheEntry entry = cache.getDataContainer().peek(key);
+      if (entry != null && !entry.isExpired(System.currentTimeMillis()) && isIndexed(key))
+      {
+         add(keys, (CacheKey)key);
+      }
+      else
+      {
+         remove(key);
+      }
+   }
+
+   /**
+    * Records the given key if it has been modified during a rebuild of the index, the buffer must have been
+    * read before updating the index so that a rebuild that ends in the meantime cannot miss the key
+    *
+    * @param modified the value of {@link #modifiedKeys} read before updating the index
+    * @param key the key of the entry that has been modified
+    */
+   private void onModified(ModifiedKeys modified, Object key)
+   {
+      if (modified != null && key instanceof CacheKey && !modified.add(key))
+      {
+         // The rebuild is over, the index in place is updated directly
+         reconcile(key);
+      }
+   }
+
+   private void remove(Object key)
+   {
+      if (key instanceof CacheKey)
+      {
+         Set<CacheKey> set = keys.get(((CacheKey)key).getFullName());
+         if (set != null)
+         {
+            set.remove(key);
+         }
+      }
+   }
+
+   @CacheEntryCreated
+   public void cacheEntryCreated(CacheEntryCreatedEvent evt)
+   {
+      if (!evt.isPre())
+      {
+         ModifiedKeys modified = modifiedKeys;
+         if (isIndexed(evt.getKey()))
+         {
+            add(keys, (CacheKey)evt.getKey());
+         }
+         onModified(modified, evt.getKey());
+      }
+   }
+
+   @CacheEntryRemoved
+   public void cacheEntryRemoved(CacheEntryRemovedEvent evt)
+   {
+      if (!evt.isPre())
+      {
+         ModifiedKeys modified = modifiedKeys;
+         remove(evt.getKey());
+         onModified(modified, evt.getKey());
+      }
+   }
+
+   @CacheEntriesEvicted
+   public void cacheEntriesEvicted(CacheEntriesEvictedEvent evt)
+   {
+      if (!evt.isPre())
+      {
+         ModifiedKeys modified = modifiedKeys;
+         for (Object key : ((Map)evt.getEntries()).keySet())
+         {
+            remove(key);
+            onModified(modified, key);
+         }
+      }
+   }
+
+   @TopologyChanged
+   @DataRehashed
+   public void topologyChanged(Event evt)
+   {
+      if (!evt.isPre())
+      {
+         // The primary owners may have changed
+         dirty = true;
+      }
+   }
+
+   /**
+    * The keys modified while the index is being rebuilt, they can only be added until the rebuild is over
+    */
+   private static class ModifiedKeys
+   {
+      /** . */
+      private final List<Object> keys = new ArrayList<Object>();
+
+      /** . */
+      private boolean closed;
+
+      /**
+       * @return <code>false</code> if the rebuild is over, in which case the key has not been added
+       */
+      synchronized boolean add(Object key)
+      {
+         if (closed)
+         {
+            return false;
+         }
+         keys.add(key);
+         return true;
+      }
+
+      /**
+       * Prevents any other key from being added
+       * @return the keys added so far
+       */
+      synchronized List<Object> close()
+      {
+         closed = true;
+         return keys;
+      }
+   }
+
+   /**
+    * The keys of a cache instance at the beginning of an iteration
+    */
+   private static class Snapshot
+   {
+      /** . */
+      private final List<CacheKey> keys;
+
+      /** . */
+      private volatile long lastAccess;
+
+      Snapshot(List<CacheKey> keys)
+      {
+         this.keys = keys;
+      }
+   }
+}
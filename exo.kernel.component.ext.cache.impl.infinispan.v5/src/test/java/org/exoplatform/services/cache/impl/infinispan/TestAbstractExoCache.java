@@ -32,9 +32,11 @@ import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ExoCacheFactory;
 import org.exoplatform.services.cache.ExoCacheInitException;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.Loader;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -97,6 +99,71 @@ public class TestAbstractExoCache extends TestCase
       cache.clearCache();
    }
 
+   public void testGetMap() throws Exception
+   {
+      cache.put(new MyKey("a"), "a");
+      cache.put(new MyKey("b"), "b");
+      int hits = cache.getCacheHit();
+      int misses = cache.getCacheMiss();
+      Map<Serializable, Object> values =
+         cache.getMap(Arrays.<Serializable> asList(new MyKey("a"), new MyKey("b"), new MyKey("x")));
+      assertEquals(2, values.size());
+      assertEquals("a", values.get(new MyKey("a")));
+      assertEquals("b", values.get(new MyKey("b")));
+      assertFalse(values.containsKey(new MyKey("x")));
+      assertEquals(hits + 2, cache.getCacheHit());
+      assertEquals(misses + 1, cache.getCacheMiss());
+      assertTrue(cache.getMap(Collections.<Serializable> emptyList()).isEmpty());
+
+      cache.clearCache();
+   }
+
+   public void testRemoveAll() throws Exception
+   {
+      cache.put(new MyKey("a"), 1);
+      cache.put(new MyKey("b"), 2);
+      cache.put(new MyKey("c"), 3);
+      assertEquals(3, cache.getCacheSize());
+      cache.removeAll(Arrays.asList(new MyKey("a"), new MyKey("b"), new MyKey("x")));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(null, cache.get(new MyKey("a")));
+      assertEquals(3, cache.get(new MyKey("c")));
+      try
+      {
+         cache.removeAll(Arrays.asList(new MyKey("c"), null));
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e)
+      {
+         assertEquals(1, cache.getCacheSize());
+      }
+
+      cache.clearCache();
+   }
+
+   public void testComputeIfAbsent() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      Loader<Serializable, Object, String> loader = new Loader<Serializable, Object, String>()
+      {
+         public Object retrieve(String context, Serializable key) throws Exception
+         {
+            calls.incrementAndGet();
+            return context;
+         }
+      };
+      assertEquals("a", cache.computeIfAbsent(new MyKey("a"), loader, "a"));
+      assertEquals(1, calls.get());
+      assertEquals("a", cache.get(new MyKey("a")));
+      assertEquals("a", cache.computeIfAbsent(new MyKey("a"), loader, "b"));
+      assertEquals(1, calls.get());
+      assertNull(cache.computeIfAbsent(new MyKey("b"), loader, null));
+      assertEquals(2, calls.get());
+      assertEquals(1, cache.getCacheSize());
+
+      cache.clearCache();
+   }
+
    public void testPutMap() throws Exception
    {
       Map<Serializable, Object> values = new HashMap<Serializable, Object>();
@@ -721,6 +788,52 @@ public class TestAbstractExoCache extends TestCase
       }
    }
 
+   /**
+    * WARNING: For Linux distributions the following JVM parameter must be set to true: java.net.preferIPv4Stack
+    */
+   @SuppressWarnings("unchecked")
+   public void testNearCache() throws Exception
+   {
+      ExoCacheConfig config = new ExoCacheConfig();
+      config.setName("MyCacheNear");
+      config.setMaxSize(8);
+      config.setLiveTime(10);
+      config.setImplementation("LRU");
+      config.setReplicated(true);
+      config.setNearCacheSize(5);
+      AbstractExoCache<Serializable, Object> cache1 =
+         (AbstractExoCache<Serializable, Object>)getExoCacheFactoryInstance().createCache(config);
+      AbstractExoCache<Serializable, Object> cache2 =
+         (AbstractExoCache<Serializable, Object>)getExoCacheFactoryInstance().createCache(config);
+      try
+      {
+         NearCache<Serializable, Object> nearCache = cache2.getNearCache();
+         assertNotNull(nearCache);
+         cache1.put(new MyKey("a"), "b");
+         assertEquals("b", cache2.get(new MyKey("a")));
+         assertEquals(1, nearCache.getMissCount());
+         assertEquals(1, nearCache.getSize());
+         assertEquals("b", cache2.get(new MyKey("a")));
+         assertEquals(1, nearCache.getHitCount());
+         // A remote modification must invalidate the near cache
+         cache1.put(new MyKey("a"), "c");
+         assertEquals(0, nearCache.getSize());
+         assertTrue(nearCache.getInvalidationCount() > 0);
+         assertEquals("c", cache2.get(new MyKey("a")));
+         // A local modification too
+         cache2.put(new MyKey("a"), "d");
+         assertEquals("d", cache2.get(new MyKey("a")));
+         cache1.remove(new MyKey("a"));
+         assertNull(cache2.get(new MyKey("a")));
+         assertEquals(0, nearCache.getSize());
+      }
+      finally
+      {
+         cache1.cache.getCacheManager().stop();
+         cache2.cache.getCacheManager().stop();
+      }
+   }
+
    public void testPut() throws Exception
    {
       cache.put(new MyKey("a"), "a");
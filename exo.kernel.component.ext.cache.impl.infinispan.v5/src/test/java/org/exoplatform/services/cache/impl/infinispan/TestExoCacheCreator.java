@@ -19,14 +19,17 @@
 package org.exoplatform.services.cache.impl.infinispan;
 
 import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ExoCacheInitException;
+import org.exoplatform.services.cache.future.Loader;
 import org.infinispan.Cache;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -79,6 +82,11 @@ public class TestExoCacheCreator implements ExoCacheCreator
          return 0;
       }
 
+      public CacheStatistics getStatistics()
+      {
+         return null;
+      }
+
       public int getCacheSize()
       {
          return 0;
@@ -189,6 +197,21 @@ public class TestExoCacheCreator implements ExoCacheCreator
          return null;
       }
 
+      public Map getMap(Collection keys)
+      {
+         return null;
+      }
+
+      public void removeAll(Collection keys)
+      {
+
+      }
+
+      public Object computeIfAbsent(Serializable key, Loader loader, Object context)
+      {
+         return null;
+      }
+
       public List removeCachedObjects()
       {
          return null;
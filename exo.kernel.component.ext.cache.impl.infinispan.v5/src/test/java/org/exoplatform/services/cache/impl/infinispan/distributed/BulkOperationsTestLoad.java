@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.impl.infinispan.distributed;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the time needed to get and remove a batch of keys one by one with the time needed to do it
+ * thanks to the bulk methods {@link ExoCache#getMap(java.util.Collection)} and
+ * {@link ExoCache#removeAll(java.util.Collection)}. With a distributed cache, the bulk methods send the
+ * remote calls in parallel and remove the entries within a single batch.
+ *
+ * @version $Id$
+ */
+public class BulkOperationsTestLoad extends TestCase
+{
+
+   private static final int ITERATIONS = 100;
+
+   private static final int[] BATCH_SIZES = {10, 50, 100, 500};
+
+   private ExoCache<Serializable, Object> cache;
+
+   @SuppressWarnings("unchecked")
+   public void setUp() throws Exception
+   {
+      CacheService service =
+         (CacheService)PortalContainer.getInstance().getComponentInstanceOfType(CacheService.class);
+      this.cache = (ExoCache<Serializable, Object>)service.getCacheInstance("cache-distributed");
+   }
+
+   protected void tearDown() throws Exception
+   {
+      cache.clearCache();
+   }
+
+   public void testGet() throws Exception
+   {
+      for (int batchSize : BATCH_SIZES)
+      {
+         List<Serializable> keys = fill(batchSize);
+         long time = -System.currentTimeMillis();
+         for (int i = 0; i < ITERATIONS; i++)
+         {
+            for (Serializable key : keys)
+            {
+               assertNotNull(cache.get(key));
+            }
+         }
+         time += System.currentTimeMillis();
+         long bulkTime = -System.currentTimeMillis();
+         for (int i = 0; i < ITERATIONS; i++)
+         {
+            assertEquals(batchSize, cache.getMap(keys).size());
+         }
+         bulkTime += System.currentTimeMillis();
+         System.out.println("Get of " + batchSize + " keys x " + ITERATIONS + ": one by one = " + time
+            + " ms, getMap = " + bulkTime + " ms");
+         cache.clearCache();
+      }
+   }
+
+   public void testRemove() throws Exception
+   {
+      for (int batchSize : BATCH_SIZES)
+      {
+         long time = 0;
+         long bulkTime = 0;
+         for (int i = 0; i < ITERATIONS; i++)
+         {
+            List<Serializable> keys = fill(batchSize);
+            time -= System.currentTimeMillis();
+            for (Serializable key : keys)
+            {
+               cache.remove(key);
+            }
+            time += System.currentTimeMillis();
+            keys = fill(batchSize);
+            bulkTime -= System.currentTimeMillis();
+            cache.removeAll(keys);
+            bulkTime += System.currentTimeMillis();
+         }
+         System.out.println("Remove of " + batchSize + " keys x " + ITERATIONS + ": one by one = " + time
+            + " ms, removeAll = " + bulkTime + " ms");
+      }
+   }
+
+   private List<Serializable> fill(int size)
+   {
+      Map<Serializable, Object> values = new HashMap<Serializable, Object>();
+      for (int i = 0; i < size; i++)
+      {
+         values.put("key-" + i, "value-" + i);
+      }
+      cache.putMap(values);
+      return new ArrayList<Serializable>(values.keySet());
+   }
+}
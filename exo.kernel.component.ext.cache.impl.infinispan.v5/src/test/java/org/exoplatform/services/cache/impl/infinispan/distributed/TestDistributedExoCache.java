@@ -31,17 +31,28 @@ import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ExoCacheFactory;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.Loader;
 import org.exoplatform.services.cache.impl.infinispan.ExoCacheFactoryImpl;
+import org.exoplatform.services.cache.impl.infinispan.NearCache;
 import org.exoplatform.services.ispn.DistributedCacheManager;
+import org.infinispan.Cache;
 import org.infinispan.affinity.KeyAffinityService;
 import org.infinispan.affinity.KeyAffinityServiceFactory;
 import org.infinispan.affinity.KeyGenerator;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.distribution.DistributionManager;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -132,6 +143,65 @@ public class TestDistributedExoCache extends TestCase
       assertEquals(1, cache.getCacheSize());
    }
 
+   public void testGetMap() throws Exception
+   {
+      cache.put(new MyKey("a"), "a");
+      cache.put(new MyKey("b"), "b");
+      int hits = cache.getCacheHit();
+      int misses = cache.getCacheMiss();
+      Map<Serializable, Object> values =
+         cache.getMap(Arrays.<Serializable> asList(new MyKey("a"), new MyKey("b"), new MyKey("x")));
+      assertEquals(2, values.size());
+      assertEquals("a", values.get(new MyKey("a")));
+      assertEquals("b", values.get(new MyKey("b")));
+      assertFalse(values.containsKey(new MyKey("x")));
+      assertEquals(hits + 2, cache.getCacheHit());
+      assertEquals(misses + 1, cache.getCacheMiss());
+      assertTrue(cache.getMap(Collections.<Serializable> emptyList()).isEmpty());
+   }
+
+   public void testRemoveAll() throws Exception
+   {
+      cache.put(new MyKey("a"), 1);
+      cache.put(new MyKey("b"), 2);
+      cache.put(new MyKey("c"), 3);
+      assertEquals(3, cache.getCacheSize());
+      cache.removeAll(Arrays.asList(new MyKey("a"), new MyKey("b"), new MyKey("x")));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(null, cache.get(new MyKey("a")));
+      assertEquals(3, cache.get(new MyKey("c")));
+      try
+      {
+         cache.removeAll(Arrays.asList(new MyKey("c"), null));
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e)
+      {
+         assertEquals(1, cache.getCacheSize());
+      }
+   }
+
+   public void testComputeIfAbsent() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      Loader<Serializable, Object, String> loader = new Loader<Serializable, Object, String>()
+      {
+         public Object retrieve(String context, Serializable key) throws Exception
+         {
+            calls.incrementAndGet();
+            return context;
+         }
+      };
+      assertEquals("a", cache.computeIfAbsent(new MyKey("a"), loader, "a"));
+      assertEquals(1, calls.get());
+      assertEquals("a", cache.get(new MyKey("a")));
+      assertEquals("a", cache.computeIfAbsent(new MyKey("a"), loader, "b"));
+      assertEquals(1, calls.get());
+      assertNull(cache.computeIfAbsent(new MyKey("b"), loader, null));
+      assertEquals(2, calls.get());
+      assertEquals(1, cache.getCacheSize());
+   }
+
    public void testPutMap() throws Exception
    {
       Map<Serializable, Object> values = new HashMap<Serializable, Object>();
@@ -229,6 +299,96 @@ public class TestDistributedExoCache extends TestCase
       assertEquals(3, count.intValue());
    }
 
+   public void testEntryIterator() throws Exception
+   {
+      Map<Serializable, Object> values = new HashMap<Serializable, Object>();
+      for (int i = 0; i < 25; i++)
+      {
+         MyKey key = new MyKey("a" + i);
+         cache.put(key, i);
+         values.put(key, i);
+      }
+      assertEquals(25, cache.getCacheSize());
+      Map<Serializable, Object> found = new HashMap<Serializable, Object>();
+      for (Iterator<Entry<Serializable, Object>> it = cache.entryIterator(10); it.hasNext();)
+      {
+         Entry<Serializable, Object> entry = it.next();
+         assertNull(found.put(entry.getKey(), entry.getValue()));
+      }
+      assertEquals(values, found);
+      cache.remove(new MyKey("a0"));
+      assertEquals(24, cache.getCacheSize());
+      cache.clearCache();
+      assertEquals(0, cache.getCacheSize());
+      assertFalse(cache.entryIterator(10).hasNext());
+   }
+
+   @SuppressWarnings("unchecked")
+   public void testNearCache() throws Exception
+   {
+      PortalContainer pc = PortalContainer.getInstance();
+      ExoCacheConfig config = new ExoCacheConfig();
+      config.setName("MyCacheDistributedNear");
+      config.setMaxSize(5);
+      config.setLiveTime(10);
+      config.setDistributed(true);
+      config.setNearCacheSize(5);
+      DistributedExoCache<Serializable, Object> nearCached =
+         (DistributedExoCache<Serializable, Object>)((ExoCacheFactory)pc
+            .getComponentInstanceOfType(ExoCacheFactory.class)).createCache(config);
+      try
+      {
+         NearCache<Serializable, Object> nearCache = nearCached.getNearCache();
+         assertNotNull(nearCache);
+         assertNull(cache.getNearCache());
+         nearCached.put(new MyKey("a"), "a");
+         assertEquals("a", nearCached.get(new MyKey("a")));
+         assertEquals("a", nearCached.get(new MyKey("a")));
+         assertEquals(1, nearCache.getHitCount());
+         assertEquals(1, nearCache.getMissCount());
+         nearCached.put(new MyKey("a"), "b");
+         assertEquals("b", nearCached.get(new MyKey("a")));
+         nearCached.removeAll(Arrays.asList(new MyKey("a")));
+         assertNull(nearCached.get(new MyKey("a")));
+         nearCached.put(new MyKey("b"), "b");
+         nearCached.get(new MyKey("b"));
+         nearCached.clearCache();
+         assertEquals(0, nearCache.getSize());
+         assertNull(nearCached.get(new MyKey("b")));
+      }
+      finally
+      {
+         nearCached.clearCache();
+      }
+   }
+
+   public void testNearCacheWithoutL1() throws Exception
+   {
+      final Configuration configuration =
+         new ConfigurationBuilder().clustering().cacheMode(CacheMode.DIST_SYNC).l1().disable().build();
+      Cache<?, ?> clusteredCache =
+         (Cache<?, ?>)Proxy.newProxyInstance(Cache.class.getClassLoader(), new Class<?>[]{Cache.class},
+            new InvocationHandler()
+            {
+               public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+               {
+                  if (method.getName().equals("getCacheConfiguration"))
+                  {
+                     return configuration;
+                  }
+                  throw new UnsupportedOperationException(method.getName());
+               }
+            });
+      ExoCacheConfig config = new ExoCacheConfig();
+      config.setName("MyCacheDistributedNearNoL1");
+      config.setLiveTime(10);
+      config.setNearCacheSize(5);
+      // The remote modifications are not notified so the live time of the near cache must be explicit
+      assertNull(NearCache.create(config, clusteredCache));
+      config.setNearCacheLiveTime(20);
+      assertNotNull(NearCache.create(config, clusteredCache));
+   }
+
    public void testGetHitsNMisses() throws Exception
    {
       int hits = cache.getCacheHit();
@@ -21,10 +21,13 @@ package org.exoplatform.services.cache.impl.jboss;
 import org.exoplatform.services.cache.CacheInfo;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.future.ConcurrentLoader;
+import org.exoplatform.services.cache.future.Loader;
 import org.exoplatform.services.cache.impl.jboss.util.PrivilegedCacheHelper;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -41,11 +44,13 @@ import org.jboss.cache.notifications.event.NodeModifiedEvent;
 import org.jboss.cache.notifications.event.NodeRemovedEvent;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An {@link org.exoplatform.services.cache.ExoCache} implementation based on {@link org.jboss.cache.Node}.
@@ -62,9 +67,7 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
     */
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.ext.cache.impl.jboss.v3.AbstractExoCache");
 
-   private final AtomicInteger hits = new AtomicInteger(0);
-
-   private final AtomicInteger misses = new AtomicInteger(0);
+   private final CacheStatistics statistics = new CacheStatistics(this);
 
    private String label;
 
@@ -82,11 +85,14 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
    
    protected final Fqn<String> rootFqn;
 
+   private final ConcurrentLoader<K, V> loader;
+
    public AbstractExoCache(ExoCacheConfig config, Cache<K, V> cache, Fqn<String> rootFqn)
    {
       this.cache = (CacheSPI<K, V>)cache;
       this.rootFqn = rootFqn;
       this.listeners = new CopyOnWriteArrayList<ListenerContext<K, V>>();
+      this.loader = new ConcurrentLoader<K, V>(this);
       setDistributed(config.isDistributed());
       setLabel(config.getLabel());
       setName(config.getName());
@@ -132,25 +138,57 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
       {
          return null;
       }      
+      long start = statistics.startTimer();
       final V result = cache.get(getFqn(name), (K)name);
+      statistics.onGet(start);
       if (result == null)
       {
-         misses.incrementAndGet();
+         statistics.onMiss();
       }
       else
       {
-         hits.incrementAndGet();
+         statistics.onHit();
       }
       onGet((K)name, result);
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> getMap(Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      // JBoss Cache always reads the data locally, so there is no remote call to save here
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         V value = get(name);
+         if (value != null)
+         {
+            result.put(name, value);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public <C> V computeIfAbsent(K key, Loader<K, V, C> loader, C context) throws Exception
+   {
+      return this.loader.computeIfAbsent(key, loader, context);
+   }
+
    /**
     * {@inheritDoc}
     */
    public int getCacheHit()
    {
-      return hits.get();
+      return statistics.getCacheHit();
    }
 
    /**
@@ -158,7 +196,15 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
     */
    public int getCacheMiss()
    {
-      return misses.get();
+      return statistics.getCacheMiss();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
    }
 
    /**
@@ -240,7 +286,9 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
       {
          throw new IllegalArgumentException("No null cache key accepted");
       }      
+      long start = statistics.startTimer();
       putOnly(key, value);
+      statistics.onPut(start);
       onPut(key, value);
    }
 
@@ -321,6 +369,57 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @SuppressWarnings("unchecked")
+   public void removeAll(Collection<? extends Serializable> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      Map<K, V> removed = new LinkedHashMap<K, V>();
+      cache.startBatch();
+      try
+      {
+         // Start transaction
+         for (Serializable name : names)
+         {
+            final Fqn<Serializable> fqn = getFqn(name);
+            // We use the methods peek and getDirect to avoid going through the interceptor chain
+            // in order to avoid to visit nodes that were about to be evicted
+            final NodeSPI<K, V> node = cache.peek(fqn, false);
+            if (node != null)
+            {
+               V value = node.getDirect((K)name);
+               if (PrivilegedCacheHelper.removeNode(cache, fqn))
+               {
+                  removed.put((K)name, value);
+               }
+            }
+         }
+         PrivilegedCacheHelper.endBatch(cache, true);
+         // End transaction
+         for (Map.Entry<K, V> entry : removed.entrySet())
+         {
+            onRemove(entry.getKey(), entry.getValue());
+         }
+      }
+      catch (Exception e)
+      {
+         cache.endBatch(false);
+         LOG.warn("An error occurs while executing the removeAll method", e);
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -541,6 +640,7 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
          {
             final NodeSPI<K, V> node = cache.peek(ne.getFqn(), true);
             final K key = getKey(ne.getFqn());
+            statistics.onEviction();
             onExpire(key, node == null ? null : node.getDirect(key));
          }
       }
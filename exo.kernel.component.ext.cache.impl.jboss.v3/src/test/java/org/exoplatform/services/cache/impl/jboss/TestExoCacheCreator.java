@@ -19,13 +19,16 @@
 package org.exoplatform.services.cache.impl.jboss;
 
 import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheStatistics;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ExoCacheInitException;
+import org.exoplatform.services.cache.future.Loader;
 import org.jboss.cache.Cache;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -75,6 +78,11 @@ public class TestExoCacheCreator implements ExoCacheCreator
          return 0;
       }
 
+      public CacheStatistics getStatistics()
+      {
+         return null;
+      }
+
       public int getCacheSize()
       {
          // TODO Auto-generated method stub
@@ -207,6 +215,21 @@ public class TestExoCacheCreator implements ExoCacheCreator
          return null;
       }
 
+      public Map getMap(Collection keys)
+      {
+         return null;
+      }
+
+      public void removeAll(Collection keys)
+      {
+
+      }
+
+      public Object computeIfAbsent(Serializable key, Loader loader, Object context)
+      {
+         return null;
+      }
+
       public List removeCachedObjects()
       {
          // TODO Auto-generated method stub
@@ -21,6 +21,7 @@ package org.exoplatform.services.rpc.jgv3;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.rpc.RPCException;
 import org.exoplatform.services.rpc.impl.AbstractRPCService;
 import org.jgroups.Address;
 import org.jgroups.Channel;
@@ -29,9 +30,15 @@ import org.jgroups.Message;
 import org.jgroups.View;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.ResponseMode;
+import org.jgroups.blocks.UnicastRequest;
+import org.jgroups.util.FutureListener;
+import org.jgroups.util.NotifyingFuture;
 import org.jgroups.util.RspList;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class is the implementation of the {@link AbstractRPCService} for JGroups 3.
@@ -66,35 +73,97 @@ public class RPCServiceImpl extends AbstractRPCService
       return dispatcher.castMessage(dests, msg, new RequestOptions(synchronous ? ResponseMode.GET_ALL
          : ResponseMode.GET_NONE, timeout));
    }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setOutOfBand(Message msg)
+   {
+      msg.setFlag(Message.Flag.OOB);
+   }
    
    /**
     * {@inheritDoc}
+    * 
+    * This implementation relies on the non-blocking API of the {@link org.jgroups.blocks.MessageDispatcher}
+    * so that no thread is blocked while waiting for the response.
     */
-   protected Channel createChannel() throws Exception
+   protected void sendMessage(final int index, final Address dest, Message msg, long timeout,
+      final ResponseHandler handler)
    {
-      return new JChannel(configurator);
+      msg.setDest(dest);
+      NotifyingFuture<Object> future;
+      try
+      {
+         future = dispatcher.sendMessageWithFuture(msg, new RequestOptions(ResponseMode.GET_FIRST, timeout));
+      }
+      catch (Exception e)
+      {
+         handler.onResponse(index, dest, new RPCException("Could not send the message to the member " + dest + ".",
+            e));
+         return;
+      }
+      future.setListener(new FutureListener<Object>()
+      {
+         /**
+          * The listener can be called twice if the response is received while it is set
+          */
+         private final AtomicBoolean done = new AtomicBoolean();
+
+         public void futureDone(Future<Object> future)
+         {
+            if (done.compareAndSet(false, true))
+            {
+               handler.onResponse(index, dest, getResponse(dest, future));
+            }
+         }
+      });
+   }
+
+   /**
+    * Converts the result of the given future into the value expected by the caller
+    */
+   private Object getResponse(Address dest, Future<Object> future)
+   {
+      if (future instanceof UnicastRequest)
+      {
+         return getResponse(dest, ((UnicastRequest<?>)future).getResult());
+      }
+      try
+      {
+         return future.get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return new RPCException("Interrupted while getting the response of the member " + dest, e);
+      }
+      catch (ExecutionException e)
+      {
+         return new RPCException("Cannot get the response of the member " + dest, e.getCause());
+      }
    }
 
    /**
     * {@inheritDoc}
     */
-   public void unblock()
+   protected Channel createChannel() throws Exception
    {
+      return new JChannel(configurator);
    }
 
    /**
     * {@inheritDoc}
     */
-   protected List<Address> getMembers(View view)
+   public void unblock()
    {
-      return view.getMembers();
    }
 
    /**
     * {@inheritDoc}
     */
-   protected void setObject(Message m, Object o)
+   protected List<Address> getMembers(View view)
    {
-      m.setObject(o);
+      return view.getMembers();
    }
 }
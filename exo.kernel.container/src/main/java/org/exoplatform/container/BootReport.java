@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import org.exoplatform.container.ParallelStarter.Group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The report of a parallel start of the components of a container. The critical path is the chain
+ * of dependent components whose instantiation and start took the longest time, it is the minimum
+ * time needed to start the container whatever the amount of threads.
+ *
+ * @version $Id$
+ */
+class BootReport
+{
+
+   /** . */
+   private final String containerName;
+
+   /** . */
+   private final int threads;
+
+   /** . */
+   private final int components;
+
+   /** . */
+   private final long time;
+
+   /**
+    * The sum of the times spent to instantiate and start each component
+    */
+   private final long cumulativeTime;
+
+   /** . */
+   private final List<Group> criticalPath;
+
+   /** . */
+   private final long criticalPathTime;
+
+   /**
+    * @param containerName the name of the container
+    * @param threads the amount of threads used
+    * @param components the amount of components instantiated and started
+    * @param time the total time of the start in nanoseconds
+    * @param groups the groups of components in an order where the dependencies of a group are before it
+    */
+   BootReport(String containerName, int threads, int components, long time, List<Group> groups)
+   {
+      this.containerName = containerName;
+      this.threads = threads;
+      this.components = components;
+      this.time = time;
+      Map<Group, Long> pathTimes = new HashMap<Group, Long>();
+      Map<Group, Group> previous = new HashMap<Group, Group>();
+      long cumulative = 0;
+      Group last = null;
+      for (Group group : groups)
+      {
+         Group slowest = null;
+         for (Group dependency : group.dependencies)
+         {
+            if (slowest == null || pathTimes.get(dependency) > pathTimes.get(slowest))
+            {
+               slowest = dependency;
+            }
+         }
+         long pathTime = group.getDuration() + (slowest == null ? 0 : pathTimes.get(slowest));
+         pathTimes.put(group, pathTime);
+         previous.put(group, slowest);
+         cumulative += group.getDuration();
+         if (last == null || pathTime > pathTimes.get(last))
+         {
+            last = group;
+         }
+      }
+      this.cumulativeTime = cumulative;
+      List<Group> path = new ArrayList<Group>();
+      for (Group group = last; group != null; group = previous.get(group))
+      {
+         path.add(group);
+      }
+      Collections.reverse(path);
+      this.criticalPath = path;
+      this.criticalPathTime = last == null ? 0 : pathTimes.get(last);
+   }
+
+   /**
+    * @return the total time of the start in milliseconds
+    */
+   long getTime()
+   {
+      return time / 1000000;
+   }
+
+   /**
+    * @return the sum of the times in milliseconds spent to instantiate and start each component
+    */
+   long getCumulativeTime()
+   {
+      return cumulativeTime / 1000000;
+   }
+
+   /**
+    * @return the time in milliseconds of the critical path
+    */
+   long getCriticalPathTime()
+   {
+      return criticalPathTime / 1000000;
+   }
+
+   /**
+    * @return the names of the components of the critical path, the components that are part of a cycle
+    * of dependencies are given together
+    */
+   List<String> getCriticalPath()
+   {
+      List<String> result = new ArrayList<String>(criticalPath.size());
+      for (Group group : criticalPath)
+      {
+         result.add(group.toString());
+      }
+      return result;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append("The container ").append(containerName).append(" started ").append(components)
+         .append(" components in ").append(getTime()).append(" ms with ").append(threads).append(" threads (")
+         .append(getCumulativeTime()).append(" ms spent in the components), critical path of ")
+         .append(getCriticalPathTime()).append(" ms:");
+      for (Group group : criticalPath)
+      {
+         sb.append("\n   ").append(group).append(": ").append(group.getDuration() / 1000000).append(" ms");
+      }
+      return sb.toString();
+   }
+}
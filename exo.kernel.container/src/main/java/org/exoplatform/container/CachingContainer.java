@@ -24,11 +24,11 @@ import org.picocontainer.Parameter;
 import org.picocontainer.PicoContainer;
 import org.picocontainer.PicoException;
 import org.picocontainer.PicoRegistrationException;
-import org.picocontainer.PicoVisitor;
 import org.picocontainer.defaults.ComponentAdapterFactory;
 import org.picocontainer.defaults.DuplicateComponentKeyRegistrationException;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -145,25 +145,42 @@ public class CachingContainer extends MCIntegrationContainer
       return instance;
    }
 
-   private static final PicoVisitor invalidator = new ContainerVisitor()
+   /**
+    * Removes from the caches of this container and of its child containers the entries that could be
+    * affected by the registration or the unregistration of the given component adapter, that is the
+    * entries of its key and of the types to which its implementation can be assigned.
+    */
+   private void invalidate(ComponentAdapter adapter)
    {
-      public void visitContainer(PicoContainer pico)
+      if (adapter == null)
+      {
+         return;
+      }
+      final Object key = adapter.getComponentKey();
+      final Set<Class> types = ConcurrentPicoContainer.getAssignableTypes(adapter.getComponentImplementation());
+      if (key instanceof Class)
       {
-         if (pico instanceof CachingContainer)
+         // The lookups by type check first if a component has been registered with the type as key
+         types.add((Class)key);
+      }
+      accept(new ContainerVisitor()
+      {
+         public void visitContainer(PicoContainer pico)
          {
-            CachingContainer caching = (CachingContainer)pico;
-            caching.adapterByType.clear();
-            caching.adaptersByType.clear();
-            caching.instanceByKey.clear();
-            caching.instanceByType.clear();
-            caching.instancesByType.clear();
+            if (pico instanceof CachingContainer)
+            {
+               CachingContainer caching = (CachingContainer)pico;
+               caching.instanceByKey.remove(key);
+               for (Class type : types)
+               {
+                  caching.adapterByType.remove(type);
+                  caching.adaptersByType.remove(type);
+                  caching.instanceByType.remove(type);
+                  caching.instancesByType.remove(type);
+               }
+            }
          }
-      }
-   };
-
-   private void invalidate()
-   {
-      accept(invalidator);
+      });
    }
 
    //
@@ -172,21 +189,21 @@ public class CachingContainer extends MCIntegrationContainer
       throws DuplicateComponentKeyRegistrationException
    {
       ComponentAdapter adapter = super.registerComponent(componentAdapter);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
    public ComponentAdapter unregisterComponent(Object componentKey)
    {
       ComponentAdapter adapter = super.unregisterComponent(componentKey);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
    public ComponentAdapter registerComponentInstance(Object component) throws PicoRegistrationException
    {
       ComponentAdapter adapter = super.registerComponentInstance(component);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
@@ -194,7 +211,7 @@ public class CachingContainer extends MCIntegrationContainer
       throws PicoRegistrationException
    {
       ComponentAdapter adapter = super.registerComponentInstance(componentKey, componentInstance);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
@@ -202,7 +219,7 @@ public class CachingContainer extends MCIntegrationContainer
       throws PicoRegistrationException
    {
       ComponentAdapter adapter = super.registerComponentImplementation(componentImplementation);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
@@ -210,7 +227,7 @@ public class CachingContainer extends MCIntegrationContainer
       throws PicoRegistrationException
    {
       ComponentAdapter adapter = super.registerComponentImplementation(componentKey, componentImplementation);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
@@ -218,7 +235,7 @@ public class CachingContainer extends MCIntegrationContainer
       Parameter[] parameters) throws PicoRegistrationException
    {
       ComponentAdapter adapter = super.registerComponentImplementation(componentKey, componentImplementation, parameters);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 
@@ -226,7 +243,7 @@ public class CachingContainer extends MCIntegrationContainer
       List parameters) throws PicoRegistrationException
    {
       ComponentAdapter adapter = super.registerComponentImplementation(componentKey, componentImplementation, parameters);
-      invalidate();
+      invalidate(adapter);
       return adapter;
    }
 }
@@ -39,10 +39,12 @@ import org.picocontainer.defaults.VerifyingVisitor;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -80,6 +82,14 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
 
    private final Set<ComponentAdapter> componentAdapters = new CopyOnWriteArraySet<ComponentAdapter>();
 
+   /**
+    * The component adapters indexed by the classes and the interfaces to which their implementation can be
+    * assigned. The arrays are never modified, they are replaced by a copy each time an adapter is added or
+    * removed so that the lookups by type don't need to go through all the component adapters.
+    */
+   private final ConcurrentMap<Class, ComponentAdapter[]> componentAdaptersByType =
+      new ConcurrentHashMap<Class, ComponentAdapter[]>();
+
    // Keeps track of instantiation order.
    private final CopyOnWriteArrayList<ComponentAdapter> orderedComponentAdapters = new CopyOnWriteArrayList<ComponentAdapter>();
 
@@ -205,17 +215,115 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
       {
          return Collections.EMPTY_LIST;
       }
-      List<ComponentAdapter> found = new ArrayList<ComponentAdapter>();
-      for (Iterator<ComponentAdapter> iterator = componentAdapters.iterator(); iterator.hasNext();)
+      ComponentAdapter[] adapters = componentAdaptersByType.get(componentType);
+      if (adapters == null)
       {
-         ComponentAdapter componentAdapter = iterator.next();
+         return new ArrayList<ComponentAdapter>();
+      }
+      return new ArrayList<ComponentAdapter>(Arrays.asList(adapters));
+   }
+
+   /**
+    * Gives all the classes and interfaces to which the given class can be assigned, including the class itself
+    */
+   static Set<Class> getAssignableTypes(Class type)
+   {
+      Set<Class> types = new LinkedHashSet<Class>();
+      if (type != null)
+      {
+         addAssignableTypes(type, types);
+      }
+      return types;
+   }
 
-         if (componentType.isAssignableFrom(componentAdapter.getComponentImplementation()))
+   private static void addAssignableTypes(Class type, Set<Class> types)
+   {
+      for (Class c = type; c != null; c = c.getSuperclass())
+      {
+         if (!types.add(c))
+         {
+            return;
+         }
+         Class[] interfaces = c.getInterfaces();
+         for (int i = 0; i < interfaces.length; i++)
          {
-            found.add(componentAdapter);
+            addAssignableTypes(interfaces[i], types);
+         }
+      }
+   }
+
+   private void addToTypeIndex(ComponentAdapter componentAdapter)
+   {
+      for (Class type : getAssignableTypes(componentAdapter.getComponentImplementation()))
+      {
+         for (;;)
+         {
+            ComponentAdapter[] oldAdapters = componentAdaptersByType.get(type);
+            if (oldAdapters == null)
+            {
+               if (componentAdaptersByType.putIfAbsent(type, new ComponentAdapter[]{componentAdapter}) == null)
+               {
+                  break;
+               }
+            }
+            else
+            {
+               ComponentAdapter[] newAdapters = Arrays.copyOf(oldAdapters, oldAdapters.length + 1);
+               newAdapters[oldAdapters.length] = componentAdapter;
+               if (componentAdaptersByType.replace(type, oldAdapters, newAdapters))
+               {
+                  break;
+               }
+            }
+            // The index has been modified concurrently, we try again with the new adapters
+         }
+      }
+   }
+
+   private void removeFromTypeIndex(ComponentAdapter componentAdapter)
+   {
+      for (Class type : getAssignableTypes(componentAdapter.getComponentImplementation()))
+      {
+         for (;;)
+         {
+            ComponentAdapter[] oldAdapters = componentAdaptersByType.get(type);
+            if (oldAdapters == null)
+            {
+               break;
+            }
+            int index = -1;
+            for (int i = 0; i < oldAdapters.length; i++)
+            {
+               if (oldAdapters[i] == componentAdapter)
+               {
+                  index = i;
+                  break;
+               }
+            }
+            if (index == -1)
+            {
+               break;
+            }
+            if (oldAdapters.length == 1)
+            {
+               if (componentAdaptersByType.remove(type, oldAdapters))
+               {
+                  break;
+               }
+            }
+            else
+            {
+               ComponentAdapter[] newAdapters = new ComponentAdapter[oldAdapters.length - 1];
+               System.arraycopy(oldAdapters, 0, newAdapters, 0, index);
+               System.arraycopy(oldAdapters, index + 1, newAdapters, index, newAdapters.length - index);
+               if (componentAdaptersByType.replace(type, oldAdapters, newAdapters))
+               {
+                  break;
+               }
+            }
+            // The index has been modified concurrently, we try again with the new adapters
          }
       }
-      return found;
    }
 
    /**
@@ -237,6 +345,7 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
          throw new DuplicateComponentKeyRegistrationException(componentKey);
       }
       componentAdapters.add(componentAdapter);
+      addToTypeIndex(componentAdapter);
       return componentAdapter;
    }
 
@@ -247,8 +356,12 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
          security.checkPermission(ContainerPermissions.MANAGE_COMPONENT_PERMISSION);     
       
       ComponentAdapter adapter = componentKeyToAdapterCache.remove(componentKey);
-      componentAdapters.remove(adapter);
-      orderedComponentAdapters.remove(adapter);
+      if (adapter != null)
+      {
+         componentAdapters.remove(adapter);
+         orderedComponentAdapters.remove(adapter);
+         removeFromTypeIndex(adapter);
+      }
       return adapter;
    }
 
@@ -357,21 +470,33 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
          return Collections.EMPTY_LIST;
       }
 
+      ComponentAdapter[] adapters = componentAdaptersByType.get(componentType);
+      if (adapters == null)
+      {
+         return new ArrayList<Object>();
+      }
       Map<ComponentAdapter, Object> adapterToInstanceMap = new HashMap<ComponentAdapter, Object>();
-      for (Iterator<ComponentAdapter> iterator = componentAdapters.iterator(); iterator.hasNext();)
+      for (int i = 0; i < adapters.length; i++)
       {
-         ComponentAdapter componentAdapter = iterator.next();
-         if (componentType.isAssignableFrom(componentAdapter.getComponentImplementation()))
-         {
-            Object componentInstance = getInstance(componentAdapter);
-            adapterToInstanceMap.put(componentAdapter, componentInstance);
+         ComponentAdapter componentAdapter = adapters[i];
+         Object componentInstance = getInstance(componentAdapter);
+         adapterToInstanceMap.put(componentAdapter, componentInstance);
 
-            // This is to ensure all are added. (Indirect dependencies will be added
-            // from InstantiatingComponentAdapter).
-            addOrderedComponentAdapter(componentAdapter);
-         }
+         // This is to ensure all are added. (Indirect dependencies will be added
+         // from InstantiatingComponentAdapter).
+         addOrderedComponentAdapter(componentAdapter);
       }
       List<Object> result = new ArrayList<Object>();
+      if (adapterToInstanceMap.size() == 1)
+      {
+         // No need to go through all the adapters to know the instantiation order
+         Object componentInstance = adapterToInstanceMap.values().iterator().next();
+         if (componentInstance != null)
+         {
+            result.add(componentInstance);
+         }
+         return result;
+      }
       for (Iterator<ComponentAdapter> iterator = orderedComponentAdapters.iterator(); iterator.hasNext();)
       {
          Object componentAdapter = iterator.next();
@@ -465,6 +590,7 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
 
       if (isLocal)
       {
+         beforeGetInstance(componentAdapter);
          Object instance = componentAdapter.getComponentInstance(this);
 
          addOrderedComponentAdapter(componentAdapter);
@@ -516,6 +642,14 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
       new VerifyingVisitor().traverse(this);
    }
 
+   /**
+    * Called before getting the instance of one of the component adapters of this container, it does
+    * nothing by default
+    */
+   protected void beforeGetInstance(ComponentAdapter componentAdapter)
+   {
+   }
+
    /**
     * Indicates whether or not the container can be started
     */
@@ -551,10 +685,26 @@ public class ConcurrentPicoContainer implements MutablePicoContainer, Serializab
    {
       if (!canBeStarted())
          return;
-      LifecycleVisitor.start(this);
+      startComponents();
       started.set(true);
    }
 
+   /**
+    * Starts the components of this container and of its child containers
+    */
+   protected void startComponents()
+   {
+      LifecycleVisitor.start(this);
+   }
+
+   /**
+    * @return the logical child containers of this container
+    */
+   protected Collection<PicoContainer> getChildren()
+   {
+      return Collections.unmodifiableSet(children);
+   }
+
    /**
     * Stop the components of this PicoContainer and all its logical child containers.
     * Any component implementing the lifecycle interface {@link org.picocontainer.Startable} will be stopped.
@@ -48,6 +48,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 /**
  * Created by The eXo Platform SAS Author : Tuan Nguyen
  * tuan08@users.sourceforge.net Date: Jul 18, 2004 Time: 12:15:28 AM
+ * <p>
+ * When the property {@link #PARALLEL_BOOT_PROPERTY} is set to <code>true</code>, the components are
+ * instantiated and started in parallel according to the dependencies between them, see {@link ParallelStarter}.
  * @LevelAPI Provisional
  */
 public class ExoContainer extends ManageableContainer
@@ -127,6 +130,28 @@ public class ExoContainer extends ManageableContainer
    
    protected static final Log LOG = ExoLogger.getLogger("exo.kernel.container.ExoContainer");
 
+   /**
+    * The name of the property that indicates whether the components must be instantiated and started
+    * in parallel
+    */
+   public static final String PARALLEL_BOOT_PROPERTY = "exo.container.boot.parallel";
+
+   /**
+    * The name of the property that defines the amount of threads used to instantiate and start the
+    * components in parallel, the amount of processors by default
+    */
+   public static final String BOOT_THREADS_PROPERTY = "exo.container.boot.threads";
+
+   /**
+    * The report of the last parallel start of the components
+    */
+   private volatile BootReport bootReport;
+
+   /**
+    * The starter of the components while they are started in parallel, <code>null</code> otherwise
+    */
+   private volatile ParallelStarter parallelStarter;
+
    private Map<String, ComponentLifecyclePlugin> componentLifecylePlugin_ =
       new HashMap<String, ComponentLifecyclePlugin>();
 
@@ -272,6 +297,68 @@ public class ExoContainer extends ManageableContainer
       }
    }
 
+   /**
+    * {@inheritDoc}
+    * The components are started in parallel if the property {@link #PARALLEL_BOOT_PROPERTY} is set
+    * to <code>true</code>, the child containers are then started sequentially.
+    */
+   @Override
+   protected void startComponents()
+   {
+      if (!Boolean.parseBoolean(PropertyManager.getProperty(PARALLEL_BOOT_PROPERTY)))
+      {
+         super.startComponents();
+         return;
+      }
+      String threads = PropertyManager.getProperty(BOOT_THREADS_PROPERTY);
+      ParallelStarter starter =
+         new ParallelStarter(this, threads == null ? Runtime.getRuntime().availableProcessors()
+            : Integer.parseInt(threads.trim()));
+      BootReport report;
+      this.parallelStarter = starter;
+      try
+      {
+         report = starter.start();
+      }
+      finally
+      {
+         this.parallelStarter = null;
+      }
+      this.bootReport = report;
+      if (LOG.isInfoEnabled())
+      {
+         LOG.info(report.toString());
+      }
+      for (PicoContainer child : getChildren())
+      {
+         LifecycleVisitor.start(child);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    * While the components are started in parallel, it allows to detect the components that get other
+    * components that they didn't declare as dependencies.
+    */
+   @Override
+   protected void beforeGetInstance(ComponentAdapter componentAdapter)
+   {
+      ParallelStarter starter = parallelStarter;
+      if (starter != null)
+      {
+         starter.onGetInstance(componentAdapter);
+      }
+   }
+
+   /**
+    * @return the report of the last parallel start of the components or <code>null</code> if
+    * the components have not been started in parallel
+    */
+   BootReport getBootReport()
+   {
+      return bootReport;
+   }
+
    @Override
    public synchronized void stop()
    {
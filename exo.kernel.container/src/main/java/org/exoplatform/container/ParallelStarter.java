@@ -0,0 +1,710 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import org.exoplatform.commons.utils.ClassLoading;
+import org.exoplatform.container.configuration.ConfigurationManager;
+import org.exoplatform.container.util.ContainerUtil;
+import org.exoplatform.container.xml.Component;
+import org.exoplatform.container.xml.ComponentPlugin;
+import org.exoplatform.container.xml.ExternalComponentPlugins;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.picocontainer.ComponentAdapter;
+import org.picocontainer.PicoIntrospectionException;
+import org.picocontainer.Startable;
+import org.picocontainer.defaults.AmbiguousComponentResolutionException;
+import org.picocontainer.defaults.InstanceComponentAdapter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Instantiates and starts the components of an {@link ExoContainer} in parallel. The graph of the
+ * dependencies between the components is built from the parameters of their constructors and of the
+ * constructors of their component plugins, then each component is instantiated and started by a pool
+ * of threads as soon as all its dependencies have been started. The components that depend on each
+ * other through a cycle, which can happen with the component plugins, are instantiated and started
+ * together by the same thread in their registration order.
+ * <p>
+ * Like with the sequential start, only the {@link Startable} components and their dependencies are
+ * instantiated. The threads of the pool use the current container, the context class loader and the
+ * access control context of the thread that starts the container. A component must not synchronize on
+ * its container while it is created or started since the thread that starts the container holds its lock.
+ * <p>
+ * The graph only knows the dependencies declared through the constructors. A component that gets another
+ * component from the container while it is created or started, without declaring it, could be created
+ * at the same time as this other component by another thread and the two threads could wait for each
+ * other. Such a lookup is detected, a warning is logged and the remaining components are then created
+ * and started one after the other by the thread that starts the container once the running ones are done.
+ * If the threads still wait for each other, the deadlock is detected and the start fails with the stack
+ * traces of the threads involved, in which case the dependencies should be declared in the constructors
+ * or the parallel start disabled.
+ *
+ * @version $Id$
+ */
+class ParallelStarter
+{
+
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.ParallelStarter");
+
+   /**
+    * The time in milliseconds without any group started after which the threads are checked for a deadlock
+    */
+   private static final long DEADLOCK_CHECK_INTERVAL = 10000;
+
+   /**
+    * The group being executed by the current thread
+    */
+   private static final ThreadLocal<Group> CURRENT_GROUP = new ThreadLocal<Group>();
+
+   /** . */
+   private final ExoContainer container;
+
+   /** . */
+   private final int threads;
+
+   /**
+    * The nodes of all the component adapters of the container in registration order
+    */
+   private final Map<ComponentAdapter, Node> nodes = new LinkedHashMap<ComponentAdapter, Node>();
+
+   /**
+    * The groups of components in an order where the dependencies of a group are before it
+    */
+   private final List<Group> groups = new ArrayList<Group>();
+
+   /** . */
+   private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+   /** . */
+   private ExecutorService executor;
+
+   /** . */
+   private CountDownLatch doneSignal;
+
+   /**
+    * Indicates whether the remaining groups must be executed one after the other, which is the case
+    * once a component got a component that was not ready
+    */
+   private volatile boolean sequential;
+
+   /**
+    * The groups ready to be executed by the thread that starts the container once it is sequential
+    */
+   private final BlockingQueue<Group> deferred = new LinkedBlockingQueue<Group>();
+
+   /** . */
+   private String threadNamePrefix;
+
+   /**
+    * The current container of the thread that starts the container
+    */
+   private final ExoContainer currentContainer;
+
+   /** . */
+   private final ClassLoader contextClassLoader;
+
+   /** . */
+   private final AccessControlContext accessControlContext;
+
+   /**
+    * @param container the container whose components must be started
+    * @param threads the amount of threads to use
+    */
+   ParallelStarter(ExoContainer container, int threads)
+   {
+      this.container = container;
+      this.threads = Math.max(1, threads);
+      this.currentContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      this.contextClassLoader = Thread.currentThread().getContextClassLoader();
+      this.accessControlContext = AccessController.getContext();
+   }
+
+   /**
+    * Instantiates and starts the components, the method returns once all the components have been
+    * started or once a component failed, in which case the components that depend on it are not started.
+    *
+    * @return the report of the start
+    */
+   BootReport start()
+   {
+      long start = System.nanoTime();
+      buildGraph();
+      doneSignal = new CountDownLatch(groups.size());
+      final AtomicInteger threadNumber = new AtomicInteger(1);
+      final String prefix = "ExoContainer-" + container.getContext().getName() + "-Boot-";
+      threadNamePrefix = prefix;
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      try
+      {
+         for (Group group : groups)
+         {
+            if (group.pending.get() == 0)
+            {
+               submit(group);
+            }
+         }
+         awaitGroups();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new PicoIntrospectionException("Interrupted while starting the components of "
+            + container.getContext().getName(), e);
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+      RuntimeException e = failure.get();
+      if (e != null)
+      {
+         throw e;
+      }
+      return new BootReport(container.getContext().getName(), threads, nodesCount(), System.nanoTime() - start,
+         groups);
+   }
+
+   /**
+    * Waits until all the groups have been executed, executes the groups deferred once the start is
+    * sequential and checks for a deadlock when no group completes for a while
+    */
+   private void awaitGroups() throws InterruptedException
+   {
+      long count = doneSignal.getCount();
+      long lastProgress = System.currentTimeMillis();
+      while (count > 0)
+      {
+         Group group = deferred.poll(100, TimeUnit.MILLISECONDS);
+         if (group != null)
+         {
+            execute(group);
+         }
+         long now = System.currentTimeMillis();
+         if (doneSignal.getCount() != count)
+         {
+            count = doneSignal.getCount();
+            lastProgress = now;
+         }
+         else if (now - lastProgress > DEADLOCK_CHECK_INTERVAL)
+         {
+            checkDeadlock();
+            lastProgress = now;
+         }
+      }
+   }
+
+   /**
+    * Throws an exception if some threads of the pool are deadlocked
+    */
+   private void checkDeadlock()
+   {
+      ThreadInfo[] infos;
+      try
+      {
+         ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+         long[] ids = bean.findDeadlockedThreads();
+         if (ids == null)
+         {
+            return;
+         }
+         infos = bean.getThreadInfo(ids, true, true);
+      }
+      catch (SecurityException e)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("Cannot check whether the components are deadlocked", e);
+         }
+         return;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (ThreadInfo info : infos)
+      {
+         if (info != null && info.getThreadName().startsWith(threadNamePrefix))
+         {
+            sb.append(info);
+         }
+      }
+      if (sb.length() > 0)
+      {
+         throw new PicoIntrospectionException("The components of " + container.getContext().getName()
+            + " are deadlocked, their dependencies should be declared in their constructors or the property "
+            + ExoContainer.PARALLEL_BOOT_PROPERTY + " should be set to false:\n" + sb);
+      }
+   }
+
+   /**
+    * Called before getting the instance of the given adapter, if the current thread executes a group and
+    * the adapter doesn't belong to a group already executed, the remaining groups are executed sequentially
+    */
+   void onGetInstance(ComponentAdapter adapter)
+   {
+      Group current = CURRENT_GROUP.get();
+      if (current == null)
+      {
+         return;
+      }
+      if (adapter instanceof InstanceComponentAdapter)
+      {
+         // The instance already exists
+         return;
+      }
+      Node node = nodes.get(adapter);
+      if (node == null || node.group == current || (node.group != null && node.group.done))
+      {
+         return;
+      }
+      if (!sequential)
+      {
+         sequential = true;
+         LOG.warn("The component " + current + " gets the component " + node + " which is not one of its declared "
+            + "dependencies, the remaining components of " + container.getContext().getName()
+            + " will be started sequentially");
+      }
+   }
+
+   private int nodesCount()
+   {
+      int count = 0;
+      for (Group group : groups)
+      {
+         count += group.nodes.size();
+      }
+      return count;
+   }
+
+   /**
+    * Builds the groups of the {@link Startable} components and of their dependencies
+    */
+   private void buildGraph()
+   {
+      Collection<?> adapters = container.getComponentAdapters();
+      List<Node> roots = new ArrayList<Node>();
+      for (Object o : adapters)
+      {
+         ComponentAdapter adapter = (ComponentAdapter)o;
+         Node node = new Node(adapter);
+         nodes.put(adapter, node);
+         if (Startable.class.isAssignableFrom(adapter.getComponentImplementation()))
+         {
+            roots.add(node);
+         }
+      }
+      ConfigurationManager manager =
+         (ConfigurationManager)container.getComponentInstanceOfType(ConfigurationManager.class);
+      for (Node node : nodes.values())
+      {
+         addDependencies(node, node.adapter.getComponentImplementation());
+         if (manager != null)
+         {
+            addPluginDependencies(node, manager);
+         }
+      }
+      // Tarjan's algorithm gives the strongly connected components in an order where the dependencies
+      // of a component are before it
+      int[] index = {0};
+      List<Node> stack = new ArrayList<Node>();
+      for (Node root : roots)
+      {
+         if (root.index == -1)
+         {
+            visit(root, index, stack);
+         }
+      }
+      for (Group group : groups)
+      {
+         for (Node node : group.nodes)
+         {
+            for (Node dependency : node.dependencies)
+            {
+               if (dependency.group != group && group.dependencies.add(dependency.group))
+               {
+                  dependency.group.dependents.add(group);
+               }
+            }
+         }
+         group.pending.set(group.dependencies.size());
+      }
+   }
+
+   private void visit(Node node, int[] index, List<Node> stack)
+   {
+      node.index = index[0];
+      node.lowLink = index[0];
+      index[0]++;
+      stack.add(node);
+      node.onStack = true;
+      for (Node dependency : node.dependencies)
+      {
+         if (dependency.index == -1)
+         {
+            visit(dependency, index, stack);
+            node.lowLink = Math.min(node.lowLink, dependency.lowLink);
+         }
+         else if (dependency.onStack)
+         {
+            node.lowLink = Math.min(node.lowLink, dependency.index);
+         }
+      }
+      if (node.lowLink == node.index)
+      {
+         Group group = new Group();
+         Node member;
+         do
+         {
+            member = stack.remove(stack.size() - 1);
+            member.onStack = false;
+            member.group = group;
+            group.nodes.add(0, member);
+         }
+         while (member != node);
+         if (group.nodes.size() > 1)
+         {
+            // Keep the registration order within a cycle
+            List<Node> members = new ArrayList<Node>(group.nodes);
+            group.nodes.clear();
+            for (Node n : nodes.values())
+            {
+               if (members.contains(n))
+               {
+                  group.nodes.add(n);
+               }
+            }
+         }
+         groups.add(group);
+      }
+   }
+
+   /**
+    * Adds the components required by the constructors of the given class as dependencies of the given node
+    */
+   private void addDependencies(Node node, Class<?> clazz)
+   {
+      Constructor<?>[] constructors;
+      try
+      {
+         constructors = ContainerUtil.getSortedConstructors(clazz);
+      }
+      catch (NoClassDefFoundError e)
+      {
+         // The error will be reported when the component is created
+         return;
+      }
+      for (int i = 0; i < constructors.length; i++)
+      {
+         Class<?>[] parameters = constructors[i].getParameterTypes();
+         for (int j = 0; j < parameters.length; j++)
+         {
+            if (!parameters[j].equals(InitParams.class))
+            {
+               addDependency(node, parameters[j]);
+            }
+         }
+      }
+   }
+
+   private void addDependency(Node node, Class<?> type)
+   {
+      ComponentAdapter adapter;
+      try
+      {
+         adapter = container.getComponentAdapterOfType(type);
+      }
+      catch (AmbiguousComponentResolutionException e)
+      {
+         // We depend on all the candidates since we cannot know which one will be chosen
+         for (Object o : container.getComponentAdaptersOfType(type))
+         {
+            addDependency(node, nodes.get(o));
+         }
+         return;
+      }
+      if (adapter != null)
+      {
+         // The adapter is null if it has been registered into a parent container
+         addDependency(node, nodes.get(adapter));
+      }
+   }
+
+   private static void addDependency(Node node, Node dependency)
+   {
+      if (dependency != null && dependency != node && !node.dependencies.contains(dependency))
+      {
+         node.dependencies.add(dependency);
+      }
+   }
+
+   /**
+    * Adds the components required by the component plugins of the given node as dependencies
+    */
+   private void addPluginDependencies(Node node, ConfigurationManager manager)
+   {
+      Object key = node.adapter.getComponentKey();
+      String componentKey = key instanceof Class ? ((Class<?>)key).getName() : String.valueOf(key);
+      Component component = manager.getComponent(componentKey);
+      if (component != null)
+      {
+         addPluginDependencies(node, component.getComponentPlugins());
+      }
+      ExternalComponentPlugins ecplugins =
+         manager.getConfiguration() == null ? null : manager.getConfiguration().getExternalComponentPlugins(
+            componentKey);
+      if (ecplugins != null)
+      {
+         addPluginDependencies(node, ecplugins.getComponentPlugins());
+      }
+   }
+
+   private void addPluginDependencies(Node node, List<ComponentPlugin> plugins)
+   {
+      if (plugins == null)
+      {
+         return;
+      }
+      for (ComponentPlugin plugin : plugins)
+      {
+         try
+         {
+            addDependencies(node, ClassLoading.forName(plugin.getType(), this));
+         }
+         catch (ClassNotFoundException e)
+         {
+            // The error will be reported when the plugin is created
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Cannot load the plugin " + plugin.getType(), e);
+            }
+         }
+      }
+   }
+
+   private void submit(final Group group)
+   {
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            if (sequential)
+            {
+               // The group will be executed by the thread that starts the container
+               deferred.add(group);
+               return;
+            }
+            AccessController.doPrivileged(new PrivilegedAction<Void>()
+            {
+               public Void run()
+               {
+                  execute(group);
+                  return null;
+               }
+            }, accessControlContext);
+         }
+      });
+   }
+
+   /**
+    * Instantiates and starts the components of the given group, then submits the groups that were only
+    * waiting for it
+    */
+   private void execute(Group group)
+   {
+      Thread thread = Thread.currentThread();
+      ClassLoader oldClassLoader = thread.getContextClassLoader();
+      ExoContainer oldContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      try
+      {
+         CURRENT_GROUP.set(group);
+         thread.setContextClassLoader(contextClassLoader);
+         ExoContainerContext.setCurrentContainer(currentContainer);
+         if (failure.get() == null)
+         {
+            group.startTime = System.nanoTime();
+            List<Object> instances = new ArrayList<Object>(group.nodes.size());
+            for (Node node : group.nodes)
+            {
+               instances.add(container.getComponentInstance(node.adapter.getComponentKey()));
+            }
+            for (Object instance : instances)
+            {
+               if (instance instanceof Startable)
+               {
+                  start((Startable)instance);
+               }
+            }
+            group.endTime = System.nanoTime();
+         }
+      }
+      catch (RuntimeException e)
+      {
+         failure.compareAndSet(null, e);
+      }
+      catch (Error e)
+      {
+         failure.compareAndSet(null, new PicoIntrospectionException("Cannot start the components "
+            + group.nodes, e));
+      }
+      finally
+      {
+         CURRENT_GROUP.remove();
+         ExoContainerContext.setCurrentContainer(oldContainer);
+         thread.setContextClassLoader(oldClassLoader);
+         group.done = true;
+         for (Group dependent : group.dependents)
+         {
+            if (dependent.pending.decrementAndGet() == 0)
+            {
+               if (sequential)
+               {
+                  deferred.add(dependent);
+               }
+               else
+               {
+                  submit(dependent);
+               }
+            }
+         }
+         doneSignal.countDown();
+      }
+   }
+
+   private static void start(Startable instance)
+   {
+      try
+      {
+         instance.start();
+      }
+      catch (RuntimeException e)
+      {
+         throw new PicoIntrospectionException("Failed when calling start on " + instance, e);
+      }
+   }
+
+   /**
+    * A component adapter of the container
+    */
+   private static class Node
+   {
+      /** . */
+      private final ComponentAdapter adapter;
+
+      /** . */
+      private final List<Node> dependencies = new ArrayList<Node>();
+
+      /** . */
+      private Group group;
+
+      /** . */
+      private int index = -1;
+
+      /** . */
+      private int lowLink;
+
+      /** . */
+      private boolean onStack;
+
+      private Node(ComponentAdapter adapter)
+      {
+         this.adapter = adapter;
+      }
+
+      @Override
+      public String toString()
+      {
+         Object key = adapter.getComponentKey();
+         return key instanceof Class ? ((Class<?>)key).getName() : String.valueOf(key);
+      }
+   }
+
+   /**
+    * Components instantiated and started together by the same thread
+    */
+   static class Group
+   {
+      /** . */
+      final List<Node> nodes = new ArrayList<Node>();
+
+      /** . */
+      final Set<Group> dependencies = new LinkedHashSet<Group>();
+
+      /** . */
+      final List<Group> dependents = new ArrayList<Group>();
+
+      /**
+       * The amount of dependencies that have not been started yet
+       */
+      final AtomicInteger pending = new AtomicInteger();
+
+      /**
+       * Indicates whether the components of the group have been instantiated and started
+       */
+      volatile boolean done;
+
+      /** . */
+      volatile long startTime;
+
+      /** . */
+      volatile long endTime;
+
+      /**
+       * @return the time in nanoseconds spent to instantiate and start the components of the group
+       */
+      long getDuration()
+      {
+         return endTime - startTime;
+      }
+
+      @Override
+      public String toString()
+      {
+         return nodes.size() == 1 ? nodes.get(0).toString() : nodes.toString();
+      }
+   }
+}
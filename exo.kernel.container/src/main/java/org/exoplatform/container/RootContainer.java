@@ -24,6 +24,7 @@ import org.exoplatform.commons.utils.PropertyManager;
 import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.configuration.ConfigurationManagerImpl;
+import org.exoplatform.container.configuration.ConfigurationSnapshot;
 import org.exoplatform.container.definition.PortalContainerConfig;
 import org.exoplatform.container.definition.PortalContainerDefinition;
 import org.exoplatform.container.monitor.jvm.J2EEServerInfo;
@@ -673,6 +674,7 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
          }
 
          cService.processRemoveConfiguration();
+         logConfigurationSnapshot();
          pcontainer.registerComponentInstance(ConfigurationManager.class, cService);
          registerComponentInstance(portalContainerName, pcontainer);
          pcontainer.start(true);
@@ -778,6 +780,7 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
          service.addConfiguration("file:" + overrideConf);
       }
       service.processRemoveConfiguration();
+      logConfigurationSnapshot();
       if (PropertyManager.isDevelopping())
       {
          Configuration conf = service.getConfiguration();
@@ -789,6 +792,18 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
       return service;
    }
 
+   /**
+    * Logs the statistics of the configuration snapshot if it is enabled
+    */
+   private static void logConfigurationSnapshot()
+   {
+      ConfigurationSnapshot snapshot = ConfigurationSnapshot.getInstance();
+      if (snapshot != null && LOG.isInfoEnabled())
+      {
+         LOG.info(snapshot.toString());
+      }
+   }
+
    /**
     * Get the unique instance of the root container per VM. The implementation relies on the double
     * checked locking pattern to guarantee that only one instance will be initialized. See
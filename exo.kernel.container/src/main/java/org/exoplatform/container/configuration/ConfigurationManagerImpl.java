@@ -187,6 +187,12 @@ public class ConfigurationManagerImpl implements ConfigurationManager
       finally
       {
          currentURL.set(null);
+         ConfigurationSnapshot snapshot = ConfigurationSnapshot.getInstance();
+         if (snapshot != null)
+         {
+            // Store the documents that have been filtered to be able to reuse them at the next boot
+            snapshot.save();
+         }
       }
    }
 
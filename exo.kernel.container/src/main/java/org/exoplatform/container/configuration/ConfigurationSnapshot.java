@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.configuration;
+
+import org.exoplatform.commons.utils.PrivilegedFileHelper;
+import org.exoplatform.commons.utils.PropertyManager;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps in a compact binary file the configuration documents once filtered according to the active profiles,
+ * so that the next boots can skip the parsing of the XML files into DOM, the filtering of the DOM and its
+ * serialization when nothing changed. A document is identified by its URL and the active profiles, and is
+ * only reused if the checksum of the content of the URL is still the same.
+ * <p>
+ * The variables of the documents are only resolved when they are unmarshalled and their values may depend
+ * on the current container or on the system properties, this is the reason why the snapshot contains the
+ * documents before the resolution of their variables and why the unmarshalling itself is not cached.
+ * <p>
+ * The snapshot is enabled by setting the system property {@link #SNAPSHOT_DIR_PROPERTY} to the directory
+ * where the snapshot file must be stored.
+ *
+ * @version $Id$
+ */
+public class ConfigurationSnapshot
+{
+
+   /**
+    * The name of the system property that gives the directory of the snapshot file
+    */
+   public static final String SNAPSHOT_DIR_PROPERTY = "exo.conf.snapshot.dir";
+
+   /**
+    * The name of the snapshot file
+    */
+   public static final String SNAPSHOT_FILE_NAME = "configuration-snapshot.bin";
+
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.ConfigurationSnapshot");
+
+   /**
+    * The magic number of the snapshot files
+    */
+   private static final int MAGIC = 0x45584F43;
+
+   /**
+    * The version of the format of the snapshot files, it must be incremented each time the format
+    * or the way the documents are filtered changes
+    */
+   private static final int VERSION = 1;
+
+   /**
+    * The snapshot shared by all the configuration managers
+    */
+   private static volatile ConfigurationSnapshot instance;
+
+   /**
+    * Indicates whether the shared snapshot has already been initialized
+    */
+   private static volatile boolean initialized;
+
+   /** . */
+   private final File file;
+
+   /** . */
+   private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+   /**
+    * Indicates whether some entries have been added since the last save
+    */
+   private volatile boolean dirty;
+
+   /** . */
+   private final AtomicInteger hits = new AtomicInteger();
+
+   /** . */
+   private final AtomicInteger misses = new AtomicInteger();
+
+   /**
+    * The total time in nanoseconds that the filtering of the documents found in the snapshot took
+    * when they were added
+    */
+   private final AtomicLong savedTime = new AtomicLong();
+
+   /**
+    * Creates a snapshot stored into the given file, its content is loaded if the file exists
+    */
+   public ConfigurationSnapshot(File file)
+   {
+      this.file = file;
+      load();
+   }
+
+   /**
+    * Gives the snapshot shared by all the configuration managers
+    *
+    * @return the snapshot or <code>null</code> if it is disabled
+    */
+   public static ConfigurationSnapshot getInstance()
+   {
+      if (!initialized)
+      {
+         synchronized (ConfigurationSnapshot.class)
+         {
+            if (!initialized)
+            {
+               String dir = PropertyManager.getProperty(SNAPSHOT_DIR_PROPERTY);
+               if (dir != null && dir.trim().length() > 0)
+               {
+                  instance = new ConfigurationSnapshot(new File(dir.trim(), SNAPSHOT_FILE_NAME));
+               }
+               initialized = true;
+            }
+         }
+      }
+      return instance;
+   }
+
+   /**
+    * Reads the whole content of the given URL
+    */
+   static byte[] read(URL url) throws IOException
+   {
+      InputStream is = url.openStream();
+      try
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+         byte[] buffer = new byte[4096];
+         for (int n; (n = is.read(buffer)) != -1;)
+         {
+            out.write(buffer, 0, n);
+         }
+         return out.toByteArray();
+      }
+      finally
+      {
+         is.close();
+      }
+   }
+
+   /**
+    * Computes the checksum of the given content
+    */
+   static long checksum(byte[] content)
+   {
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      return (long)content.length << 32 | crc.getValue();
+   }
+
+   /**
+    * Gives the filtered document of the given URL
+    *
+    * @param url the URL of the document
+    * @param profiles the active profiles
+    * @param checksum the checksum of the current content of the URL
+    * @return the filtered document or <code>null</code> if it is not in the snapshot or if its content changed
+    */
+   String get(URL url, Set<String> profiles, long checksum)
+   {
+      Entry entry = entries.get(getKey(url, profiles));
+      if (entry == null || entry.checksum != checksum)
+      {
+         misses.incrementAndGet();
+         return null;
+      }
+      hits.incrementAndGet();
+      savedTime.addAndGet(entry.time);
+      return entry.document;
+   }
+
+   /**
+    * Adds the filtered document of the given URL to the snapshot
+    *
+    * @param url the URL of the document
+    * @param profiles the active profiles
+    * @param checksum the checksum of the content of the URL
+    * @param document the filtered document
+    * @param time the time in nanoseconds spent to filter the document
+    */
+   void put(URL url, Set<String> profiles, long checksum, String document, long time)
+   {
+      entries.put(getKey(url, profiles), new Entry(checksum, document, time));
+      dirty = true;
+   }
+
+   /**
+    * Stores the snapshot into its file if some documents have been added since the last save
+    */
+   public synchronized void save()
+   {
+      if (!dirty)
+      {
+         return;
+      }
+      dirty = false;
+      File dir = file.getParentFile();
+      if (dir != null && !PrivilegedFileHelper.exists(dir))
+      {
+         PrivilegedFileHelper.mkdirs(dir);
+      }
+      // Write into a temporary file first to never leave a truncated snapshot
+      File tmp = new File(file.getPath() + ".tmp");
+      try
+      {
+         DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(
+               PrivilegedFileHelper.fileOutputStream(tmp))));
+         try
+         {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<String, Entry> copy = new HashMap<String, Entry>(entries);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, Entry> e : copy.entrySet())
+            {
+               Entry entry = e.getValue();
+               out.writeUTF(e.getKey());
+               out.writeLong(entry.checksum);
+               out.writeLong(entry.time);
+               byte[] document = entry.document.getBytes("UTF-8");
+               out.writeInt(document.length);
+               out.write(document);
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+         PrivilegedFileHelper.delete(file);
+         if (!PrivilegedFileHelper.renameTo(tmp, file))
+         {
+            LOG.warn("Could not rename the configuration snapshot " + tmp + " to " + file);
+         }
+      }
+      catch (IOException e)
+      {
+         LOG.warn("Could not save the configuration snapshot into " + file, e);
+         PrivilegedFileHelper.delete(tmp);
+      }
+   }
+
+   /**
+    * Loads the content of the snapshot file if it exists, an invalid or outdated file is ignored
+    */
+   private void load()
+   {
+      if (!PrivilegedFileHelper.exists(file))
+      {
+         return;
+      }
+      try
+      {
+         DataInputStream in =
+            new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+               PrivilegedFileHelper.fileInputStream(file))));
+         try
+         {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+               LOG.info("The configuration snapshot " + file + " has been created by another version, it is ignored");
+               return;
+            }
+            for (int i = in.readInt(); i > 0; i--)
+            {
+               String key = in.readUTF();
+               long checksum = in.readLong();
+               long time = in.readLong();
+               byte[] document = new byte[in.readInt()];
+               in.readFully(document);
+               entries.put(key, new Entry(checksum, new String(document, "UTF-8"), time));
+            }
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+      catch (IOException e)
+      {
+         LOG.warn("Could not load the configuration snapshot " + file + ", it is ignored", e);
+         entries.clear();
+      }
+   }
+
+   private static String getKey(URL url, Set<String> profiles)
+   {
+      StringBuilder key = new StringBuilder(url.toString());
+      for (String profile : new TreeSet<String>(profiles))
+      {
+         key.append('|').append(profile);
+      }
+      return key.toString();
+   }
+
+   /**
+    * @return the file in which the snapshot is stored
+    */
+   public File getFile()
+   {
+      return file;
+   }
+
+   /**
+    * @return the amount of documents found in the snapshot
+    */
+   public int getHitCount()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return the amount of documents that had to be filtered because they were not in the snapshot
+    * or because they changed
+    */
+   public int getMissCount()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @return the time in milliseconds saved thanks to the snapshot
+    */
+   public long getSavedTime()
+   {
+      return savedTime.get() / 1000000;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return "The configuration snapshot " + file + " provided " + getHitCount() + " documents out of "
+         + (getHitCount() + getMissCount()) + " which saved about " + getSavedTime() + " ms";
+   }
+
+   private static class Entry
+   {
+      /** . */
+      private final long checksum;
+
+      /** . */
+      private final String document;
+
+      /** . */
+      private final long time;
+
+      private Entry(long checksum, String document, long time)
+      {
+         this.checksum = checksum;
+         this.document = document;
+         this.time = time;
+      }
+   }
+}
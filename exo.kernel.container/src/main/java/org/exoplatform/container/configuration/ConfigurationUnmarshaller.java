@@ -35,7 +35,9 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
@@ -128,14 +130,29 @@ public class ConfigurationUnmarshaller
    /** . */
    private final Set<String> profiles;
 
+   /**
+    * The snapshot of the filtered documents, <code>null</code> if it is disabled
+    */
+   private final ConfigurationSnapshot snapshot;
+
    public ConfigurationUnmarshaller(Set<String> profiles)
    {
-      this.profiles = profiles;
+      this(profiles, ConfigurationSnapshot.getInstance());
    }
 
    public ConfigurationUnmarshaller()
    {
-      this.profiles = Collections.emptySet();
+      this(Collections.<String> emptySet());
+   }
+
+   /**
+    * @param profiles the active profiles
+    * @param snapshot the snapshot of the filtered documents, <code>null</code> to always filter the documents
+    */
+   public ConfigurationUnmarshaller(Set<String> profiles, ConfigurationSnapshot snapshot)
+   {
+      this.profiles = profiles;
+      this.snapshot = snapshot;
    }
 
    /**
@@ -246,31 +263,23 @@ public class ConfigurationUnmarshaller
          {
             public Configuration run() throws Exception
             {
-               DocumentBuilder builder = builderFactory.newDocumentBuilder();
-               Document doc = builder.parse(url.openStream());
-
-               // Filter DOM
-               ProfileDOMFilter filter = new ProfileDOMFilter(profiles);
-               filter.process(doc.getDocumentElement());
-
-               // SAX event stream -> String
-               StringWriter buffer = new StringWriter();
-               SAXTransformerFactory tf = (SAXTransformerFactory)SAXTransformerFactory.newInstance();
-               TransformerHandler hd = tf.newTransformerHandler();
-               StreamResult result = new StreamResult(buffer);
-               hd.setResult(result);
-               Transformer serializer = tf.newTransformer();
-               serializer.setOutputProperty(OutputKeys.ENCODING, "UTF8");
-               serializer.setOutputProperty(OutputKeys.INDENT, "yes");
-
-               // Transform -> SAX event stream
-               SAXResult saxResult = new SAXResult(new NoKernelNamespaceSAXFilter(hd));
-
-               // DOM -> Transform
-               serializer.transform(new DOMSource(doc), saxResult);
-
-               // Reuse the parsed document
-               String document = buffer.toString();
+               String document;
+               if (snapshot == null)
+               {
+                  document = filter(builderFactory, url.openStream());
+               }
+               else
+               {
+                  byte[] content = ConfigurationSnapshot.read(url);
+                  long checksum = ConfigurationSnapshot.checksum(content);
+                  document = snapshot.get(url, profiles, checksum);
+                  if (document == null)
+                  {
+                     long start = System.nanoTime();
+                     document = filter(builderFactory, new ByteArrayInputStream(content));
+                     snapshot.put(url, profiles, checksum, document, System.nanoTime() - start);
+                  }
+               }
 
                // Debug
                if (LOG.isTraceEnabled())
@@ -329,4 +338,35 @@ public class ConfigurationUnmarshaller
          }
       }
    }
+
+   /**
+    * Parses the given document, removes the elements that don't match the active profiles as well as
+    * the kernel namespaces, and serializes the result
+    */
+   private String filter(DocumentBuilderFactory builderFactory, InputStream is) throws Exception
+   {
+      DocumentBuilder builder = builderFactory.newDocumentBuilder();
+      Document doc = builder.parse(is);
+
+      // Filter DOM
+      ProfileDOMFilter filter = new ProfileDOMFilter(profiles);
+      filter.process(doc.getDocumentElement());
+
+      // SAX event stream -> String
+      StringWriter buffer = new StringWriter();
+      SAXTransformerFactory tf = (SAXTransformerFactory)SAXTransformerFactory.newInstance();
+      TransformerHandler hd = tf.newTransformerHandler();
+      StreamResult result = new StreamResult(buffer);
+      hd.setResult(result);
+      Transformer serializer = tf.newTransformer();
+      serializer.setOutputProperty(OutputKeys.ENCODING, "UTF8");
+      serializer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+      // Transform -> SAX event stream
+      SAXResult saxResult = new SAXResult(new NoKernelNamespaceSAXFilter(hd));
+
+      // DOM -> Transform
+      serializer.transform(new DOMSource(doc), saxResult);
+      return buffer.toString();
+   }
 }
@@ -29,6 +29,7 @@ import org.picocontainer.PicoInitializationException;
 import org.picocontainer.PicoIntrospectionException;
 import org.picocontainer.PicoVisitor;
 import org.picocontainer.Startable;
+import org.picocontainer.defaults.AmbiguousComponentResolutionException;
 import org.picocontainer.defaults.DuplicateComponentKeyRegistrationException;
 
 import java.net.URL;
@@ -36,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -220,6 +222,65 @@ public class TestExoContainer extends AbstractTestContainer
       assertTrue(c1.started);
    }
 
+   public void testParallelStart()
+   {
+      try
+      {
+         PropertyManager.setProperty(ExoContainer.PARALLEL_BOOT_PROPERTY, "true");
+         PropertyManager.setProperty(ExoContainer.BOOT_THREADS_PROPERTY, "4");
+         final RootContainer container =
+            createRootContainer("test-exo-container.xml", "testParallelStart", "testStartOrder", "testCyclicRef");
+         C1 c1 = (C1)container.getComponentInstanceOfType(C1.class);
+         assertNotNull(c1);
+         assertTrue(c1.started);
+         A a = (A)container.getComponentInstanceOfType(A.class);
+         assertNotNull(a);
+         B b = (B)container.getComponentInstanceOfType(B.class);
+         assertEquals(a, b.a);
+         D1 d1 = (D1)container.getComponentInstanceOfType(D1.class);
+         D2 d2 = (D2)container.getComponentInstanceOfType(D2.class);
+         D3 d3 = (D3)container.getComponentInstanceOfType(D3.class);
+         // D1 and D2 can only be started if they are started concurrently
+         assertTrue(d1.started);
+         assertTrue(d2.started);
+         // D3 depends on D1 and D2 so it must be started after them
+         assertTrue(d3.started);
+         assertTrue(d3.dependenciesStarted);
+         BootReport report = container.getBootReport();
+         assertNotNull(report);
+         assertFalse(report.getCriticalPath().isEmpty());
+      }
+      finally
+      {
+         System.clearProperty(ExoContainer.PARALLEL_BOOT_PROPERTY);
+         System.clearProperty(ExoContainer.BOOT_THREADS_PROPERTY);
+         PropertyManager.refresh();
+      }
+   }
+
+   public void testParallelStartUndeclaredDependency()
+   {
+      try
+      {
+         PropertyManager.setProperty(ExoContainer.PARALLEL_BOOT_PROPERTY, "true");
+         PropertyManager.setProperty(ExoContainer.BOOT_THREADS_PROPERTY, "4");
+         final RootContainer container = createRootContainer("test-exo-container.xml", "testParallelStartUndeclared");
+         E1 e1 = (E1)container.getComponentInstanceOfType(E1.class);
+         E2 e2 = (E2)container.getComponentInstanceOfType(E2.class);
+         // E1 gets E2 while it is started without declaring it
+         assertTrue(e1.started);
+         assertSame(e2, e1.e2);
+         assertTrue(e2.started);
+         assertNotNull(container.getBootReport());
+      }
+      finally
+      {
+         System.clearProperty(ExoContainer.PARALLEL_BOOT_PROPERTY);
+         System.clearProperty(ExoContainer.BOOT_THREADS_PROPERTY);
+         PropertyManager.refresh();
+      }
+   }
+
    public void testCache()
    {
       URL rootURL = getClass().getResource("test-exo-container.xml");
@@ -267,6 +328,111 @@ public class TestExoContainer extends AbstractTestContainer
       assertNull(pcontainer.getComponentAdapter("MyKey"));
    }
 
+   public void testTypeIndex()
+   {
+      CachingContainer parent = new CachingContainer();
+      CachingContainer child = new CachingContainer(parent);
+      parent.addChildContainer(child);
+      assertTrue(parent.getComponentAdaptersOfType(Runnable.class).isEmpty());
+      parent.registerComponentImplementation("R1", R1.class);
+      parent.registerComponentImplementation("R2", R2.class);
+      assertEquals(2, parent.getComponentAdaptersOfType(Runnable.class).size());
+      assertEquals(1, parent.getComponentAdaptersOfType(R2.class).size());
+      assertEquals(2, parent.getComponentInstancesOfType(Runnable.class).size());
+      assertTrue(child.getComponentInstancesOfType(Runnable.class).isEmpty());
+      assertSame(parent.getComponentInstance("R2"), child.getComponentInstanceOfType(R2.class));
+      // The instances of the other types must stay in the cache
+      ComponentAdapter ca = new MyClassAdapter("MyKey");
+      parent.registerComponent(ca);
+      Object instance = parent.getComponentInstanceOfType(MyClass.class);
+      assertNotNull(instance);
+      parent.registerComponentImplementation("R3", R3.class);
+      assertSame(instance, parent.getComponentInstanceOfType(MyClass.class));
+      assertEquals(3, parent.getComponentAdaptersOfType(Runnable.class).size());
+      assertEquals(2, parent.getComponentAdaptersOfType(R2.class).size());
+      assertEquals(3, parent.getComponentInstancesOfType(Runnable.class).size());
+      // The caches of the child containers must be updated too
+      child.registerComponentImplementation("R4", R4.class);
+      assertSame(parent.getComponentInstance("R3"), child.getComponentInstanceOfType(R3.class));
+      parent.unregisterComponent("R3");
+      assertNull(child.getComponentInstanceOfType(R3.class));
+      assertEquals(1, parent.getComponentAdaptersOfType(R2.class).size());
+      assertEquals(2, parent.getComponentAdaptersOfType(Runnable.class).size());
+      assertEquals(1, child.getComponentAdaptersOfType(Runnable.class).size());
+      parent.unregisterComponent("MyKey");
+      assertNull(parent.getComponentInstanceOfType(MyClass.class));
+      assertTrue(parent.getComponentAdaptersOfType(MyClass.class).isEmpty());
+      // A component registered with a class as key can be found by type
+      parent.registerComponentInstance(Runnable.class, "not a runnable");
+      assertEquals("not a runnable", parent.getComponentInstanceOfType(Runnable.class));
+      parent.unregisterComponent(Runnable.class);
+      try
+      {
+         parent.getComponentInstanceOfType(Runnable.class);
+         fail("The resolution should be ambiguous");
+      }
+      catch (AmbiguousComponentResolutionException e)
+      {
+         // expected
+      }
+   }
+
+   public static class R1 implements Runnable
+   {
+      public void run()
+      {
+      }
+   }
+
+   public static class R2 extends R1
+   {
+   }
+
+   public static class R3 extends R2
+   {
+   }
+
+   public static class R4 implements Runnable
+   {
+      public void run()
+      {
+      }
+   }
+
+   public static class MyClassAdapter implements ComponentAdapter
+   {
+      private final Object key;
+
+      public MyClassAdapter(Object key)
+      {
+         this.key = key;
+      }
+
+      public void accept(PicoVisitor paramPicoVisitor)
+      {
+      }
+
+      public Class getComponentImplementation()
+      {
+         return MyClass.class;
+      }
+
+      public Object getComponentInstance(PicoContainer paramPicoContainer) throws PicoInitializationException,
+         PicoIntrospectionException
+      {
+         return new MyClass();
+      }
+
+      public Object getComponentKey()
+      {
+         return key;
+      }
+
+      public void verify(PicoContainer paramPicoContainer) throws PicoIntrospectionException
+      {
+      }
+   }
+
    public void testMultiThreading() throws Throwable
    {
       final RootContainer container = createRootContainer("test-exo-container.xml");
@@ -814,6 +980,118 @@ public class TestExoContainer extends AbstractTestContainer
       }
    }
 
+   /**
+    * Allows to know whether D1 and D2 are started concurrently
+    */
+   private static final CountDownLatch D_STARTING = new CountDownLatch(2);
+
+   private static boolean awaitDStarting()
+   {
+      D_STARTING.countDown();
+      try
+      {
+         return D_STARTING.await(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return false;
+      }
+   }
+
+   public static class D1 implements Startable
+   {
+      public volatile boolean started;
+
+      public void start()
+      {
+         started = awaitDStarting();
+      }
+
+      public void stop()
+      {
+      }
+   }
+
+   public static class D2 implements Startable
+   {
+      public volatile boolean started;
+
+      public void start()
+      {
+         started = awaitDStarting();
+      }
+
+      public void stop()
+      {
+      }
+   }
+
+   public static class E1 implements Startable
+   {
+      private final ExoContainerContext ctx;
+
+      public volatile E2 e2;
+
+      public volatile boolean started;
+
+      public E1(ExoContainerContext ctx)
+      {
+         this.ctx = ctx;
+      }
+
+      public void start()
+      {
+         e2 = (E2)ctx.getContainer().getComponentInstanceOfType(E2.class);
+         started = true;
+      }
+
+      public void stop()
+      {
+      }
+   }
+
+   public static class E2 implements Startable
+   {
+      public volatile boolean started;
+
+      public void start()
+      {
+         started = true;
+      }
+
+      public void stop()
+      {
+      }
+   }
+
+   public static class D3 implements Startable
+   {
+      private final D1 d1;
+
+      private final D2 d2;
+
+      public volatile boolean started;
+
+      public volatile boolean dependenciesStarted;
+
+      public D3(D1 d1, D2 d2)
+      {
+         this.d1 = d1;
+         this.d2 = d2;
+      }
+
+      public void start()
+      {
+         dependenciesStarted = d1.started && d2.started;
+         started = true;
+      }
+
+      public void stop()
+      {
+      }
+   }
+
    public void testLifeCycle() throws Throwable
    {
       ConcurrentPicoContainer container = new ConcurrentPicoContainer();
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of the lookups by type of a {@link CachingContainer} while other components are
+ * registered and unregistered concurrently.
+ *
+ * @version $Id$
+ */
+public class TypeIndexTestLoad extends TestCase
+{
+
+   private static final int COMPONENTS = 1000;
+
+   private static final int READERS = 4;
+
+   private static final long DURATION = 5000;
+
+   public void testLookups() throws Exception
+   {
+      System.out.println("-----------------------------------------");
+      System.out.println("Test lookups components=" + COMPONENTS + ", readers=" + READERS);
+      CachingContainer container = new CachingContainer();
+      for (int i = 0; i < COMPONENTS; i++)
+      {
+         switch (i % 3)
+         {
+            case 0 :
+               container.registerComponentInstance("list" + i, new ArrayList<Object>());
+               break;
+            case 1 :
+               container.registerComponentInstance("map" + i, new HashMap<Object, Object>());
+               break;
+            default :
+               container.registerComponentInstance("builder" + i, new StringBuilder());
+         }
+      }
+      container.registerComponentInstance(Unique.class, new Unique());
+      doTest(container, false);
+      doTest(container, true);
+      System.out.println("");
+   }
+
+   private void doTest(final CachingContainer container, boolean registration) throws Exception
+   {
+      final AtomicBoolean stop = new AtomicBoolean();
+      final AtomicLong lookups = new AtomicLong();
+      final AtomicLong registrations = new AtomicLong();
+      final CountDownLatch doneSignal = new CountDownLatch(READERS + (registration ? 1 : 0));
+      for (int i = 0; i < READERS; i++)
+      {
+         new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  long count = 0;
+                  while (!stop.get())
+                  {
+                     container.getComponentInstanceOfType(Unique.class);
+                     List<?> lists = container.getComponentAdaptersOfType(List.class);
+                     List<?> maps = container.getComponentInstancesOfType(Map.class);
+                     if (lists.isEmpty() || maps.isEmpty())
+                     {
+                        throw new IllegalStateException("Components are missing");
+                     }
+                     count += 3;
+                  }
+                  lookups.addAndGet(count);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         }.start();
+      }
+      if (registration)
+      {
+         new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  long count = 0;
+                  while (!stop.get())
+                  {
+                     String key = "churn" + (count % 100);
+                     container.registerComponentInstance(key, new Churn());
+                     container.unregisterComponent(key);
+                     count += 2;
+                  }
+                  registrations.addAndGet(count);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         }.start();
+      }
+      Thread.sleep(DURATION);
+      stop.set(true);
+      doneSignal.await();
+      System.out.println((registration ? "With" : "Without") + " concurrent registration: " + lookups.get() * 1000
+         / DURATION + " lookups/s" + (registration ? ", " + registrations.get() * 1000 / DURATION
+         + " registrations/s" : ""));
+   }
+
+   public static class Unique
+   {
+   }
+
+   public static class Churn
+   {
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.configuration;
+
+import org.exoplatform.commons.utils.Tools;
+import org.exoplatform.container.xml.Configuration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+/**
+ * @version $Id$
+ */
+public class TestConfigurationSnapshot extends AbstractProfileTest
+{
+
+   private File snapshotFile;
+
+   private File configurationFile;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      snapshotFile = File.createTempFile("configuration-snapshot", ".bin");
+      snapshotFile.delete();
+      configurationFile = File.createTempFile("configuration", ".xml");
+      String basedir = System.getProperty("basedir");
+      URL url =
+         new File(basedir + "/src/test/resources/org/exoplatform/container/configuration/import-configuration.xml")
+            .toURI().toURL();
+      write(ConfigurationSnapshot.read(url), false);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      snapshotFile.delete();
+      configurationFile.delete();
+   }
+
+   private void write(byte[] content, boolean append) throws Exception
+   {
+      OutputStream out = new FileOutputStream(configurationFile, append);
+      try
+      {
+         out.write(content);
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   private Configuration unmarshall(ConfigurationSnapshot snapshot, String... profiles) throws Exception
+   {
+      ConfigurationUnmarshaller unmarshaller = new ConfigurationUnmarshaller(Tools.<String> set(profiles), snapshot);
+      return unmarshaller.unmarshall(configurationFile.toURI().toURL());
+   }
+
+   public void testSnapshot() throws Exception
+   {
+      ConfigurationSnapshot snapshot = new ConfigurationSnapshot(snapshotFile);
+      assertEquals(2, unmarshall(snapshot, "foo").getImports().size());
+      assertEquals(0, snapshot.getHitCount());
+      assertEquals(1, snapshot.getMissCount());
+      assertEquals(2, unmarshall(snapshot, "foo").getImports().size());
+      assertEquals(1, snapshot.getHitCount());
+      snapshot.save();
+      assertTrue(snapshotFile.exists());
+
+      // The documents are reused at the next boot
+      snapshot = new ConfigurationSnapshot(snapshotFile);
+      assertEquals(2, unmarshall(snapshot, "foo").getImports().size());
+      assertEquals(1, snapshot.getHitCount());
+      assertEquals(0, snapshot.getMissCount());
+
+      // The filtered documents depend on the active profiles
+      assertEquals(3, unmarshall(snapshot, "bar", "foo").getImports().size());
+      assertEquals(1, unmarshall(snapshot).getImports().size());
+      assertEquals(1, snapshot.getHitCount());
+      assertEquals(2, snapshot.getMissCount());
+      assertEquals(3, unmarshall(snapshot, "foo", "bar").getImports().size());
+      assertEquals(2, snapshot.getHitCount());
+      snapshot.save();
+
+      // A modified document is filtered again
+      write("<!-- modified -->".getBytes("UTF-8"), true);
+      snapshot = new ConfigurationSnapshot(snapshotFile);
+      assertEquals(2, unmarshall(snapshot, "foo").getImports().size());
+      assertEquals(0, snapshot.getHitCount());
+      assertEquals(1, snapshot.getMissCount());
+   }
+
+   public void testInvalidSnapshot() throws Exception
+   {
+      OutputStream out = new FileOutputStream(snapshotFile);
+      try
+      {
+         out.write("invalid".getBytes("UTF-8"));
+      }
+      finally
+      {
+         out.close();
+      }
+      ConfigurationSnapshot snapshot = new ConfigurationSnapshot(snapshotFile);
+      assertEquals(2, unmarshall(snapshot, "foo").getImports().size());
+      assertEquals(1, snapshot.getMissCount());
+      snapshot.save();
+      snapshot = new ConfigurationSnapshot(snapshotFile);
+      assertEquals(2, unmarshall(snapshot, "foo").getImports().size());
+      assertEquals(1, snapshot.getHitCount());
+   }
+}